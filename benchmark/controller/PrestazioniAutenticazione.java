@@ -0,0 +1,127 @@
+package controller;
+
+import models.Esadecimale;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misura il costo dell'autenticazione, per scegliere le iterazioni di PBKDF2
+ * (proprietà "pbkdf2-iterazioni", vedi ServizioAutenticazione) in base al numero di login
+ * al secondo che il server deve sostenere nei momenti di picco.
+ *
+ * Per ogni numero di iterazioni misura il tempo di un singolo hash (quanto attende
+ * l'utente) e quanti hash al secondo calcolano insieme tutti i processori (quanti login
+ * al secondo si possono verificare). Confronta inoltre la codifica esadecimale con
+ * String.format, usata prima per gli hash SHA-256, con quella di Esadecimale.
+ *
+ * Non fa parte dell'applicazione e build.bat non lo include nel jar. Dopo build.bat:
+ *   javac -cp out\Rubrica.jar -d benchmark\classi benchmark\controller\PrestazioniAutenticazione.java
+ *   java -cp out\Rubrica.jar;benchmark\classi controller.PrestazioniAutenticazione [login al secondo di picco, default 20]
+ */
+public class PrestazioniAutenticazione {
+
+    private static final int[] ITERAZIONI = {100_000, 210_000, 310_000, 600_000, 1_000_000};
+
+    // Durata di ogni misura di throughput
+    private static final long DURATA_MS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int loginAlSecondo = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int processori = Runtime.getRuntime().availableProcessors();
+        String salt = "00112233445566778899aabbccddeeff";
+
+        confrontaEsadecimale();
+
+        System.out.printf("%nPBKDF2-HMAC-SHA256 su %d processori%n", processori);
+        System.out.printf("%12s %14s %16s%n", "Iterazioni", "Un hash (ms)", "Hash al secondo");
+        ExecutorService pool = Executors.newFixedThreadPool(processori);
+        double costoPerIterazione = 0;  // Secondi di CPU complessivi per iterazione, con tutti i processori
+        try {
+            ServizioAutenticazione.hashPbkdf2("riscaldamento", salt, 50_000);
+            for (int iterazioni : ITERAZIONI) {
+                long inizio = System.nanoTime();
+                ServizioAutenticazione.hashPbkdf2("password di prova", salt, iterazioni);
+                double millisecondi = (System.nanoTime() - inizio) / 1e6;
+
+                long fine = System.currentTimeMillis() + DURATA_MS;
+                List<Future<Integer>> risultati = new ArrayList<>();
+                long inizioThroughput = System.nanoTime();
+                for (int t = 0; t < processori; t++) {
+                    risultati.add(pool.submit(() -> {
+                        int n = 0;
+                        do {
+                            ServizioAutenticazione.hashPbkdf2("password di prova", salt, iterazioni);
+                            n++;
+                        } while (System.currentTimeMillis() < fine);
+                        return n;
+                    }));
+                }
+                int totale = 0;
+                for (Future<Integer> r : risultati) {
+                    totale += r.get();
+                }
+                double secondi = (System.nanoTime() - inizioThroughput) / 1e9;
+                double alSecondo = totale / secondi;
+                costoPerIterazione = 1 / (alSecondo * iterazioni);
+                System.out.printf("%,12d %14.1f %16.1f%n", iterazioni, millisecondi, alSecondo);
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // Il costo è lineare nelle iterazioni: si tiene metà della CPU libera per il resto del lavoro
+        long massimo = (long) (0.5 / (loginAlSecondo * costoPerIterazione));
+        System.out.printf("%nPer %d login al secondo usando al più metà della CPU: al massimo %,d iterazioni.%n",
+                loginAlSecondo, massimo);
+        if (massimo < ServizioAutenticazione.DEFAULT_ITERAZIONI) {
+            System.out.printf("Il default (%,d) è troppo costoso per questo carico: servono più processori o meno iterazioni.%n",
+                    ServizioAutenticazione.DEFAULT_ITERAZIONI);
+        }
+    }
+
+    /**
+     * Confronta la vecchia conversione in esadecimale (String.format per ogni byte, un
+     * MessageDigest per ogni hash) con Esadecimale e un MessageDigest riusato.
+     */
+    private static void confrontaEsadecimale() throws NoSuchAlgorithmException {
+        int n = 200_000;
+        byte[] testo = "password di prova12345678".getBytes(StandardCharsets.UTF_8);
+        int controllo = 0;
+        for (int giro = 0; giro < 2; giro++) {  // Il primo giro serve da riscaldamento
+            long inizio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(testo);
+                StringBuilder sb = new StringBuilder();
+                for (byte b : hash) {
+                    sb.append(String.format("%02x", b));
+                }
+                controllo += sb.length();
+            }
+            double prima = (System.nanoTime() - inizio) / 1e6;
+
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            inizio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                controllo += Esadecimale.codifica(md.digest(testo)).length();
+            }
+            double dopo = (System.nanoTime() - inizio) / 1e6;
+            if (giro == 1) {
+                System.out.printf("SHA-256 + esadecimale, %,d hash:%n", n);
+                System.out.printf("  String.format, MessageDigest nuovo: %8.1f ms%n", prima);
+                System.out.printf("  Esadecimale, MessageDigest riusato: %8.1f ms (%.1fx)%n", dopo, prima / dopo);
+            }
+        }
+        if (controllo == 0) {
+            System.out.println();  // Impedisce che il lavoro venga eliminato come inutile
+        }
+    }
+}
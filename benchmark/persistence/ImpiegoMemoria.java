@@ -0,0 +1,90 @@
+package persistence;
+
+import models.Persona;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Confronta la memoria occupata da una rubrica in cache con il modello a oggetti
+ * (TreeMap di Persona, come CachePersone prima di ColonnePersone) e con ColonnePersone.
+ * Le persone sono generate con ripetizioni realistiche: le famiglie condividono cognome e
+ * indirizzo, i nomi vengono da un elenco limitato.
+ *
+ * Non fa parte dell'applicazione e build.bat non lo include nel jar. Dopo build.bat:
+ *   javac -cp out\Rubrica.jar -d benchmark\classi benchmark\persistence\ImpiegoMemoria.java
+ *   java -cp out\Rubrica.jar;benchmark\classi persistence.ImpiegoMemoria [numero di persone, default 1000000]
+ * (conviene -Xmx2g o più per un milione di persone).
+ */
+public class ImpiegoMemoria {
+
+    private static final String[] NOMI = {
+        "Marco", "Giulia", "Luca", "Francesca", "Alessandro", "Chiara", "Andrea", "Sara", "Matteo",
+        "Federica", "Lorenzo", "Valentina", "Davide", "Martina", "Simone", "Elena", "Niccolò", "Anna"
+    };
+    private static final String[] VIE = {"Via", "Viale", "Piazza", "Corso", "Vicolo"};
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long base = memoriaUsata();
+        TreeMap<Integer, Persona> oggetti = new TreeMap<>();
+        Random random = new Random(42);
+        for (int i = 1; i <= n; i++) {
+            Persona p = genera(random, i);
+            oggetti.put(p.getID(), p);
+        }
+        long conOggetti = memoriaUsata() - base;
+        Persona campione = oggetti.get(n / 2);
+        oggetti = null;
+
+        base = memoriaUsata();
+        ColonnePersone colonne = new ColonnePersone(1);
+        random = new Random(42);
+        for (int i = 1; i <= n; i++) {
+            colonne.scrivi(genera(random, i));
+        }
+        long conColonne = memoriaUsata() - base;
+
+        Persona letta = colonne.persona(colonne.posizioneDi(n / 2));
+        boolean uguali = letta.getNome().equals(campione.getNome())
+                && letta.getCognome().equals(campione.getCognome())
+                && letta.getIndirizzo().equals(campione.getIndirizzo())
+                && letta.getTelefono().equals(campione.getTelefono())
+                && letta.getEta() == campione.getEta();
+
+        System.out.printf("Persone:                 %,d%n", n);
+        System.out.printf("TreeMap<Integer,Persona>: %,d byte (%.1f byte/persona)%n", conOggetti, (double) conOggetti / n);
+        System.out.printf("ColonnePersone:          %,d byte (%.1f byte/persona, stima interna %.1f)%n",
+                conColonne, (double) conColonne / n, (double) colonne.byteOccupati() / n);
+        System.out.printf("Riduzione:               %.1fx%n", (double) conOggetti / conColonne);
+        System.out.println("Verifica di una riga:    " + (uguali ? "ok" : "DIVERSA"));
+    }
+
+    /**
+     * Genera la persona i-esima: ogni famiglia (in media 3 persone consecutive) ha lo
+     * stesso cognome e lo stesso indirizzo.
+     */
+    private static Persona genera(Random random, int i) {
+        int famiglia = i / 3;
+        Random r = new Random(famiglia);
+        String cognome = "Cognome" + r.nextInt(20_000);
+        String indirizzo = VIE[r.nextInt(VIE.length)] + " Strada " + r.nextInt(5_000) + ", " + (1 + r.nextInt(200));
+        String nome = NOMI[random.nextInt(NOMI.length)];
+        String telefono = "+39 3" + (100_000_000 + random.nextInt(900_000_000));
+        return new Persona(i, 1, nome, cognome, indirizzo, telefono, random.nextInt(100));
+    }
+
+    private static long memoriaUsata() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -16,14 +16,66 @@
     - Utente è formato da 
         - id (PK, INT, AUTO_INCREMENT)
         - username (VARCHAR(256), NOT NULL)
-        - password (VARCHAR(64), NOT NULL)
-        - salt (VARCHAR(16), NOT NULL)
+        - password (VARCHAR(128), NOT NULL)
+        - salt (VARCHAR(32), NOT NULL)
 
     Ogni utente avrà una o più persone associate (ovvero ogni utente può avere più contatti in rubrica). Anche se due "Persone" sono uguali, se esse non appartengono allo stesso utente sono considerabili completamente diverse, pertanto con l'uso di PK diverse si evita di avere conflitti. 
 
     Per nome, cognome, indirizzo e telefono sono stati utilizzati VARCHAR da 256 caratteri. Questo è molto più di quanto è permesso avere su una SIM (20-30 caratteri per il nome ad esempio), ma è stato scelto per evitare problemi di overflow. Inoltre, non si sono utilizzati TEXT o LONGTEXT in quanto hanno performance peggiori rispetto a VARCHAR - ma questo può essere eventualmente modificato.
 
-    Per quanto riguarda l'utente, esso ha una password salvata come hash (SHA256) e un salt di 16 caratteri. La password è lunga 64 caratteri in quanto l'hash SHA256 produce un output di 64 caratteri esadecimali.
+    Per quanto riguarda l'utente, esso ha una password salvata come hash PBKDF2-HMAC-SHA256 nella forma
+    "pbkdf2-sha256$iterazioni$hash" (85 caratteri con 600000 iterazioni) e un salt casuale di 16 byte
+    (32 caratteri esadecimali); vedi controller.ServizioAutenticazione. Le utenze create con le versioni
+    precedenti hanno un hash SHA256 di 64 caratteri e un salt di 8: vengono convertite al primo login riuscito.
+    Per aggiornare un database esistente:
+        ALTER TABLE Utente MODIFY password VARCHAR(128) NOT NULL, MODIFY salt VARCHAR(32) NOT NULL;
+
+    Sincronizzazione incrementale:
+    - ogni Persona ha una colonna "versione" che viene impostata dai trigger a ogni INSERT/UPDATE
+      con il valore successivo di un contatore per utente (tabella SequenzaVersione);
+    - ogni DELETE lascia una "lapide" (tombstone) nella tabella PersonaEliminata con la versione
+      in cui è avvenuta l'eliminazione;
+    - un client che conosce l'ultima versione letta può quindi chiedere solo le persone modificate
+      e quelle eliminate dopo di essa, invece di rileggere tutta la rubrica.
+    Le lapidi più vecchie dell'ultima versione nota a tutti i client possono essere cancellate periodicamente.
+
+    Per aggiornare un database creato con una versione precedente di questo script:
+        ALTER TABLE Persona ADD COLUMN versione BIGINT NOT NULL DEFAULT 0;
+        CREATE INDEX idx_persona_utente_versione ON Persona (utente_id, versione);
+    poi eseguire le istruzioni CREATE TABLE della sezione "Sincronizzazione incrementale" e,
+    prima di creare i trigger, portare le righe esistenti alla versione 1 e inizializzare i contatori:
+        UPDATE Persona SET versione = 1 WHERE versione = 0;
+        INSERT INTO SequenzaVersione (utente_id, valore)
+            SELECT utente_id, 1 FROM Persona GROUP BY utente_id
+            ON DUPLICATE KEY UPDATE valore = GREATEST(valore, 1);
+    e infine eseguire le istruzioni CREATE TRIGGER. Altrimenti le righe precedenti resterebbero
+    a versione 0 e un client che ha già sincronizzato una versione successiva non le vedrebbe.
+
+    Ricerca per telefono:
+    - "telefono_norm" contiene il telefono normalizzato (solo cifre, senza "+39"/"0039"; vedi la
+      classe models.Telefono), scritto dall'applicazione a ogni INSERT/UPDATE;
+    - "telefono_inv" è la stessa stringa al contrario, generata da MySQL: la ricerca per
+      ultime cifre diventa una ricerca per prefisso (LIKE 'cifre%') che usa l'indice.
+    Per aggiornare un database esistente:
+        ALTER TABLE Persona ADD COLUMN telefono_norm VARCHAR(17) NOT NULL DEFAULT '',
+            ADD COLUMN telefono_inv VARCHAR(17) AS (REVERSE(telefono_norm)) STORED;
+        CREATE INDEX idx_persona_utente_telefono_inv ON Persona (utente_id, telefono_inv);
+    Le righe già presenti restano con telefono_norm vuoto finché non vengono modificate.
+
+    Ricerca per nome e cognome (PersonaStore.cercaPersone, usata per le rubriche troppo grandi
+    per l'indice in memoria del client):
+    - l'indice FULLTEXT ft_persona_nome_cognome serve le parole di almeno 3 caratteri, cercate
+      per prefisso in modalità booleana ("+mar* +ros*") e ordinate per rilevanza; va configurato
+      innodb_ft_min_token_size = 3 (il valore predefinito) e conviene innodb_ft_enable_stopword = OFF,
+      altrimenti parole come "la" o "de" non vengono indicizzate;
+    - l'indice FULLTEXT non comprende utente_id: il filtro sull'utente viene applicato alle righe
+      trovate, quindi le parole molto comuni costano in proporzione a tutte le rubriche;
+    - le parole più corte vengono cercate con LIKE 'parola%' sugli indici (utente_id, cognome, nome)
+      e (utente_id, nome), i gruppi di cifre con LIKE 'cifre%' sull'indice (utente_id, telefono_norm).
+    Per aggiornare un database esistente:
+        CREATE FULLTEXT INDEX ft_persona_nome_cognome ON Persona (nome, cognome);
+        CREATE INDEX idx_persona_utente_nome ON Persona (utente_id, nome);
+        CREATE INDEX idx_persona_utente_telefono_norm ON Persona (utente_id, telefono_norm);
 */
 
 
@@ -39,8 +91,8 @@ USE RubricaDB;
 CREATE TABLE IF NOT EXISTS Utente (
     id INT AUTO_INCREMENT PRIMARY KEY,
     username VARCHAR(256) UNIQUE NOT NULL,
-    password VARCHAR(64) NOT NULL,
-    salt VARCHAR(8) NOT NULL
+    password VARCHAR(128) NOT NULL,
+    salt VARCHAR(32) NOT NULL
 );
 
 -- Tabella Persona
@@ -52,6 +104,9 @@ CREATE TABLE IF NOT EXISTS Persona (
     indirizzo VARCHAR(256) NOT NULL,
     telefono VARCHAR(256) NOT NULL,
     eta INT NOT NULL,
+    versione BIGINT NOT NULL DEFAULT 0,
+    telefono_norm VARCHAR(17) NOT NULL DEFAULT '',
+    telefono_inv VARCHAR(17) AS (REVERSE(telefono_norm)) STORED,
     FOREIGN KEY (utente_id) REFERENCES Utente(id)
         ON DELETE CASCADE
         ON UPDATE CASCADE
@@ -60,3 +115,75 @@ CREATE TABLE IF NOT EXISTS Persona (
 -- Indice aggiuntivo (opzionale) per migliorare le query su utente_id
 CREATE INDEX idx_persona_utente_id ON Persona (utente_id);
 
+-- Indice per la paginazione keyset ordinata per (cognome, nome, id): InnoDB aggiunge
+-- implicitamente la chiave primaria (id) in coda a ogni indice secondario.
+CREATE INDEX idx_persona_utente_cognome_nome ON Persona (utente_id, cognome, nome);
+
+-- Indice per la ricerca per telefono (esatta o per ultime cifre) su telefono_inv
+CREATE INDEX idx_persona_utente_telefono_inv ON Persona (utente_id, telefono_inv);
+
+-- Indici per la ricerca per prime cifre del telefono e per prefisso del nome
+CREATE INDEX idx_persona_utente_telefono_norm ON Persona (utente_id, telefono_norm);
+CREATE INDEX idx_persona_utente_nome ON Persona (utente_id, nome);
+
+-- Indice FULLTEXT per la ricerca per parole su nome e cognome (ordinata per rilevanza)
+CREATE FULLTEXT INDEX ft_persona_nome_cognome ON Persona (nome, cognome);
+
+
+-- ------------------------------------------------------------
+-- Sincronizzazione incrementale (versioni e lapidi)
+-- ------------------------------------------------------------
+
+-- Indice per leggere le persone modificate dopo una certa versione
+CREATE INDEX idx_persona_utente_versione ON Persona (utente_id, versione);
+
+-- Contatore delle versioni, uno per utente: le modifiche dello stesso utente
+-- vengono serializzate sulla sua riga, quindi le versioni crescono nell'ordine dei commit.
+CREATE TABLE IF NOT EXISTS SequenzaVersione (
+    utente_id INT PRIMARY KEY,
+    valore BIGINT NOT NULL,
+    FOREIGN KEY (utente_id) REFERENCES Utente(id)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+);
+
+-- Lapidi delle persone eliminate
+CREATE TABLE IF NOT EXISTS PersonaEliminata (
+    id INT PRIMARY KEY,
+    utente_id INT NOT NULL,
+    versione BIGINT NOT NULL,
+    FOREIGN KEY (utente_id) REFERENCES Utente(id)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+);
+
+CREATE INDEX idx_persona_eliminata_utente_versione ON PersonaEliminata (utente_id, versione);
+
+DELIMITER $$
+
+CREATE TRIGGER trg_persona_versione_insert BEFORE INSERT ON Persona
+FOR EACH ROW
+BEGIN
+    INSERT INTO SequenzaVersione (utente_id, valore) VALUES (NEW.utente_id, 1)
+        ON DUPLICATE KEY UPDATE valore = valore + 1;
+    SET NEW.versione = (SELECT valore FROM SequenzaVersione WHERE utente_id = NEW.utente_id);
+END$$
+
+CREATE TRIGGER trg_persona_versione_update BEFORE UPDATE ON Persona
+FOR EACH ROW
+BEGIN
+    INSERT INTO SequenzaVersione (utente_id, valore) VALUES (NEW.utente_id, 1)
+        ON DUPLICATE KEY UPDATE valore = valore + 1;
+    SET NEW.versione = (SELECT valore FROM SequenzaVersione WHERE utente_id = NEW.utente_id);
+END$$
+
+CREATE TRIGGER trg_persona_lapide_delete AFTER DELETE ON Persona
+FOR EACH ROW
+BEGIN
+    INSERT INTO SequenzaVersione (utente_id, valore) VALUES (OLD.utente_id, 1)
+        ON DUPLICATE KEY UPDATE valore = valore + 1;
+    INSERT INTO PersonaEliminata (id, utente_id, versione)
+        VALUES (OLD.id, OLD.utente_id, (SELECT valore FROM SequenzaVersione WHERE utente_id = OLD.utente_id));
+END$$
+
+DELIMITER ;
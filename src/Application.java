@@ -1,35 +1,39 @@
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.File;
+import java.nio.file.Paths;
 import javax.swing.JOptionPane;
-import java.sql.Statement;
 
 import controller.LoginController;
+import controller.ServizioAsincrono;
+import controller.ServizioAutenticazione;
+import persistence.Archivio;
+import persistence.ArchivioConGiornale;
+import persistence.ArchivioInMemoria;
+import persistence.ArchivioMySQL;
+import persistence.ArchivioSuFile;
+import persistence.CachePersone;
+import persistence.ConnectionPool;
+import persistence.SupervisoreConnessione;
 
 /**
  * L'applicazione stabilisce una connessione a un database MySQL.
  * I parametri di connessione (username, password, ip-server-mysql, porta) vengono letti
  * da un file di proprietà denominato "credenziali_database.properties".
  * Se il file non è presente o non è leggibile, viene creato automaticamente con valori di default.
+ * Lo stesso file contiene anche i parametri (facoltativi) del pool di connessioni ("pool-*")
+ * e il tipo di archivio ("storage"): "mysql" (default), "memoria", che non richiede
+ * alcun database ed è pensato per benchmark e test di carico, oppure "file", un archivio
+ * locale durevole nella cartella "storage-cartella" per l'uso senza server, oppure "giornale",
+ * un archivio locale con giornale delle modifiche che può essere riversato su MySQL.
+ * La chiave "pbkdf2-iterazioni" imposta il costo dell'hash delle password (vedi ServizioAutenticazione),
+ * le chiavi "connessione-*" il controllo della connessione a MySQL (vedi SupervisoreConnessione).
  */
 public class Application {
     public static void main(String[] args) {
-        // Caricamento del driver JDBC di MySQL.
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            // Visualizza un messaggio d'errore fatale se il driver non è stato trovato.
-            String errorMessage = "Driver JDBC MySQL non trovato! " + e.getMessage();
-            JOptionPane.showMessageDialog(null, errorMessage, "Errore fatale", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-            System.exit(1);
-        }
-
         // Creazione dell'oggetto Properties che conterrà i parametri di connessione.
         Properties props = new Properties();
         File fileCredenziali = new File("credenziali_database.properties");
@@ -40,10 +44,25 @@ public class Application {
             System.out.println("File delle credenziali non trovato o non leggibile. Generazione con valori di default...");
 
             // Impostazione dei valori di default.
+            props.setProperty(Archivio.PROP_STORAGE, Archivio.STORAGE_MYSQL);
             props.setProperty("username", "root");
             props.setProperty("password", "");
             props.setProperty("ip-server-mysql", "localhost");
             props.setProperty("porta", "3306");
+            props.setProperty(ConnectionPool.PROP_MIN, String.valueOf(ConnectionPool.DEFAULT_MIN));
+            props.setProperty(ConnectionPool.PROP_MAX, String.valueOf(ConnectionPool.DEFAULT_MAX));
+            props.setProperty(ConnectionPool.PROP_TIMEOUT_ATTESA, String.valueOf(ConnectionPool.DEFAULT_TIMEOUT_ATTESA_MS));
+            props.setProperty(ConnectionPool.PROP_TIMEOUT_INATTIVITA, String.valueOf(ConnectionPool.DEFAULT_TIMEOUT_INATTIVITA_MS));
+            props.setProperty(ConnectionPool.PROP_SOGLIA_PERDITA, String.valueOf(ConnectionPool.DEFAULT_SOGLIA_PERDITA_MS));
+            props.setProperty(ConnectionPool.PROP_TIMEOUT_VALIDAZIONE, String.valueOf(ConnectionPool.DEFAULT_TIMEOUT_VALIDAZIONE_S));
+            props.setProperty(CachePersone.PROP_MAX_PERSONE, String.valueOf(CachePersone.DEFAULT_MAX_PERSONE));
+            props.setProperty(CachePersone.PROP_TTL, String.valueOf(CachePersone.DEFAULT_TTL_MS));
+            props.setProperty(CachePersone.PROP_SINCRONIZZAZIONE, String.valueOf(CachePersone.DEFAULT_SINCRONIZZAZIONE_MS));
+            props.setProperty(ServizioAutenticazione.PROP_ITERAZIONI, String.valueOf(ServizioAutenticazione.DEFAULT_ITERAZIONI));
+            props.setProperty(SupervisoreConnessione.PROP_INTERVALLO, String.valueOf(SupervisoreConnessione.DEFAULT_INTERVALLO_MS));
+            props.setProperty(SupervisoreConnessione.PROP_TIMEOUT, String.valueOf(SupervisoreConnessione.DEFAULT_TIMEOUT_S));
+            props.setProperty(SupervisoreConnessione.PROP_ATTESA_MINIMA, String.valueOf(SupervisoreConnessione.DEFAULT_ATTESA_MINIMA_MS));
+            props.setProperty(SupervisoreConnessione.PROP_ATTESA_MASSIMA, String.valueOf(SupervisoreConnessione.DEFAULT_ATTESA_MASSIMA_MS));
 
             // Creazione e scrittura del file delle credenziali con i valori di default.
             try (FileOutputStream fos = new FileOutputStream(fileCredenziali)) {
@@ -69,45 +88,110 @@ public class Application {
         }
 
         // Estrazione dei parametri di connessione dal file properties.
-        String username = props.getProperty("username");
-        String password = props.getProperty("password");
         String ipServer = props.getProperty("ip-server-mysql");
         String porta = props.getProperty("porta");
 
         // Costruzione dell'URL per la connessione al database "rubricadb".
-        String url = "jdbc:mysql://" + ipServer + ":" + porta + "/rubricadb";
+        // rewriteBatchedStatements permette al driver di unire i batch di INSERT in un'unica query multi-riga;
+        // connectTimeout evita che l'apertura di una connessione verso un server caduto resti appesa.
+        String url = "jdbc:mysql://" + ipServer + ":" + porta + "/rubricadb?rewriteBatchedStatements=true&connectTimeout=5000";
 
-        try {
-            Connection conn = DriverManager.getConnection(url, username, password);
-            if (conn != null) {
-                javax.swing.SwingUtilities.invokeLater(() -> {
-                    new LoginController(conn);
-                });
+        // Archivio solo in memoria: nessun database da contattare.
+        String storage = props.getProperty(Archivio.PROP_STORAGE, Archivio.STORAGE_MYSQL).trim();
+        if (storage.equalsIgnoreCase(Archivio.STORAGE_MEMORIA)) {
+            avvia(new ArchivioInMemoria(), props);
+            return;
+        } else if (storage.equalsIgnoreCase(Archivio.STORAGE_FILE)) {
+            String cartella = props.getProperty(ArchivioSuFile.PROP_CARTELLA, ArchivioSuFile.DEFAULT_CARTELLA).trim();
+            try {
+                avvia(new ArchivioSuFile(Paths.get(cartella)), props);
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, "Impossibile aprire l'archivio locale '" + cartella + "':\n" + e.getMessage(),
+                        "Errore fatale", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
             }
-            
-            // Monitoraggio della connessione al database.
-            new Thread(() -> monitorConnection(conn)).start();
-        } catch (SQLException e) {
+            return;
+        } else if (storage.equalsIgnoreCase(Archivio.STORAGE_GIORNALE)) {
+            // Archivio locale con giornale: le scritture non attendono la rete,
+            // il drenaggio (se attivo) le riversa su MySQL in background.
+            String cartella = props.getProperty(ArchivioSuFile.PROP_CARTELLA, ArchivioSuFile.DEFAULT_CARTELLA).trim();
+            try {
+                int istantaneaOgni = Integer.parseInt(props.getProperty(ArchivioConGiornale.PROP_ISTANTANEA_OGNI,
+                        String.valueOf(ArchivioConGiornale.DEFAULT_ISTANTANEA_OGNI)).trim());
+                long drenaggioMs = Long.parseLong(props.getProperty(ArchivioConGiornale.PROP_DRENAGGIO,
+                        String.valueOf(ArchivioConGiornale.DEFAULT_DRENAGGIO_MS)).trim());
+                ArchivioConGiornale archivio = new ArchivioConGiornale(Paths.get(cartella), istantaneaOgni);
+                if (drenaggioMs > 0) {
+                    // La destinazione ha una propria cache solo se serve: qui si scrive e basta.
+                    archivio.avviaDrenaggio(() -> new ArchivioMySQL(ConnectionPool.daProperties(url, props), null), drenaggioMs);
+                }
+                avvia(archivio, props);
+            } catch (IOException | IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(null, "Impossibile aprire l'archivio locale '" + cartella + "':\n" + e.getMessage(),
+                        "Errore fatale", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
+            return;
+        } else if (!storage.equalsIgnoreCase(Archivio.STORAGE_MYSQL)) {
+            JOptionPane.showMessageDialog(null, "Valore non valido per '" + Archivio.PROP_STORAGE + "': " + storage,
+                    "Errore fatale", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+
+        // Caricamento del driver JDBC di MySQL.
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            // Visualizza un messaggio d'errore fatale se il driver non è stato trovato.
+            String errorMessage = "Driver JDBC MySQL non trovato! " + e.getMessage();
+            JOptionPane.showMessageDialog(null, errorMessage, "Errore fatale", JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        try {
+            // Creazione del pool di connessioni (apre subito le connessioni minime).
+            ConnectionPool pool = ConnectionPool.daProperties(url, props);
+            // Cache delle rubriche condivisa da tutte le sessioni di questa JVM.
+            CachePersone cache = CachePersone.daProperties(props);
+            // Controllo della connessione al database: se cade, riconnessione invece di chiudere l'applicazione.
+            SupervisoreConnessione supervisore = SupervisoreConnessione.daProperties(pool, props);
+            avvia(new ArchivioMySQL(pool, cache), props, supervisore);
+        } catch (SQLException | IllegalArgumentException e) {
             JOptionPane.showMessageDialog(null, "Connessione fallita.\n\nOutput dell'errore per dettagli:\n" + e.getMessage(),
                     "Errore fatale", JOptionPane.ERROR_MESSAGE);
             System.exit(1);
         }
     }
 
-    private static void monitorConnection(Connection conn) {
-        while (true) {
-            try {
-                Thread.sleep(5000); // Check every 5 seconds
-                try (Statement stmt = conn.createStatement()) {
-                    stmt.executeQuery("SELECT 1");
-                }
-            } catch (SQLException | InterruptedException e) {
-                JOptionPane.showMessageDialog(null,
-                        "Il server si e' disconnesso.\nRiprova ad accedere alla tua rubrica piu' tardi.",
-                        "Errore Fatale: Connessione Persa",
-                        JOptionPane.ERROR_MESSAGE);
-                System.exit(1);
-            }
+    /**
+     * Avvia la GUI sull'archivio scelto. Le operazioni sull'archivio vengono eseguite
+     * fuori dal thread della GUI, con il parallelismo indicato dall'archivio.
+     */
+    private static void avvia(Archivio archivio, Properties props) {
+        avvia(archivio, props, null);
+    }
+
+    /**
+     * Come sopra, collegando al servizio asincrono il supervisore della connessione
+     * (null per gli archivi che non usano la rete).
+     */
+    private static void avvia(Archivio archivio, Properties props, SupervisoreConnessione supervisore) {
+        ServizioAsincrono servizio = new ServizioAsincrono(archivio.getParallelismo());
+        if (supervisore != null) {
+            servizio.collegaSupervisore(supervisore);
+        }
+        ServizioAutenticazione autenticazione;
+        try {
+            autenticazione = ServizioAutenticazione.daProperties(archivio.getUtenti(), props);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Valore non valido per '" + ServizioAutenticazione.PROP_ITERAZIONI + "': "
+                    + e.getMessage(), "Errore fatale", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+            return;
         }
+        javax.swing.SwingUtilities.invokeLater(() -> {
+            new LoginController(archivio, servizio, autenticazione);
+        });
     }
 }
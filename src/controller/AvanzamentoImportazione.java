@@ -0,0 +1,139 @@
+package controller;
+
+import persistence.ScrittoreCSV;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * La parte comune delle importazioni (ImportazioneCSV, ImportazioneVCard), usata da più
+ * thread insieme: i contatori del riepilogo, le notifiche di avanzamento, il primo errore
+ * di una delle fasi e il file delle righe scartate.
+ *
+ * Le righe scartate vengono scritte nel file appena trovate, con il numero di riga e il
+ * motivo; il file viene creato solo alla prima.
+ */
+final class AvanzamentoImportazione {
+
+    // Intervallo minimo fra due notifiche di avanzamento
+    static final long INTERVALLO_AVANZAMENTO_MS = 250;
+
+    final AtomicLong lette = new AtomicLong();
+    final AtomicLong inserite = new AtomicLong();
+    final AtomicLong scartate = new AtomicLong();
+
+    private final File fileScartate;
+    private final Consumer<RiepilogoImportazione> avanzamento;
+    private final long dimensione;
+    private final LongSupplier elaborati;
+    private final long inizio = System.nanoTime();
+    private final AtomicLong ultimaNotifica = new AtomicLong();
+    private final AtomicReference<Exception> errore = new AtomicReference<>();
+
+    private ScrittoreCSV scarti;
+
+    /**
+     * @param fileScartate Il file in cui scrivere le righe scartate.
+     * @param avanzamento  Riceve il riepilogo al massimo ogni INTERVALLO_AVANZAMENTO_MS (può essere null).
+     * @param dimensione   La dimensione del file importato, in byte.
+     * @param elaborati    I byte del file già elaborati, per la percentuale.
+     */
+    AvanzamentoImportazione(File fileScartate, Consumer<RiepilogoImportazione> avanzamento,
+                            long dimensione, LongSupplier elaborati) {
+        this.fileScartate = fileScartate;
+        this.avanzamento = avanzamento;
+        this.dimensione = dimensione;
+        this.elaborati = elaborati;
+    }
+
+    /**
+     * Aggiunge una riga al file degli scarti, aprendolo alla prima riga scartata.
+     *
+     * @param campi I campi nell'ordine Nome, Cognome, Indirizzo, Telefono, Età.
+     */
+    synchronized void scarta(long riga, String motivo, List<String> campi) throws IOException {
+        if (scarti == null) {
+            scarti = new ScrittoreCSV(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(fileScartate), StandardCharsets.UTF_8)), ';');
+            scarti.scriviRecord(Arrays.asList("Riga", "Motivo", "Nome", "Cognome", "Indirizzo", "Telefono", "Eta"));
+        }
+        List<String> record = new ArrayList<>(2 + campi.size());
+        record.add(String.valueOf(riga));
+        record.add(motivo);
+        record.addAll(campi);
+        scarti.scriviRecord(record);
+        scartate.incrementAndGet();
+    }
+
+    /**
+     * Chiude il file degli scarti, se è stato aperto.
+     */
+    synchronized void chiudiScarti() throws IOException {
+        if (scarti != null) {
+            scarti.close();
+        }
+    }
+
+    /**
+     * Registra l'errore di una delle fasi, se è il primo.
+     *
+     * @return true se è il primo errore: chi lo riceve deve fermare le altre fasi.
+     */
+    boolean fallisci(Exception ex) {
+        return errore.compareAndSet(null, ex);
+    }
+
+    /**
+     * Rilancia nel thread chiamante l'errore di una delle fasi, se c'è stato.
+     */
+    void controllaErrore() throws IOException, SQLException {
+        Exception ex = errore.get();
+        if (ex instanceof IOException) {
+            throw (IOException) ex;
+        }
+        if (ex instanceof SQLException) {
+            throw (SQLException) ex;
+        }
+        if (ex != null) {
+            throw (RuntimeException) ex;
+        }
+    }
+
+    /**
+     * Passa il riepilogo all'ascoltatore, se è trascorso abbastanza tempo dall'ultima
+     * notifica (o sempre, se forza è true).
+     */
+    void notifica(boolean forza) {
+        if (avanzamento == null) {
+            return;
+        }
+        long adesso = System.nanoTime();
+        long ultima = ultimaNotifica.get();
+        if (!forza && adesso - ultima < TimeUnit.MILLISECONDS.toNanos(INTERVALLO_AVANZAMENTO_MS)) {
+            return;
+        }
+        if (forza || ultimaNotifica.compareAndSet(ultima, adesso)) {
+            avanzamento.accept(riepilogo(forza));
+        }
+    }
+
+    RiepilogoImportazione riepilogo(boolean finale) {
+        int percentuale = finale ? 100 : (int) Math.min(99, elaborati.getAsLong() * 100 / Math.max(1, dimensione));
+        return new RiepilogoImportazione(lette.get(), inserite.get(), scartate.get(), percentuale,
+                finale && scartate.get() > 0 ? fileScartate : null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inizio));
+    }
+}
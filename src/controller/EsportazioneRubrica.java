@@ -0,0 +1,204 @@
+package controller;
+
+import models.Persona;
+import persistence.ChiavePagina;
+import persistence.PersonaStore;
+import persistence.ScrittoreCSV;
+import persistence.ScrittoreSuCanale;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * EsportazioneRubrica scrive tutte le persone di una rubrica in un file CSV o vCard, in
+ * streaming: le persone arrivano una alla volta da PersonaStore.scorriPersone (per MySQL un
+ * cursore forward-only) e vengono scritte subito con uno ScrittoreSuCanale, quindi
+ * l'occupazione di memoria non dipende dalla dimensione della rubrica.
+ *
+ * Il CSV usa il punto e virgola e la stessa intestazione riconosciuta da ImportazioneCSV,
+ * così un file esportato si può reimportare. Il vCard segue la versione 3.0 (RFC 2426).
+ */
+public class EsportazioneRubrica {
+
+    /**
+     * I formati in cui si può esportare la rubrica.
+     */
+    public enum Formato {
+        CSV("csv"),
+        VCARD("vcf");
+
+        private final String estensione;
+
+        Formato(String estensione) {
+            this.estensione = estensione;
+        }
+
+        /**
+         * @return L'estensione del file, senza punto.
+         */
+        public String getEstensione() {
+            return estensione;
+        }
+    }
+
+    private static final char SEPARATORE_CSV = ';';
+    private static final List<String> INTESTAZIONE_CSV = Arrays.asList("Nome", "Cognome", "Indirizzo", "Telefono", "Eta");
+
+    // Lunghezza massima in byte di una riga vCard: le righe più lunghe vanno spezzate
+    private static final int LUNGHEZZA_RIGA_VCARD = 75;
+
+    // Intervallo minimo fra due notifiche di avanzamento
+    private static final long INTERVALLO_AVANZAMENTO_MS = 250;
+
+    private final PersonaStore store;
+
+    /**
+     * @param store La rubrica da esportare.
+     */
+    public EsportazioneRubrica(PersonaStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Esporta la rubrica nel file indicato, che viene creato o sostituito. Se l'esportazione
+     * fallisce o viene annullata (interrompendo il thread) il file incompleto viene eliminato.
+     *
+     * @param file        Il file da scrivere.
+     * @param formato     Il formato del file.
+     * @param avanzamento Riceve, al massimo ogni INTERVALLO_AVANZAMENTO_MS, il numero di
+     *                    persone già scritte (viene chiamato dal thread dell'esportazione).
+     * @return Il numero di persone esportate.
+     * @throws IOException  se non è possibile scrivere il file, o se il thread è stato interrotto.
+     * @throws SQLException se non è possibile comunicare col DB.
+     */
+    public long esporta(File file, Formato formato, LongConsumer avanzamento) throws IOException, SQLException {
+        long[] esportate = {0};
+        long[] ultimaNotifica = {System.currentTimeMillis()};
+        boolean completata = false;
+        try (Writer writer = new ScrittoreSuCanale(file.toPath(), StandardCharsets.UTF_8)) {
+            ScrittoreCSV csv = formato == Formato.CSV ? new ScrittoreCSV(writer, SEPARATORE_CSV) : null;
+            if (csv != null) {
+                csv.scriviRecord(INTESTAZIONE_CSV);
+            }
+            try {
+                store.scorriPersone(ChiavePagina.Ordinamento.PER_ID, p -> {
+                    try {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Esportazione annullata");
+                        }
+                        if (csv != null) {
+                            csv.scriviRecord(Arrays.asList(p.getNome(), p.getCognome(), p.getIndirizzo(),
+                                    p.getTelefono(), String.valueOf(p.getEta())));
+                        } else {
+                            scriviVCard(writer, p);
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    esportate[0]++;
+                    long adesso = System.currentTimeMillis();
+                    if (adesso - ultimaNotifica[0] >= INTERVALLO_AVANZAMENTO_MS) {
+                        ultimaNotifica[0] = adesso;
+                        avanzamento.accept(esportate[0]);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            completata = true;
+        } finally {
+            if (!completata) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        return esportate[0];
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Scrive la scheda vCard 3.0 di una persona. L'età, che vCard non prevede, va in X-ETA.
+     */
+    private static void scriviVCard(Writer writer, Persona p) throws IOException {
+        writer.write("BEGIN:VCARD\r\nVERSION:3.0\r\n");
+        String cognome = escape(p.getCognome());
+        String nome = escape(p.getNome());
+        scriviRigaVCard(writer, "N:" + cognome + ";" + nome + ";;;");
+        scriviRigaVCard(writer, "FN:" + (cognome.isEmpty() ? nome : nome + " " + cognome));
+        scriviRigaVCard(writer, "TEL;TYPE=CELL:" + escape(p.getTelefono()));
+        if (p.getIndirizzo() != null && !p.getIndirizzo().isEmpty()) {
+            scriviRigaVCard(writer, "ADR:;;" + escape(p.getIndirizzo()) + ";;;;");
+        }
+        if (p.getEta() > 0) {
+            writer.write("X-ETA:" + p.getEta() + "\r\n");
+        }
+        writer.write("END:VCARD\r\n");
+    }
+
+    /**
+     * Scrive una riga vCard, spezzandola (RFC 2425, "folding") in righe di al massimo
+     * LUNGHEZZA_RIGA_VCARD byte UTF-8: ogni continuazione inizia con uno spazio.
+     */
+    private static void scriviRigaVCard(Writer writer, String riga) throws IOException {
+        int inizio = 0;
+        int byteRiga = 0;
+        for (int i = 0; i < riga.length(); ) {
+            int c = riga.codePointAt(i);
+            int byteCarattere = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (byteRiga + byteCarattere > LUNGHEZZA_RIGA_VCARD) {
+                writer.write(riga, inizio, i - inizio);
+                writer.write("\r\n ");
+                inizio = i;
+                byteRiga = 1;   // Lo spazio iniziale della continuazione
+            }
+            byteRiga += byteCarattere;
+            i += Character.charCount(c);
+        }
+        writer.write(riga, inizio, riga.length() - inizio);
+        writer.write("\r\n");
+    }
+
+    /**
+     * Protegge i caratteri speciali di un valore vCard: barra rovesciata, virgola, punto e virgola e a capo.
+     */
+    private static String escape(String valore) {
+        if (valore == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < valore.length(); i++) {
+            char c = valore.charAt(i);
+            String sostituto;
+            switch (c) {
+                case '\\': sostituto = "\\\\"; break;
+                case ',': sostituto = "\\,"; break;
+                case ';': sostituto = "\\;"; break;
+                case '\n': sostituto = "\\n"; break;
+                case '\r': sostituto = ""; break;
+                default: sostituto = null;
+            }
+            if (sostituto == null) {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(valore.length() + 8).append(valore, 0, i);
+            }
+            sb.append(sostituto);
+        }
+        return sb == null ? valore : sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package controller;
+
+/**
+ * La classe FiltroBloom è un filtro di Bloom su stringhe: risponde "forse presente" o
+ * "sicuramente assente" usando circa 10 bit per elemento (con 7 funzioni di hash la
+ * probabilità di un falso positivo è intorno all'1%), senza memorizzare gli elementi.
+ *
+ * Gli elementi non possono essere rimossi: dopo molte eliminazioni i falsi positivi
+ * aumentano e conviene ricostruire il filtro (vedi IndiceTelefoni).
+ */
+public class FiltroBloom {
+
+    private static final int BIT_PER_ELEMENTO = 10;
+    private static final int NUMERO_HASH = 7;
+
+    private final long[] bit;
+    private final long numeroBit;
+    private final int capacita;
+    private int inseriti;
+
+    /**
+     * @param capacita Il numero di elementi previsto.
+     */
+    public FiltroBloom(int capacita) {
+        this.capacita = Math.max(64, capacita);
+        long richiesti = (long) this.capacita * BIT_PER_ELEMENTO;
+        this.bit = new long[(int) ((richiesti + 63) / 64)];
+        this.numeroBit = (long) bit.length * 64;
+    }
+
+    /**
+     * @return true se sono stati inseriti più elementi della capacità prevista
+     *         (la probabilità di falsi positivi è quindi più alta di quella nominale).
+     */
+    public boolean isSaturo() {
+        return inseriti > capacita;
+    }
+
+    public void aggiungi(String elemento) {
+        long h = hash(elemento);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < NUMERO_HASH; i++) {
+            long indice = Math.floorMod(h1 + (long) i * h2, numeroBit);
+            bit[(int) (indice >>> 6)] |= 1L << indice;
+        }
+        inseriti++;
+    }
+
+    /**
+     * @return false se l'elemento non è mai stato aggiunto; true se potrebbe esserlo stato.
+     */
+    public boolean forseContiene(String elemento) {
+        long h = hash(elemento);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < NUMERO_HASH; i++) {
+            long indice = Math.floorMod(h1 + (long) i * h2, numeroBit);
+            if ((bit[(int) (indice >>> 6)] & (1L << indice)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash a 64 bit (FNV-1a seguito dal rimescolamento finale di MurmurHash3): le due metà
+     * vengono combinate per ottenere le NUMERO_HASH posizioni (double hashing).
+     */
+    private static long hash(String elemento) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < elemento.length(); i++) {
+            h ^= elemento.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
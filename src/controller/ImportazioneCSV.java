@@ -0,0 +1,378 @@
+package controller;
+
+import models.Persona;
+import models.Testo;
+import persistence.LettoreCSV;
+import persistence.PersonaStore;
+import persistence.RisultatoBatch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * ImportazioneCSV importa in una rubrica le persone di un file CSV, in streaming:
+ * l'occupazione di memoria non dipende dalla dimensione del file.
+ *
+ * Il lavoro è diviso in una pipeline, con code limitate fra una fase e l'altra:
+ * <ol>
+ *   <li>il thread chiamante legge il file con LettoreCSV e raggruppa i record in blocchi
+ *       di RIGHE_PER_BLOCCO;</li>
+ *   <li>i thread di validazione costruiscono le Persona (i cui setter controllano i campi)
+ *       e scartano le righe non valide;</li>
+ *   <li>i thread di scrittura inseriscono ogni blocco con un solo PersonaStore.salvaPersone
+ *       (per MySQL, INSERT a blocchi con il batching JDBC), più blocchi in parallelo.</li>
+ * </ol>
+ * Se il database rallenta, le code si riempiono e la lettura si ferma finché non si liberano.
+ *
+ * Le righe scartate (dati non validi o rifiutate dal database) vengono scritte, con il
+ * numero di riga e il motivo, in un file CSV a parte (vedi AvanzamentoImportazione).
+ *
+ * La prima riga del file è un'intestazione se contiene i nomi delle colonne (Nome, Cognome,
+ * Indirizzo, Telefono, Età, in qualunque ordine); altrimenti le colonne sono in quest'ordine.
+ */
+public class ImportazioneCSV {
+
+    // Righe passate insieme da una fase all'altra e inserite con un solo salvaPersone
+    public static final int RIGHE_PER_BLOCCO = 1000;
+
+    // Blocchi che possono attendere in coda per ogni thread che li consuma
+    public static final int BLOCCHI_IN_CODA = 2;
+
+    // Thread che inseriscono i blocchi nel database
+    public static final int SCRITTORI_DEFAULT = 2;
+
+    // Ogni quanto chi attende una coda controlla se un'altra fase è fallita
+    private static final long ATTESA_MS = 100;
+
+    private static final int NOME = 0;
+    private static final int COGNOME = 1;
+    private static final int INDIRIZZO = 2;
+    private static final int TELEFONO = 3;
+    private static final int ETA = 4;
+
+    // Nomi riconosciuti nell'intestazione (minuscoli, senza accenti), nell'ordine delle costanti sopra
+    private static final String[][] NOMI_COLONNE = {
+        {"nome", "name", "first name"},
+        {"cognome", "surname", "last name"},
+        {"indirizzo", "address"},
+        {"telefono", "cellulare", "numero", "phone", "tel"},
+        {"eta", "age"},
+    };
+
+    private final PersonaStore store;
+    private final int validatori;
+    private final int scrittori;
+
+    /**
+     * Crea un'importazione con un thread di validazione per processore e SCRITTORI_DEFAULT thread di scrittura.
+     *
+     * @param store La rubrica in cui inserire le persone.
+     */
+    public ImportazioneCSV(PersonaStore store) {
+        this(store, Runtime.getRuntime().availableProcessors(), SCRITTORI_DEFAULT);
+    }
+
+    /**
+     * @param store      La rubrica in cui inserire le persone.
+     * @param validatori Numero di thread di validazione (>= 1).
+     * @param scrittori  Numero di thread di scrittura (>= 1), al massimo quanti le connessioni del pool.
+     * @throws IllegalArgumentException se uno dei due numeri è minore di 1
+     */
+    public ImportazioneCSV(PersonaStore store, int validatori, int scrittori) throws IllegalArgumentException {
+        if (validatori < 1 || scrittori < 1) {
+            throw new IllegalArgumentException("Servono almeno un thread di validazione e uno di scrittura.");
+        }
+        this.store = store;
+        this.validatori = validatori;
+        this.scrittori = scrittori;
+    }
+
+    /**
+     * Importa il file. Se il thread chiamante viene interrotto l'importazione si ferma:
+     * le persone già inserite restano nella rubrica.
+     *
+     * @param file         Il file CSV (UTF-8, separato da virgole o punti e virgola).
+     * @param fileScartate Il file in cui scrivere le righe scartate (creato solo se ce ne sono).
+     * @param avanzamento  Riceve lo stato dell'importazione al massimo ogni
+     *                     AvanzamentoImportazione.INTERVALLO_AVANZAMENTO_MS, da uno dei thread
+     *                     della pipeline (può essere null).
+     * @return Il riepilogo finale.
+     * @throws IOException          se non è possibile leggere il file o scrivere quello degli scarti.
+     * @throws SQLException         se non è possibile comunicare col DB (le righe rifiutate non lo sono).
+     * @throws InterruptedException se il thread chiamante è stato interrotto.
+     */
+    public RiepilogoImportazione importa(File file, File fileScartate, Consumer<RiepilogoImportazione> avanzamento)
+            throws IOException, SQLException, InterruptedException {
+        return new Esecuzione(file, fileScartate, avanzamento).esegui();
+    }
+
+    /**
+     * Un gruppo di righe che attraversa la pipeline.
+     */
+    private static final class Blocco {
+        final long[] righe = new long[RIGHE_PER_BLOCCO];  // Riga del file di ogni record
+        final List<List<String>> record = new ArrayList<>(RIGHE_PER_BLOCCO);
+        final List<Persona> persone = new ArrayList<>(RIGHE_PER_BLOCCO);
+        final List<Long> righePersone = new ArrayList<>(RIGHE_PER_BLOCCO);
+    }
+
+    // Segnala ai thread che consumano una coda che non arriveranno altri blocchi
+    private static final Blocco FINE_CODA = new Blocco();
+
+    /**
+     * Lo stato di una singola importazione.
+     */
+    private final class Esecuzione {
+        private final File file;
+        private final AvanzamentoImportazione stato;
+
+        private final BlockingQueue<Blocco> daValidare = new ArrayBlockingQueue<>(validatori * BLOCCHI_IN_CODA);
+        private final BlockingQueue<Blocco> daSalvare = new ArrayBlockingQueue<>(scrittori * BLOCCHI_IN_CODA);
+        private final AtomicInteger validatoriAttivi = new AtomicInteger(validatori);
+
+        private int[] colonne = {0, 1, 2, 3, 4};
+        private volatile ContaByte letti;
+        private ExecutorService pipeline;
+
+        Esecuzione(File file, File fileScartate, Consumer<RiepilogoImportazione> avanzamento) {
+            this.file = file;
+            this.stato = new AvanzamentoImportazione(fileScartate, avanzamento, file.length(),
+                    () -> letti == null ? 0 : letti.getLetti());
+        }
+
+        RiepilogoImportazione esegui() throws IOException, SQLException, InterruptedException {
+            AtomicInteger contatore = new AtomicInteger();
+            pipeline = Executors.newFixedThreadPool(validatori + scrittori, r -> {
+                Thread t = new Thread(r, "importazione-" + contatore.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            letti = new ContaByte(new FileInputStream(file));
+            try (LettoreCSV lettore = new LettoreCSV(new InputStreamReader(letti, StandardCharsets.UTF_8))) {
+                for (int i = 0; i < validatori; i++) {
+                    pipeline.execute(this::valida);
+                }
+                for (int i = 0; i < scrittori; i++) {
+                    pipeline.execute(this::salva);
+                }
+
+                List<String> record = lettore.leggiRecord();
+                if (record != null && leggiIntestazione(record)) {
+                    record = lettore.leggiRecord();
+                }
+                Blocco blocco = new Blocco();
+                while (record != null) {
+                    blocco.righe[blocco.record.size()] = lettore.getRigaRecord();
+                    blocco.record.add(record);
+                    stato.lette.incrementAndGet();
+                    if (blocco.record.size() == RIGHE_PER_BLOCCO) {
+                        metti(daValidare, blocco);
+                        blocco = new Blocco();
+                        stato.notifica(false);
+                    }
+                    record = lettore.leggiRecord();
+                }
+                if (!blocco.record.isEmpty()) {
+                    metti(daValidare, blocco);
+                }
+                for (int i = 0; i < validatori; i++) {
+                    metti(daValidare, FINE_CODA);
+                }
+                pipeline.shutdown();
+                while (!pipeline.awaitTermination(ATTESA_MS, TimeUnit.MILLISECONDS)) {
+                    stato.controllaErrore();
+                }
+                stato.controllaErrore();
+            } finally {
+                pipeline.shutdownNow();
+                stato.chiudiScarti();
+            }
+            stato.notifica(true);
+            return stato.riepilogo(true);
+        }
+
+        // ----------------------------
+        //     FASI DELLA PIPELINE
+        // ----------------------------
+
+        /**
+         * Thread di validazione: trasforma i record in Persona.
+         */
+        private void valida() {
+            try {
+                Blocco blocco;
+                while ((blocco = daValidare.take()) != FINE_CODA) {
+                    for (int i = 0; i < blocco.record.size(); i++) {
+                        valida(blocco, i);
+                    }
+                    blocco.record.clear();
+                    daSalvare.put(blocco);
+                }
+                if (validatoriAttivi.decrementAndGet() == 0) {
+                    for (int i = 0; i < scrittori; i++) {
+                        daSalvare.put(FINE_CODA);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // Pipeline fermata
+            } catch (IOException | RuntimeException ex) {
+                fallisci(ex);
+            }
+        }
+
+        private void valida(Blocco blocco, int i) throws IOException {
+            List<String> record = blocco.record.get(i);
+            try {
+                String eta = campo(record, ETA);
+                Persona p = new Persona(0, store.getUtente().getID_Utente(),
+                        campo(record, NOME), campo(record, COGNOME), campo(record, INDIRIZZO),
+                        campo(record, TELEFONO), eta.isEmpty() ? 0 : Integer.parseInt(eta));
+                blocco.persone.add(p);
+                blocco.righePersone.add(blocco.righe[i]);
+            } catch (NumberFormatException ex) {
+                stato.scarta(blocco.righe[i], "L'età deve essere un numero intero.", inOrdine(record));
+            } catch (IllegalArgumentException ex) {
+                stato.scarta(blocco.righe[i], ex.getMessage(), inOrdine(record));
+            }
+        }
+
+        /**
+         * Thread di scrittura: inserisce le persone valide di ogni blocco.
+         */
+        private void salva() {
+            try {
+                Blocco blocco;
+                while ((blocco = daSalvare.take()) != FINE_CODA) {
+                    if (blocco.persone.isEmpty()) {
+                        continue;
+                    }
+                    RisultatoBatch risultato = store.salvaPersone(blocco.persone);
+                    stato.inserite.addAndGet(risultato.getInserite());
+                    for (RisultatoBatch.ErroreRiga e : risultato.getErrori()) {
+                        Persona p = e.persona;
+                        stato.scarta(blocco.righePersone.get(e.indice), e.messaggio, Arrays.asList(p.getNome(),
+                                p.getCognome(), p.getIndirizzo(), p.getTelefono(), String.valueOf(p.getEta())));
+                    }
+                    stato.notifica(false);
+                }
+            } catch (InterruptedException ex) {
+                // Pipeline fermata
+            } catch (SQLException | IOException | RuntimeException ex) {
+                fallisci(ex);
+            }
+        }
+
+        // ----------------------------
+        //       METODI INTERNI
+        // ----------------------------
+
+        /**
+         * Se la prima riga contiene i nomi delle colonne, ne ricava la posizione di ciascun campo.
+         *
+         * @return true se la riga è un'intestazione.
+         * @throws IOException se l'intestazione non contiene le colonne obbligatorie.
+         */
+        private boolean leggiIntestazione(List<String> record) throws IOException {
+            int[] trovate = new int[NOMI_COLONNE.length];
+            Arrays.fill(trovate, -1);
+            boolean intestazione = false;
+            for (int i = 0; i < record.size(); i++) {
+                String nome = Testo.normalizza(record.get(i)).trim();
+                for (int c = 0; c < NOMI_COLONNE.length; c++) {
+                    if (trovate[c] < 0 && Arrays.asList(NOMI_COLONNE[c]).contains(nome)) {
+                        trovate[c] = i;
+                        intestazione = true;
+                    }
+                }
+            }
+            if (!intestazione) {
+                return false;
+            }
+            if (trovate[NOME] < 0 || trovate[TELEFONO] < 0) {
+                throw new IOException("L'intestazione del file deve contenere almeno le colonne Nome e Telefono.");
+            }
+            colonne = trovate;
+            return true;
+        }
+
+        private String campo(List<String> record, int colonna) {
+            int i = colonne[colonna];
+            return (i >= 0 && i < record.size()) ? record.get(i).trim() : "";
+        }
+
+        /**
+         * @return I campi del record nell'ordine Nome, Cognome, Indirizzo, Telefono, Età.
+         */
+        private List<String> inOrdine(List<String> record) {
+            List<String> campi = new ArrayList<>(NOMI_COLONNE.length);
+            for (int c = 0; c < NOMI_COLONNE.length; c++) {
+                campi.add(campo(record, c));
+            }
+            return campi;
+        }
+
+        /**
+         * Mette un blocco in coda, controllando periodicamente che le altre fasi non siano fallite.
+         */
+        private void metti(BlockingQueue<Blocco> coda, Blocco blocco) throws IOException, SQLException, InterruptedException {
+            while (!coda.offer(blocco, ATTESA_MS, TimeUnit.MILLISECONDS)) {
+                stato.controllaErrore();
+            }
+        }
+
+        private void fallisci(Exception ex) {
+            if (stato.fallisci(ex)) {
+                pipeline.shutdownNow();  // Interrompe le altre fasi, ferme su una coda
+            }
+        }
+    }
+
+    /**
+     * Conta i byte letti dal file, per calcolare la percentuale di avanzamento.
+     */
+    private static final class ContaByte extends FilterInputStream {
+        private volatile long letti;
+
+        ContaByte(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                letti++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                letti += n;
+            }
+            return n;
+        }
+
+        long getLetti() {
+            return letti;
+        }
+    }
+}
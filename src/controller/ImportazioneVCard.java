@@ -0,0 +1,702 @@
+package controller;
+
+import models.Persona;
+import persistence.PersonaStore;
+import persistence.RisultatoBatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ImportazioneVCard importa in una rubrica le schede di un file vCard (.vcf), nelle versioni
+ * 2.1, 3.0 e 4.0, come quelli esportati dai telefoni e dalle altre rubriche.
+ *
+ * Il file viene mappato in memoria e diviso in pezzi da circa DIMENSIONE_PEZZO byte, sempre
+ * all'inizio di una scheda (una riga "BEGIN:VCARD"): i pezzi vengono analizzati in parallelo
+ * su un ForkJoinPool, dividendo a metà finché sono troppo grandi. Ogni pezzo inserisce le sue
+ * persone a blocchi di RIGHE_PER_BLOCCO con PersonaStore.salvaPersone; al più SCRITTORI_DEFAULT
+ * blocchi vengono inseriti nello stesso momento, per non occupare tutte le connessioni del pool.
+ *
+ * Di ogni scheda vengono letti N e FN (nome e cognome), il primo TEL (preferendo il cellulare
+ * o quello indicato come preferito), il primo ADR, e X-ETA (scritto da EsportazioneRubrica)
+ * oppure BDAY per l'età. Le schede senza nome o senza telefono vengono scartate e scritte,
+ * con la riga e il motivo, in un file CSV a parte, come fa ImportazioneCSV (vedi
+ * AvanzamentoImportazione). Un pezzo conta le righe dal proprio inizio: alla prima scheda
+ * scartata ricava quante righe lo precedono contando gli a capo del file, a blocchi di
+ * DIMENSIONE_PEZZO byte contati una sola volta per tutta l'importazione.
+ */
+public class ImportazioneVCard {
+
+    // Dimensione sotto la quale un pezzo del file non viene più diviso
+    public static final int DIMENSIONE_PEZZO = 1024 * 1024;
+
+    // Persone inserite insieme con un solo salvaPersone
+    public static final int RIGHE_PER_BLOCCO = 1000;
+
+    // Blocchi che possono essere inseriti nel database nello stesso momento
+    public static final int SCRITTORI_DEFAULT = 2;
+
+    // Ogni quanto il thread chiamante controlla se l'importazione è fallita
+    private static final long ATTESA_MS = 100;
+
+    private static final byte[] INIZIO_SCHEDA = "BEGIN:VCARD".getBytes(StandardCharsets.US_ASCII);
+
+    private final PersonaStore store;
+    private final int parallelismo;
+    private final int scrittori;
+
+    /**
+     * Crea un'importazione con un thread di analisi per processore e SCRITTORI_DEFAULT inserimenti contemporanei.
+     *
+     * @param store La rubrica in cui inserire le persone.
+     */
+    public ImportazioneVCard(PersonaStore store) {
+        this(store, Runtime.getRuntime().availableProcessors(), SCRITTORI_DEFAULT);
+    }
+
+    /**
+     * @param store        La rubrica in cui inserire le persone.
+     * @param parallelismo Numero di thread del ForkJoinPool (>= 1).
+     * @param scrittori    Inserimenti contemporanei (>= 1), al massimo quanti le connessioni del pool.
+     * @throws IllegalArgumentException se uno dei due numeri è minore di 1
+     */
+    public ImportazioneVCard(PersonaStore store, int parallelismo, int scrittori) throws IllegalArgumentException {
+        if (parallelismo < 1 || scrittori < 1) {
+            throw new IllegalArgumentException("Servono almeno un thread di analisi e uno di scrittura.");
+        }
+        this.store = store;
+        this.parallelismo = parallelismo;
+        this.scrittori = scrittori;
+    }
+
+    /**
+     * Importa il file. Se il thread chiamante viene interrotto l'importazione si ferma:
+     * le persone già inserite restano nella rubrica.
+     *
+     * @param file         Il file vCard (UTF-8, salvo un parametro CHARSET diverso; al massimo 2 GB).
+     * @param fileScartate Il file in cui scrivere le schede scartate (creato solo se ce ne sono).
+     * @param avanzamento  Riceve lo stato dell'importazione al massimo ogni
+     *                     AvanzamentoImportazione.INTERVALLO_AVANZAMENTO_MS, da uno dei thread
+     *                     dell'importazione (può essere null).
+     * @return Il riepilogo finale.
+     * @throws IOException          se non è possibile leggere il file o scrivere quello degli scarti.
+     * @throws SQLException         se non è possibile comunicare col DB (le schede rifiutate non lo sono).
+     * @throws InterruptedException se il thread chiamante è stato interrotto.
+     */
+    public RiepilogoImportazione importa(File file, File fileScartate, Consumer<RiepilogoImportazione> avanzamento)
+            throws IOException, SQLException, InterruptedException {
+        return new Esecuzione(file, fileScartate, avanzamento).esegui();
+    }
+
+    /**
+     * Lo stato di una singola importazione.
+     */
+    private final class Esecuzione {
+        private final File file;
+        private final File fileScartate;
+        private final Consumer<RiepilogoImportazione> avanzamento;
+
+        private final Semaphore inserimenti = new Semaphore(scrittori);
+        private final AtomicLong analizzati = new AtomicLong();
+        private volatile boolean fermata;
+
+        private AvanzamentoImportazione stato;
+        private MappedByteBuffer mappa;
+        private int dimensione;
+        // Gli a capo di ogni blocco di DIMENSIONE_PEZZO byte del file (-1 = non ancora contati)
+        private AtomicIntegerArray righeBlocchi;
+
+        Esecuzione(File file, File fileScartate, Consumer<RiepilogoImportazione> avanzamento) {
+            this.file = file;
+            this.fileScartate = fileScartate;
+            this.avanzamento = avanzamento;
+        }
+
+        RiepilogoImportazione esegui() throws IOException, SQLException, InterruptedException {
+            try (FileChannel canale = FileChannel.open(file.toPath())) {
+                if (canale.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Il file è troppo grande (al massimo 2 GB).");
+                }
+                dimensione = (int) canale.size();
+                mappa = canale.map(FileChannel.MapMode.READ_ONLY, 0, dimensione);
+            }
+            stato = new AvanzamentoImportazione(fileScartate, avanzamento, dimensione, analizzati::get);
+            righeBlocchi = new AtomicIntegerArray(dimensione / DIMENSIONE_PEZZO + 1);
+            for (int i = 0; i < righeBlocchi.length(); i++) {
+                righeBlocchi.set(i, -1);
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(parallelismo);
+            try {
+                ForkJoinTask<Void> analisi = pool.submit(new Analisi(0, dimensione));
+                while (true) {
+                    try {
+                        analisi.get(ATTESA_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException ex) {
+                        stato.controllaErrore();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                fermata = true;
+                throw ex;
+            } catch (ExecutionException ex) {
+                throw new IOException("Errore durante l'analisi del file: " + ex.getCause().getMessage(), ex.getCause());
+            } finally {
+                pool.shutdownNow();
+                stato.chiudiScarti();
+            }
+            stato.controllaErrore();
+            stato.notifica(true);
+            return stato.riepilogo(true);
+        }
+
+        /**
+         * Analizza le schede comprese fra due inizi di scheda (o la fine del file), dividendo
+         * a metà finché la parte è più grande di DIMENSIONE_PEZZO.
+         */
+        private final class Analisi extends RecursiveAction {
+            private final int da;
+            private final int a;
+
+            Analisi(int da, int a) {
+                this.da = da;
+                this.a = a;
+            }
+
+            @Override
+            protected void compute() {
+                if (a - da > DIMENSIONE_PEZZO) {
+                    int meta = prossimaScheda(da + (a - da) / 2);
+                    if (meta < a) {
+                        invokeAll(new Analisi(da, meta), new Analisi(meta, a));
+                        return;
+                    }
+                }
+                byte[] pezzo = new byte[a - da];
+                mappa.get(da, pezzo);
+                new Pezzo(pezzo, da).analizza();
+                analizzati.addAndGet(pezzo.length);
+                stato.notifica(false);
+            }
+        }
+
+        /**
+         * L'analisi sequenziale di un pezzo del file, copiato in un array.
+         */
+        private final class Pezzo {
+            private final byte[] dati;
+            private final int inizioNelFile;
+            private long righePrecedenti = -1;  // Righe del file prima del pezzo (-1 = non ancora contate)
+            private int posizione;
+            private long righe;
+
+            private final List<Persona> persone = new ArrayList<>(RIGHE_PER_BLOCCO);
+            private final List<Long> righePersone = new ArrayList<>(RIGHE_PER_BLOCCO);
+
+            // La riga logica corrente, dopo aver riunito le righe spezzate
+            private byte[] riga = new byte[256];
+            private int lunghezza;
+            private long rigaInizio;
+
+            // La scheda corrente
+            private boolean inScheda;
+            private long rigaScheda;
+            private String nome;
+            private String cognome;
+            private String nomeCompleto;
+            private String telefono;
+            private boolean telefonoPreferito;
+            private String indirizzo;
+            private int eta;
+            private boolean etaIndicata;
+
+            Pezzo(byte[] dati, int inizioNelFile) {
+                this.dati = dati;
+                this.inizioNelFile = inizioNelFile;
+            }
+
+            void analizza() {
+                while (!fermata && leggiRiga()) {
+                    proprieta();
+                }
+                if (!fermata) {
+                    salva();
+                }
+            }
+
+            /**
+             * Interpreta la riga logica corrente, nella forma "gruppo.NOME;PARAMETRI:valore".
+             */
+            private void proprieta() {
+                int duePunti = -1;
+                boolean virgolette = false;
+                for (int i = 0; i < lunghezza && duePunti < 0; i++) {
+                    if (riga[i] == '"') {
+                        virgolette = !virgolette;
+                    } else if (riga[i] == ':' && !virgolette) {
+                        duePunti = i;
+                    }
+                }
+                if (duePunti < 0) {
+                    return;
+                }
+                int fineNome = 0;
+                while (fineNome < duePunti && riga[fineNome] != ';') {
+                    fineNome++;
+                }
+                int inizioNome = fineNome;
+                while (inizioNome > 0 && riga[inizioNome - 1] != '.') {
+                    inizioNome--;
+                }
+                String chiave = new String(riga, inizioNome, fineNome - inizioNome, StandardCharsets.US_ASCII).toUpperCase();
+                if (chiave.equals("BEGIN")) {
+                    iniziaScheda();
+                    return;
+                }
+                if (!inScheda) {
+                    return;
+                }
+                switch (chiave) {
+                    case "END":
+                        finisciScheda();
+                        return;
+                    case "N":
+                    case "FN":
+                    case "TEL":
+                    case "ADR":
+                    case "X-ETA":
+                    case "BDAY":
+                        break;
+                    default:
+                        return;  // Le altre proprietà non vengono nemmeno decodificate
+                }
+                String parametri = new String(riga, fineNome, duePunti - fineNome, StandardCharsets.US_ASCII).toUpperCase();
+                String valore = valore(parametri, duePunti + 1);
+                switch (chiave) {
+                    case "N": {
+                        List<String> parti = componenti(valore);
+                        cognome = parte(parti, 0);
+                        nome = parte(parti, 1);
+                        break;
+                    }
+                    case "FN":
+                        nomeCompleto = togliEscape(valore).trim();
+                        break;
+                    case "TEL": {
+                        String numero = togliEscape(valore).trim();
+                        if (numero.regionMatches(true, 0, "tel:", 0, 4)) {
+                            numero = numero.substring(4);  // vCard 4.0: il numero come URI
+                        }
+                        boolean preferito = parametri.contains("CELL") || parametri.contains("PREF");
+                        if (!numero.isEmpty() && (telefono == null || (preferito && !telefonoPreferito))) {
+                            telefono = numero;
+                            telefonoPreferito = preferito;
+                        }
+                        break;
+                    }
+                    case "ADR":
+                        if (indirizzo == null) {
+                            indirizzo = indirizzo(componenti(valore));
+                        }
+                        break;
+                    case "X-ETA":
+                        try {
+                            eta = Integer.parseInt(valore.trim());
+                            etaIndicata = true;
+                        } catch (NumberFormatException ex) {
+                            // Età non valida: viene ignorata
+                        }
+                        break;
+                    case "BDAY":
+                        if (!etaIndicata) {
+                            eta = etaDaNascita(valore.trim());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            private void iniziaScheda() {
+                inScheda = true;
+                rigaScheda = rigaInizio;
+                nome = null;
+                cognome = null;
+                nomeCompleto = null;
+                telefono = null;
+                telefonoPreferito = false;
+                indirizzo = null;
+                eta = 0;
+                etaIndicata = false;
+            }
+
+            /**
+             * Trasforma la scheda appena terminata in una Persona, o la scarta.
+             */
+            private void finisciScheda() {
+                inScheda = false;
+                stato.lette.incrementAndGet();
+                String n = nome == null ? "" : nome;
+                String c = cognome == null ? "" : cognome;
+                if (n.isEmpty() && c.isEmpty() && nomeCompleto != null) {
+                    n = nomeCompleto;    // Schede con il solo nome visualizzato
+                } else if (n.isEmpty()) {
+                    n = c;               // Solo il cognome (ad esempio un'azienda)
+                    c = "";
+                }
+                try {
+                    Persona p = new Persona(0, store.getUtente().getID_Utente(), n, c,
+                            indirizzo == null ? "" : indirizzo, telefono == null ? "" : telefono, eta);
+                    persone.add(p);
+                    righePersone.add(rigaScheda);
+                    if (persone.size() == RIGHE_PER_BLOCCO) {
+                        salva();
+                    }
+                } catch (IllegalArgumentException ex) {
+                    scarta(rigaScheda, ex.getMessage(), Arrays.asList(n, c, indirizzo, telefono, String.valueOf(eta)));
+                }
+            }
+
+            /**
+             * Inserisce le persone raccolte, al più "scrittori" blocchi alla volta fra tutti i pezzi.
+             */
+            private void salva() {
+                if (persone.isEmpty()) {
+                    return;
+                }
+                try {
+                    inserimenti.acquire();
+                    try {
+                        RisultatoBatch risultato = store.salvaPersone(persone);
+                        stato.inserite.addAndGet(risultato.getInserite());
+                        for (RisultatoBatch.ErroreRiga e : risultato.getErrori()) {
+                            Persona p = e.persona;
+                            scarta(righePersone.get(e.indice), e.messaggio, Arrays.asList(p.getNome(), p.getCognome(),
+                                    p.getIndirizzo(), p.getTelefono(), String.valueOf(p.getEta())));
+                        }
+                    } finally {
+                        inserimenti.release();
+                    }
+                } catch (InterruptedException ex) {
+                    fermata = true;
+                } catch (SQLException | RuntimeException ex) {
+                    fallisci(ex);
+                }
+                persone.clear();
+                righePersone.clear();
+                stato.notifica(false);
+            }
+
+            /**
+             * Scrive una scheda nel file degli scarti.
+             *
+             * @param riga La riga in cui inizia la scheda, contata dall'inizio del pezzo.
+             */
+            private void scarta(long riga, String motivo, List<String> campi) {
+                if (righePrecedenti < 0) {
+                    righePrecedenti = righePrima(inizioNelFile);
+                }
+                try {
+                    stato.scarta(righePrecedenti + riga, motivo, campi);
+                } catch (IOException ex) {
+                    fallisci(ex);
+                }
+            }
+
+            // ----------------------------
+            //        RIGHE E VALORI
+            // ----------------------------
+
+            /**
+             * Legge la prossima riga logica: le righe che iniziano con uno spazio o un tab
+             * continuano la precedente (RFC 2425), così come, in vCard 2.1, quelle che seguono
+             * una riga QUOTED-PRINTABLE terminata da "=".
+             *
+             * @return false alla fine del pezzo.
+             */
+            private boolean leggiRiga() {
+                if (posizione >= dati.length) {
+                    return false;
+                }
+                lunghezza = 0;
+                rigaInizio = righe + 1;
+                aggiungiRigaFisica(0);
+                while (posizione < dati.length) {
+                    if (dati[posizione] == ' ' || dati[posizione] == '\t') {
+                        aggiungiRigaFisica(1);
+                    } else if (lunghezza > 0 && riga[lunghezza - 1] == '=' && isQuotedPrintable()) {
+                        lunghezza--;
+                        aggiungiRigaFisica(0);
+                    } else {
+                        break;
+                    }
+                }
+                return true;
+            }
+
+            /**
+             * Aggiunge alla riga logica la riga fisica che inizia alla posizione corrente,
+             * saltandone i primi "salta" caratteri, e si sposta all'inizio della successiva.
+             */
+            private void aggiungiRigaFisica(int salta) {
+                int inizio = posizione + salta;
+                int fine = inizio;
+                while (fine < dati.length && dati[fine] != '\n') {
+                    fine++;
+                }
+                posizione = fine + 1;
+                righe++;
+                if (fine > inizio && dati[fine - 1] == '\r') {
+                    fine--;
+                }
+                int n = fine - inizio;
+                if (lunghezza + n > riga.length) {
+                    riga = Arrays.copyOf(riga, Math.max(riga.length * 2, lunghezza + n));
+                }
+                System.arraycopy(dati, inizio, riga, lunghezza, n);
+                lunghezza += n;
+            }
+
+            private boolean isQuotedPrintable() {
+                for (int i = 0; i < lunghezza; i++) {
+                    if (riga[i] == ':') {
+                        String intestazione = new String(riga, 0, i, StandardCharsets.US_ASCII).toUpperCase();
+                        return intestazione.contains("QUOTED-PRINTABLE");
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * Decodifica il valore della riga logica corrente, che inizia alla posizione indicata,
+             * secondo i parametri ENCODING e CHARSET (vCard 2.1).
+             */
+            private String valore(String parametri, int inizio) {
+                byte[] byteValore = riga;
+                int da = inizio;
+                int n = lunghezza - inizio;
+                if (parametri.contains("QUOTED-PRINTABLE")) {
+                    byteValore = decodificaQuotedPrintable(riga, inizio, lunghezza);
+                    da = 0;
+                    n = byteValore.length;
+                }
+                Charset charset = StandardCharsets.UTF_8;
+                int i = parametri.indexOf("CHARSET=");
+                if (i >= 0) {
+                    int fine = i + 8;
+                    while (fine < parametri.length() && parametri.charAt(fine) != ';') {
+                        fine++;
+                    }
+                    try {
+                        charset = Charset.forName(parametri.substring(i + 8, fine).replace("\"", ""));
+                    } catch (IllegalArgumentException ex) {
+                        // Codifica sconosciuta: resta UTF-8
+                    }
+                }
+                return new String(byteValore, da, n, charset);
+            }
+        }
+
+        // ----------------------------
+        //       METODI INTERNI
+        // ----------------------------
+
+        /**
+         * @return La posizione della prima riga "BEGIN:VCARD" che inizia da "da" in poi,
+         *         oppure la dimensione del file se non ce ne sono altre.
+         */
+        private int prossimaScheda(int da) {
+            for (int i = da; i <= dimensione - INIZIO_SCHEDA.length; i++) {
+                if ((i == 0 || mappa.get(i - 1) == '\n') && iniziaScheda(i)) {
+                    return i;
+                }
+            }
+            return dimensione;
+        }
+
+        private boolean iniziaScheda(int i) {
+            for (int j = 0; j < INIZIO_SCHEDA.length; j++) {
+                byte b = mappa.get(i + j);
+                if (b >= 'a' && b <= 'z') {
+                    b -= 'a' - 'A';
+                }
+                if (b != INIZIO_SCHEDA[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return Il numero di righe del file prima della posizione indicata (gli a capo che la precedono).
+         */
+        private long righePrima(int posizione) {
+            int blocco = posizione / DIMENSIONE_PEZZO;
+            long righe = 0;
+            for (int b = 0; b < blocco; b++) {
+                int n = righeBlocchi.get(b);
+                if (n < 0) {
+                    n = contaRighe(b * DIMENSIONE_PEZZO, (b + 1) * DIMENSIONE_PEZZO);
+                    righeBlocchi.set(b, n);  // Due thread possono contarlo insieme: il risultato è lo stesso
+                }
+                righe += n;
+            }
+            return righe + contaRighe(blocco * DIMENSIONE_PEZZO, posizione);
+        }
+
+        private int contaRighe(int da, int a) {
+            int n = 0;
+            for (int i = da; i < a; i++) {
+                if (mappa.get(i) == '\n') {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        private void fallisci(Exception ex) {
+            stato.fallisci(ex);
+            fermata = true;
+        }
+    }
+
+    // ----------------------------
+    //      DECODIFICA DEI VALORI
+    // ----------------------------
+
+    /**
+     * Divide un valore strutturato (N, ADR) nei suoi componenti separati da ";" non protetti,
+     * togliendo gli escape da ciascuno.
+     */
+    private static List<String> componenti(String valore) {
+        List<String> parti = new ArrayList<>(7);
+        int inizio = 0;
+        for (int i = 0; i < valore.length(); i++) {
+            char c = valore.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ';') {
+                parti.add(togliEscape(valore.substring(inizio, i)).trim());
+                inizio = i + 1;
+            }
+        }
+        parti.add(togliEscape(valore.substring(inizio)).trim());
+        return parti;
+    }
+
+    private static String parte(List<String> parti, int i) {
+        return i < parti.size() ? parti.get(i) : "";
+    }
+
+    /**
+     * Compone un indirizzo leggibile dai componenti di ADR (casella postale, indirizzo esteso,
+     * via, città, provincia, CAP, nazione), omettendo quelli vuoti.
+     */
+    private static String indirizzo(List<String> parti) {
+        StringBuilder sb = new StringBuilder();
+        for (int i : new int[]{2, 1, 0}) {
+            aggiungi(sb, parte(parti, i), ", ");
+        }
+        String cap = parte(parti, 5);
+        String citta = parte(parti, 3);
+        aggiungi(sb, cap.isEmpty() ? citta : citta.isEmpty() ? cap : cap + " " + citta, ", ");
+        String provincia = parte(parti, 4);
+        if (!provincia.isEmpty()) {
+            sb.append(sb.length() == 0 ? "" : " ").append('(').append(provincia).append(')');
+        }
+        aggiungi(sb, parte(parti, 6), ", ");
+        return sb.toString();
+    }
+
+    private static void aggiungi(StringBuilder sb, String parte, String separatore) {
+        if (!parte.isEmpty()) {
+            sb.append(sb.length() == 0 ? "" : separatore).append(parte);
+        }
+    }
+
+    /**
+     * Toglie gli escape di vCard: "\n" diventa un a capo, "\," "\;" e "\\" il carattere indicato.
+     */
+    private static String togliEscape(String valore) {
+        if (valore.indexOf('\\') < 0) {
+            return valore;
+        }
+        StringBuilder sb = new StringBuilder(valore.length());
+        for (int i = 0; i < valore.length(); i++) {
+            char c = valore.charAt(i);
+            if (c == '\\' && i + 1 < valore.length()) {
+                char dopo = valore.charAt(++i);
+                sb.append(dopo == 'n' || dopo == 'N' ? '\n' : dopo);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodifica un valore QUOTED-PRINTABLE ("=C3=A8" diventa i due byte corrispondenti).
+     */
+    private static byte[] decodificaQuotedPrintable(byte[] dati, int da, int a) {
+        byte[] risultato = new byte[a - da];
+        int n = 0;
+        for (int i = da; i < a; i++) {
+            int alto;
+            int basso;
+            if (dati[i] == '=' && i + 2 < a
+                    && (alto = Character.digit(dati[i + 1], 16)) >= 0
+                    && (basso = Character.digit(dati[i + 2], 16)) >= 0) {
+                risultato[n++] = (byte) (alto << 4 | basso);
+                i += 2;
+            } else {
+                risultato[n++] = dati[i];
+            }
+        }
+        return Arrays.copyOf(risultato, n);
+    }
+
+    /**
+     * Calcola l'età da una data di nascita vCard (1980-05-17, 19800517, con o senza ora).
+     *
+     * @return L'età, oppure 0 se la data non contiene l'anno o non è valida.
+     */
+    private static int etaDaNascita(String data) {
+        String cifre = data.replace("-", "");
+        int t = cifre.indexOf('T');
+        if (t >= 0) {
+            cifre = cifre.substring(0, t);
+        }
+        if (cifre.length() != 8 || data.startsWith("--")) {
+            return 0;
+        }
+        try {
+            LocalDate nascita = LocalDate.of(Integer.parseInt(cifre.substring(0, 4)),
+                    Integer.parseInt(cifre.substring(4, 6)), Integer.parseInt(cifre.substring(6, 8)));
+            return Math.max(0, Period.between(nascita, LocalDate.now()).getYears());
+        } catch (NumberFormatException | DateTimeException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package controller;
+
+import models.Persona;
+import models.Testo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe IndiceRicerca è l'indice in memoria usato dalla casella di ricerca della MainFrame:
+ * trova le persone in cui ogni parola cercata è l'inizio di una parola del nome o del
+ * cognome, oppure l'inizio del telefono.
+ *
+ * <ul>
+ *   <li>Le chiavi sono le parole normalizzate di nome e cognome e il telefono normalizzato
+ *       (vedi Testo.paroleDi): "Niccolò" diventa "niccolo", "+39 333-12" diventa "33312".</li>
+ *   <li>Le chiavi stanno in un array ordinato (con un array parallelo di posizioni): quelle
+ *       che iniziano con un prefisso formano un intervallo contiguo, trovato con due
+ *       ricerche binarie.</li>
+ *   <li>Le chiavi aggiunte dopo la costruzione vanno in un secondo array ordinato, piccolo,
+ *       che viene fuso con il principale quando supera SOGLIA_FUSIONE: un inserimento sposta
+ *       quindi poche migliaia di elementi, non milioni.</li>
+ *   <li>Modifiche ed eliminazioni non toccano gli array: le voci rimaste vengono riconosciute
+ *       come obsolete durante la ricerca (la persona non ha più quella chiave) e scartate
+ *       alla fusione successiva.</li>
+ *   <li>Con più parole si scorre solo l'intervallo della parola più selettiva e si
+ *       verificano le altre sulle chiavi della singola persona.</li>
+ * </ul>
+ *
+ * La costruzione iniziale (costruisci) può avvenire in background; dopo, tutti i metodi
+ * vanno chiamati dal thread della GUI (EDT), come quelli di PersonaTableModel.
+ */
+public class IndiceRicerca {
+
+    // Numero di voci nuove oltre il quale si fondono con l'array principale
+    public static final int SOGLIA_FUSIONE = 4096;
+
+
+    // Voci principali, ordinate per chiave e, a parità di chiave, per posizione
+    private String[] chiavi;
+    private int[] posizioniChiavi;
+    private int numeroChiavi;
+
+    // Voci aggiunte dopo l'ultima fusione, con lo stesso ordinamento
+    private String[] chiaviNuove = new String[64];
+    private int[] posizioniNuove = new int[64];
+    private int numeroNuove;
+    private int numeroObsolete;   // Stima delle voci che non corrispondono più a nessuna persona
+
+    // Persone per posizione, con le rispettive chiavi; le posizioni liberate vengono riusate
+    private Persona[] persone;
+    private String[][] chiaviPersona;
+    private int numeroPosizioni;
+    private int[] posizioniLibere = new int[16];
+    private int numeroLibere;
+    private final Map<Integer, Integer> posizionePerId;
+
+    // Marcatura delle posizioni già viste durante una ricerca (evita i duplicati senza allocare)
+    private int[] timbri;
+    private int timbro;
+
+    private IndiceRicerca(int capacita) {
+        int c = Math.max(16, capacita);
+        this.persone = new Persona[c];
+        this.chiaviPersona = new String[c][];
+        this.timbri = new int[c];
+        this.posizionePerId = new HashMap<>(c * 2);
+    }
+
+    /**
+     * Costruisce l'indice su tutte le persone indicate, con un solo ordinamento finale.
+     * Può essere chiamato da un thread in background.
+     *
+     * @param tutte Le persone della rubrica.
+     * @return Il nuovo indice.
+     */
+    public static IndiceRicerca costruisci(Collection<Persona> tutte) {
+        IndiceRicerca indice = new IndiceRicerca(tutte.size());
+        List<Voce> voci = new ArrayList<>(tutte.size() * 3);
+        for (Persona p : tutte) {
+            if (indice.posizionePerId.containsKey(p.getID())) {
+                continue;
+            }
+            int posizione = indice.occupaPosizione(p);
+            for (String chiave : indice.chiaviPersona[posizione]) {
+                voci.add(new Voce(chiave, posizione));
+            }
+        }
+        Voce[] ordinate = voci.toArray(new Voce[0]);
+        Arrays.parallelSort(ordinate);
+        indice.chiavi = new String[ordinate.length];
+        indice.posizioniChiavi = new int[ordinate.length];
+        for (int i = 0; i < ordinate.length; i++) {
+            indice.chiavi[i] = ordinate[i].chiave;
+            indice.posizioniChiavi[i] = ordinate[i].posizione;
+        }
+        indice.numeroChiavi = ordinate.length;
+        return indice;
+    }
+
+    /**
+     * @return Il numero di persone indicizzate.
+     */
+    public int size() {
+        return posizionePerId.size();
+    }
+
+    // ----------------------------
+    //   AGGIORNAMENTI INCREMENTALI
+    // ----------------------------
+
+    /**
+     * Aggiunge una persona all'indice (o la aggiorna, se il suo ID è già presente).
+     *
+     * @param p La persona, con l'ID assegnato dallo store.
+     */
+    public void inserisci(Persona p) {
+        if (posizionePerId.containsKey(p.getID())) {
+            aggiorna(p);
+            return;
+        }
+        int posizione = occupaPosizione(p);
+        for (String chiave : chiaviPersona[posizione]) {
+            aggiungiVoce(chiave, posizione);
+        }
+        fondiSeNecessario();
+    }
+
+    /**
+     * Sostituisce i dati di una persona già indicizzata (o la aggiunge, se manca).
+     * Solo le chiavi che la persona non aveva vengono aggiunte.
+     *
+     * @param p La persona modificata.
+     */
+    public void aggiorna(Persona p) {
+        Integer posizione = posizionePerId.get(p.getID());
+        if (posizione == null) {
+            inserisci(p);
+            return;
+        }
+        String[] vecchie = chiaviPersona[posizione];
+        String[] nuove = Testo.paroleDi(p);
+        persone[posizione] = p;
+        chiaviPersona[posizione] = nuove;
+        for (String chiave : nuove) {
+            if (!contiene(vecchie, chiave)) {
+                aggiungiVoce(chiave, posizione);
+            }
+        }
+        for (String chiave : vecchie) {
+            if (!contiene(nuove, chiave)) {
+                numeroObsolete++;
+            }
+        }
+        fondiSeNecessario();
+    }
+
+    /**
+     * Rimuove dall'indice la persona con l'ID indicato, se presente.
+     *
+     * @param idPersona L'ID della persona eliminata.
+     */
+    public void rimuovi(int idPersona) {
+        Integer posizione = posizionePerId.remove(idPersona);
+        if (posizione == null) {
+            return;
+        }
+        numeroObsolete += chiaviPersona[posizione].length;
+        persone[posizione] = null;
+        chiaviPersona[posizione] = null;
+        if (numeroLibere == posizioniLibere.length) {
+            posizioniLibere = Arrays.copyOf(posizioniLibere, numeroLibere * 2);
+        }
+        posizioniLibere[numeroLibere++] = posizione;
+        fondiSeNecessario();
+    }
+
+    // ----------------------------
+    //           RICERCA
+    // ----------------------------
+
+    /**
+     * Cerca le persone in cui ogni parola del testo è l'inizio di una parola del nome
+     * o del cognome, oppure del telefono. Le persone sono restituite nell'ordine
+     * alfabetico della chiave corrispondente alla parola più selettiva.
+     *
+     * La ricerca si ferma dopo limite persone: il costo dipende da quante ne vengono
+     * restituite, non da quante corrispondono.
+     *
+     * @param testo  Il testo digitato nella casella di ricerca.
+     * @param limite Il numero massimo di persone da restituire.
+     * @return Le persone trovate (nessuna, se il testo non contiene parole).
+     */
+    public Persona[] cerca(String testo, int limite) {
+        String[] parole = Testo.paroleDaCercare(testo);
+        if (parole.length == 0) {
+            return new Persona[0];
+        }
+
+        // Intervalli (nei due array) della parola più selettiva
+        int migliore = -1;
+        int da = 0, a = 0, daNuove = 0, aNuove = 0;
+        for (int i = 0; i < parole.length; i++) {
+            String fine = parole[i] + Character.MAX_VALUE;
+            int inizio = primaNonMinore(chiavi, numeroChiavi, parole[i]);
+            int termine = primaNonMinore(chiavi, numeroChiavi, fine);
+            int inizioNuove = primaNonMinore(chiaviNuove, numeroNuove, parole[i]);
+            int termineNuove = primaNonMinore(chiaviNuove, numeroNuove, fine);
+            if (migliore < 0 || (termine - inizio) + (termineNuove - inizioNuove) < (a - da) + (aNuove - daNuove)) {
+                migliore = i;
+                da = inizio;
+                a = termine;
+                daNuove = inizioNuove;
+                aNuove = termineNuove;
+            }
+        }
+
+        // Scorrimento in ordine delle due liste di voci (come in una fusione)
+        nuovoTimbro();
+        List<Persona> trovate = new ArrayList<>(Math.min(limite, 256));
+        int i = da;
+        int j = daNuove;
+        while ((i < a || j < aNuove) && trovate.size() < limite) {
+            String chiave;
+            int posizione;
+            if (j >= aNuove || (i < a && chiavi[i].compareTo(chiaviNuove[j]) <= 0)) {
+                chiave = chiavi[i];
+                posizione = posizioniChiavi[i++];
+            } else {
+                chiave = chiaviNuove[j];
+                posizione = posizioniNuove[j++];
+            }
+            if (timbri[posizione] == timbro || !valida(chiave, posizione)) {
+                continue;
+            }
+            timbri[posizione] = timbro;
+            if (contieneTutte(chiaviPersona[posizione], parole, migliore)) {
+                trovate.add(persone[posizione]);
+            }
+        }
+        return trovate.toArray(new Persona[0]);
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * @return true se la voce corrisponde ancora a una chiave della persona in quella posizione.
+     */
+    private boolean valida(String chiave, int posizione) {
+        return persone[posizione] != null && contiene(chiaviPersona[posizione], chiave);
+    }
+
+    private static boolean contiene(String[] chiavi, String chiave) {
+        for (String c : chiavi) {
+            if (c.equals(chiave)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true se ogni parola (tranne quella da saltare, già verificata) è il prefisso di una chiave.
+     */
+    private static boolean contieneTutte(String[] chiaviPersona, String[] parole, int daSaltare) {
+        for (int i = 0; i < parole.length; i++) {
+            if (i == daSaltare) {
+                continue;
+            }
+            boolean trovata = false;
+            for (String chiave : chiaviPersona) {
+                if (chiave.startsWith(parole[i])) {
+                    trovata = true;
+                    break;
+                }
+            }
+            if (!trovata) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Assegna una posizione alla persona e ne calcola le chiavi (senza aggiungere le voci).
+     */
+    private int occupaPosizione(Persona p) {
+        int posizione;
+        if (numeroLibere > 0) {
+            posizione = posizioniLibere[--numeroLibere];
+        } else {
+            posizione = numeroPosizioni++;
+            if (posizione == persone.length) {
+                int capacita = persone.length * 2;
+                persone = Arrays.copyOf(persone, capacita);
+                chiaviPersona = Arrays.copyOf(chiaviPersona, capacita);
+                timbri = Arrays.copyOf(timbri, capacita);
+            }
+        }
+        persone[posizione] = p;
+        chiaviPersona[posizione] = Testo.paroleDi(p);
+        posizionePerId.put(p.getID(), posizione);
+        return posizione;
+    }
+
+    /**
+     * Inserisce una voce, in ordine, fra quelle nuove.
+     */
+    private void aggiungiVoce(String chiave, int posizione) {
+        int i = numeroNuove;
+        int basso = 0;
+        while (basso < i) {
+            int medio = (basso + i) >>> 1;
+            int c = chiaviNuove[medio].compareTo(chiave);
+            if (c < 0 || (c == 0 && posizioniNuove[medio] < posizione)) {
+                basso = medio + 1;
+            } else {
+                i = medio;
+            }
+        }
+        if (numeroNuove == chiaviNuove.length) {
+            chiaviNuove = Arrays.copyOf(chiaviNuove, numeroNuove * 2);
+            posizioniNuove = Arrays.copyOf(posizioniNuove, numeroNuove * 2);
+        }
+        System.arraycopy(chiaviNuove, i, chiaviNuove, i + 1, numeroNuove - i);
+        System.arraycopy(posizioniNuove, i, posizioniNuove, i + 1, numeroNuove - i);
+        chiaviNuove[i] = chiave;
+        posizioniNuove[i] = posizione;
+        numeroNuove++;
+    }
+
+    /**
+     * Fonde le voci nuove con quelle principali, scartando quelle obsolete e i doppioni,
+     * quando le voci nuove o obsolete sono abbastanza da rallentare le ricerche.
+     */
+    private void fondiSeNecessario() {
+        if (numeroNuove + numeroObsolete < SOGLIA_FUSIONE) {
+            return;
+        }
+        String[] fuseChiavi = new String[numeroChiavi + numeroNuove];
+        int[] fusePosizioni = new int[fuseChiavi.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < numeroChiavi || j < numeroNuove) {
+            String chiave;
+            int posizione;
+            if (j >= numeroNuove || (i < numeroChiavi && confronta(chiavi[i], posizioniChiavi[i], chiaviNuove[j], posizioniNuove[j]) <= 0)) {
+                chiave = chiavi[i];
+                posizione = posizioniChiavi[i++];
+            } else {
+                chiave = chiaviNuove[j];
+                posizione = posizioniNuove[j++];
+            }
+            boolean doppione = n > 0 && fusePosizioni[n - 1] == posizione && fuseChiavi[n - 1].equals(chiave);
+            if (!doppione && valida(chiave, posizione)) {
+                fuseChiavi[n] = chiave;
+                fusePosizioni[n++] = posizione;
+            }
+        }
+        chiavi = fuseChiavi;
+        posizioniChiavi = fusePosizioni;
+        numeroChiavi = n;
+        Arrays.fill(chiaviNuove, 0, numeroNuove, null);
+        numeroNuove = 0;
+        numeroObsolete = 0;
+    }
+
+    private static int confronta(String chiave1, int posizione1, String chiave2, int posizione2) {
+        int c = chiave1.compareTo(chiave2);
+        return c != 0 ? c : Integer.compare(posizione1, posizione2);
+    }
+
+    /**
+     * @return L'indice della prima chiave maggiore o uguale a quella indicata.
+     */
+    private static int primaNonMinore(String[] chiavi, int numero, String chiave) {
+        int basso = 0;
+        int alto = numero;
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            if (chiavi[medio].compareTo(chiave) < 0) {
+                basso = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return basso;
+    }
+
+    private void nuovoTimbro() {
+        if (++timbro == 0) {
+            Arrays.fill(timbri, 0);
+            timbro = 1;
+        }
+    }
+
+    /**
+     * Una voce dell'indice, usata solo durante la costruzione iniziale.
+     */
+    private static final class Voce implements Comparable<Voce> {
+        final String chiave;
+        final int posizione;
+
+        Voce(String chiave, int posizione) {
+            this.chiave = chiave;
+            this.posizione = posizione;
+        }
+
+        @Override
+        public int compareTo(Voce altra) {
+            return confronta(chiave, posizione, altra.chiave, altra.posizione);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package controller;
+
+import models.Persona;
+import models.Telefono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * La classe IndiceTelefoni è l'indice in memoria dei numeri di telefono (in forma normalizzata,
+ * vedi Telefono.normalizza), usato per riconoscere il chiamante e per segnalare i numeri
+ * duplicati quando si inserisce una persona.
+ *
+ * <ul>
+ *   <li>I numeri sono memorizzati in un trie di cifre percorso dall'ultima cifra alla prima:
+ *       sia la ricerca esatta sia quella per ultime cifre costano quanto la lunghezza del
+ *       numero (al massimo Telefono.LUNGHEZZA_MASSIMA passi), qualunque sia la dimensione
+ *       della rubrica.</li>
+ *   <li>I nodi stanno in array paralleli (primo figlio / fratello successivo), quindi non
+ *       c'è un oggetto per nodo.</li>
+ *   <li>Un FiltroBloom sui numeri permette di escludere un duplicato senza percorrere il
+ *       trie; viene ricostruito quando è saturo o quando le eliminazioni sono molte.</li>
+ * </ul>
+ *
+ * La costruzione iniziale (costruisci) può avvenire in background; dopo, tutti i metodi
+ * vanno chiamati dal thread della GUI (EDT), come quelli di IndiceRicerca.
+ */
+public class IndiceTelefoni {
+
+    private static final int NESSUNO = -1;
+
+    // Nodi del trie: il nodo 0 è la radice
+    private int[] primoFiglio;
+    private int[] fratello;
+    private byte[] cifra;
+    private int[] primaVoce;      // Lista delle persone il cui numero termina in questo nodo
+    private int numeroNodi;
+
+    // Voci delle liste (persona e voce successiva), con lista delle voci libere
+    private Persona[] vocePersona;
+    private int[] voceSuccessiva;
+    private int numeroVoci;
+    private int primaVoceLibera = NESSUNO;
+
+    private FiltroBloom filtro;
+    private int persone;
+    private int eliminateDalFiltro;  // Eliminazioni dopo l'ultima ricostruzione del filtro
+
+    private IndiceTelefoni(int capacita) {
+        int nodi = Math.max(64, capacita * 4);
+        primoFiglio = new int[nodi];
+        fratello = new int[nodi];
+        cifra = new byte[nodi];
+        primaVoce = new int[nodi];
+        numeroNodi = 1;
+        primoFiglio[0] = NESSUNO;
+        fratello[0] = NESSUNO;
+        primaVoce[0] = NESSUNO;
+        vocePersona = new Persona[Math.max(16, capacita)];
+        voceSuccessiva = new int[vocePersona.length];
+        filtro = new FiltroBloom(capacita * 2);
+    }
+
+    /**
+     * Costruisce l'indice su tutte le persone indicate. Può essere chiamato da un thread in background.
+     *
+     * @param tutte Le persone della rubrica.
+     * @return Il nuovo indice.
+     */
+    public static IndiceTelefoni costruisci(Collection<Persona> tutte) {
+        IndiceTelefoni indice = new IndiceTelefoni(tutte.size());
+        for (Persona p : tutte) {
+            indice.inserisci(p);
+        }
+        return indice;
+    }
+
+    // ----------------------------
+    //   AGGIORNAMENTI INCREMENTALI
+    // ----------------------------
+
+    /**
+     * Aggiunge il numero di una persona all'indice.
+     *
+     * @param p La persona, con l'ID assegnato dallo store.
+     */
+    public void inserisci(Persona p) {
+        String numero = p.getTelefonoNormalizzato();
+        if (numero.isEmpty()) {
+            return;
+        }
+        int nodo = 0;
+        for (int i = numero.length() - 1; i >= 0; i--) {
+            nodo = figlio(nodo, (byte) (numero.charAt(i) - '0'), true);
+        }
+        int voce = nuovaVoce();
+        vocePersona[voce] = p;
+        voceSuccessiva[voce] = primaVoce[nodo];
+        primaVoce[nodo] = voce;
+        persone++;
+        if (filtro.isSaturo()) {
+            ricostruisciFiltro();
+        } else {
+            filtro.aggiungi(numero);
+        }
+    }
+
+    /**
+     * Rimuove dall'indice il numero di una persona (con i dati che aveva prima della modifica
+     * o dell'eliminazione).
+     *
+     * @param p La persona da rimuovere.
+     */
+    public void rimuovi(Persona p) {
+        int nodo = nodo(p.getTelefonoNormalizzato());
+        if (nodo <= 0) {
+            return;
+        }
+        int precedente = NESSUNO;
+        for (int voce = primaVoce[nodo]; voce != NESSUNO; voce = voceSuccessiva[voce]) {
+            if (vocePersona[voce].getID() == p.getID()) {
+                if (precedente == NESSUNO) {
+                    primaVoce[nodo] = voceSuccessiva[voce];
+                } else {
+                    voceSuccessiva[precedente] = voceSuccessiva[voce];
+                }
+                vocePersona[voce] = null;
+                voceSuccessiva[voce] = primaVoceLibera;
+                primaVoceLibera = voce;
+                persone--;
+                // Il filtro non può dimenticare: oltre una certa quota di eliminazioni si ricostruisce
+                if (++eliminateDalFiltro > Math.max(1024, persone / 4)) {
+                    ricostruisciFiltro();
+                }
+                return;
+            }
+            precedente = voce;
+        }
+    }
+
+    /**
+     * Sostituisce il numero di una persona modificata.
+     *
+     * @param vecchia La persona con i dati precedenti.
+     * @param nuova   La persona con i dati modificati (stesso ID).
+     */
+    public void aggiorna(Persona vecchia, Persona nuova) {
+        rimuovi(vecchia);
+        inserisci(nuova);
+    }
+
+    // ----------------------------
+    //           RICERCA
+    // ----------------------------
+
+    /**
+     * Restituisce le persone con esattamente questo numero (in forma normalizzata). Se il
+     * filtro di Bloom esclude il numero, il trie non viene nemmeno percorso: è il caso
+     * normale quando si inserisce un numero nuovo.
+     *
+     * @param telefono Il numero, come è stato scritto.
+     * @return Le persone con lo stesso numero (lista vuota se non ce ne sono).
+     */
+    public List<Persona> cercaDuplicati(String telefono) {
+        String numero = Telefono.normalizza(telefono);
+        if (numero.isEmpty() || !filtro.forseContiene(numero)) {
+            return new ArrayList<>(0);
+        }
+        List<Persona> trovate = new ArrayList<>(2);
+        int nodo = nodo(numero);
+        if (nodo > 0) {
+            for (int voce = primaVoce[nodo]; voce != NESSUNO; voce = voceSuccessiva[voce]) {
+                trovate.add(vocePersona[voce]);
+            }
+        }
+        return trovate;
+    }
+
+    /**
+     * Restituisce le persone il cui numero termina con le cifre indicate: con un numero
+     * completo è la ricerca del chiamante, con le ultime cifre trova anche i numeri scritti
+     * con prefissi diversi. Prima vengono le corrispondenze esatte, poi quelle più lunghe.
+     *
+     * @param telefono Il numero (o le sue ultime cifre).
+     * @param limite   Il numero massimo di persone da restituire.
+     * @return Le persone trovate.
+     */
+    public List<Persona> cercaPerUltimeCifre(String telefono, int limite) {
+        List<Persona> trovate = new ArrayList<>();
+        int nodo = nodo(Telefono.normalizza(telefono));
+        if (nodo <= 0) {
+            return trovate;
+        }
+        // Visita in ampiezza del sottoalbero: i numeri più corti (più simili) per primi
+        int[] coda = new int[16];
+        int testa = 0;
+        int fine = 0;
+        coda[fine++] = nodo;
+        while (testa < fine && trovate.size() < limite) {
+            int corrente = coda[testa++];
+            for (int voce = primaVoce[corrente]; voce != NESSUNO && trovate.size() < limite; voce = voceSuccessiva[voce]) {
+                trovate.add(vocePersona[voce]);
+            }
+            for (int f = primoFiglio[corrente]; f != NESSUNO; f = fratello[f]) {
+                if (fine == coda.length) {
+                    coda = Arrays.copyOf(coda, coda.length * 2);
+                }
+                coda[fine++] = f;
+            }
+        }
+        return trovate;
+    }
+
+    /**
+     * @return Il numero di persone indicizzate.
+     */
+    public int size() {
+        return persone;
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * @return Il nodo del numero (percorso dall'ultima cifra), 0 per il numero vuoto,
+     *         NESSUNO se nessun numero termina con queste cifre.
+     */
+    private int nodo(String numero) {
+        int nodo = 0;
+        for (int i = numero.length() - 1; i >= 0 && nodo != NESSUNO; i--) {
+            nodo = figlio(nodo, (byte) (numero.charAt(i) - '0'), false);
+        }
+        return nodo;
+    }
+
+    /**
+     * @return Il figlio del nodo con la cifra indicata (creato se manca e crea è true),
+     *         oppure NESSUNO.
+     */
+    private int figlio(int nodo, byte c, boolean crea) {
+        for (int f = primoFiglio[nodo]; f != NESSUNO; f = fratello[f]) {
+            if (cifra[f] == c) {
+                return f;
+            }
+        }
+        if (!crea) {
+            return NESSUNO;
+        }
+        if (numeroNodi == primoFiglio.length) {
+            int capacita = numeroNodi * 2;
+            primoFiglio = Arrays.copyOf(primoFiglio, capacita);
+            fratello = Arrays.copyOf(fratello, capacita);
+            cifra = Arrays.copyOf(cifra, capacita);
+            primaVoce = Arrays.copyOf(primaVoce, capacita);
+        }
+        int nuovo = numeroNodi++;
+        cifra[nuovo] = c;
+        primoFiglio[nuovo] = NESSUNO;
+        primaVoce[nuovo] = NESSUNO;
+        fratello[nuovo] = primoFiglio[nodo];
+        primoFiglio[nodo] = nuovo;
+        return nuovo;
+    }
+
+    private int nuovaVoce() {
+        if (primaVoceLibera != NESSUNO) {
+            int voce = primaVoceLibera;
+            primaVoceLibera = voceSuccessiva[voce];
+            return voce;
+        }
+        if (numeroVoci == vocePersona.length) {
+            vocePersona = Arrays.copyOf(vocePersona, numeroVoci * 2);
+            voceSuccessiva = Arrays.copyOf(voceSuccessiva, numeroVoci * 2);
+        }
+        return numeroVoci++;
+    }
+
+    /**
+     * Ricrea il filtro di Bloom, dimensionato sul numero attuale di persone, con i numeri presenti.
+     */
+    private void ricostruisciFiltro() {
+        filtro = new FiltroBloom(Math.max(1024, persone * 2));
+        for (int voce = 0; voce < numeroVoci; voce++) {
+            if (vocePersona[voce] != null) {
+                filtro.aggiungi(vocePersona[voce].getTelefonoNormalizzato());
+            }
+        }
+        eliminateDalFiltro = 0;
+    }
+}
@@ -1,13 +1,11 @@
 package controller;
 
 import models.Utente;
+import persistence.Archivio;
 import view.LoginFrame;
 
-import java.sql.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.function.Consumer;
 
 /**
  * La classe LoginController gestisce l'intera logica di login e registrazione,
@@ -26,25 +24,42 @@ public class LoginController {
     public static final int REGISTER_USER_EXISTS = 1;
     public static final int REGISTER_SERVER_ERROR = 2;
     
-    // Riferimento alla connessione al database
-    private Connection conn;
+    // Archivio (MySQL o in memoria) con le utenze e le rubriche
+    private Archivio archivio;
+    
+    // Servizio che esegue le query fuori dal thread della GUI
+    private ServizioAsincrono servizio;
+    
+    // Servizio che calcola e verifica gli hash delle password
+    private ServizioAutenticazione autenticazione;
+    
+    // Ascoltatore che mostra l'attesa nella LoginFrame mentre una query è in corso
+    private Consumer<Integer> indicatoreAttesa;
     
     // Riferimento alla vista che mostra la GUI
     private LoginFrame loginFrame;
     
     /**
-     * Costruttore del controller che riceve la connessione al database.
+     * Costruttore del controller che riceve l'archivio delle utenze e delle rubriche.
      * Crea la finestra di login e imposta gli ActionListener dei pulsanti.
      *
-     * @param conn La connessione al database da utilizzare per le operazioni.
+     * @param archivio L'archivio da utilizzare per le operazioni.
+     * @param servizio       Il servizio asincrono su cui eseguire le query.
+     * @param autenticazione Il servizio che verifica e calcola gli hash delle password.
      */
-    public LoginController(Connection conn) {
-        this.conn = conn;
+    public LoginController(Archivio archivio, ServizioAsincrono servizio, ServizioAutenticazione autenticazione) {
+        this.archivio = archivio;
+        this.servizio = servizio;
+        this.autenticazione = autenticazione;
         
         // Creazione della vista (LoginFrame) e impostazione del Controller come "gestore"
         this.loginFrame = new LoginFrame();
         this.loginFrame.setController(this);  // Passa il riferimento di questo Controller
         
+        // Durante le query i pulsanti vengono disabilitati, senza bloccare la finestra
+        this.indicatoreAttesa = inCorso -> loginFrame.setInAttesa(inCorso > 0);
+        this.servizio.aggiungiAscoltatore(indicatoreAttesa);
+        
         // Visualizza la finestra al termine della configurazione
         this.loginFrame.setVisible(true);
     }
@@ -64,13 +79,24 @@ public class LoginController {
             return;
         }
         
-        // Chiamata del metodo di effettivo controllo sul DB
-        LoginResult result = login(username, password);
-        
-        // Gestione dell'esito ottenuto
+        // Chiamata del metodo di effettivo controllo sul DB (in background),
+        // l'esito viene gestito sul thread della GUI
+        servizio.esegui(() -> login(username, password)).alTermine(this::gestisciEsitoLogin, ex -> {
+            ex.printStackTrace();
+            loginFrame.mostraMessaggioErrore("Login fallito: " + erroreServer());
+        });
+    }
+    
+    /**
+     * Gestisce sul thread della GUI l'esito di un tentativo di login.
+     *
+     * @param result Il risultato restituito da login().
+     */
+    private void gestisciEsitoLogin(LoginResult result) {
         switch (result.status) {
             case LOGIN_SUCCESS:
                 // Se login avvenuto con successo, si apre la MainFrame (PersonaController)
+                servizio.rimuoviAscoltatore(indicatoreAttesa);
                 openMainFrame(result.user);
                 loginFrame.dispose();  // Chiude la finestra di login
                 break;
@@ -80,7 +106,7 @@ public class LoginController {
                 break;
                 
             case LOGIN_SERVER_ERROR:
-                loginFrame.mostraMessaggioErrore("Login fallito: errore del server.");
+                loginFrame.mostraMessaggioErrore("Login fallito: " + erroreServer());
                 break;
         }
     }
@@ -99,10 +125,20 @@ public class LoginController {
             return;
         }
         
-        // Chiamata del metodo di registrazione sul DB
-        int regStatus = register(username, password);
-        
-        // Gestione dell'esito ottenuto
+        // Chiamata del metodo di registrazione sul DB (in background),
+        // l'esito viene gestito sul thread della GUI
+        servizio.esegui(() -> register(username, password)).alTermine(this::gestisciEsitoRegistrazione, ex -> {
+            ex.printStackTrace();
+            loginFrame.mostraMessaggioErrore("Registrazione fallita: " + erroreServer());
+        });
+    }
+    
+    /**
+     * Gestisce sul thread della GUI l'esito di una registrazione.
+     *
+     * @param regStatus Il codice restituito da register().
+     */
+    private void gestisciEsitoRegistrazione(int regStatus) {
         switch (regStatus) {
             case REGISTER_SUCCESS:
                 loginFrame.mostraMessaggioInfo("Registrazione avvenuta con successo, esegui il login.");
@@ -113,11 +149,21 @@ public class LoginController {
                 break;
                 
             case REGISTER_SERVER_ERROR:
-                loginFrame.mostraMessaggioErrore("Registrazione fallita: errore del server.");
+                loginFrame.mostraMessaggioErrore("Registrazione fallita: " + erroreServer());
                 break;
         }
     }
     
+    /**
+     * @return La descrizione di un errore del server, che distingue il server non raggiungibile
+     *         (il supervisore della connessione sta già riprovando) dagli altri errori.
+     */
+    private String erroreServer() {
+        return servizio.isConnesso()
+                ? "errore del server."
+                : "server non raggiungibile, nuovo tentativo di connessione in corso. Riprova tra qualche istante.";
+    }
+    
     /**
      * Classe interna che rappresenta il risultato di un'operazione di login.
      * Contiene lo stato del login ed, in caso di successo, l'oggetto Utente.
@@ -140,38 +186,27 @@ public class LoginController {
      * @return Un oggetto LoginResult contenente lo stato del login ed eventualmente l'Utente autenticato.
      */
     public LoginResult login(String username, String password) {
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT password, salt, id FROM Utente WHERE username = ?")) {
-            stmt.setString(1, username);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    // Recupera l'hash e il salt memorizzati
-                    String storedHash = rs.getString("password");
-                    String salt = rs.getString("salt");
-                    String computedHash = computeHash(password, salt);
-                    int id_utente = rs.getInt("id");
-                    
-                    if (computedHash.equals(storedHash)) {
-                        // Login eseguito con successo: crea l'oggetto Utente
-                        Utente user = new Utente(username, storedHash, id_utente);
-                        return new LoginResult(LOGIN_SUCCESS, user);
-                    } else {
-                        // Credenziali non valide (password errata)
-                        return new LoginResult(LOGIN_INVALID_CREDENTIALS, null);
-                    }
-                } else {
-                    // Utente non trovato
-                    return new LoginResult(LOGIN_INVALID_CREDENTIALS, null);
-                }
+        try {
+            // Verifica la password (ed eventualmente aggiorna l'hash al formato attuale)
+            Utente user = autenticazione.autentica(username, password);
+            if (user == null) {
+                // Utente non trovato o password errata
+                return new LoginResult(LOGIN_INVALID_CREDENTIALS, null);
             }
-        } catch (SQLException | NoSuchAlgorithmException ex) {
+            return new LoginResult(LOGIN_SUCCESS, user);
+        } catch (SQLException | RuntimeException ex) {
             ex.printStackTrace();
             return new LoginResult(LOGIN_SERVER_ERROR, null);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new LoginResult(LOGIN_SERVER_ERROR, null);
         }
     }
     
     /**
      * Metodo per registrare un nuovo utente.
-     * Verifica che l'utente non esista già e, in caso contrario, inserisce l'utente nel database.
+     * L'utente viene inserito direttamente: se lo username esiste già è l'archivio a
+     * rifiutarlo (per MySQL il vincolo UNIQUE), senza una lettura preventiva.
      *
      * @param username Il nome utente da registrare.
      * @param password La password da registrare.
@@ -179,78 +214,26 @@ public class LoginController {
      */
     public int register(String username, String password) {
         try {
-            // Verifica se l'utente esiste già nel database
-            try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM Utente WHERE username = ?")) {
-                stmt.setString(1, username);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return REGISTER_USER_EXISTS;  // Utente già esistente
-                    }
-                }
-            }
-            
-            // Genera un salt casuale e calcola l'hash della password
-            String salt = generateSalt();
-            String hashedPassword = computeHash(password, salt);
-            
-            // Inserisce il nuovo utente nel database
-            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO Utente (username, password, salt) VALUES (?, ?, ?)")) {
-                stmt.setString(1, username);
-                stmt.setString(2, hashedPassword);
-                stmt.setString(3, salt);
-                int rows = stmt.executeUpdate();
-                return (rows > 0) ? REGISTER_SUCCESS : REGISTER_SERVER_ERROR;
-            }
-        } catch (SQLException | NoSuchAlgorithmException ex) {
+            // Calcola l'hash con un salt casuale e inserisce il nuovo utente, se lo username non è già usato
+            boolean creato = autenticazione.registra(username, password);
+            return creato ? REGISTER_SUCCESS : REGISTER_USER_EXISTS;
+        } catch (SQLException | RuntimeException ex) {
             ex.printStackTrace();
             return REGISTER_SERVER_ERROR;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return REGISTER_SERVER_ERROR;
         }
     }
     
     /**
-     * Apre il frame principale della rubrica, passando l'utente autenticato e la connessione
+     * Apre il frame principale della rubrica, passando l'utente autenticato e l'archivio
      * a un nuovo controller che si occuperà della gestione.
      *
      * @param user L'oggetto Utente autenticato.
      */
     private void openMainFrame(Utente user) {
-        PersonaController personaController = new PersonaController(this.conn, user);
+        PersonaController personaController = new PersonaController(this.archivio, this.servizio, user);
         personaController.initController();
     }
-    
-    /**
-     * Metodo helper per calcolare l'hash di una password concatenata col salt usando SHA-256.
-     *
-     * @param password La password in chiaro.
-     * @param salt Il salt da concatenare.
-     * @return Una stringa esadecimale che rappresenta l'hash della combinazione password+salt.
-     * @throws NoSuchAlgorithmException Se l'algoritmo SHA-256 non è disponibile.
-     */
-    private String computeHash(String password, String salt) throws NoSuchAlgorithmException {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        String text = password + salt;
-        byte[] hashBytes = md.digest(text.getBytes(StandardCharsets.UTF_8));
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashBytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
-    
-    /**
-     * Metodo helper per generare un salt casuale.
-     * Utilizza 4 byte casuali per ottenere una stringa esadecimale di 8 caratteri.
-     *
-     * @return Il salt generato.
-     */
-    private String generateSalt() {
-        SecureRandom sr = new SecureRandom();
-        byte[] saltBytes = new byte[4]; // 4 byte = 8 caratteri esadecimali
-        sr.nextBytes(saltBytes);
-        StringBuilder sb = new StringBuilder();
-        for (byte b : saltBytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
 }
@@ -0,0 +1,92 @@
+package controller;
+
+import models.Persona;
+import persistence.ChiavePagina;
+import persistence.Pagina;
+import persistence.PersonaStore;
+import view.PersonaTableModel;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * La classe PaginatorePersone collega il modello della tabella (che ragiona per posizione
+ * di riga) alla paginazione keyset del PersonaStore (che ragiona per chiave).
+ *
+ * Quando viene letta una pagina, la chiave della pagina successiva viene memorizzata:
+ * lo scorrimento sequenziale usa quindi sempre la keyset. Solo quando l'utente salta in
+ * un punto mai visitato si usa chiaveAllaPosizione, che legge esclusivamente l'indice.
+ */
+public class PaginatorePersone implements PersonaTableModel.SorgentePagine {
+
+    // Numero massimo di chiavi memorizzate (posizione della prima riga -> chiave)
+    private static final int MAX_CHIAVI = 4096;
+
+    private final PersonaStore personManager;
+    private final ChiavePagina.Ordinamento ordinamento;
+
+    private final Map<Integer, ChiavePagina> chiavi = new LinkedHashMap<Integer, ChiavePagina>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ChiavePagina> eldest) {
+            return size() > MAX_CHIAVI;
+        }
+    };
+
+    /**
+     * @param personManager Lo store da cui leggere le persone.
+     * @param ordinamento   L'ordine in cui mostrare le persone.
+     */
+    public PaginatorePersone(PersonaStore personManager, ChiavePagina.Ordinamento ordinamento) {
+        this.personManager = personManager;
+        this.ordinamento = ordinamento;
+    }
+
+    /**
+     * Conta le persone e dimentica le chiavi memorizzate, che dopo una modifica
+     * della rubrica potrebbero non corrispondere più alle stesse posizioni.
+     */
+    @Override
+    public int contaRighe() throws SQLException {
+        synchronized (chiavi) {
+            chiavi.clear();
+        }
+        return personManager.contaPersone();
+    }
+
+    @Override
+    public List<Persona> caricaPagina(int primaRiga, int dimensione) throws SQLException {
+        ChiavePagina chiave;
+        synchronized (chiavi) {
+            chiave = chiavi.get(primaRiga);
+        }
+        if (chiave == null) {
+            chiave = personManager.chiaveAllaPosizione(ordinamento, primaRiga);
+            if (chiave == null) {
+                return new Vector<>();  // Posizione oltre la fine della rubrica
+            }
+        }
+        // La tabella mostra solo nome, cognome e telefono: il resto si legge all'apertura dell'editor
+        Pagina pagina = personManager.leggiElenco(chiave, dimensione);
+        if (pagina.getProssima() != null) {
+            synchronized (chiavi) {
+                chiavi.put(primaRiga + pagina.getRighe().size(), pagina.getProssima());
+            }
+        }
+        return pagina.getRighe();
+    }
+
+    /**
+     * Le chiavi delle posizioni successive alla riga rimossa ora indicherebbero la riga
+     * sbagliata (spostata di una posizione), quindi vengono dimenticate.
+     * Quelle precedenti restano valide.
+     */
+    @Override
+    public void rigaRimossa(int riga) {
+        synchronized (chiavi) {
+            chiavi.keySet().removeIf(posizione -> posizione > riga);
+        }
+    }
+}
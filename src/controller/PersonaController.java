@@ -1,41 +1,94 @@
 package controller;
 
+import models.Collazione;
 import models.Persona;
+import models.SuggerimentoUnione;
+import models.Telefono;
 import models.Utente;
-import persistence.MySQLPersonManager;
+import persistence.Archivio;
+import persistence.ChiavePagina;
+import persistence.PersonaStore;
+import persistence.SupervisoreConnessione;
+import view.DuplicatiDialog;
 import view.EditorPersonaDialog;
 import view.MainFrame;
+import view.PersonaTableModel;
 
 import javax.swing.*;
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.Vector;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.JTableHeader;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * La classe PersonaController coordina la logica applicativa per la gestione 
  * delle persone (inserimento, modifica, eliminazione) e la relativa interfaccia 
  * grafica (MainFrame ed EditorPersonaDialog).
- * Si appoggia a MySQLPersonManager per le operazioni sul database MySQL.
+ * Si appoggia a un PersonaStore (MySQL o in memoria, secondo l'Archivio scelto) per la persistenza.
  */
 public class PersonaController {
 
+    // Numero massimo di risultati mostrati dalla casella di ricerca
+    public static final int MAX_RISULTATI_RICERCA = 1000;
+
+    // Oltre questo numero di persone la ricerca non usa l'indice in memoria ma interroga lo store
+    public static final int MAX_PERSONE_INDICE_LOCALE = 1_000_000;
+
+    // Avviso nella barra di stato mentre il server non è raggiungibile
+    private static final String AVVISO_CONNESSIONE_PERSA =
+            "Connessione al server persa: nuovo tentativo in corso, le modifiche verranno salvate al ritorno della connessione.";
+
+    // Numero massimo di persone complete (lette per l'editor) tenute in memoria
+    private static final int MAX_DETTAGLI_IN_CACHE = 256;
+
+    // Attesa dopo l'ultimo tasto prima di interrogare lo store (ricerca sul server)
+    private static final int RITARDO_RICERCA_MS = 150;
+
     private MainFrame mainFrame;               // Finestra principale
-    private MySQLPersonManager personManager;  // Manager per la persistenza
-    private Connection conn;                   // Connessione verso il DB MySQL
+    private PersonaStore personManager;        // Store per la persistenza
+    private ServizioAsincrono servizio;        // Esegue le query fuori dal thread della GUI
     private Utente currentUser;                // Utente attualmente loggato
 
+    private IndiceRicerca indiceRicerca;       // Indice della casella di ricerca (null finché non è pronto)
+    private IndiceTelefoni indiceTelefoni;     // Indice dei numeri di telefono (pronto insieme al precedente)
+    private boolean modificatoDuranteIndicizzazione;
+    private boolean ricercaSulServer;          // true se la rubrica è troppo grande per gli indici in memoria
+    private Timer ritardoRicerca;              // Raggruppa i tasti prima di una ricerca sul server
+    private int generazioneRicerca;            // Incrementato a ogni ricerca: le risposte superate vengono scartate
+    private int modificheRubrica;              // Incrementato a ogni modifica: un ordinamento in corso va ripetuto
+
+    // Persone lette per intero con leggiPersona (la tabella ha solo nome, cognome e telefono), per ID
+    private final Map<Integer, Persona> dettagli = new LinkedHashMap<Integer, Persona>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Persona> eldest) {
+            return size() > MAX_DETTAGLI_IN_CACHE;
+        }
+    };
+
     /**
      * Costruttore del controller: inizializza la finestra principale (MainFrame),
-     * il manager di persistenza (MySQLPersonManager) e registra i listener sui pulsanti.
+     * lo store di persistenza (PersonaStore) e registra i listener sui pulsanti.
      *
-     * @param conn        Connessione JDBC verso MySQL
+     * @param archivio    Archivio da cui aprire la rubrica dell'utente
+     * @param servizio    Servizio asincrono su cui eseguire le operazioni sul database
      * @param currentUser L'utente loggato, proprietario delle persone da gestire
      */
-    public PersonaController(Connection conn, Utente currentUser) {
-        this.conn = conn;
+    public PersonaController(Archivio archivio, ServizioAsincrono servizio, Utente currentUser) {
+        this.servizio = servizio;
         this.currentUser = currentUser;
-        // Inizializza il MySQLPersonManager con l'utente e la connessione corrente
-        this.personManager = new MySQLPersonManager(currentUser, conn);
+        // Apre la rubrica dell'utente sull'archivio configurato (MySQL o in memoria)
+        this.personManager = archivio.apriRubrica(currentUser);
         // Crea la finestra principale
         this.mainFrame = new MainFrame();
     }
@@ -45,8 +98,66 @@ public class PersonaController {
      * e carica la tabella con i dati attuali dal database.
      */
     public void initController() {
-        // Carica dati iniziali dal DB
-        refreshTable();
+        // Gli errori di caricamento delle pagine vengono mostrati come gli altri errori DB
+        mainFrame.getTableModel().setGestoreErrori(ex -> JOptionPane.showMessageDialog(
+            mainFrame,
+            "Errore durante il caricamento delle persone dal database:\n" + ex.getMessage(),
+            "Errore DB",
+            JOptionPane.ERROR_MESSAGE
+        ));
+
+        // Indicatore delle operazioni in corso e pulsante per annullarle
+        servizio.aggiungiAscoltatore(mainFrame::mostraOperazioniInCorso);
+        mainFrame.getBtnAnnulla().addActionListener(e -> servizio.annullaTutte());
+
+        // Avviso di connessione persa: le modifiche restano in coda finché il server torna raggiungibile
+        servizio.aggiungiAscoltatoreConnessione(stato -> {
+            if (stato == SupervisoreConnessione.Stato.CONNESSO) {
+                mainFrame.mostraConnessione(null);
+                refreshTable();  // Rilegge le righe che non è stato possibile caricare
+            } else {
+                mainFrame.mostraConnessione(AVVISO_CONNESSIONE_PERSA);
+            }
+        });
+        if (!servizio.isConnesso()) {
+            mainFrame.mostraConnessione(AVVISO_CONNESSIONE_PERSA);
+        }
+
+        // Carica dati iniziali dal DB (solo il conteggio: le righe arrivano a pagine)
+        mainFrame.getTableModel().setSorgente(new PaginatorePersone(personManager, ChiavePagina.Ordinamento.PER_ID));
+
+        // Casella di ricerca: filtra la tabella a ogni tasto (con l'indice in memoria o interrogando lo store)
+        ritardoRicerca = new Timer(RITARDO_RICERCA_MS, e -> cercaSulServer());
+        ritardoRicerca.setRepeats(false);
+        mainFrame.getCampoRicerca().getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applicaRicerca();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applicaRicerca();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applicaRicerca();
+            }
+        });
+        costruisciIndiceRicerca();
+
+        // Clic sull'intestazione di una colonna: ordine crescente, decrescente, poi ordine originale
+        mainFrame.getIntestazioneTabella().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                JTableHeader intestazione = (JTableHeader) e.getSource();
+                int vista = intestazione.columnAtPoint(e.getPoint());
+                if (vista >= 0) {
+                    cambiaOrdinamento(intestazione.getTable().convertColumnIndexToModel(vista));
+                }
+            }
+        });
 
         // Listener per "Nuovo": apre un EditorPersonaDialog con tutti i campi vuoti.
         mainFrame.getBtnNuovo().addActionListener(e -> {
@@ -57,25 +168,33 @@ public class PersonaController {
             if (dialog.isConfirmed()) {
                 // Se l'utente ha premuto "Salva"
                 Persona p = dialog.getPersona();
-                if (p != null) {
-                    try {
-                        // Crea una nuova riga nel DB con i dati della persona
-                        personManager.salvaPersona(
-                            p.getNome(),
-                            p.getCognome(),
-                            p.getEta(),
-                            p.getIndirizzo(),
-                            p.getTelefono()
-                        );
-                    } catch (SQLException ex) {
-                        JOptionPane.showMessageDialog(
-                            mainFrame, 
-                            "Errore durante l'inserimento nel database:\n" + ex.getMessage(),
-                            "Errore DB",
-                            JOptionPane.ERROR_MESSAGE
-                        );
-                    }
-                    refreshTable();
+                if (p != null && confermaNumeroDuplicato(p)) {
+                    // Crea una nuova riga nel DB con i dati della persona (in background)
+                    servizio.eseguiScrittura(() -> personManager.salvaPersona(
+                        p.getNome(),
+                        p.getCognome(),
+                        p.getEta(),
+                        p.getIndirizzo(),
+                        p.getTelefono()
+                    )).alTermine(
+                        // Aggiunge solo la nuova riga, con l'ID generato dal database
+                        id -> {
+                            Persona creata = new Persona(
+                                id, currentUser.getID_Utente(),
+                                p.getNome(), p.getCognome(), p.getIndirizzo(), p.getTelefono(), p.getEta()
+                            );
+                            mainFrame.getTableModel().inserisciRiga(creata);
+                            mainFrame.selezionaPersona(creata.getID());
+                            aggiornaIndici(() -> {
+                                indiceRicerca.inserisci(creata);
+                                indiceTelefoni.inserisci(creata);
+                            });
+                        },
+                        ex -> {
+                            mostraErroreDB("Errore durante l'inserimento nel database:\n", ex);
+                            refreshTable();  // Riallinea la tabella allo stato del database
+                        }
+                    );
                 }
             }
         });
@@ -93,35 +212,33 @@ public class PersonaController {
                 return;
             }
 
-            // EditorPersonaDialog aperto in modalità "modifica"
-            EditorPersonaDialog dialog = new EditorPersonaDialog(mainFrame, selected);
-            dialog.setVisible(true);
-
-            if (dialog.isConfirmed()) {
-                // Nuovi dati inseriti dall'utente
-                Persona updatedData = dialog.getPersona();
-                if (updatedData != null) {
-                    try {
-                        // Esegue l'UPDATE sul database
-                        personManager.modificaPersona(
-                            selected.getID(),           // ID della persona da modificare
-                            updatedData.getNome(),
-                            updatedData.getCognome(),
-                            updatedData.getEta(),
-                            updatedData.getIndirizzo(),
-                            updatedData.getTelefono()
-                        );
-                    } catch (SQLException ex) {
+            if (selected.isCompleta()) {
+                modifica(selected);
+                return;
+            }
+            // La tabella contiene solo i dati dell'elenco: il resto viene letto (o preso dalla cache)
+            Persona completa = dettagli.get(selected.getID());
+            if (completa != null) {
+                modifica(completa);
+                return;
+            }
+            servizio.esegui(() -> personManager.leggiPersona(selected.getID())).alTermine(
+                letta -> {
+                    if (letta == null) {
                         JOptionPane.showMessageDialog(
                             mainFrame,
-                            "Errore durante la modifica nel database:\n" + ex.getMessage(),
-                            "Errore DB",
-                            JOptionPane.ERROR_MESSAGE
+                            "La persona selezionata non è più presente nella rubrica.",
+                            "Persona non trovata",
+                            JOptionPane.WARNING_MESSAGE
                         );
+                        refreshTable();
+                        return;
                     }
-                    refreshTable();
-                }
-            }
+                    dettagli.put(letta.getID(), letta);
+                    modifica(letta);
+                },
+                ex -> mostraErroreDB("Errore durante la lettura della persona dal database:\n", ex)
+            );
         });
 
         // Listener per "Elimina": necessita di una persona selezionata
@@ -149,40 +266,614 @@ public class PersonaController {
                 JOptionPane.YES_NO_OPTION
             );
             if (confirm == JOptionPane.YES_OPTION) {
-                try {
-                    // Esegue la DELETE sul database
-                    personManager.eliminaPersona(selected.getID());
-                } catch (SQLException ex) {
+                // Esegue la DELETE sul database (in background)
+                servizio.eseguiScrittura(() -> personManager.eliminaPersona(selected.getID())).alTermine(
+                    // Rimuove solo la riga eliminata
+                    nessuno -> {
+                        dettagli.remove(selected.getID());
+                        mainFrame.getTableModel().rimuoviRiga(selected.getID());
+                        aggiornaIndici(() -> {
+                            indiceRicerca.rimuovi(selected.getID());
+                            indiceTelefoni.rimuovi(selected);
+                        });
+                    },
+                    ex -> {
+                        mostraErroreDB("Errore durante l'eliminazione dal database:\n", ex);
+                        refreshTable();  // Riallinea la tabella allo stato del database
+                    }
+                );
+            }
+        });
+
+        // Voce "Strumenti > Importa CSV...": importa un file in background, con l'avanzamento nella barra di stato
+        mainFrame.getVoceImportaCSV().addActionListener(e -> importaCSV());
+
+        // Voce "Strumenti > Importa vCard...": come sopra, per i file .vcf
+        mainFrame.getVoceImportaVCard().addActionListener(e -> importaVCard());
+
+        // Voce "Strumenti > Esporta...": salva tutta la rubrica in CSV o vCard, in background
+        mainFrame.getVoceEsporta().addActionListener(e -> esporta());
+
+        // Voce "Strumenti > Trova duplicati...": cerca le coppie da unire su tutta la rubrica
+        mainFrame.getVoceTrovaDuplicati().addActionListener(e -> trovaDuplicati());
+
+        // Mostra la finestra principale
+        mainFrame.setVisible(true);
+    }
+
+    /**
+     * Apre l'EditorPersonaDialog in modalità "modifica" sulla persona indicata (con tutti i
+     * suoi dati) e, se confermato, salva le modifiche in background.
+     */
+    private void modifica(Persona selected) {
+        // EditorPersonaDialog aperto in modalità "modifica"
+        EditorPersonaDialog dialog = new EditorPersonaDialog(mainFrame, selected);
+        dialog.setVisible(true);
+
+        if (dialog.isConfirmed()) {
+            // Nuovi dati inseriti dall'utente
+            Persona updatedData = dialog.getPersona();
+            if (updatedData != null) {
+                // Esegue l'UPDATE sul database (in background)
+                servizio.eseguiScrittura(() -> personManager.modificaPersona(
+                    selected.getID(),           // ID della persona da modificare
+                    updatedData.getNome(),
+                    updatedData.getCognome(),
+                    updatedData.getEta(),
+                    updatedData.getIndirizzo(),
+                    updatedData.getTelefono()
+                )).alTermine(
+                    // Aggiorna solo la riga modificata
+                    nessuno -> {
+                        Persona modificata = new Persona(
+                            selected.getID(), selected.getID_Utente(),
+                            updatedData.getNome(), updatedData.getCognome(), updatedData.getIndirizzo(),
+                            updatedData.getTelefono(), updatedData.getEta()
+                        );
+                        dettagli.put(modificata.getID(), modificata);
+                        mainFrame.getTableModel().aggiornaRiga(modificata);
+                        mainFrame.selezionaPersona(modificata.getID());
+                        aggiornaIndici(() -> {
+                            indiceRicerca.aggiorna(modificata);
+                            indiceTelefoni.aggiorna(selected, modificata);
+                        });
+                    },
+                    ex -> {
+                        mostraErroreDB("Errore durante la modifica nel database:\n", ex);
+                        refreshTable();  // Riallinea la tabella allo stato del database
+                    }
+                );
+            }
+        }
+    }
+
+    /**
+     * Chiede all'utente un file CSV e lo importa in background (vedi ImportazioneCSV).
+     * Le righe scartate vengono scritte accanto al file, in "nome.scartate.csv".
+     * Al termine, anche se l'importazione fallisce o viene annullata, la tabella e gli
+     * indici di ricerca vengono ricaricati.
+     */
+    private void importaCSV() {
+        JFileChooser scelta = new JFileChooser();
+        scelta.setFileFilter(new FileNameExtensionFilter("File CSV", "csv"));
+        if (scelta.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = scelta.getSelectedFile();
+        String nome = file.getName().replaceFirst("(?i)\\.csv$", "");
+        File scartate = new File(file.getParentFile(), nome + ".scartate.csv");
+
+        JMenuItem voce = mainFrame.getVoceImportaCSV();
+        voce.setEnabled(false);
+        mainFrame.mostraAvanzamento("Importazione in corso...");
+        servizio.esegui(() -> new ImportazioneCSV(personManager).importa(file, scartate,
+            stato -> SwingUtilities.invokeLater(() -> {
+                if (!voce.isEnabled()) {
+                    mainFrame.mostraAvanzamento("Importazione: " + stato.percentuale + "% ("
+                            + stato.inserite + " inserite, " + stato.scartate + " scartate)");
+                }
+            })
+        )).alTermine(
+            riepilogo -> {
+                String messaggio = "Importate " + riepilogo.inserite + " persone su " + riepilogo.lette
+                        + " righe in " + (riepilogo.millisecondi / 1000.0) + " s.";
+                if (riepilogo.fileScartate != null) {
+                    messaggio += "\nRighe scartate: " + riepilogo.scartate + " (dettagli in "
+                            + riepilogo.fileScartate.getAbsolutePath() + ").";
+                }
+                JOptionPane.showMessageDialog(mainFrame, messaggio, "Importa CSV",
+                        riepilogo.scartate > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+            },
+            ex -> mostraErroreDB("Errore durante l'importazione (le righe già importate restano nella rubrica):\n", ex)
+        ).allaFine(() -> {
+            // Anche se annullata: le righe già importate restano nella rubrica
+            voce.setEnabled(true);
+            mainFrame.mostraAvanzamento(null);
+            ricaricaDopoImportazione();
+        });
+    }
+
+    /**
+     * Chiede all'utente un file vCard e lo importa in background (vedi ImportazioneVCard).
+     * Le schede scartate vengono scritte accanto al file, in "nome.scartate.csv".
+     * Al termine, anche se l'importazione fallisce o viene annullata, la tabella e gli
+     * indici di ricerca vengono ricaricati.
+     */
+    private void importaVCard() {
+        JFileChooser scelta = new JFileChooser();
+        scelta.setFileFilter(new FileNameExtensionFilter("vCard", "vcf", "vcard"));
+        if (scelta.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = scelta.getSelectedFile();
+        String nome = file.getName().replaceFirst("(?i)\\.(vcf|vcard)$", "");
+        File scartate = new File(file.getParentFile(), nome + ".scartate.csv");
+
+        JMenuItem voce = mainFrame.getVoceImportaVCard();
+        voce.setEnabled(false);
+        mainFrame.mostraAvanzamento("Importazione in corso...");
+        servizio.esegui(() -> new ImportazioneVCard(personManager).importa(file, scartate,
+            stato -> SwingUtilities.invokeLater(() -> {
+                if (!voce.isEnabled()) {
+                    mainFrame.mostraAvanzamento("Importazione: " + stato.percentuale + "% ("
+                            + stato.getLettePerSecondo() + " schede/s)");
+                }
+            })
+        )).alTermine(
+            riepilogo -> {
+                String messaggio = "Importate " + riepilogo.inserite + " persone su " + riepilogo.lette
+                        + " schede in " + (riepilogo.millisecondi / 1000.0) + " s ("
+                        + riepilogo.getLettePerSecondo() + " schede al secondo).";
+                if (riepilogo.fileScartate != null) {
+                    messaggio += "\nSchede scartate: " + riepilogo.scartate + " (dettagli in "
+                            + riepilogo.fileScartate.getAbsolutePath() + ").";
+                }
+                JOptionPane.showMessageDialog(mainFrame, messaggio, "Importa vCard",
+                        riepilogo.scartate > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+            },
+            ex -> mostraErroreDB("Errore durante l'importazione (le schede già importate restano nella rubrica):\n", ex)
+        ).allaFine(() -> {
+            // Anche se annullata: le schede già importate restano nella rubrica
+            voce.setEnabled(true);
+            mainFrame.mostraAvanzamento(null);
+            ricaricaDopoImportazione();
+        });
+    }
+
+    /**
+     * Chiede all'utente dove salvare la rubrica e in che formato (dal filtro scelto o
+     * dall'estensione del file) e la esporta in background (vedi EsportazioneRubrica).
+     */
+    private void esporta() {
+        JFileChooser scelta = new JFileChooser();
+        FileNameExtensionFilter filtroCSV = new FileNameExtensionFilter("File CSV", "csv");
+        FileNameExtensionFilter filtroVCard = new FileNameExtensionFilter("vCard", "vcf", "vcard");
+        scelta.setAcceptAllFileFilterUsed(false);
+        scelta.addChoosableFileFilter(filtroCSV);
+        scelta.addChoosableFileFilter(filtroVCard);
+        scelta.setFileFilter(filtroCSV);
+        if (scelta.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File scelto = scelta.getSelectedFile();
+        String nome = scelto.getName().toLowerCase();
+        EsportazioneRubrica.Formato formato;
+        if (nome.endsWith(".csv")) {
+            formato = EsportazioneRubrica.Formato.CSV;
+        } else if (nome.endsWith(".vcf") || nome.endsWith(".vcard")) {
+            formato = EsportazioneRubrica.Formato.VCARD;
+        } else {
+            formato = scelta.getFileFilter() == filtroVCard ? EsportazioneRubrica.Formato.VCARD : EsportazioneRubrica.Formato.CSV;
+            scelto = new File(scelto.getParentFile(), scelto.getName() + "." + formato.getEstensione());
+        }
+        File file = scelto;
+        if (file.exists() && JOptionPane.showConfirmDialog(mainFrame,
+                "Il file " + file.getName() + " esiste già. Vuoi sostituirlo?", "Esporta",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        JMenuItem voce = mainFrame.getVoceEsporta();
+        voce.setEnabled(false);
+        mainFrame.mostraAvanzamento("Esportazione in corso...");
+        long inizio = System.currentTimeMillis();
+        servizio.esegui(() -> new EsportazioneRubrica(personManager).esporta(file, formato,
+            esportate -> SwingUtilities.invokeLater(() -> {
+                if (!voce.isEnabled()) {
+                    mainFrame.mostraAvanzamento("Esportazione: " + esportate + " persone");
+                }
+            })
+        )).alTermine(
+            esportate -> JOptionPane.showMessageDialog(mainFrame, "Esportate " + esportate + " persone in "
+                    + ((System.currentTimeMillis() - inizio) / 1000.0) + " s nel file\n" + file.getAbsolutePath(),
+                    "Esporta", JOptionPane.INFORMATION_MESSAGE),
+            ex -> mostraErroreDB("Errore durante l'esportazione:\n", ex)
+        ).allaFine(() -> {
+            // Anche se annullata (il file incompleto viene eliminato da EsportazioneRubrica)
+            voce.setEnabled(true);
+            mainFrame.mostraAvanzamento(null);
+        });
+    }
+
+    /**
+     * Dopo un'importazione ricarica la tabella e ricostruisce da capo gli indici di ricerca,
+     * che non sono stati aggiornati riga per riga.
+     */
+    private void ricaricaDopoImportazione() {
+        refreshTable();
+        indiceRicerca = null;
+        indiceTelefoni = null;
+        ricercaSulServer = false;
+        costruisciIndiceRicerca();
+    }
+
+    /**
+     * Legge in background tutta la rubrica e cerca i probabili duplicati (vedi RicercaDuplicati).
+     * Le coppie trovate vengono mostrate in un DuplicatiDialog; quelle scelte dall'utente vengono unite.
+     */
+    private void trovaDuplicati() {
+        JMenuItem voce = mainFrame.getVoceTrovaDuplicati();
+        voce.setEnabled(false);
+        servizio.esegui(() -> {
+            List<Persona> tutte = new ArrayList<>();
+            personManager.scorriPersone(ChiavePagina.Ordinamento.PER_ID, tutte::add);
+            return RicercaDuplicati.trova(tutte);
+        }).alTermine(
+            suggerimenti -> {
+                if (suggerimenti.isEmpty()) {
                     JOptionPane.showMessageDialog(
                         mainFrame,
-                        "Errore durante l'eliminazione dal database:\n" + ex.getMessage(),
-                        "Errore DB",
-                        JOptionPane.ERROR_MESSAGE
+                        "Nessun duplicato trovato.",
+                        "Trova duplicati",
+                        JOptionPane.INFORMATION_MESSAGE
                     );
+                    return;
+                }
+                DuplicatiDialog dialog = new DuplicatiDialog(mainFrame, suggerimenti);
+                dialog.setVisible(true);
+                if (dialog.isConfirmed()) {
+                    unisciDuplicati(dialog.getSelezionati());
+                }
+            },
+            ex -> mostraErroreDB("Errore durante la ricerca dei duplicati:\n", ex)
+        ).allaFine(() -> voce.setEnabled(true));  // Anche se la ricerca viene annullata
+    }
+
+    /**
+     * Unisce in background le coppie indicate: la prima persona viene completata con i dati
+     * della seconda (vedi SuggerimentoUnione.unisci), poi la seconda viene eliminata.
+     * Una persona già eliminata da una coppia precedente fa saltare le coppie successive in
+     * cui compare; una persona già completata viene usata con i dati aggiornati.
+     */
+    private void unisciDuplicati(List<SuggerimentoUnione> coppie) {
+        servizio.eseguiScrittura(() -> {
+            Map<Integer, Persona> unite = new HashMap<>();
+            Set<Integer> eliminate = new HashSet<>();
+            List<Unione> fatte = new ArrayList<>();
+            for (SuggerimentoUnione coppia : coppie) {
+                Persona daTenere = unite.getOrDefault(coppia.getDaTenere().getID(), coppia.getDaTenere());
+                Persona daUnire = coppia.getDaUnire();
+                if (eliminate.contains(daTenere.getID()) || eliminate.contains(daUnire.getID())) {
+                    continue;
                 }
-                refreshTable();
+                Persona risultato = SuggerimentoUnione.unisci(daTenere, daUnire);
+                personManager.modificaPersona(risultato.getID(), risultato.getNome(), risultato.getCognome(),
+                        risultato.getEta(), risultato.getIndirizzo(), risultato.getTelefono());
+                personManager.eliminaPersona(daUnire.getID());
+                unite.put(risultato.getID(), risultato);
+                eliminate.add(daUnire.getID());
+                fatte.add(new Unione(daTenere, risultato, daUnire));
             }
-        });
+            return fatte;
+        }).alTermine(
+            // Aggiorna solo le righe coinvolte
+            fatte -> {
+                for (Unione u : fatte) {
+                    dettagli.put(u.risultato.getID(), u.risultato);
+                    dettagli.remove(u.eliminata.getID());
+                    mainFrame.getTableModel().aggiornaRiga(u.risultato);
+                    mainFrame.getTableModel().rimuoviRiga(u.eliminata.getID());
+                    aggiornaIndici(() -> {
+                        indiceRicerca.aggiorna(u.risultato);
+                        indiceRicerca.rimuovi(u.eliminata.getID());
+                        indiceTelefoni.aggiorna(u.prima, u.risultato);
+                        indiceTelefoni.rimuovi(u.eliminata);
+                    });
+                }
+                JOptionPane.showMessageDialog(
+                    mainFrame,
+                    fatte.size() == 1 ? "Unita 1 coppia." : "Unite " + fatte.size() + " coppie.",
+                    "Trova duplicati",
+                    JOptionPane.INFORMATION_MESSAGE
+                );
+            },
+            ex -> {
+                mostraErroreDB("Errore durante l'unione dei duplicati:\n", ex);
+                refreshTable();  // Riallinea la tabella allo stato del database
+            }
+        );
+    }
 
-        // Mostra la finestra principale
-        mainFrame.setVisible(true);
+    /**
+     * Costruisce in background gli indici della casella di ricerca e dei telefoni, leggendo
+     * tutta la rubrica. Se nel frattempo la rubrica è stata modificata, la costruzione viene ripetuta.
+     * Se la rubrica ha più di MAX_PERSONE_INDICE_LOCALE persone gli indici non vengono costruiti
+     * e la ricerca viene fatta dallo store (PersonaStore.cercaPersone).
+     */
+    private void costruisciIndiceRicerca() {
+        modificatoDuranteIndicizzazione = false;
+        servizio.esegui(() -> {
+            if (personManager.contaPersone() > MAX_PERSONE_INDICE_LOCALE) {
+                return null;
+            }
+            List<Persona> tutte = new ArrayList<>();
+            personManager.scorriPersone(ChiavePagina.Ordinamento.PER_ID, tutte::add);
+            return new Indici(IndiceRicerca.costruisci(tutte), IndiceTelefoni.costruisci(tutte));
+        }).alTermine(
+            indici -> {
+                if (indici == null) {
+                    ricercaSulServer = true;
+                    mainFrame.attivaRicerca();
+                    applicaRicerca();
+                    return;
+                }
+                if (modificatoDuranteIndicizzazione) {
+                    costruisciIndiceRicerca();
+                    return;
+                }
+                indiceRicerca = indici.ricerca;
+                indiceTelefoni = indici.telefoni;
+                mainFrame.attivaRicerca();
+                applicaRicerca();
+            },
+            ex -> mostraErroreDB("Errore durante l'indicizzazione della rubrica per la ricerca:\n", ex)
+        );
+    }
+
+    /**
+     * Applica una modifica agli indici e, se è attivo un filtro, ripete la ricerca.
+     * Se gli indici non sono ancora pronti, la loro costruzione verrà ripetuta.
+     */
+    private void aggiornaIndici(Runnable modifica) {
+        modificheRubrica++;
+        if (ricercaSulServer) {
+            if (mainFrame.getTableModel().isFiltrato()) {
+                applicaRicerca();
+            }
+            return;
+        }
+        if (indiceRicerca == null) {
+            modificatoDuranteIndicizzazione = true;
+            return;
+        }
+        modifica.run();
+        if (mainFrame.getTableModel().isFiltrato()) {
+            applicaRicerca();
+        }
+    }
+
+    /**
+     * Filtra la tabella con il testo della casella di ricerca (o rimuove il filtro se è vuoto).
+     * La ricerca avviene in memoria, direttamente sull'EDT, oppure (per le rubriche più grandi)
+     * nello store, poco dopo l'ultimo tasto.
+     */
+    private void applicaRicerca() {
+        String testo = mainFrame.getCampoRicerca().getText();
+        if (ricercaSulServer) {
+            generazioneRicerca++;  // Una ricerca ancora in corso non deve più aggiornare la tabella
+            if (testo.isBlank()) {
+                ritardoRicerca.stop();
+                mainFrame.getTableModel().rimuoviFiltro();
+                mainFrame.mostraRisultatiRicerca(-1, false);
+            } else {
+                ritardoRicerca.restart();
+            }
+            return;
+        }
+        if (indiceRicerca == null) {
+            return;
+        }
+        if (testo.isBlank()) {
+            mainFrame.getTableModel().rimuoviFiltro();
+            mainFrame.mostraRisultatiRicerca(-1, false);
+            return;
+        }
+        // Uno in più del limite, solo per sapere se ce ne sono altri
+        Persona[] trovate = indiceRicerca.cerca(testo, MAX_RISULTATI_RICERCA + 1);
+        if (Telefono.sembraUnNumero(testo)) {
+            // Per i numeri valgono anche le ultime cifre (ricerca del chiamante), mostrate per prime
+            trovate = unisci(indiceTelefoni.cercaPerUltimeCifre(testo, MAX_RISULTATI_RICERCA + 1), trovate);
+        }
+        boolean altre = trovate.length > MAX_RISULTATI_RICERCA;
+        if (altre) {
+            trovate = Arrays.copyOf(trovate, MAX_RISULTATI_RICERCA);
+        }
+        mainFrame.getTableModel().setFiltro(trovate);
+        mainFrame.mostraRisultatiRicerca(trovate.length, altre);
+    }
+
+    /**
+     * Passa all'ordinamento successivo per la colonna indicata: crescente, decrescente e
+     * infine l'ordine originale della rubrica.
+     */
+    private void cambiaOrdinamento(int colonna) {
+        PersonaTableModel modello = mainFrame.getTableModel();
+        if (modello.getColonnaOrdinata() != colonna) {
+            ordina(colonna, true, modello.getRigheOrdinate());
+        } else if (modello.isCrescente()) {
+            ordina(colonna, false, modello.getRigheOrdinate());
+        } else {
+            modello.rimuoviOrdinamento();
+            mainFrame.mostraOrdinamento(-1, false);
+        }
+    }
+
+    /**
+     * Ordina in background tutta la rubrica per la colonna indicata e la mostra in quell'ordine.
+     * Se la rubrica è già in memoria (ordinata per un'altra colonna) viene solo riordinata;
+     * altrimenti viene letta dallo store. Con la ricerca sul server la rubrica non viene letta
+     * e si ordinano solo i risultati delle ricerche.
+     *
+     * @param righe Le persone già in memoria, oppure null per leggerle dallo store.
+     */
+    private void ordina(int colonna, boolean crescente, Persona[] righe) {
+        Collazione.Criterio criterio = Collazione.Criterio.values()[colonna];
+        int modifiche = modificheRubrica;
+        servizio.esegui(() -> {
+            if (ricercaSulServer) {
+                return null;
+            }
+            Persona[] tutte = righe;
+            if (tutte == null) {
+                List<Persona> lette = new ArrayList<>();
+                personManager.scorriPersone(ChiavePagina.Ordinamento.PER_ID, lette::add);
+                tutte = lette.toArray(new Persona[0]);
+            }
+            Collazione.ordina(tutte, criterio, crescente);
+            return tutte;
+        }).alTermine(
+            ordinate -> {
+                if (modifiche != modificheRubrica) {
+                    ordina(colonna, crescente, null);  // Rubrica modificata nel frattempo: si rilegge
+                    return;
+                }
+                mainFrame.getTableModel().setOrdinamento(colonna, crescente, ordinate);
+                mainFrame.mostraOrdinamento(colonna, crescente);
+            },
+            ex -> mostraErroreDB("Errore durante l'ordinamento della rubrica:\n", ex)
+        );
+    }
+
+    /**
+     * Cerca nello store il testo della casella di ricerca. Se nel frattempo il testo è cambiato
+     * la risposta viene ignorata: la tabella mostra sempre i risultati dell'ultima ricerca.
+     */
+    private void cercaSulServer() {
+        String testo = mainFrame.getCampoRicerca().getText();
+        if (testo.isBlank()) {
+            return;
+        }
+        int generazione = ++generazioneRicerca;
+        // Uno in più del limite, solo per sapere se ce ne sono altri
+        servizio.esegui(() -> personManager.cercaPersone(testo, MAX_RISULTATI_RICERCA + 1)).alTermine(
+            risultati -> {
+                if (generazione != generazioneRicerca) {
+                    return;
+                }
+                boolean altre = risultati.size() > MAX_RISULTATI_RICERCA;
+                if (altre) {
+                    risultati.setSize(MAX_RISULTATI_RICERCA);
+                }
+                mainFrame.getTableModel().setFiltro(risultati.toArray(new Persona[0]));
+                mainFrame.mostraRisultatiRicerca(risultati.size(), altre);
+            },
+            ex -> mostraErroreDB("Errore durante la ricerca:\n", ex)
+        );
+    }
+
+    /**
+     * @return Le persone di entrambi gli elenchi, senza ripetizioni (stesso ID), nell'ordine dato.
+     */
+    private static Persona[] unisci(List<Persona> prime, Persona[] altre) {
+        Set<Integer> viste = new HashSet<>();
+        List<Persona> risultato = new ArrayList<>(prime.size() + altre.length);
+        for (Persona p : prime) {
+            if (viste.add(p.getID())) {
+                risultato.add(p);
+            }
+        }
+        for (Persona p : altre) {
+            if (viste.add(p.getID())) {
+                risultato.add(p);
+            }
+        }
+        return risultato.toArray(new Persona[0]);
+    }
+
+    /**
+     * Se il numero della nuova persona è già in rubrica, chiede se salvarla comunque.
+     * Il controllo è in memoria: un numero nuovo viene escluso dal filtro di Bloom
+     * senza nemmeno consultare l'indice dei telefoni. Quando la ricerca è fatta dallo store
+     * l'indice non c'è e il controllo viene saltato.
+     *
+     * @return true se la persona va salvata.
+     */
+    private boolean confermaNumeroDuplicato(Persona nuova) {
+        if (indiceTelefoni == null) {
+            return true;
+        }
+        List<Persona> uguali = indiceTelefoni.cercaDuplicati(nuova.getTelefono());
+        if (uguali.isEmpty()) {
+            return true;
+        }
+        Persona esistente = uguali.get(0);
+        String altri = uguali.size() > 1 ? " (e altre " + (uguali.size() - 1) + " persone)" : "";
+        int scelta = JOptionPane.showConfirmDialog(
+            mainFrame,
+            "Il numero " + nuova.getTelefono() + " è già in rubrica per "
+                + esistente.getNome() + " " + esistente.getCognome() + altri + ".\nSalvare comunque?",
+            "Numero già presente",
+            JOptionPane.YES_NO_OPTION,
+            JOptionPane.WARNING_MESSAGE
+        );
+        return scelta == JOptionPane.YES_OPTION;
     }
 
     /**
-     * Recupera la lista delle persone dal database e aggiorna la tabella nella mainFrame.
-     * In caso di errore di connessione o query, mostra un dialogo di errore.
+     * Ricarica la tabella nella mainFrame: il conteggio e le pagine visibili vengono
+     * riletti dal database in background. Eventuali errori vengono mostrati
+     * dal gestore degli errori impostato sul modello della tabella.
      */
     private void refreshTable() {
-        try {
-            Vector<Persona> allPersons = personManager.leggiPersone();
-            mainFrame.updateTableData(allPersons);
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(
-                mainFrame,
-                "Errore durante il caricamento delle persone dal database:\n" + ex.getMessage(),
-                "Errore DB",
-                JOptionPane.ERROR_MESSAGE
-            );
+        PersonaTableModel modello = mainFrame.getTableModel();
+        dettagli.clear();
+        modello.ricarica();
+        if (modello.getColonnaOrdinata() >= 0) {
+            // La rubrica ordinata in memoria potrebbe non essere più allineata: va riletta
+            ordina(modello.getColonnaOrdinata(), modello.isCrescente(), null);
+        }
+    }
+
+    /**
+     * Mostra un dialogo di errore per un'operazione sul database fallita.
+     *
+     * @param messaggio Il messaggio da mostrare prima del dettaglio dell'errore.
+     * @param ex        L'eccezione che ha causato l'errore.
+     */
+    private void mostraErroreDB(String messaggio, Throwable ex) {
+        JOptionPane.showMessageDialog(
+            mainFrame,
+            messaggio + ex.getMessage(),
+            "Errore DB",
+            JOptionPane.ERROR_MESSAGE
+        );
+    }
+
+    /**
+     * Una coppia unita: la persona tenuta prima e dopo l'unione, e quella eliminata.
+     */
+    private static final class Unione {
+        final Persona prima;
+        final Persona risultato;
+        final Persona eliminata;
+
+        Unione(Persona prima, Persona risultato, Persona eliminata) {
+            this.prima = prima;
+            this.risultato = risultato;
+            this.eliminata = eliminata;
+        }
+    }
+
+    /**
+     * Gli indici costruiti in background, consegnati insieme all'EDT.
+     */
+    private static final class Indici {
+        final IndiceRicerca ricerca;
+        final IndiceTelefoni telefoni;
+
+        Indici(IndiceRicerca ricerca, IndiceTelefoni telefoni) {
+            this.ricerca = ricerca;
+            this.telefoni = telefoni;
         }
     }
 }
@@ -0,0 +1,398 @@
+package controller;
+
+import models.Persona;
+import models.SuggerimentoUnione;
+import models.Testo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * RicercaDuplicati cerca nella rubrica le persone inserite più volte, magari scritte in modo
+ * leggermente diverso ("Giovanni Rossi" e "Giovani Rosi") o con il telefono in un altro
+ * formato ("+39 333 1234567" e "333-1234567").
+ *
+ * Confrontare ogni persona con tutte le altre richiederebbe n²/2 confronti. Le persone
+ * vengono invece divise in blocchi con due chiavi:
+ * <ul>
+ *   <li>il telefono normalizzato (vedi Telefono.normalizza);</li>
+ *   <li>la chiave fonetica del cognome (vedi Testo.chiaveFonetica) più l'iniziale del nome;</li>
+ * </ul>
+ * e si confrontano solo le coppie dello stesso blocco. I blocchi troppo grandi (cognomi
+ * molto comuni) vengono ordinati per cognome e nome e ogni persona è confrontata solo con
+ * le FINESTRA successive. Sia la preparazione delle chiavi sia i confronti sono divisi in
+ * task ForkJoin, ciascuno con un numero di confronti simile.
+ *
+ * Ogni coppia viene valutata una volta sola: i blocchi del telefono confrontano le persone
+ * con lo stesso numero, quelli del cognome le persone con numeri diversi.
+ */
+public final class RicercaDuplicati {
+
+    // Punteggio minimo perché una coppia venga suggerita
+    public static final double SOGLIA = 0.88;
+
+    // Numero massimo di suggerimenti restituiti (i più probabili)
+    public static final int MAX_SUGGERIMENTI = 10_000;
+
+    // Oltre questa dimensione un blocco viene confrontato con una finestra scorrevole
+    static final int MAX_BLOCCO = 200;
+    static final int FINESTRA = 16;
+
+    // Numeri più corti non identificano una persona (interni, numeri brevi)
+    private static final int CIFRE_MINIME_TELEFONO = 6;
+
+    // Sotto questa quantità di lavoro un task non viene più diviso
+    private static final int PERSONE_PER_TASK = 4096;
+    private static final long CONFRONTI_PER_TASK = 50_000;
+
+    private static final long NESSUN_BLOCCO = Long.MAX_VALUE;
+
+    private final Persona[] persone;
+    private final String[] nomi;
+    private final String[] cognomi;
+    private final String[] indirizzi;
+    private final long[] perTelefono;  // (hash della chiave << 32) | posizione, poi ordinati
+    private final long[] perCognome;
+
+    // Blocchi da confrontare: intervalli [inizio, fine) di perTelefono o perCognome
+    private int[] inizioBlocco = new int[64];
+    private int[] fineBlocco = new int[64];
+    private boolean[] bloccoTelefono = new boolean[64];
+    private long[] confrontiCumulati = new long[64];  // Confronti dei blocchi fino a quello compreso
+    private int numeroBlocchi;
+
+    private RicercaDuplicati(Collection<Persona> tutte) {
+        persone = tutte.toArray(new Persona[0]);
+        int n = persone.length;
+        nomi = new String[n];
+        cognomi = new String[n];
+        indirizzi = new String[n];
+        perTelefono = new long[n];
+        perCognome = new long[n];
+    }
+
+    /**
+     * Cerca i probabili duplicati usando il pool ForkJoin comune.
+     *
+     * @param tutte Tutte le persone della rubrica (complete, con indirizzo ed età).
+     * @return I suggerimenti, dal più probabile, al massimo MAX_SUGGERIMENTI.
+     */
+    public static List<SuggerimentoUnione> trova(Collection<Persona> tutte) {
+        return trova(tutte, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Cerca i probabili duplicati eseguendo il lavoro nel pool indicato.
+     */
+    public static List<SuggerimentoUnione> trova(Collection<Persona> tutte, ForkJoinPool pool) {
+        RicercaDuplicati ricerca = new RicercaDuplicati(tutte);
+        if (ricerca.persone.length < 2) {
+            return new ArrayList<>();
+        }
+        pool.invoke(ricerca.new Prepara(0, ricerca.persone.length));
+        Arrays.parallelSort(ricerca.perTelefono);
+        Arrays.parallelSort(ricerca.perCognome);
+        ricerca.aggiungiBlocchi(ricerca.perTelefono, true);
+        ricerca.aggiungiBlocchi(ricerca.perCognome, false);
+        if (ricerca.numeroBlocchi == 0) {
+            return new ArrayList<>();
+        }
+        List<SuggerimentoUnione> suggerimenti = pool.invoke(ricerca.new Confronta(0, ricerca.numeroBlocchi));
+        suggerimenti.sort(Comparator.comparingDouble(SuggerimentoUnione::getPunteggio).reversed()
+                .thenComparingInt(s -> s.getDaTenere().getID()));
+        return suggerimenti.size() > MAX_SUGGERIMENTI
+                ? new ArrayList<>(suggerimenti.subList(0, MAX_SUGGERIMENTI))
+                : suggerimenti;
+    }
+
+    // ----------------------------
+    //        PREPARAZIONE
+    // ----------------------------
+
+    /**
+     * Normalizza nome, cognome e indirizzo di un intervallo di persone e ne calcola le chiavi dei blocchi.
+     */
+    private final class Prepara extends RecursiveAction {
+        private final int da;
+        private final int a;
+
+        Prepara(int da, int a) {
+            this.da = da;
+            this.a = a;
+        }
+
+        @Override
+        protected void compute() {
+            if (a - da > PERSONE_PER_TASK) {
+                int meta = (da + a) >>> 1;
+                invokeAll(new Prepara(da, meta), new Prepara(meta, a));
+                return;
+            }
+            for (int i = da; i < a; i++) {
+                Persona p = persone[i];
+                nomi[i] = Testo.normalizza(p.getNome()).trim();
+                cognomi[i] = Testo.normalizza(p.getCognome()).trim();
+                indirizzi[i] = soloLettereECifre(Testo.normalizza(p.getIndirizzo()));
+
+                String telefono = p.getTelefonoNormalizzato();
+                perTelefono[i] = telefono.length() >= CIFRE_MINIME_TELEFONO ? chiave(telefono.hashCode(), i) : NESSUN_BLOCCO;
+
+                String fonetica = Testo.chiaveFonetica(p.getCognome());
+                String iniziale = nomi[i].isEmpty() ? "" : nomi[i].substring(0, 1);
+                perCognome[i] = chiave(fonetica.isEmpty()
+                        ? ("#" + Testo.chiaveFonetica(p.getNome())).hashCode()
+                        : (fonetica + "|" + iniziale).hashCode(), i);
+            }
+        }
+    }
+
+    private static long chiave(int hash, int posizione) {
+        return ((long) hash << 32) | posizione;
+    }
+
+    /**
+     * Aggiunge i blocchi di almeno due persone con lo stesso hash della chiave. Chiavi diverse
+     * con lo stesso hash finiscono nello stesso blocco: costano solo qualche confronto in più.
+     */
+    private void aggiungiBlocchi(long[] ordinate, boolean telefono) {
+        // Le persone senza chiave sono in fondo
+        int limite = ordinate.length;
+        while (limite > 0 && ordinate[limite - 1] == NESSUN_BLOCCO) {
+            limite--;
+        }
+        int inizio = 0;
+        for (int i = 1; i <= limite; i++) {
+            if (i < limite && (ordinate[i] >>> 32) == (ordinate[inizio] >>> 32)) {
+                continue;
+            }
+            if (i - inizio >= 2) {
+                if (numeroBlocchi == inizioBlocco.length) {
+                    int capacita = numeroBlocchi * 2;
+                    inizioBlocco = Arrays.copyOf(inizioBlocco, capacita);
+                    fineBlocco = Arrays.copyOf(fineBlocco, capacita);
+                    bloccoTelefono = Arrays.copyOf(bloccoTelefono, capacita);
+                    confrontiCumulati = Arrays.copyOf(confrontiCumulati, capacita);
+                }
+                inizioBlocco[numeroBlocchi] = inizio;
+                fineBlocco[numeroBlocchi] = i;
+                bloccoTelefono[numeroBlocchi] = telefono;
+                confrontiCumulati[numeroBlocchi] = confronti(i - inizio)
+                        + (numeroBlocchi > 0 ? confrontiCumulati[numeroBlocchi - 1] : 0);
+                numeroBlocchi++;
+            }
+            inizio = i;
+        }
+    }
+
+    private static long confronti(int dimensione) {
+        return dimensione <= MAX_BLOCCO ? (long) dimensione * (dimensione - 1) / 2 : (long) dimensione * FINESTRA;
+    }
+
+    // ----------------------------
+    //          CONFRONTI
+    // ----------------------------
+
+    /**
+     * Confronta le coppie dei blocchi [da, a). Se i confronti sono troppi, l'intervallo
+     * viene diviso in due parti con un numero di confronti simile.
+     */
+    private final class Confronta extends RecursiveTask<List<SuggerimentoUnione>> {
+        private final int da;
+        private final int a;
+
+        Confronta(int da, int a) {
+            this.da = da;
+            this.a = a;
+        }
+
+        @Override
+        protected List<SuggerimentoUnione> compute() {
+            long prima = da > 0 ? confrontiCumulati[da - 1] : 0;
+            if (a - da > 1 && confrontiCumulati[a - 1] - prima > CONFRONTI_PER_TASK) {
+                long meta = prima + (confrontiCumulati[a - 1] - prima) / 2;
+                int divisione = Arrays.binarySearch(confrontiCumulati, da, a, meta);
+                divisione = divisione < 0 ? -divisione - 1 : divisione;
+                divisione = Math.max(da + 1, Math.min(a - 1, divisione));
+                Confronta destra = new Confronta(divisione, a);
+                destra.fork();
+                List<SuggerimentoUnione> risultato = new Confronta(da, divisione).compute();
+                risultato.addAll(destra.join());
+                return risultato;
+            }
+            List<SuggerimentoUnione> risultato = new ArrayList<>();
+            for (int b = da; b < a; b++) {
+                confrontaBlocco(b, risultato);
+            }
+            return risultato;
+        }
+    }
+
+    private void confrontaBlocco(int blocco, List<SuggerimentoUnione> risultato) {
+        long[] ordinate = bloccoTelefono[blocco] ? perTelefono : perCognome;
+        int dimensione = fineBlocco[blocco] - inizioBlocco[blocco];
+        int[] membri = new int[dimensione];
+        for (int k = 0; k < dimensione; k++) {
+            membri[k] = (int) ordinate[inizioBlocco[blocco] + k];
+        }
+        int finestra = dimensione - 1;
+        if (dimensione > MAX_BLOCCO) {
+            // Blocco troppo grande: le persone simili vengono avvicinate ordinando per cognome e nome
+            Integer[] ordinati = new Integer[dimensione];
+            for (int k = 0; k < dimensione; k++) {
+                ordinati[k] = membri[k];
+            }
+            Arrays.sort(ordinati, Comparator.<Integer, String>comparing(i -> cognomi[i]).thenComparing(i -> nomi[i]));
+            for (int k = 0; k < dimensione; k++) {
+                membri[k] = ordinati[k];
+            }
+            finestra = FINESTRA;
+        }
+        for (int x = 0; x < dimensione; x++) {
+            int fine = Math.min(dimensione, x + 1 + finestra);
+            for (int y = x + 1; y < fine; y++) {
+                int i = membri[x];
+                int j = membri[y];
+                // Con lo stesso telefono la coppia è valutata solo dal blocco del telefono
+                if (stessoTelefono(i, j) != bloccoTelefono[blocco]) {
+                    continue;
+                }
+                SuggerimentoUnione s = valuta(i, j);
+                if (s != null) {
+                    risultato.add(s);
+                }
+            }
+        }
+    }
+
+    private boolean stessoTelefono(int i, int j) {
+        String telefono = persone[i].getTelefonoNormalizzato();
+        return telefono.length() >= CIFRE_MINIME_TELEFONO && telefono.equals(persone[j].getTelefonoNormalizzato());
+    }
+
+    /**
+     * Calcola la somiglianza di due persone.
+     *
+     * <ul>
+     *   <li>Nome e cognome sono confrontati con la distanza di Jaro-Winkler, anche scambiati;</li>
+     *   <li>serve anche lo stesso telefono o lo stesso indirizzo: due persone con lo stesso
+     *       nome e nient'altro in comune sono più probabilmente omonimi;</li>
+     *   <li>età note e diverse di più di un anno abbassano il punteggio (familiari con lo stesso numero).</li>
+     * </ul>
+     *
+     * @return Il suggerimento, oppure null se il punteggio è sotto SOGLIA.
+     */
+    private SuggerimentoUnione valuta(int i, int j) {
+        boolean telefono = stessoTelefono(i, j);
+        boolean indirizzo = !indirizzi[i].isEmpty() && indirizzi[i].equals(indirizzi[j]);
+        double fattoreEta = 1;
+        int eta1 = persone[i].getEta();
+        int eta2 = persone[j].getEta();
+        if (eta1 > 0 && eta2 > 0 && Math.abs(eta1 - eta2) > 1) {
+            fattoreEta = 0.85;
+        }
+        // Punteggio massimo possibile (nomi identici): se è sotto la soglia i nomi non si confrontano
+        double base = telefono ? 0.45 : (indirizzo ? 0.2 : 0);
+        double pesoNomi = telefono ? 0.55 : 0.8;
+        if ((base + pesoNomi) * fattoreEta < SOGLIA) {
+            return null;
+        }
+        double nomiSimili = media(somiglianza(nomi[i], nomi[j]), somiglianza(cognomi[i], cognomi[j]),
+                cognomi[i].isEmpty() && cognomi[j].isEmpty());
+        if (nomiSimili < 1) {
+            nomiSimili = Math.max(nomiSimili,
+                    media(somiglianza(nomi[i], cognomi[j]), somiglianza(cognomi[i], nomi[j]), false));
+        }
+        double punteggio = (base + pesoNomi * nomiSimili) * fattoreEta;
+        if (punteggio < SOGLIA) {
+            return null;
+        }
+
+        List<String> motivi = new ArrayList<>(3);
+        motivi.add(nomiSimili == 1 ? "stesso nome" : "nomi simili");
+        if (telefono) {
+            motivi.add("stesso telefono");
+        }
+        if (indirizzo) {
+            motivi.add("stesso indirizzo");
+        }
+        Persona p1 = persone[i];
+        Persona p2 = persone[j];
+        // Resta la persona inserita per prima
+        return p1.getID() <= p2.getID()
+                ? new SuggerimentoUnione(p1, p2, punteggio, String.join(", ", motivi))
+                : new SuggerimentoUnione(p2, p1, punteggio, String.join(", ", motivi));
+    }
+
+    private static double media(double nome, double cognome, boolean soloNome) {
+        return soloNome ? nome : (nome + cognome) / 2;
+    }
+
+    /**
+     * Somiglianza di Jaro-Winkler fra due testi: 1 se sono uguali, 0 se non hanno
+     * caratteri in comune; un prefisso comune (fino a 4 caratteri) la aumenta.
+     */
+    static double somiglianza(String s1, String s2) {
+        if (s1.equals(s2)) {
+            return 1;
+        }
+        int n1 = s1.length();
+        int n2 = s2.length();
+        if (n1 == 0 || n2 == 0) {
+            return 0;
+        }
+        int raggio = Math.max(0, Math.max(n1, n2) / 2 - 1);
+        boolean[] usati1 = new boolean[n1];
+        boolean[] usati2 = new boolean[n2];
+        int comuni = 0;
+        for (int i = 0; i < n1; i++) {
+            int fine = Math.min(n2, i + raggio + 1);
+            for (int j = Math.max(0, i - raggio); j < fine; j++) {
+                if (!usati2[j] && s1.charAt(i) == s2.charAt(j)) {
+                    usati1[i] = true;
+                    usati2[j] = true;
+                    comuni++;
+                    break;
+                }
+            }
+        }
+        if (comuni == 0) {
+            return 0;
+        }
+        int trasposizioni = 0;
+        for (int i = 0, j = 0; i < n1; i++) {
+            if (usati1[i]) {
+                while (!usati2[j]) {
+                    j++;
+                }
+                if (s1.charAt(i) != s2.charAt(j)) {
+                    trasposizioni++;
+                }
+                j++;
+            }
+        }
+        double jaro = ((double) comuni / n1 + (double) comuni / n2
+                + (comuni - trasposizioni / 2.0) / comuni) / 3;
+        int prefisso = 0;
+        while (prefisso < Math.min(4, Math.min(n1, n2)) && s1.charAt(prefisso) == s2.charAt(prefisso)) {
+            prefisso++;
+        }
+        return jaro + prefisso * 0.1 * (1 - jaro);
+    }
+
+    private static String soloLettereECifre(String testo) {
+        StringBuilder sb = new StringBuilder(testo.length());
+        for (int i = 0; i < testo.length(); i++) {
+            char c = testo.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
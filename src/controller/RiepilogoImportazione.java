@@ -0,0 +1,33 @@
+package controller;
+
+import java.io.File;
+
+/**
+ * Lo stato di un'importazione (ImportazioneCSV, ImportazioneVCard): viene passato
+ * all'ascoltatore durante l'importazione, dai thread che la eseguono, e restituito alla fine.
+ * Le "righe" sono le righe del file CSV o le schede del file vCard.
+ */
+public final class RiepilogoImportazione {
+    public final long lette;          // Righe o schede lette dal file (intestazione esclusa)
+    public final long inserite;       // Persone inserite nella rubrica
+    public final long scartate;       // Righe o schede non valide o rifiutate dal database
+    public final int percentuale;     // Parte del file già elaborata
+    public final File fileScartate;   // Il file delle righe scartate (null se non ce ne sono)
+    public final long millisecondi;   // Tempo trascorso dall'inizio
+
+    RiepilogoImportazione(long lette, long inserite, long scartate, int percentuale, File fileScartate, long millisecondi) {
+        this.lette = lette;
+        this.inserite = inserite;
+        this.scartate = scartate;
+        this.percentuale = percentuale;
+        this.fileScartate = fileScartate;
+        this.millisecondi = millisecondi;
+    }
+
+    /**
+     * @return Le righe (o schede) lette al secondo dall'inizio dell'importazione.
+     */
+    public long getLettePerSecondo() {
+        return lette * 1000 / Math.max(1, millisecondi);
+    }
+}
@@ -0,0 +1,443 @@
+package controller;
+
+import persistence.SupervisoreConnessione;
+
+import javax.swing.*;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * La classe ServizioAsincrono esegue le operazioni sul database su un pool di thread
+ * dedicato, in modo che il thread della GUI (EDT) non resti mai bloccato in attesa di MySQL.
+ *
+ * <ul>
+ *   <li>ogni operazione restituisce una {@link Operazione} basata su CompletableFuture;</li>
+ *   <li>i risultati e gli errori vengono consegnati sull'EDT (SwingUtilities.invokeLater);</li>
+ *   <li>gli ascoltatori registrati vengono avvisati (sull'EDT) di quante operazioni sono
+ *       in corso, per mostrare un indicatore di attività;</li>
+ *   <li>le operazioni possono essere annullate singolarmente o tutte insieme;</li>
+ *   <li>se è collegato un {@link SupervisoreConnessione}, le scritture richieste mentre il
+ *       server non è raggiungibile restano in coda e vengono eseguite, nell'ordine, quando
+ *       la connessione torna (vedi {@link #eseguiScrittura(OperazioneDB)}).</li>
+ * </ul>
+ *
+ * Il pool è limitato sia nel numero di thread sia nella coda di attesa: se la coda è
+ * piena l'operazione fallisce subito invece di accumulare lavoro senza limite.
+ */
+public class ServizioAsincrono {
+
+    // Numero massimo di operazioni in attesa di un thread libero
+    public static final int DIMENSIONE_CODA = 1000;
+
+    /**
+     * Un'operazione da eseguire sul database, che può lanciare eccezioni controllate.
+     */
+    @FunctionalInterface
+    public interface OperazioneDB<T> {
+        T esegui() throws Exception;
+    }
+
+    /**
+     * Un'operazione senza risultato da eseguire sul database.
+     */
+    @FunctionalInterface
+    public interface AzioneDB {
+        void esegui() throws Exception;
+    }
+
+    private final ThreadPoolExecutor esecutore;
+    private final AtomicInteger inCorso = new AtomicInteger();
+    private final Set<Operazione<?>> attive = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<Integer>> ascoltatori = new CopyOnWriteArrayList<>();
+
+    // Supervisore della connessione al server (null se l'archivio non usa la rete)
+    private volatile SupervisoreConnessione supervisore;
+    private final List<Consumer<SupervisoreConnessione.Stato>> ascoltatoriConnessione = new CopyOnWriteArrayList<>();
+
+    // Scritture in attesa che torni la connessione, nell'ordine in cui sono state richieste
+    private final ArrayDeque<Runnable> scrittureInAttesa = new ArrayDeque<>();
+    private boolean ripresaInCorso = false;    // Protetto da scrittureInAttesa
+
+    /**
+     * @param numeroThread Numero di thread dedicati alle operazioni sul database
+     *                     (tipicamente pari alla dimensione massima del pool di connessioni).
+     */
+    public ServizioAsincrono(int numeroThread) {
+        AtomicInteger contatore = new AtomicInteger();
+        this.esecutore = new ThreadPoolExecutor(
+                numeroThread, numeroThread, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(DIMENSIONE_CODA),
+                r -> {
+                    Thread t = new Thread(r, "db-" + contatore.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.esecutore.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Registra un ascoltatore che riceve (sull'EDT) il numero di operazioni in corso
+     * ogni volta che questo cambia.
+     *
+     * @param ascoltatore Il codice da eseguire a ogni variazione.
+     */
+    public void aggiungiAscoltatore(Consumer<Integer> ascoltatore) {
+        ascoltatori.add(ascoltatore);
+    }
+
+    public void rimuoviAscoltatore(Consumer<Integer> ascoltatore) {
+        ascoltatori.remove(ascoltatore);
+    }
+
+    /**
+     * Collega il supervisore della connessione al server. Da quel momento le operazioni che
+     * falliscono per un errore di connessione anticipano il suo controllo, e le scritture
+     * rimaste in coda mentre il server non era raggiungibile ripartono appena torna.
+     *
+     * @param supervisore Il supervisore della connessione usata dall'archivio.
+     */
+    public void collegaSupervisore(SupervisoreConnessione supervisore) {
+        this.supervisore = supervisore;
+        supervisore.aggiungiAscoltatore(stato -> {
+            if (stato == SupervisoreConnessione.Stato.CONNESSO) {
+                riprendiScritture();
+            }
+            if (!ascoltatoriConnessione.isEmpty()) {
+                SwingUtilities.invokeLater(() -> {
+                    for (Consumer<SupervisoreConnessione.Stato> a : ascoltatoriConnessione) {
+                        a.accept(stato);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Registra un ascoltatore che riceve (sull'EDT) lo stato della connessione al server
+     * ogni volta che questo cambia. Senza un supervisore collegato non viene mai chiamato.
+     *
+     * @param ascoltatore Il codice da eseguire a ogni cambio di stato.
+     */
+    public void aggiungiAscoltatoreConnessione(Consumer<SupervisoreConnessione.Stato> ascoltatore) {
+        ascoltatoriConnessione.add(ascoltatore);
+    }
+
+    public void rimuoviAscoltatoreConnessione(Consumer<SupervisoreConnessione.Stato> ascoltatore) {
+        ascoltatoriConnessione.remove(ascoltatore);
+    }
+
+    /**
+     * @return true se il server è raggiungibile (o se nessun supervisore è collegato).
+     */
+    public boolean isConnesso() {
+        SupervisoreConnessione s = supervisore;
+        return s == null || s.isConnesso();
+    }
+
+    /**
+     * @return Il numero di scritture in attesa che torni la connessione.
+     */
+    public int getScrittureInAttesa() {
+        synchronized (scrittureInAttesa) {
+            return scrittureInAttesa.size();
+        }
+    }
+
+    /**
+     * @return Il numero di operazioni attualmente in coda o in esecuzione.
+     */
+    public int getOperazioniInCorso() {
+        return inCorso.get();
+    }
+
+    /**
+     * Esegue un'operazione con risultato su un thread del pool.
+     *
+     * @param operazione L'operazione da eseguire.
+     * @return L'operazione avviata, a cui agganciare le callback.
+     */
+    public <T> Operazione<T> esegui(OperazioneDB<T> operazione) {
+        Operazione<T> op = nuovaOperazione();
+        avvia(op, operazione);
+        return op;
+    }
+
+    /**
+     * Esegue un'operazione senza risultato su un thread del pool.
+     *
+     * @param azione L'azione da eseguire.
+     * @return L'operazione avviata, a cui agganciare le callback.
+     */
+    public Operazione<Void> esegui(AzioneDB azione) {
+        return esegui(() -> {
+            azione.esegui();
+            return null;
+        });
+    }
+
+    /**
+     * Esegue una scrittura su un thread del pool. Se il server non è raggiungibile, o se ci
+     * sono già scritture in attesa, la scrittura viene messa in coda e verrà eseguita dopo
+     * di loro quando la connessione torna: fino ad allora l'operazione resta in corso (e si
+     * può annullare). Le scritture in attesa sono al massimo DIMENSIONE_CODA, oltre
+     * l'operazione fallisce subito.
+     *
+     * @param operazione La scrittura da eseguire.
+     * @return L'operazione avviata, a cui agganciare le callback.
+     */
+    public <T> Operazione<T> eseguiScrittura(OperazioneDB<T> operazione) {
+        Operazione<T> op = nuovaOperazione();
+        op.scrittura = true;
+        boolean inCoda;
+        synchronized (scrittureInAttesa) {
+            inCoda = !scrittureInAttesa.isEmpty() || !isConnesso();
+            if (inCoda && scrittureInAttesa.size() < DIMENSIONE_CODA) {
+                scrittureInAttesa.addLast(() -> completa(op, operazione));
+            } else if (inCoda) {
+                op.fallisci(new RejectedExecutionException("Troppe scritture in attesa della connessione al server."));
+            }
+        }
+        if (!inCoda) {
+            avvia(op, operazione);
+        } else if (isConnesso()) {
+            riprendiScritture();    // La connessione è appena tornata: la coda si sta svuotando
+        }
+        return op;
+    }
+
+    /**
+     * Esegue una scrittura senza risultato (vedi {@link #eseguiScrittura(OperazioneDB)}).
+     *
+     * @param azione La scrittura da eseguire.
+     * @return L'operazione avviata, a cui agganciare le callback.
+     */
+    public Operazione<Void> eseguiScrittura(AzioneDB azione) {
+        return eseguiScrittura(() -> {
+            azione.esegui();
+            return null;
+        });
+    }
+
+    /**
+     * Annulla tutte le operazioni in coda o in esecuzione (vedi Operazione.annulla): le
+     * scritture già iniziate vengono lasciate terminare, con le loro callback.
+     */
+    public void annullaTutte() {
+        for (Operazione<?> op : attive) {
+            op.annulla();
+        }
+    }
+
+    /**
+     * Ferma il pool di thread, annullando le operazioni ancora in corso.
+     */
+    public void chiudi() {
+        annullaTutte();
+        esecutore.shutdownNow();
+    }
+
+    private <T> Operazione<T> nuovaOperazione() {
+        Operazione<T> op = new Operazione<>();
+        attive.add(op);
+        notificaAscoltatori(inCorso.incrementAndGet());
+        op.futuro.whenComplete((r, e) -> {
+            attive.remove(op);
+            notificaAscoltatori(inCorso.decrementAndGet());
+        });
+        return op;
+    }
+
+    private <T> void avvia(Operazione<T> op, OperazioneDB<T> operazione) {
+        try {
+            op.esecuzione = esecutore.submit(() -> completa(op, operazione));
+        } catch (RejectedExecutionException ex) {
+            op.fallisci(ex);
+        }
+    }
+
+    /**
+     * Esegue l'operazione sul thread corrente e ne completa il futuro. Un errore di
+     * connessione viene segnalato al supervisore, che controlla subito il server.
+     */
+    private <T> void completa(Operazione<T> op, OperazioneDB<T> operazione) {
+        if (!op.avviata.compareAndSet(false, true)) {
+            return; // Annullata prima di iniziare
+        }
+        try {
+            op.futuro.complete(operazione.esegui());
+        } catch (Throwable ex) {
+            SupervisoreConnessione s = supervisore;
+            if (s != null && SupervisoreConnessione.isErroreDiConnessione(ex)) {
+                s.segnalaGuasto();
+            }
+            op.futuro.completeExceptionally(ex);
+        } finally {
+            op.terminata.complete(null);
+        }
+    }
+
+    /**
+     * Avvia, se non è già in corso, lo svuotamento della coda delle scritture in attesa.
+     */
+    private void riprendiScritture() {
+        synchronized (scrittureInAttesa) {
+            if (ripresaInCorso || scrittureInAttesa.isEmpty()) {
+                return;
+            }
+            ripresaInCorso = true;
+        }
+        try {
+            esecutore.execute(this::eseguiScrittureInAttesa);
+        } catch (RejectedExecutionException ex) {
+            // Pool pieno: si riprenderà alla prossima scrittura o alla prossima riconnessione
+            synchronized (scrittureInAttesa) {
+                ripresaInCorso = false;
+            }
+        }
+    }
+
+    /**
+     * Esegue le scritture in attesa una alla volta, nell'ordine in cui sono state richieste,
+     * finché la coda è vuota o la connessione cade di nuovo.
+     */
+    private void eseguiScrittureInAttesa() {
+        while (true) {
+            Runnable scrittura;
+            synchronized (scrittureInAttesa) {
+                if (scrittureInAttesa.isEmpty() || !isConnesso()) {
+                    ripresaInCorso = false;
+                    return;
+                }
+                scrittura = scrittureInAttesa.pollFirst();
+            }
+            scrittura.run();
+        }
+    }
+
+    private void notificaAscoltatori(int numero) {
+        if (ascoltatori.isEmpty()) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            for (Consumer<Integer> a : ascoltatori) {
+                a.accept(numero);
+            }
+        });
+    }
+
+    /**
+     * Un'operazione avviata dal ServizioAsincrono.
+     */
+    public static class Operazione<T> {
+
+        private final CompletableFuture<T> futuro = new CompletableFuture<>();
+        private volatile Future<?> esecuzione;
+
+        // Impostata da chi "prende" l'operazione per primo: il thread che la esegue o annulla()
+        private final AtomicBoolean avviata = new AtomicBoolean(false);
+
+        // Completata quando il codice dell'operazione è terminato, o se non partirà mai
+        private final CompletableFuture<Void> terminata = new CompletableFuture<>();
+
+        // Avviata con eseguiScrittura: una volta iniziata non viene più annullata
+        private volatile boolean scrittura;
+
+        /**
+         * Registra le callback da eseguire sull'EDT al termine dell'operazione.
+         * Se l'operazione è stata annullata nessuna delle due viene chiamata.
+         *
+         * @param successo Chiamata con il risultato in caso di successo.
+         * @param errore   Chiamata con l'eccezione originale in caso di errore.
+         * @return Questa stessa operazione.
+         */
+        public Operazione<T> alTermine(Consumer<? super T> successo, Consumer<Throwable> errore) {
+            futuro.whenCompleteAsync((risultato, ex) -> {
+                if (futuro.isCancelled()) {
+                    return;
+                }
+                if (ex == null) {
+                    successo.accept(risultato);
+                } else {
+                    errore.accept(causa(ex));
+                }
+            }, SwingUtilities::invokeLater);
+            return this;
+        }
+
+        /**
+         * Registra il codice da eseguire sull'EDT quando l'operazione è finita in qualunque
+         * modo: con successo, con un errore oppure annullata. Viene chiamato dopo le callback
+         * di alTermine e, se l'operazione era in esecuzione quando è stata annullata, solo
+         * dopo che il suo thread si è fermato. Serve a ripristinare lo stato della GUI
+         * (voci di menu, avanzamento) anche quando alTermine non viene chiamato.
+         *
+         * @param azione Il codice da eseguire.
+         * @return Questa stessa operazione.
+         */
+        public Operazione<T> allaFine(Runnable azione) {
+            terminata.whenCompleteAsync((r, ex) -> azione.run(), SwingUtilities::invokeLater);
+            return this;
+        }
+
+        /**
+         * Annulla l'operazione: se non è ancora iniziata non verrà eseguita (e le sue callback
+         * di alTermine non verranno chiamate), se è in esecuzione il thread viene interrotto e
+         * il risultato scartato. Fanno eccezione le scritture già iniziate: l'INSERT, l'UPDATE
+         * o il commit potrebbero andare a buon fine comunque, quindi vengono lasciate
+         * terminare e le loro callback riportano nella GUI quello che è stato salvato.
+         */
+        public void annulla() {
+            if (avviata.compareAndSet(false, true)) {
+                futuro.cancel(false);
+                terminata.complete(null);   // Non ancora iniziata: non partirà più
+                return;
+            }
+            if (scrittura) {
+                return;
+            }
+            futuro.cancel(false);
+            Future<?> e = esecuzione;
+            if (e != null) {
+                e.cancel(true);
+            }
+        }
+
+        private void fallisci(Throwable ex) {
+            avviata.set(true);
+            futuro.completeExceptionally(ex);
+            terminata.complete(null);
+        }
+
+        public boolean isAnnullata() {
+            return futuro.isCancelled();
+        }
+
+        /**
+         * @return Il CompletableFuture sottostante, per comporre più operazioni.
+         */
+        public CompletableFuture<T> getFuturo() {
+            return futuro;
+        }
+
+        private static Throwable causa(Throwable ex) {
+            while ((ex instanceof CompletionException || ex instanceof CancellationException) && ex.getCause() != null) {
+                ex = ex.getCause();
+            }
+            return ex;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package controller;
+
+import models.Esadecimale;
+import models.Utente;
+import persistence.CredenzialiUtente;
+import persistence.UtenteStore;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe ServizioAutenticazione verifica le password al login e calcola quelle delle
+ * nuove registrazioni, con PBKDF2-HMAC-SHA256 e un numero di iterazioni configurabile
+ * (proprietà "pbkdf2-iterazioni"; per sceglierlo vedi benchmark/controller/PrestazioniAutenticazione).
+ *
+ * Il calcolo dell'hash, che occupa la CPU per decine o centinaia di millisecondi, viene
+ * eseguito su un pool di thread dedicato, grande quanto i processori: il pool del
+ * ServizioAsincrono (dimensionato sulle connessioni al database) resta libero per le query
+ * e molti login contemporanei non si contendono la CPU oltre il necessario.
+ *
+ * Formato dell'hash memorizzato nella colonna password:
+ * <ul>
+ *   <li>"pbkdf2-sha256$iterazioni$hash esadecimale", con un salt casuale di 16 byte (32 cifre esadecimali);</li>
+ *   <li>64 cifre esadecimali senza prefisso per le utenze precedenti: SHA-256 di password + salt.</li>
+ * </ul>
+ * Quando un login riesce con un hash del vecchio formato, o con un numero di iterazioni
+ * diverso da quello configurato, la password viene ricalcolata e salvata nel nuovo formato.
+ * Il confronto degli hash richiede sempre lo stesso tempo, qualunque sia il primo byte diverso.
+ */
+public class ServizioAutenticazione {
+
+    // Chiave nel file properties e valore di default (raccomandazione OWASP per PBKDF2-HMAC-SHA256)
+    public static final String PROP_ITERAZIONI = "pbkdf2-iterazioni";
+    public static final int DEFAULT_ITERAZIONI = 600_000;
+
+    // Richieste di hash che possono attendere un thread libero
+    public static final int DIMENSIONE_CODA = 100;
+
+    private static final String ALGORITMO = "PBKDF2WithHmacSHA256";
+    private static final String PREFISSO = "pbkdf2-sha256$";
+    private static final int BYTE_SALT = 16;
+    private static final int BIT_HASH = 256;
+
+    // Oggetti JCA riusati da ogni thread del pool, invece di crearne uno per ogni hash
+    private static final ThreadLocal<SecretKeyFactory> FABBRICA = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITMO);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITMO + " non disponibile", ex);
+        }
+    });
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("SHA-256 non disponibile", ex);
+        }
+    });
+
+    private final UtenteStore utenti;
+    private final int iterazioni;
+    private final ThreadPoolExecutor esecutore;
+    private final SecureRandom random = new SecureRandom();
+
+    // Hash confrontato quando lo username non esiste, perché la risposta arrivi nello stesso tempo
+    private final String hashFittizio;
+    private final String saltFittizio;
+
+    /**
+     * @param utenti       Lo store delle utenze.
+     * @param iterazioni   Le iterazioni di PBKDF2 per i nuovi hash (>= 1).
+     * @param numeroThread I thread dedicati al calcolo degli hash (>= 1).
+     * @throws IllegalArgumentException se iterazioni o numeroThread sono minori di 1
+     */
+    public ServizioAutenticazione(UtenteStore utenti, int iterazioni, int numeroThread) throws IllegalArgumentException {
+        if (iterazioni < 1 || numeroThread < 1) {
+            throw new IllegalArgumentException("Iterazioni e numero di thread devono essere almeno 1.");
+        }
+        this.utenti = utenti;
+        this.iterazioni = iterazioni;
+        AtomicInteger contatore = new AtomicInteger();
+        this.esecutore = new ThreadPoolExecutor(
+                numeroThread, numeroThread, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(DIMENSIONE_CODA),
+                r -> {
+                    Thread t = new Thread(r, "hash-" + contatore.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.esecutore.allowCoreThreadTimeOut(true);
+        this.saltFittizio = nuovoSalt();
+        this.hashFittizio = formatta(iterazioni, new byte[BIT_HASH / 8]);
+    }
+
+    /**
+     * Crea il servizio leggendo le iterazioni dal file properties, con un thread per processore.
+     *
+     * @throws IllegalArgumentException se il valore non è un numero valido
+     */
+    public static ServizioAutenticazione daProperties(UtenteStore utenti, Properties props) throws IllegalArgumentException {
+        return new ServizioAutenticazione(utenti,
+                Integer.parseInt(props.getProperty(PROP_ITERAZIONI, String.valueOf(DEFAULT_ITERAZIONI)).trim()),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Verifica le credenziali; se sono corrette e l'hash memorizzato non è nel formato
+     * attuale, lo ricalcola e lo salva (un errore in questo passaggio non fa fallire il login).
+     * Attende il calcolo dell'hash: va chiamato fuori dal thread della GUI.
+     *
+     * @param username Lo username inserito.
+     * @param password La password inserita.
+     * @return L'utente autenticato, oppure null se le credenziali non sono valide.
+     * @throws SQLException         se non è possibile leggere le utenze.
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa.
+     */
+    public Utente autentica(String username, String password) throws SQLException, InterruptedException {
+        CredenzialiUtente credenziali = utenti.cercaCredenziali(username);
+        if (credenziali == null) {
+            calcola(() -> verifica(password, hashFittizio, saltFittizio));
+            return null;
+        }
+        String memorizzato = credenziali.getHashPassword();
+        if (!calcola(() -> verifica(password, memorizzato, credenziali.getSalt()))) {
+            return null;
+        }
+
+        String hash = memorizzato;
+        if (!isAggiornato(memorizzato)) {
+            String salt = nuovoSalt();
+            String nuovo = calcola(() -> hashPbkdf2(password, salt, iterazioni));
+            try {
+                if (utenti.aggiornaPassword(username, nuovo, salt)) {
+                    hash = nuovo;
+                }
+            } catch (SQLException ex) {
+                ex.printStackTrace();  // Si riproverà al prossimo login
+            }
+        }
+        return new Utente(username, hash, credenziali.getId());
+    }
+
+    /**
+     * Registra un nuovo utente con l'hash nel formato attuale.
+     * Attende il calcolo dell'hash: va chiamato fuori dal thread della GUI.
+     *
+     * @return true se l'utente è stato creato, false se lo username esiste già.
+     * @throws SQLException         se la scrittura fallisce.
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa.
+     */
+    public boolean registra(String username, String password) throws SQLException, InterruptedException {
+        String salt = nuovoSalt();
+        String hash = calcola(() -> hashPbkdf2(password, salt, iterazioni));
+        return utenti.registraUtente(username, hash, salt);
+    }
+
+    /**
+     * Crea molte utenze insieme, ad esempio per l'arrivo di una nuova organizzazione: gli hash
+     * vengono calcolati in parallelo su tutti i thread del pool e le utenze inserite con una
+     * sola UtenteStore.registraUtenti (per MySQL, INSERT multi-riga a blocchi).
+     * Attende il calcolo degli hash: va chiamato fuori dal thread della GUI.
+     *
+     * @param credenziali Username e password in chiaro delle utenze da creare.
+     * @return Gli username saltati perché già esistenti, nell'ordine della mappa.
+     * @throws SQLException         se la scrittura fallisce.
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa.
+     */
+    public List<String> registraUtenti(Map<String, String> credenziali) throws SQLException, InterruptedException {
+        List<CredenzialiUtente> nuovi = new ArrayList<>(credenziali.size());
+        List<Map.Entry<String, String>> voci = new ArrayList<>(credenziali.entrySet());
+        // Non più richieste di quante ne possa accettare la coda del pool
+        for (int inizio = 0; inizio < voci.size(); inizio += DIMENSIONE_CODA) {
+            List<Future<CredenzialiUtente>> hash = new ArrayList<>(DIMENSIONE_CODA);
+            for (Map.Entry<String, String> voce : voci.subList(inizio, Math.min(inizio + DIMENSIONE_CODA, voci.size()))) {
+                String salt = nuovoSalt();
+                hash.add(esecutore.submit(() ->
+                        new CredenzialiUtente(0, voce.getKey(), hashPbkdf2(voce.getValue(), salt, iterazioni), salt)));
+            }
+            for (Future<CredenzialiUtente> h : hash) {
+                nuovi.add(attendi(h));
+            }
+        }
+
+        int[] id = utenti.registraUtenti(nuovi);
+        List<String> esistenti = new ArrayList<>();
+        for (int i = 0; i < id.length; i++) {
+            if (id[i] == 0) {
+                esistenti.add(nuovi.get(i).getUsername());
+            }
+        }
+        return esistenti;
+    }
+
+    /**
+     * @return Le iterazioni di PBKDF2 usate per i nuovi hash.
+     */
+    public int getIterazioni() {
+        return iterazioni;
+    }
+
+    /**
+     * Ferma i thread del pool.
+     */
+    public void chiudi() {
+        esecutore.shutdownNow();
+    }
+
+    /**
+     * Calcola l'hash PBKDF2 di una password nel formato memorizzato.
+     *
+     * @param password   La password in chiaro.
+     * @param salt       Il salt, in esadecimale.
+     * @param iterazioni Le iterazioni di PBKDF2.
+     * @return "pbkdf2-sha256$iterazioni$hash esadecimale".
+     */
+    public static String hashPbkdf2(String password, String salt, int iterazioni) {
+        return formatta(iterazioni, deriva(password, Esadecimale.decodifica(salt), iterazioni));
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Esegue un calcolo sul pool dedicato e ne attende il risultato.
+     */
+    private <T> T calcola(Callable<T> calcolo) throws InterruptedException {
+        return attendi(esecutore.submit(calcolo));
+    }
+
+    private static <T> T attendi(Future<T> futuro) throws InterruptedException {
+        try {
+            return futuro.get();
+        } catch (ExecutionException ex) {
+            Throwable causa = ex.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new IllegalStateException(causa);
+        }
+    }
+
+    /**
+     * Confronta in tempo costante la password con l'hash memorizzato, in uno dei due formati.
+     */
+    private static boolean verifica(String password, String memorizzato, String salt) {
+        byte[] atteso;
+        byte[] calcolato;
+        try {
+            if (memorizzato.startsWith(PREFISSO)) {
+                int dollaro = memorizzato.indexOf('$', PREFISSO.length());
+                int iterazioniMemorizzate = Integer.parseInt(memorizzato.substring(PREFISSO.length(), dollaro));
+                atteso = Esadecimale.decodifica(memorizzato.substring(dollaro + 1));
+                calcolato = deriva(password, Esadecimale.decodifica(salt), iterazioniMemorizzate);
+            } else {
+                atteso = Esadecimale.decodifica(memorizzato);
+                calcolato = SHA256.get().digest((password + salt).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException ex) {
+            return false;  // Hash memorizzato non valido: nessuna password corrisponde
+        }
+        return MessageDigest.isEqual(atteso, calcolato);
+    }
+
+    private boolean isAggiornato(String memorizzato) {
+        return memorizzato.startsWith(PREFISSO + iterazioni + "$");
+    }
+
+    private static byte[] deriva(String password, byte[] salt, int iterazioni) {
+        char[] caratteri = password.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(caratteri, salt, iterazioni, BIT_HASH);
+        try {
+            return FABBRICA.get().generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(caratteri, '\0');
+        }
+    }
+
+    private static String formatta(int iterazioni, byte[] hash) {
+        return PREFISSO + iterazioni + "$" + Esadecimale.codifica(hash);
+    }
+
+    private String nuovoSalt() {
+        byte[] salt = new byte[BYTE_SALT];
+        random.nextBytes(salt);
+        return Esadecimale.codifica(salt);
+    }
+}
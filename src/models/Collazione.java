@@ -0,0 +1,202 @@
+package models;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * La classe Collazione raccoglie le regole con cui la tabella ordina le persone: nomi e
+ * cognomi secondo l'ordine alfabetico italiano, senza distinguere maiuscole e accenti
+ * ("de luca", "De Luca" e "Dè Luca" sono equivalenti), telefoni per cifre.
+ *
+ * I confronti usano le CollationKey che ogni Persona calcola una volta sola (vedi
+ * Persona.getChiaveNome), quindi non chiamano mai Collator.compare. Per ordinare molte
+ * persone, ordina usa inoltre chiavi abbreviate:
+ * <ul>
+ *   <li>i primi byte della chiave di ogni persona vengono compressi in un long, insieme
+ *       alla sua posizione, e si ordina l'array di long (nessun oggetto, nessun comparatore);</li>
+ *   <li>solo i gruppi di persone con lo stesso prefisso vengono poi ordinati con il
+ *       comparatore completo.</li>
+ * </ul>
+ */
+public final class Collazione {
+
+    // Collator non è thread-safe: ogni thread usa la propria istanza
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator collator = Collator.getInstance(Locale.ITALIAN);
+        collator.setStrength(Collator.PRIMARY);  // Ignora maiuscole e accenti
+        collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return collator;
+    });
+
+    /**
+     * I criteri con cui si possono ordinare le persone. A parità di chiave decide l'ID,
+     * così che l'ordine sia sempre totale.
+     */
+    public enum Criterio {
+        /** Per nome, poi per cognome. */
+        NOME((a, b) -> {
+            int c = a.getChiaveNome().compareTo(b.getChiaveNome());
+            if (c == 0) {
+                c = a.getChiaveCognome().compareTo(b.getChiaveCognome());
+            }
+            return c != 0 ? c : Integer.compare(a.getID(), b.getID());
+        }),
+        /** Per cognome, poi per nome. */
+        COGNOME((a, b) -> {
+            int c = a.getChiaveCognome().compareTo(b.getChiaveCognome());
+            if (c == 0) {
+                c = a.getChiaveNome().compareTo(b.getChiaveNome());
+            }
+            return c != 0 ? c : Integer.compare(a.getID(), b.getID());
+        }),
+        /** Per telefono normalizzato (vedi Telefono.normalizza). */
+        TELEFONO((a, b) -> {
+            int c = a.getTelefonoNormalizzato().compareTo(b.getTelefonoNormalizzato());
+            return c != 0 ? c : Integer.compare(a.getID(), b.getID());
+        });
+
+        private final Comparator<Persona> comparatore;
+
+        Criterio(Comparator<Persona> comparatore) {
+            this.comparatore = comparatore;
+        }
+
+        /**
+         * @param crescente false per l'ordine inverso.
+         * @return Il comparatore del criterio.
+         */
+        public Comparator<Persona> comparatore(boolean crescente) {
+            return crescente ? comparatore : comparatore.reversed();
+        }
+
+        /**
+         * @return Il prefisso della chiave di ordinamento della persona: se il prefisso di a
+         *         è minore (senza segno) di quello di b, a viene prima di b.
+         */
+        long prefisso(Persona p) {
+            switch (this) {
+                case NOME:
+                    return unisci(p.getPrefissoNome(), p.getPrefissoCognome());
+                case COGNOME:
+                    return unisci(p.getPrefissoCognome(), p.getPrefissoNome());
+                case TELEFONO:
+                default:
+                    return p.getPrefissoTelefono();
+            }
+        }
+    }
+
+    private Collazione() {
+    }
+
+    /**
+     * @return La chiave di ordinamento del testo secondo le regole italiane.
+     */
+    public static CollationKey chiave(String testo) {
+        return COLLATOR.get().getCollationKey(testo);
+    }
+
+    /**
+     * Ordina le persone secondo il criterio indicato. Le chiavi mancanti vengono calcolate
+     * in parallelo, poi ordinamento delle chiavi abbreviate e dei gruppi con lo stesso prefisso.
+     *
+     * @param persone   Le persone da ordinare (l'array viene modificato).
+     * @param criterio  Il criterio di ordinamento.
+     * @param crescente false per l'ordine inverso.
+     */
+    public static void ordina(Persona[] persone, Criterio criterio, boolean crescente) {
+        int n = persone.length;
+        if (n < 2) {
+            return;
+        }
+        // Ogni long contiene il prefisso nei bit alti e la posizione della persona nei bit bassi
+        int bitPosizione = 32 - Integer.numberOfLeadingZeros(n - 1);
+        int bitPrefisso = 63 - bitPosizione;
+        long mascheraPrefisso = (1L << bitPrefisso) - 1;
+        long[] chiavi = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            long prefisso = criterio.prefisso(persone[i]) >>> (64 - bitPrefisso);
+            if (!crescente) {
+                prefisso = ~prefisso & mascheraPrefisso;
+            }
+            chiavi[i] = prefisso << bitPosizione | i;
+        });
+        Arrays.parallelSort(chiavi);
+
+        Persona[] ordinate = new Persona[n];
+        long mascheraPosizione = (1L << bitPosizione) - 1;
+        for (int i = 0; i < n; i++) {
+            ordinate[i] = persone[(int) (chiavi[i] & mascheraPosizione)];
+        }
+        // Le persone con lo stesso prefisso vanno confrontate per intero
+        Comparator<Persona> comparatore = criterio.comparatore(crescente);
+        int inizio = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || chiavi[i] >>> bitPosizione != chiavi[inizio] >>> bitPosizione) {
+                if (i - inizio > 1) {
+                    Arrays.sort(ordinate, inizio, i, comparatore);
+                }
+                inizio = i;
+            }
+        }
+        System.arraycopy(ordinate, 0, persone, 0, n);
+    }
+
+    /**
+     * Comprime i pesi primari di una CollationKey nei primi 7 byte di un long, rispettandone
+     * l'ordine: i pesi fino a 0xFE occupano un byte, gli altri tre (0xFF e il peso).
+     * L'ultimo byte contiene il numero di byte usati (7 se la chiave è stata troncata).
+     *
+     * @return Il prefisso della chiave, da memorizzare con la chiave stessa (vedi Persona).
+     */
+    static long prefisso(CollationKey chiave) {
+        byte[] pesi = chiave.toByteArray();
+        long valore = 0;
+        int usati = 0;
+        for (int i = 0; i + 1 < pesi.length && usati < 7; i += 2) {
+            int peso = (pesi[i] & 0xFF) << 8 | (pesi[i + 1] & 0xFF);
+            if (peso == 0) {
+                break;  // Fine dei pesi primari
+            }
+            if (peso < 0xFF) {
+                valore |= (long) peso << (56 - 8 * usati++);
+            } else {
+                // Tre byte: se non ci stanno tutti, ne restano quanti ne entrano (troncamento)
+                int[] byteEscape = {0xFF, peso >>> 8, peso & 0xFF};
+                for (int j = 0; j < 3 && usati < 7; j++) {
+                    valore |= (long) byteEscape[j] << (56 - 8 * usati++);
+                }
+            }
+        }
+        return valore | usati;
+    }
+
+    /**
+     * @return Il prefisso di un telefono normalizzato: le cifre occupano 4 bit ciascuna
+     *         (0 indica la fine del numero).
+     */
+    static long prefissoNumero(String numero) {
+        long valore = 0;
+        for (int i = 0; i < numero.length() && i < 16; i++) {
+            valore |= (long) (numero.charAt(i) - '0' + 1) << (60 - 4 * i);
+        }
+        return valore;
+    }
+
+    /**
+     * Unisce i prefissi di due chiavi: i byte della prima, lo 0 di fine chiave e, se c'è
+     * spazio, i primi byte della seconda.
+     */
+    private static long unisci(long primo, long secondo) {
+        int usati = (int) (primo & 0xFF);
+        long alto = primo & ~0xFFL;
+        if (usati >= 7) {
+            return alto;
+        }
+        return alto | (secondo & ~0xFFL) >>> (8 * (usati + 1));
+    }
+}
@@ -0,0 +1,64 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * La classe Esadecimale converte array di byte in stringhe esadecimali minuscole e viceversa,
+ * con due tabelle precalcolate: niente String.format né Integer.parseInt per ogni byte.
+ */
+public final class Esadecimale {
+
+    private static final char[] CIFRE = "0123456789abcdef".toCharArray();
+
+    // Valore di ogni carattere ASCII come cifra esadecimale (maiuscola o minuscola), -1 se non lo è
+    private static final byte[] VALORI = new byte[128];
+
+    static {
+        Arrays.fill(VALORI, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            VALORI[CIFRE[i]] = (byte) i;
+            VALORI[Character.toUpperCase(CIFRE[i])] = (byte) i;
+        }
+    }
+
+    private Esadecimale() {
+    }
+
+    /**
+     * @param dati I byte da convertire.
+     * @return La stringa esadecimale (due cifre minuscole per byte).
+     */
+    public static String codifica(byte[] dati) {
+        char[] risultato = new char[dati.length * 2];
+        for (int i = 0; i < dati.length; i++) {
+            risultato[2 * i] = CIFRE[(dati[i] >> 4) & 0xF];
+            risultato[2 * i + 1] = CIFRE[dati[i] & 0xF];
+        }
+        return new String(risultato);
+    }
+
+    /**
+     * @param testo Una stringa esadecimale di lunghezza pari (maiuscole o minuscole).
+     * @return I byte rappresentati.
+     * @throws IllegalArgumentException se la lunghezza è dispari o c'è un carattere non esadecimale.
+     */
+    public static byte[] decodifica(String testo) throws IllegalArgumentException {
+        if (testo.length() % 2 != 0) {
+            throw new IllegalArgumentException("La stringa esadecimale ha lunghezza dispari.");
+        }
+        byte[] risultato = new byte[testo.length() / 2];
+        for (int i = 0; i < risultato.length; i++) {
+            int alto = valore(testo.charAt(2 * i));
+            int basso = valore(testo.charAt(2 * i + 1));
+            if ((alto | basso) < 0) {
+                throw new IllegalArgumentException("Carattere non esadecimale nella posizione " + (2 * i) + ".");
+            }
+            risultato[i] = (byte) (alto << 4 | basso);
+        }
+        return risultato;
+    }
+
+    private static int valore(char c) {
+        return c < 128 ? VALORI[c] : -1;
+    }
+}
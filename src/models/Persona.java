@@ -1,5 +1,7 @@
 package models;
 
+import java.text.CollationKey;
+
 /**
  * La classe Persona rappresenta un contatto all'interno della rubrica telefonica.
  * È legata a un particolare utente (rappresentato da un ID_Utente) e contiene 
@@ -26,6 +28,8 @@ public class Persona {
     private int ID_Utente;    // Identificativo univoco dell'utente proprietario
     private String Nome;      // Nome (non può essere null o vuoto)
     private String Telefono;  // Telefono (non può essere null o vuoto)
+    private String TelefonoNormalizzato;  // Calcolato da setTelefono (vedi Telefono.normalizza)
+    private long PrefissoTelefono;        // Calcolato da setTelefono (vedi Collazione)
 
     // ----------------------------
     //  ATTRIBUTI OPZIONALI
@@ -33,6 +37,13 @@ public class Persona {
     private String Cognome;   // Può essere vuoto
     private String Indirizzo; // Può essere vuoto
     private int Eta;          // Se negativo, lancia un'eccezione
+    private boolean Completa = true;  // false se indirizzo ed età non sono stati letti (vedi perElenco)
+
+    // Chiavi di ordinamento di nome e cognome con i loro prefissi, calcolati al primo uso (vedi Collazione)
+    private CollationKey ChiaveNome;
+    private CollationKey ChiaveCognome;
+    private long PrefissoNome;
+    private long PrefissoCognome;
 
     /**
      * Costruttore completo della classe Persona.
@@ -63,6 +74,20 @@ public class Persona {
         this.setEta(Eta);
     }
 
+    /**
+     * Crea una persona con i soli dati mostrati nell'elenco della rubrica (nome, cognome e
+     * telefono): indirizzo ed età non sono stati letti e vanno chiesti allo store
+     * (PersonaStore.leggiPersona) prima di mostrarli o modificarli.
+     *
+     * @throws IllegalArgumentException Se uno dei campi obbligatori è invalido.
+     */
+    public static Persona perElenco(int ID, int ID_Utente, String Nome, String Cognome, String Telefono)
+            throws IllegalArgumentException {
+        Persona p = new Persona(ID, ID_Utente, Nome, Cognome, "", Telefono, 0);
+        p.Completa = false;
+        return p;
+    }
+
     // ----------------------------
     //         GETTER/SETTER
     // ----------------------------
@@ -113,6 +138,7 @@ public class Persona {
             throw new IllegalArgumentException("Il nome non può essere vuoto o nullo.");
         }
         this.Nome = Nome;
+        this.ChiaveNome = null;
     }
 
     public String getCognome() {
@@ -130,6 +156,7 @@ public class Persona {
         } else {
             this.Cognome = Cognome;
         }
+        this.ChiaveCognome = null;
     }
 
     public String getIndirizzo() {
@@ -163,6 +190,64 @@ public class Persona {
             throw new IllegalArgumentException("Il telefono non può essere vuoto o nullo.");
         }
         this.Telefono = Telefono;
+        this.TelefonoNormalizzato = models.Telefono.normalizza(Telefono);
+        this.PrefissoTelefono = Collazione.prefissoNumero(TelefonoNormalizzato);
+    }
+
+    /**
+     * @return Il telefono in forma normalizzata (solo cifre, vedi Telefono.normalizza),
+     *         usato per confronti e ricerche.
+     */
+    public String getTelefonoNormalizzato() {
+        return TelefonoNormalizzato;
+    }
+
+    /**
+     * @return La chiave con cui il nome viene ordinato (vedi Collazione), calcolata una volta sola.
+     */
+    public CollationKey getChiaveNome() {
+        if (ChiaveNome == null) {
+            CollationKey chiave = Collazione.chiave(Nome);
+            PrefissoNome = Collazione.prefisso(chiave);
+            ChiaveNome = chiave;
+        }
+        return ChiaveNome;
+    }
+
+    /**
+     * @return La chiave con cui il cognome viene ordinato (vedi Collazione), calcolata una volta sola.
+     */
+    public CollationKey getChiaveCognome() {
+        if (ChiaveCognome == null) {
+            CollationKey chiave = Collazione.chiave(Cognome);
+            PrefissoCognome = Collazione.prefisso(chiave);
+            ChiaveCognome = chiave;
+        }
+        return ChiaveCognome;
+    }
+
+    /**
+     * @return I primi byte della chiave del nome, per gli ordinamenti veloci di Collazione.
+     */
+    long getPrefissoNome() {
+        getChiaveNome();
+        return PrefissoNome;
+    }
+
+    long getPrefissoCognome() {
+        getChiaveCognome();
+        return PrefissoCognome;
+    }
+
+    long getPrefissoTelefono() {
+        return PrefissoTelefono;
+    }
+
+    /**
+     * @return false se la persona contiene solo i dati dell'elenco (vedi perElenco).
+     */
+    public boolean isCompleta() {
+        return Completa;
     }
 
     public int getEta() {
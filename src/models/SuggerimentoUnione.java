@@ -0,0 +1,67 @@
+package models;
+
+/**
+ * Un SuggerimentoUnione è una coppia di persone che probabilmente sono la stessa persona
+ * inserita due volte (vedi controller.RicercaDuplicati). Se l'utente accetta il
+ * suggerimento, la prima persona viene completata con i dati della seconda (vedi unisci)
+ * e la seconda viene eliminata.
+ */
+public class SuggerimentoUnione {
+
+    private final Persona daTenere;
+    private final Persona daUnire;
+    private final double punteggio;
+    private final String motivo;
+
+    /**
+     * @param daTenere  La persona che resta nella rubrica.
+     * @param daUnire   La persona che verrà eliminata dopo l'unione.
+     * @param punteggio La somiglianza delle due persone, fra 0 e 1.
+     * @param motivo    Una breve descrizione degli elementi in comune, da mostrare all'utente.
+     */
+    public SuggerimentoUnione(Persona daTenere, Persona daUnire, double punteggio, String motivo) {
+        this.daTenere = daTenere;
+        this.daUnire = daUnire;
+        this.punteggio = punteggio;
+        this.motivo = motivo;
+    }
+
+    public Persona getDaTenere() {
+        return daTenere;
+    }
+
+    public Persona getDaUnire() {
+        return daUnire;
+    }
+
+    public double getPunteggio() {
+        return punteggio;
+    }
+
+    public String getMotivo() {
+        return motivo;
+    }
+
+    /**
+     * Restituisce la persona risultante dall'unione: ha l'ID e i dati della persona da
+     * tenere, con i campi vuoti (cognome, indirizzo, età 0) presi dall'altra.
+     *
+     * @param daTenere La persona che resta nella rubrica.
+     * @param daUnire  La persona da cui prendere i dati mancanti.
+     * @return Una nuova Persona con l'ID di daTenere.
+     */
+    public static Persona unisci(Persona daTenere, Persona daUnire) {
+        return new Persona(
+            daTenere.getID(), daTenere.getID_Utente(),
+            daTenere.getNome(),
+            scegli(daTenere.getCognome(), daUnire.getCognome()),
+            scegli(daTenere.getIndirizzo(), daUnire.getIndirizzo()),
+            daTenere.getTelefono(),
+            daTenere.getEta() > 0 ? daTenere.getEta() : daUnire.getEta()
+        );
+    }
+
+    private static String scegli(String primo, String secondo) {
+        return (primo == null || primo.trim().isEmpty()) ? secondo : primo;
+    }
+}
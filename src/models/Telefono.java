@@ -0,0 +1,105 @@
+package models;
+
+/**
+ * La classe Telefono raccoglie le regole di normalizzazione dei numeri di telefono.
+ * Il telefono di una Persona resta memorizzato come è stato scritto (per mostrarlo),
+ * ma confronti e ricerche usano la forma normalizzata, in cui ad esempio
+ * "+39 333 1234567", "0039 333-1234567" e "3331234567" coincidono.
+ *
+ * La forma normalizzata contiene solo cifre:
+ * <ul>
+ *   <li>i numeri italiani (senza prefisso, oppure con "+39" o "0039") perdono il prefisso internazionale;</li>
+ *   <li>gli altri numeri con prefisso internazionale ("+44 ..." o "0044 ...") diventano "0044...";</li>
+ *   <li>spazi, trattini, punti, barre e parentesi vengono ignorati.</li>
+ * </ul>
+ */
+public final class Telefono {
+
+    // Prefisso internazionale dei numeri considerati "nazionali"
+    public static final String PREFISSO_NAZIONALE = "39";
+
+    // Lunghezza massima della forma normalizzata (ITU-T E.164: 15 cifre, più "00")
+    public static final int LUNGHEZZA_MASSIMA = 17;
+
+    private Telefono() {
+    }
+
+    /**
+     * Restituisce la forma normalizzata di un numero di telefono.
+     *
+     * @param telefono Il numero come è stato scritto (può essere null).
+     * @return Le cifre del numero in forma normalizzata, oppure "" se non contiene cifre.
+     */
+    public static String normalizza(String telefono) {
+        if (telefono == null) {
+            return "";
+        }
+        StringBuilder cifre = new StringBuilder(telefono.length());
+        boolean internazionale = false;
+        for (int i = 0; i < telefono.length(); i++) {
+            char c = telefono.charAt(i);
+            if (c >= '0' && c <= '9') {
+                cifre.append(c);
+            } else if (c == '+' && cifre.length() == 0) {
+                internazionale = true;
+            }
+        }
+        if (!internazionale && cifre.length() > 2 && cifre.charAt(0) == '0' && cifre.charAt(1) == '0') {
+            cifre.delete(0, 2);
+            internazionale = true;
+        }
+        if (internazionale) {
+            if (cifre.indexOf(PREFISSO_NAZIONALE) == 0) {
+                cifre.delete(0, PREFISSO_NAZIONALE.length());
+            } else {
+                cifre.insert(0, "00");
+            }
+        }
+        if (cifre.length() > LUNGHEZZA_MASSIMA) {
+            cifre.setLength(LUNGHEZZA_MASSIMA);
+        }
+        return cifre.toString();
+    }
+
+    /**
+     * @return Le sole cifre del testo, senza altre trasformazioni.
+     */
+    public static String soloCifre(String testo) {
+        if (testo == null) {
+            return "";
+        }
+        StringBuilder cifre = new StringBuilder(testo.length());
+        for (int i = 0; i < testo.length(); i++) {
+            char c = testo.charAt(i);
+            if (c >= '0' && c <= '9') {
+                cifre.append(c);
+            }
+        }
+        return cifre.toString();
+    }
+
+    /**
+     * @return true se il testo è fatto solo di cifre e dei simboli usati per scrivere i numeri
+     *         ("+", "-", ".", "/", parentesi e spazi) e contiene almeno una cifra.
+     */
+    public static boolean sembraUnNumero(String testo) {
+        boolean cifre = false;
+        for (int i = 0; i < testo.length(); i++) {
+            char c = testo.charAt(i);
+            if (c >= '0' && c <= '9') {
+                cifre = true;
+            } else if ("+-./() ".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return cifre;
+    }
+
+    /**
+     * @return true se i due numeri hanno la stessa forma normalizzata (e almeno una cifra).
+     */
+    public static boolean stessoNumero(String telefono1, String telefono2) {
+        String n1 = normalizza(telefono1);
+        return !n1.isEmpty() && n1.equals(normalizza(telefono2));
+    }
+}
@@ -0,0 +1,205 @@
+package models;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * La classe Testo raccoglie le regole con cui la ricerca confronta nomi e cognomi:
+ * minuscole, senza accenti, divisi in parole. È usata sia dall'indice in memoria della
+ * casella di ricerca sia dagli store che cercano scorrendo la rubrica, così che le due
+ * ricerche trovino le stesse persone.
+ *
+ * Una persona corrisponde a una ricerca se ogni parola cercata è l'inizio di una parola
+ * del nome o del cognome, oppure l'inizio del telefono normalizzato (vedi Telefono).
+ */
+public final class Testo {
+
+    private static final Pattern ACCENTI = Pattern.compile("\\p{M}+");
+    private static final String[] NESSUNA_PAROLA = new String[0];
+
+    private Testo() {
+    }
+
+    /**
+     * @return Il testo in minuscolo e senza accenti ("Niccolò" diventa "niccolo").
+     */
+    public static String normalizza(String testo) {
+        if (testo == null || testo.isEmpty()) {
+            return "";
+        }
+        // Percorso veloce per il caso comune: testo ASCII, nessun accento da togliere
+        boolean ascii = true;
+        for (int i = 0; i < testo.length() && ascii; i++) {
+            ascii = testo.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return testo.toLowerCase(Locale.ROOT);
+        }
+        String scomposto = Normalizer.normalize(testo, Normalizer.Form.NFD);
+        return ACCENTI.matcher(scomposto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Aggiunge alla lista le parole del testo (già normalizzato), separate da spazi,
+     * apostrofi, trattini e punteggiatura, senza ripetizioni.
+     */
+    public static void dividiInParole(String testo, List<String> parole) {
+        int inizio = -1;
+        for (int i = 0; i <= testo.length(); i++) {
+            boolean separatore = i == testo.length() || isSeparatore(testo.charAt(i));
+            if (!separatore && inizio < 0) {
+                inizio = i;
+            } else if (separatore && inizio >= 0) {
+                String parola = testo.substring(inizio, i);
+                if (!parole.contains(parola)) {
+                    parole.add(parola);
+                }
+                inizio = -1;
+            }
+        }
+    }
+
+    /**
+     * Divide in parole normalizzate il testo digitato dall'utente. Un testo fatto solo di
+     * cifre e simboli da numero di telefono ("+39 333 12") diventa un unico numero
+     * normalizzato; altrimenti ogni parola senza lettere viene ridotta alle sue cifre.
+     *
+     * @param testo Il testo cercato.
+     * @return Le parole da cercare (nessuna, se il testo è vuoto).
+     */
+    public static String[] paroleDaCercare(String testo) {
+        String normalizzato = normalizza(testo).trim();
+        if (normalizzato.isEmpty()) {
+            return NESSUNA_PAROLA;
+        }
+        if (Telefono.sembraUnNumero(normalizzato)) {
+            String cifre = Telefono.normalizza(normalizzato);
+            return cifre.isEmpty() ? NESSUNA_PAROLA : new String[]{cifre};
+        }
+        List<String> parole = new ArrayList<>(4);
+        dividiInParole(normalizzato, parole);
+        for (int i = 0; i < parole.size(); i++) {
+            String parola = parole.get(i);
+            if (parola.chars().noneMatch(Character::isLetter)) {
+                parole.set(i, Telefono.soloCifre(parola));
+            }
+        }
+        parole.removeIf(String::isEmpty);
+        return parole.toArray(NESSUNA_PAROLA);
+    }
+
+    /**
+     * @return Le parole su cui si cerca una persona: quelle di nome e cognome e il telefono normalizzato.
+     */
+    public static String[] paroleDi(Persona p) {
+        List<String> risultato = new ArrayList<>(4);
+        dividiInParole(normalizza(p.getNome()), risultato);
+        dividiInParole(normalizza(p.getCognome()), risultato);
+        String telefono = p.getTelefonoNormalizzato();
+        if (!telefono.isEmpty() && !risultato.contains(telefono)) {
+            risultato.add(telefono);
+        }
+        return risultato.toArray(NESSUNA_PAROLA);
+    }
+
+    /**
+     * @param p      La persona da verificare.
+     * @param parole Le parole cercate (vedi paroleDaCercare).
+     * @return true se ogni parola cercata è l'inizio di una parola della persona.
+     */
+    public static boolean corrisponde(Persona p, String[] parole) {
+        String[] parolePersona = paroleDi(p);
+        for (String cercata : parole) {
+            boolean trovata = false;
+            for (String parola : parolePersona) {
+                if (parola.startsWith(cercata)) {
+                    trovata = true;
+                    break;
+                }
+            }
+            if (!trovata) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce una chiave fonetica approssimata, pensata per i cognomi italiani: testi
+     * che si pronunciano in modo simile ("Bianchi" e "Bianki", "Rossi" e "Rosi", "De Luca"
+     * e "Deluca") hanno la stessa chiave. Le regole sono volutamente grossolane: la chiave
+     * serve a raggruppare i possibili duplicati, non a decidere se lo sono.
+     *
+     * @return La chiave (solo lettere minuscole), oppure "" se il testo non contiene lettere.
+     */
+    public static String chiaveFonetica(String testo) {
+        String normalizzato = normalizza(testo);
+        StringBuilder chiave = new StringBuilder(normalizzato.length());
+        for (int i = 0; i < normalizzato.length(); i++) {
+            char c = normalizzato.charAt(i);
+            char dopo = prossimaLettera(normalizzato, i);
+            char suono;
+            switch (c) {
+                case 'h':
+                    continue;
+                case 'c': case 'k': case 'q':
+                    suono = 'k';
+                    break;
+                case 'g':
+                    // "gn" e "gli" si riducono a "n" e "li"
+                    if (dopo == 'n' || (dopo == 'l' && prossimaLettera(normalizzato, i + 1) == 'i')) {
+                        continue;
+                    }
+                    suono = 'g';
+                    break;
+                case 'p':
+                    suono = dopo == 'h' ? 'f' : 'p';
+                    break;
+                case 'x': case 'z':
+                    suono = 's';
+                    break;
+                case 'j': case 'y':
+                    suono = 'i';
+                    break;
+                case 'w':
+                    suono = 'v';
+                    break;
+                default:
+                    if (c < 'a' || c > 'z') {
+                        continue;
+                    }
+                    suono = c;
+            }
+            // Le doppie valgono come le scempie
+            if (chiave.length() == 0 || chiave.charAt(chiave.length() - 1) != suono) {
+                chiave.append(suono);
+            }
+        }
+        // La vocale finale varia spesso ("Rossi" e "Rosso", "Esposito" ed "Esposita")
+        int ultima = chiave.length() - 1;
+        if (ultima > 1 && "aeiou".indexOf(chiave.charAt(ultima)) >= 0) {
+            chiave.setLength(ultima);
+        }
+        return chiave.toString();
+    }
+
+    /**
+     * @return La prima lettera dopo la posizione i (saltando spazi e apostrofi), oppure 0.
+     */
+    private static char prossimaLettera(String testo, int i) {
+        for (int j = i + 1; j < testo.length(); j++) {
+            char c = testo.charAt(j);
+            if (c >= 'a' && c <= 'z') {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isSeparatore(char c) {
+        return Character.isWhitespace(c) || c == '\'' || c == '’' || c == '-' || c == '.' || c == ',';
+    }
+}
@@ -0,0 +1,47 @@
+package persistence;
+
+import models.Utente;
+
+/**
+ * L'interfaccia Archivio rappresenta il tipo di memorizzazione scelto all'avvio
+ * (proprietà "storage" del file credenziali_database.properties) e fornisce ai
+ * controller le utenze e le rubriche dei singoli utenti.
+ *
+ * <ul>
+ *   <li>"mysql" (default) — ArchivioMySQL, database MySQL tramite il pool di connessioni;</li>
+ *   <li>"memoria" — ArchivioInMemoria, nessun servizio esterno, i dati si perdono alla chiusura;</li>
+ *   <li>"file" — ArchivioSuFile, file locali mappati in memoria, senza MySQL;</li>
+ *   <li>"giornale" — ArchivioConGiornale, memoria più giornale locale, drenabile verso MySQL.</li>
+ * </ul>
+ */
+public interface Archivio {
+
+    // Chiave e valori ammessi nel file properties
+    String PROP_STORAGE = "storage";
+    String STORAGE_MYSQL = "mysql";
+    String STORAGE_MEMORIA = "memoria";
+    String STORAGE_FILE = "file";
+    String STORAGE_GIORNALE = "giornale";
+
+    /**
+     * @return Lo store delle utenze.
+     */
+    UtenteStore getUtenti();
+
+    /**
+     * @param utente L'utente che ha effettuato il login.
+     * @return Lo store con la rubrica dell'utente.
+     */
+    PersonaStore apriRubrica(Utente utente);
+
+    /**
+     * @return Quante operazioni conviene eseguire in parallelo su questo archivio
+     *         (il numero di thread del ServizioAsincrono).
+     */
+    int getParallelismo();
+
+    /**
+     * Rilascia le risorse dell'archivio (connessioni, file...).
+     */
+    void chiudi();
+}
@@ -0,0 +1,918 @@
+package persistence;
+
+import models.Persona;
+import models.Utente;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * La classe ArchivioConGiornale tiene utenze e rubriche in memoria (come ArchivioInMemoria)
+ * rendendole durevoli su disco locale con un giornale delle modifiche (Giornale) e
+ * con istantanee periodiche. Le scritture vengono confermate appena il giornale è su disco,
+ * senza attendere la rete: MySQL, se configurato, viene aggiornato in seguito dal drenaggio.
+ *
+ * <ul>
+ *   <li>Ogni modifica (utente registrato, persona scritta o eliminata) viene prima accodata
+ *       al giornale, poi applicata in memoria; chi l'ha richiesta attende il force() del
+ *       giornale, condiviso con le altre scritture concorrenti (group commit).</li>
+ *   <li>Dopo un certo numero di record (proprietà "giornale-istantanea-ogni") viene scritta
+ *       un'istantanea compatta dello stato ("istantanea.dat", con CRC) e il giornale viene svuotato.</li>
+ *   <li>All'avvio si carica l'istantanea e si rieseguono i record successivi del giornale.</li>
+ *   <li>drena() invia a un altro archivio (MySQL) le modifiche non ancora inviate, usando
+ *       leggiPersoneDopo delle partizioni; le corrispondenze fra ID locali e ID remoti e la
+ *       versione drenata vengono anch'esse registrate nel giornale.</li>
+ * </ul>
+ */
+public class ArchivioConGiornale implements Archivio {
+
+    // Chiavi del file properties
+    public static final String PROP_ISTANTANEA_OGNI = "giornale-istantanea-ogni";
+    public static final String PROP_DRENAGGIO = "giornale-drenaggio-ms";
+    public static final int DEFAULT_ISTANTANEA_OGNI = 10_000;
+    public static final long DEFAULT_DRENAGGIO_MS = 0;  // 0 = nessun drenaggio verso MySQL
+
+    /**
+     * Crea l'archivio di destinazione del drenaggio (tipicamente un ArchivioMySQL).
+     */
+    @FunctionalInterface
+    public interface FornitoreArchivio {
+        Archivio crea() throws SQLException;
+    }
+
+    // Persone nuove inviate alla destinazione con ogni salvaPersone durante il drenaggio
+    private static final int BLOCCO_DRENAGGIO = 1000;
+
+    private static final int MAGIC_ISTANTANEA = 0x52474E4C;  // "RGNL"
+    private static final int FORMATO = 1;
+
+    // Tipi di record del giornale
+    private static final byte UTENTE = 1;
+    private static final byte SCRITTURA = 2;
+    private static final byte ELIMINAZIONE = 3;
+    private static final byte MAPPATURA = 4;
+    private static final byte DRENATO = 5;
+    private static final byte MAPPATURA_RIMOSSA = 6;
+
+    private final Path fileIstantanea;
+    private final Path fileIstantaneaTemporanea;
+    private final Giornale giornale;
+    private final int istantaneaOgni;
+
+    // Blocco globale: le scritture lo prendono in lettura, l'istantanea in scrittura
+    private final ReentrantReadWriteLock globale = new ReentrantReadWriteLock();
+    private final AtomicLong sequenza = new AtomicLong();
+    private final AtomicLong recordDaIstantanea = new AtomicLong();
+    private final AtomicInteger generatoreIdUtenti = new AtomicInteger();
+    private final AtomicInteger generatoreIdPersone = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, CredenzialiUtente> utenti = new ConcurrentHashMap<>();
+    private final IntObjectMap<StatoUtente> stati = new IntObjectMap<>();
+    private final UtenteStore storeUtenti = new Utenti();
+
+    private final ExecutorService esecutoreIstantanee = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "istantanea-giornale");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledExecutorService drenaggio;
+
+    /**
+     * Apre l'archivio, caricando l'istantanea e rieseguendo il giornale.
+     *
+     * @param cartella       La cartella dell'archivio (viene creata se non esiste).
+     * @param istantaneaOgni Ogni quanti record del giornale scrivere un'istantanea.
+     * @throws IOException se i file non possono essere letti o sono danneggiati.
+     */
+    public ArchivioConGiornale(Path cartella, int istantaneaOgni) throws IOException {
+        if (istantaneaOgni < 1) {
+            throw new IllegalArgumentException("L'intervallo fra le istantanee deve essere almeno 1.");
+        }
+        Files.createDirectories(cartella);
+        this.istantaneaOgni = istantaneaOgni;
+        this.fileIstantanea = cartella.resolve("istantanea.dat");
+        this.fileIstantaneaTemporanea = cartella.resolve("istantanea.tmp");
+
+        long sequenzaIstantanea = Files.exists(fileIstantanea) ? caricaIstantanea() : 0;
+        sequenza.set(sequenzaIstantanea);
+
+        this.giornale = new Giornale(cartella.resolve("giornale.log"));
+        try {
+            giornale.scorri(record -> {
+                try {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                            record.array(), record.arrayOffset(), record.remaining()));
+                    byte tipo = in.readByte();
+                    long numero = in.readLong();
+                    // I record già inclusi nell'istantanea (giornale non ancora svuotato) si saltano
+                    if (numero > sequenzaIstantanea) {
+                        applica(tipo, in);
+                        sequenza.accumulateAndGet(numero, Math::max);
+                        recordDaIstantanea.incrementAndGet();
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // ----------------------------
+    //          ARCHIVIO
+    // ----------------------------
+
+    @Override
+    public UtenteStore getUtenti() {
+        return storeUtenti;
+    }
+
+    @Override
+    public PersonaStore apriRubrica(Utente utente) {
+        return new PersonManagerConGiornale(utente, this, stato(utente.getID_Utente()));
+    }
+
+    /**
+     * Le scritture attendono il disco: qualche thread in più permette di raccoglierle
+     * nello stesso force() del giornale.
+     */
+    @Override
+    public int getParallelismo() {
+        return Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    @Override
+    public void chiudi() {
+        if (drenaggio != null) {
+            drenaggio.shutdownNow();
+        }
+        esecutoreIstantanee.shutdown();
+        try {
+            esecutoreIstantanee.awaitTermination(30, TimeUnit.SECONDS);
+            giornale.chiudi();
+        } catch (IOException | InterruptedException ex) {
+            System.err.println("Errore durante la chiusura del giornale: " + ex.getMessage());
+        }
+    }
+
+    // ----------------------------
+    //   SCRITTURE (usate da PersonManagerConGiornale)
+    // ----------------------------
+
+    /**
+     * Registra e applica una nuova persona.
+     * @return L'ID assegnato.
+     */
+    int inserisci(StatoUtente stato, Persona nuova) throws IOException {
+        long numero;
+        globale.readLock().lock();
+        try {
+            InMemoryPersonManager.Partizione partizione = stato.partizione;
+            partizione.lock.writeLock().lock();
+            try {
+                nuova.setID(partizione.nuovoId());
+                long versione = partizione.versione + 1;
+                numero = accoda(codificaScrittura(stato.idUtente, nuova, versione));
+                partizione.applicaScrittura(nuova, versione);
+            } finally {
+                partizione.lock.writeLock().unlock();
+            }
+        } finally {
+            globale.readLock().unlock();
+        }
+        confermaDurevole(numero);
+        return nuova.getID();
+    }
+
+    /**
+     * Registra e applica un blocco di nuove persone, con un solo force() alla fine.
+     */
+    RisultatoBatch inserisciTutte(StatoUtente stato, List<Persona> valide, List<Integer> indici,
+                                  RisultatoBatch risultato) throws IOException {
+        long numero = 0;
+        globale.readLock().lock();
+        try {
+            InMemoryPersonManager.Partizione partizione = stato.partizione;
+            partizione.lock.writeLock().lock();
+            try {
+                for (int i = 0; i < valide.size(); i++) {
+                    Persona nuova = valide.get(i);
+                    nuova.setID(partizione.nuovoId());
+                    long versione = partizione.versione + 1;
+                    numero = accoda(codificaScrittura(stato.idUtente, nuova, versione));
+                    partizione.applicaScrittura(nuova, versione);
+                    risultato.impostaId(indici.get(i), nuova.getID());
+                }
+            } finally {
+                partizione.lock.writeLock().unlock();
+            }
+        } finally {
+            globale.readLock().unlock();
+        }
+        if (numero > 0) {
+            confermaDurevole(numero);
+        }
+        return risultato;
+    }
+
+    /**
+     * Registra e applica la modifica di una persona, se esiste.
+     */
+    void modifica(StatoUtente stato, Persona modificata) throws IOException {
+        long numero;
+        globale.readLock().lock();
+        try {
+            InMemoryPersonManager.Partizione partizione = stato.partizione;
+            partizione.lock.writeLock().lock();
+            try {
+                if (!partizione.righe.containsKey(modificata.getID())) {
+                    return;
+                }
+                long versione = partizione.versione + 1;
+                numero = accoda(codificaScrittura(stato.idUtente, modificata, versione));
+                partizione.applicaScrittura(modificata, versione);
+            } finally {
+                partizione.lock.writeLock().unlock();
+            }
+        } finally {
+            globale.readLock().unlock();
+        }
+        confermaDurevole(numero);
+    }
+
+    /**
+     * Registra e applica l'eliminazione di una persona, se esiste.
+     */
+    void elimina(StatoUtente stato, int idPersona) throws IOException {
+        long numero;
+        globale.readLock().lock();
+        try {
+            InMemoryPersonManager.Partizione partizione = stato.partizione;
+            partizione.lock.writeLock().lock();
+            try {
+                if (!partizione.righe.containsKey(idPersona)) {
+                    return;
+                }
+                long versione = partizione.versione + 1;
+                numero = accoda(record(ELIMINAZIONE, out -> {
+                    out.writeInt(stato.idUtente);
+                    out.writeInt(idPersona);
+                    out.writeLong(versione);
+                }));
+                partizione.applicaEliminazione(idPersona, versione);
+            } finally {
+                partizione.lock.writeLock().unlock();
+            }
+        } finally {
+            globale.readLock().unlock();
+        }
+        confermaDurevole(numero);
+    }
+
+    // ----------------------------
+    //          DRENAGGIO
+    // ----------------------------
+
+    /**
+     * Invia all'archivio di destinazione tutte le modifiche locali non ancora inviate.
+     * Gli utenti vengono associati per username (e registrati nella destinazione con lo
+     * stesso hash e salt se non esistono). Un utente remoto con lo stesso username ma hash o
+     * salt diversi è un altro utente: la rubrica locale non viene scritta nella sua e il
+     * conflitto viene solo segnalato. Se il drenaggio si interrompe, le modifiche
+     * non confermate vengono ritentate al drenaggio successivo; lo stesso vale per le
+     * persone rifiutate dalla destinazione, perché la versione drenata non va oltre la prima
+     * di esse. Le corrispondenze fra ID locali e remoti vengono rese durevoli dopo ogni
+     * blocco inviato, prima di proseguire: un crash fra l'invio di un blocco e la scrittura
+     * delle sue corrispondenze (una finestra di un solo force()) può ancora farlo reinviare.
+     *
+     * @param destinazione L'archivio da aggiornare (tipicamente MySQL).
+     * @return Il numero di persone inviate (scritte o eliminate).
+     * @throws SQLException se la destinazione non è raggiungibile.
+     * @throws IOException  se il giornale non può essere scritto.
+     */
+    public int drena(Archivio destinazione) throws SQLException, IOException {
+        int inviate = 0;
+        for (CredenzialiUtente locale : new ArrayList<>(utenti.values())) {
+            StatoUtente stato;
+            synchronized (stati) {
+                stato = stati.get(locale.getId());
+            }
+            if (stato == null) {
+                continue;
+            }
+            Utente utenteLocale = new Utente(locale.getUsername(), locale.getHashPassword(), locale.getId());
+            DeltaPersone delta = new InMemoryPersonManager(utenteLocale, stato.partizione).leggiPersoneDopo(stato.drenata);
+            if (delta.isVuoto()) {
+                continue;
+            }
+
+            CredenzialiUtente remoto = destinazione.getUtenti().cercaCredenziali(locale.getUsername());
+            if (remoto == null) {
+                destinazione.getUtenti().registraUtente(locale.getUsername(), locale.getHashPassword(), locale.getSalt());
+                remoto = destinazione.getUtenti().cercaCredenziali(locale.getUsername());
+            } else if (!isStessoUtente(locale, remoto, stato)) {
+                System.err.println("Drenaggio di " + locale.getUsername() + " saltato: lo username appartiene già a un"
+                        + " altro utente della destinazione (credenziali diverse). Va risolto a mano.");
+                continue;
+            }
+            PersonaStore store = destinazione.apriRubrica(
+                    new Utente(remoto.getUsername(), remoto.getHashPassword(), remoto.getId()));
+
+            // Persone nuove (senza corrispondenza remota) in blocco, le altre una alla volta
+            Vector<Persona> nuove = new Vector<>();
+            for (Persona p : delta.getModificate()) {
+                Integer idRemoto;
+                synchronized (stato) {
+                    idRemoto = stato.remoti.get(p.getID());
+                }
+                if (idRemoto == null) {
+                    nuove.add(p);
+                } else {
+                    store.modificaPersona(idRemoto, p.getNome(), p.getCognome(), p.getEta(), p.getIndirizzo(), p.getTelefono());
+                    inviate++;
+                }
+            }
+            // La versione fino a cui il drenaggio è completo: le persone rifiutate vanno ritentate
+            long drenabile = delta.getVersione();
+            for (int da = 0; da < nuove.size(); da += BLOCCO_DRENAGGIO) {
+                List<Persona> blocco = nuove.subList(da, Math.min(nuove.size(), da + BLOCCO_DRENAGGIO));
+                RisultatoBatch risultato = store.salvaPersone(blocco);
+                int[] idRemoti = risultato.getIdGenerati();
+                long ultimo = 0;
+                for (int i = 0; i < idRemoti.length; i++) {
+                    if (idRemoti[i] > 0) {
+                        ultimo = registraMappatura(stato, blocco.get(i).getID(), idRemoti[i]);
+                        inviate++;
+                    }
+                }
+                // Le corrispondenze vanno su disco subito: altrimenti, dopo un crash, le stesse
+                // persone verrebbero inserite di nuovo nella destinazione
+                if (ultimo > 0) {
+                    confermaDurevole(ultimo);
+                }
+                for (RisultatoBatch.ErroreRiga errore : risultato.getErrori()) {
+                    System.err.println("Drenaggio di " + locale.getUsername() + " (verrà ritentato): " + errore);
+                    drenabile = Math.min(drenabile, versionePrecedente(stato, blocco.get(errore.indice).getID(), delta.getVersione()));
+                }
+            }
+            // La corrispondenza si toglie solo dopo l'eliminazione remota: se questa fallisce,
+            // il drenaggio successivo ritrova l'ID remoto e la ritenta
+            for (int id : delta.getEliminate()) {
+                Integer idRemoto;
+                synchronized (stato) {
+                    idRemoto = stato.remoti.get(id);
+                }
+                if (idRemoto != null) {
+                    store.eliminaPersona(idRemoto);
+                    rimuoviMappatura(stato, id);
+                    inviate++;
+                }
+            }
+            if (drenabile > stato.drenata) {
+                confermaDurevole(registraDrenato(stato, drenabile));
+            }
+        }
+        return inviate;
+    }
+
+    /**
+     * Avvia il drenaggio periodico in un thread in background. Gli errori (ad esempio server
+     * non raggiungibile) vengono solo registrati: il drenaggio viene ritentato al giro successivo.
+     *
+     * @param fornitore   Crea l'archivio di destinazione (al primo giro riuscito).
+     * @param intervalloMs Ogni quanti millisecondi drenare.
+     */
+    public synchronized void avviaDrenaggio(FornitoreArchivio fornitore, long intervalloMs) {
+        if (drenaggio != null) {
+            return;
+        }
+        drenaggio = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "drenaggio-giornale");
+            t.setDaemon(true);
+            return t;
+        });
+        Archivio[] destinazione = new Archivio[1];
+        drenaggio.scheduleWithFixedDelay(() -> {
+            try {
+                if (destinazione[0] == null) {
+                    destinazione[0] = fornitore.crea();
+                }
+                drena(destinazione[0]);
+            } catch (SQLException | IOException | RuntimeException ex) {
+                System.err.println("Drenaggio del giornale non riuscito, verrà ritentato: " + ex.getMessage());
+            }
+        }, intervalloMs, intervalloMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true se l'utente remoto è quello locale: ha le stesse credenziali, oppure la
+     *         rubrica è già stata drenata verso di lui (e poi la password locale è stata
+     *         aggiornata, ad esempio dal ricalcolo dell'hash al login).
+     */
+    private static boolean isStessoUtente(CredenzialiUtente locale, CredenzialiUtente remoto, StatoUtente stato) {
+        if (Objects.equals(locale.getHashPassword(), remoto.getHashPassword())
+                && Objects.equals(locale.getSalt(), remoto.getSalt())) {
+            return true;
+        }
+        synchronized (stato) {
+            return stato.drenata > 0 || stato.remoti.size() > 0;
+        }
+    }
+
+    /**
+     * @return La versione subito precedente a quella attuale della persona (limitata a
+     *         versioneDelta), da cui ripartirà il prossimo drenaggio per reinviarla. Se la
+     *         persona è stata eliminata nel frattempo non c'è niente da reinviare.
+     */
+    private static long versionePrecedente(StatoUtente stato, int idLocale, long versioneDelta) {
+        InMemoryPersonManager.Partizione partizione = stato.partizione;
+        partizione.lock.readLock().lock();
+        try {
+            InMemoryPersonManager.Riga riga = partizione.righe.get(idLocale);
+            return riga == null ? versioneDelta : Math.min(versioneDelta, riga.versione - 1);
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    private long registraMappatura(StatoUtente stato, int idLocale, int idRemoto) throws IOException {
+        globale.readLock().lock();
+        try {
+            long numero = accoda(record(MAPPATURA, out -> {
+                out.writeInt(stato.idUtente);
+                out.writeInt(idLocale);
+                out.writeInt(idRemoto);
+            }));
+            synchronized (stato) {
+                stato.remoti.put(idLocale, idRemoto);
+            }
+            return numero;
+        } finally {
+            globale.readLock().unlock();
+        }
+    }
+
+    private void rimuoviMappatura(StatoUtente stato, int idLocale) throws IOException {
+        globale.readLock().lock();
+        try {
+            accoda(record(MAPPATURA_RIMOSSA, out -> {
+                out.writeInt(stato.idUtente);
+                out.writeInt(idLocale);
+            }));
+            synchronized (stato) {
+                stato.remoti.remove(idLocale);
+            }
+        } finally {
+            globale.readLock().unlock();
+        }
+    }
+
+    private long registraDrenato(StatoUtente stato, long versione) throws IOException {
+        globale.readLock().lock();
+        try {
+            long numero = accoda(record(DRENATO, out -> {
+                out.writeInt(stato.idUtente);
+                out.writeLong(versione);
+            }));
+            synchronized (stato) {
+                stato.drenata = versione;
+            }
+            return numero;
+        } finally {
+            globale.readLock().unlock();
+        }
+    }
+
+    // ----------------------------
+    //       GIORNALE E RECORD
+    // ----------------------------
+
+    /**
+     * Scrive i campi di un record nel flusso.
+     */
+    @FunctionalInterface
+    private interface ScrittoreRecord {
+        void scrivi(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Compone un record: tipo, numero di sequenza, campi. Va chiamato tenendo il lock
+     * globale e, per le persone, quello della partizione: l'ordine dei numeri di sequenza
+     * coincide così con l'ordine in cui le modifiche vengono applicate.
+     */
+    private byte[] record(byte tipo, ScrittoreRecord campi) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(tipo);
+        out.writeLong(sequenza.incrementAndGet());
+        campi.scrivi(out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private byte[] codificaScrittura(int idUtente, Persona p, long versione) throws IOException {
+        return record(SCRITTURA, out -> {
+            out.writeInt(idUtente);
+            out.writeLong(versione);
+            scriviPersona(out, p);
+        });
+    }
+
+    private long accoda(byte[] record) throws IOException {
+        long numero = giornale.accoda(record);
+        recordDaIstantanea.incrementAndGet();
+        return numero;
+    }
+
+    /**
+     * Attende che il giornale sia su disco, poi avvia un'istantanea se ne sono passati abbastanza.
+     */
+    private void confermaDurevole(long numero) throws IOException {
+        giornale.attendiDurevole(numero);
+        if (recordDaIstantanea.get() >= istantaneaOgni) {
+            recordDaIstantanea.set(0);
+            esecutoreIstantanee.execute(() -> {
+                try {
+                    scriviIstantanea();
+                } catch (IOException ex) {
+                    System.err.println("Istantanea del giornale non riuscita: " + ex.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Applica un record letto dal giornale (in fase di avvio).
+     */
+    private void applica(byte tipo, DataInputStream in) throws IOException {
+        switch (tipo) {
+            case UTENTE: {
+                CredenzialiUtente c = new CredenzialiUtente(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF());
+                utenti.put(c.getUsername(), c);
+                aggiornaMassimo(generatoreIdUtenti, c.getId());
+                break;
+            }
+            case SCRITTURA: {
+                StatoUtente stato = stato(in.readInt());
+                long versione = in.readLong();
+                Persona p = leggiPersona(in, stato.idUtente);
+                stato.partizione.applicaScrittura(p, versione);
+                aggiornaMassimo(generatoreIdPersone, p.getID());
+                break;
+            }
+            case ELIMINAZIONE: {
+                StatoUtente stato = stato(in.readInt());
+                int id = in.readInt();
+                stato.partizione.applicaEliminazione(id, in.readLong());
+                break;
+            }
+            case MAPPATURA: {
+                StatoUtente stato = stato(in.readInt());
+                stato.remoti.put(in.readInt(), in.readInt());
+                break;
+            }
+            case MAPPATURA_RIMOSSA: {
+                StatoUtente stato = stato(in.readInt());
+                stato.remoti.remove(in.readInt());
+                break;
+            }
+            case DRENATO: {
+                StatoUtente stato = stato(in.readInt());
+                stato.drenata = in.readLong();
+                break;
+            }
+            default:
+                throw new IOException("Tipo di record sconosciuto nel giornale: " + tipo);
+        }
+    }
+
+    // ----------------------------
+    //          ISTANTANEE
+    // ----------------------------
+
+    /**
+     * Scrive lo stato completo in "istantanea.dat" (tramite un file temporaneo e una
+     * rinomina atomica) e svuota il giornale. Le scritture restano bloccate per la durata
+     * della copia, le letture no.
+     *
+     * @throws IOException se la scrittura fallisce (il giornale resta intatto).
+     */
+    public void scriviIstantanea() throws IOException {
+        globale.writeLock().lock();
+        try {
+            try (FileOutputStream file = new FileOutputStream(fileIstantaneaTemporanea.toFile())) {
+                CheckedOutputStream controllato = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(controllato);
+                out.writeInt(MAGIC_ISTANTANEA);
+                out.writeInt(FORMATO);
+                out.writeLong(sequenza.get());
+                out.writeInt(generatoreIdUtenti.get());
+                out.writeInt(generatoreIdPersone.get());
+
+                out.writeInt(utenti.size());
+                for (CredenzialiUtente c : utenti.values()) {
+                    out.writeInt(c.getId());
+                    out.writeUTF(c.getUsername());
+                    out.writeUTF(c.getHashPassword());
+                    out.writeUTF(c.getSalt());
+                }
+
+                List<StatoUtente> elenco = new ArrayList<>();
+                synchronized (stati) {
+                    stati.perOgniValore(elenco::add);
+                }
+                out.writeInt(elenco.size());
+                for (StatoUtente stato : elenco) {
+                    scriviStato(out, stato);
+                }
+                out.writeInt((int) controllato.getChecksum().getValue());
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(fileIstantaneaTemporanea, fileIstantanea,
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            giornale.svuota();
+            recordDaIstantanea.set(0);
+        } finally {
+            globale.writeLock().unlock();
+        }
+    }
+
+    private void scriviStato(DataOutputStream out, StatoUtente stato) throws IOException {
+        InMemoryPersonManager.Partizione partizione = stato.partizione;
+        out.writeInt(stato.idUtente);
+        out.writeLong(partizione.versione);
+        out.writeLong(stato.drenata);
+
+        out.writeInt(partizione.numeroIds);
+        for (int i = 0; i < partizione.numeroIds; i++) {
+            InMemoryPersonManager.Riga riga = partizione.righe.get(partizione.ids[i]);
+            out.writeLong(riga.versione);
+            scriviPersona(out, riga.persona);
+        }
+        // Servono solo le lapidi non ancora drenate (le altre non verranno più richieste)
+        int primaLapide = 0;
+        while (primaLapide < partizione.numeroLapidi && partizione.lapidiVersione[primaLapide] <= stato.drenata) {
+            primaLapide++;
+        }
+        out.writeInt(partizione.numeroLapidi - primaLapide);
+        for (int i = primaLapide; i < partizione.numeroLapidi; i++) {
+            out.writeInt(partizione.lapidiId[i]);
+            out.writeLong(partizione.lapidiVersione[i]);
+        }
+        int[] locali;
+        int[] remoti;
+        synchronized (stato) {
+            locali = new int[stato.remoti.size()];
+            remoti = new int[locali.length];
+            int[] n = new int[1];
+            stato.remoti.perOgniCoppia((idRemoto, idLocale) -> {
+                locali[n[0]] = idLocale;
+                remoti[n[0]++] = idRemoto;
+            });
+        }
+        out.writeInt(locali.length);
+        for (int i = 0; i < locali.length; i++) {
+            out.writeInt(locali[i]);
+            out.writeInt(remoti[i]);
+        }
+    }
+
+    /**
+     * @return Il numero di sequenza dell'istantanea.
+     */
+    private long caricaIstantanea() throws IOException {
+        try (BufferedInputStream file = new BufferedInputStream(Files.newInputStream(fileIstantanea), 1 << 16)) {
+            CheckedInputStream controllato = new CheckedInputStream(file, new CRC32());
+            DataInputStream in = new DataInputStream(controllato);
+            if (in.readInt() != MAGIC_ISTANTANEA || in.readInt() != FORMATO) {
+                throw new IOException("Il file " + fileIstantanea + " non è un'istantanea della rubrica.");
+            }
+            long numero = in.readLong();
+            generatoreIdUtenti.set(in.readInt());
+            generatoreIdPersone.set(in.readInt());
+
+            int numeroUtenti = in.readInt();
+            for (int i = 0; i < numeroUtenti; i++) {
+                CredenzialiUtente c = new CredenzialiUtente(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF());
+                utenti.put(c.getUsername(), c);
+            }
+
+            int numeroStati = in.readInt();
+            for (int s = 0; s < numeroStati; s++) {
+                StatoUtente stato = stato(in.readInt());
+                long versione = in.readLong();
+                stato.drenata = in.readLong();
+                int numeroPersone = in.readInt();
+                for (int i = 0; i < numeroPersone; i++) {
+                    long versioneRiga = in.readLong();
+                    stato.partizione.applicaScrittura(leggiPersona(in, stato.idUtente), versioneRiga);
+                }
+                int numeroLapidi = in.readInt();
+                for (int i = 0; i < numeroLapidi; i++) {
+                    stato.partizione.applicaEliminazione(in.readInt(), in.readLong());
+                }
+                int numeroMappature = in.readInt();
+                for (int i = 0; i < numeroMappature; i++) {
+                    stato.remoti.put(in.readInt(), in.readInt());
+                }
+                stato.partizione.versione = versione;
+            }
+
+            int calcolato = (int) controllato.getChecksum().getValue();
+            if (in.readInt() != calcolato) {
+                throw new IOException("L'istantanea " + fileIstantanea + " è danneggiata (CRC errato).");
+            }
+            return numero;
+        }
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * @return Lo stato dell'utente, creato se non esiste.
+     */
+    StatoUtente stato(int idUtente) {
+        synchronized (stati) {
+            StatoUtente stato = stati.get(idUtente);
+            if (stato == null) {
+                stato = new StatoUtente(idUtente, new InMemoryPersonManager.Partizione(generatoreIdPersone));
+                stati.put(idUtente, stato);
+            }
+            return stato;
+        }
+    }
+
+    private static void scriviPersona(DataOutputStream out, Persona p) throws IOException {
+        out.writeInt(p.getID());
+        out.writeInt(p.getEta());
+        out.writeUTF(p.getNome());
+        out.writeUTF(p.getCognome());
+        out.writeUTF(p.getIndirizzo());
+        out.writeUTF(p.getTelefono());
+    }
+
+    private static Persona leggiPersona(DataInputStream in, int idUtente) throws IOException {
+        int id = in.readInt();
+        int eta = in.readInt();
+        return new Persona(id, idUtente, in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), eta);
+    }
+
+    private static void aggiornaMassimo(AtomicInteger contatore, int valore) {
+        contatore.accumulateAndGet(valore, Math::max);
+    }
+
+    /**
+     * Lo stato locale di un utente: la sua partizione e i dati del drenaggio.
+     */
+    static final class StatoUtente {
+        final int idUtente;
+        final InMemoryPersonManager.Partizione partizione;
+        final IntObjectMap<Integer> remoti = new IntObjectMap<>();  // ID locale -> ID in MySQL (protetto da synchronized)
+        long drenata;                               // Ultima versione inviata a MySQL
+
+        StatoUtente(int idUtente, InMemoryPersonManager.Partizione partizione) {
+            this.idUtente = idUtente;
+            this.partizione = partizione;
+        }
+    }
+
+    /**
+     * Le utenze dell'archivio, registrate anch'esse nel giornale.
+     */
+    private final class Utenti implements UtenteStore {
+
+        @Override
+        public CredenzialiUtente cercaCredenziali(String username) {
+            return utenti.get(username);
+        }
+
+        @Override
+        public boolean registraUtente(String username, String hashPassword, String salt) throws SQLException {
+            long numero;
+            globale.readLock().lock();
+            try {
+                synchronized (utenti) {
+                    if (utenti.containsKey(username)) {
+                        return false;
+                    }
+                    numero = scrivi(new CredenzialiUtente(
+                            generatoreIdUtenti.incrementAndGet(), username, hashPassword, salt));
+                }
+            } catch (IOException ex) {
+                throw new SQLException("Errore di scrittura nel giornale locale: " + ex.getMessage(), ex);
+            } finally {
+                globale.readLock().unlock();
+            }
+            confermaUtente(numero);
+            return true;
+        }
+
+        /**
+         * I record vengono accodati tutti e poi si attende una sola volta che l'ultimo sia su disco.
+         */
+        @Override
+        public int[] registraUtenti(List<CredenzialiUtente> nuovi) throws SQLException {
+            int[] id = new int[nuovi.size()];
+            long numero = -1;
+            globale.readLock().lock();
+            try {
+                synchronized (utenti) {
+                    for (int i = 0; i < id.length; i++) {
+                        CredenzialiUtente c = nuovi.get(i);
+                        if (!utenti.containsKey(c.getUsername())) {
+                            id[i] = generatoreIdUtenti.incrementAndGet();
+                            numero = scrivi(new CredenzialiUtente(id[i], c.getUsername(), c.getHashPassword(), c.getSalt()));
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                throw new SQLException("Errore di scrittura nel giornale locale: " + ex.getMessage(), ex);
+            } finally {
+                globale.readLock().unlock();
+            }
+            if (numero >= 0) {
+                confermaUtente(numero);
+            }
+            return id;
+        }
+
+        /**
+         * Il cambio viene registrato come una nuova registrazione con lo stesso ID,
+         * che alla rilettura del giornale sostituisce la precedente.
+         */
+        @Override
+        public boolean aggiornaPassword(String username, String hashPassword, String salt) throws SQLException {
+            long numero;
+            globale.readLock().lock();
+            try {
+                synchronized (utenti) {
+                    CredenzialiUtente vecchio = utenti.get(username);
+                    if (vecchio == null) {
+                        return false;
+                    }
+                    numero = scrivi(new CredenzialiUtente(vecchio.getId(), username, hashPassword, salt));
+                }
+            } catch (IOException ex) {
+                throw new SQLException("Errore di scrittura nel giornale locale: " + ex.getMessage(), ex);
+            } finally {
+                globale.readLock().unlock();
+            }
+            confermaUtente(numero);
+            return true;
+        }
+
+        /**
+         * Accoda il record di un utente e lo rende visibile (da chiamare sotto lock di utenti).
+         *
+         * @return Il numero del record nel giornale.
+         */
+        private long scrivi(CredenzialiUtente c) throws IOException {
+            long numero = accoda(record(UTENTE, out -> {
+                out.writeInt(c.getId());
+                out.writeUTF(c.getUsername());
+                out.writeUTF(c.getHashPassword());
+                out.writeUTF(c.getSalt());
+            }));
+            utenti.put(c.getUsername(), c);
+            return numero;
+        }
+
+        private void confermaUtente(long numero) throws SQLException {
+            try {
+                confermaDurevole(numero);
+            } catch (IOException ex) {
+                throw new SQLException("Errore di scrittura nel giornale locale: " + ex.getMessage(), ex);
+            }
+        }
+    }
+}
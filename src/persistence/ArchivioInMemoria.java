@@ -0,0 +1,53 @@
+package persistence;
+
+import models.Utente;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe ArchivioInMemoria tiene utenze e rubriche solo in memoria, senza database:
+ * permette di avviare l'applicazione e di eseguire prove di carico senza servizi esterni.
+ * I dati vanno persi alla chiusura del programma.
+ *
+ * Ogni utente ha la propria partizione (InMemoryPersonManager.Partizione), creata al
+ * primo accesso e indicizzata per ID utente in una IntObjectMap.
+ */
+public class ArchivioInMemoria implements Archivio {
+
+    private final InMemoryUtenteManager utenti = new InMemoryUtenteManager();
+    private final IntObjectMap<InMemoryPersonManager.Partizione> partizioni = new IntObjectMap<>();
+    private final AtomicInteger generatoreIdPersone = new AtomicInteger();
+
+    @Override
+    public UtenteStore getUtenti() {
+        return utenti;
+    }
+
+    @Override
+    public PersonaStore apriRubrica(Utente utente) {
+        InMemoryPersonManager.Partizione partizione;
+        synchronized (partizioni) {
+            partizione = partizioni.get(utente.getID_Utente());
+            if (partizione == null) {
+                partizione = new InMemoryPersonManager.Partizione(generatoreIdPersone);
+                partizioni.put(utente.getID_Utente(), partizione);
+            }
+        }
+        return new InMemoryPersonManager(utente, partizione);
+    }
+
+    /**
+     * Le operazioni non attendono alcun I/O: basta un thread per processore.
+     */
+    @Override
+    public int getParallelismo() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void chiudi() {
+        synchronized (partizioni) {
+            partizioni.clear();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package persistence;
+
+import models.Utente;
+
+/**
+ * La classe ArchivioMySQL memorizza utenze e rubriche nel database MySQL, usando il
+ * pool di connessioni. Le rubriche passano dalla CachePersone condivisa fra le sessioni.
+ */
+public class ArchivioMySQL implements Archivio {
+
+    private final ConnectionPool pool;
+    private final CachePersone cache;
+    private final MySQLUtenteManager utenti;
+
+    /**
+     * @param pool  Il pool di connessioni JDBC verso il database MySQL.
+     * @param cache La cache delle rubriche condivisa fra le sessioni (null per non usarla).
+     */
+    public ArchivioMySQL(ConnectionPool pool, CachePersone cache) {
+        this.pool = pool;
+        this.cache = cache;
+        this.utenti = new MySQLUtenteManager(pool);
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public UtenteStore getUtenti() {
+        return utenti;
+    }
+
+    @Override
+    public PersonaStore apriRubrica(Utente utente) {
+        MySQLPersonManager store = new MySQLPersonManager(utente, pool);
+        return cache == null ? store : new PersonManagerConCache(store, cache);
+    }
+
+    /**
+     * Un thread per connessione: di più resterebbero comunque in attesa del pool.
+     */
+    @Override
+    public int getParallelismo() {
+        return pool.getDimensioneMassima();
+    }
+
+    @Override
+    public void chiudi() {
+        pool.chiudi();
+    }
+}
@@ -0,0 +1,76 @@
+package persistence;
+
+import models.Utente;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * La classe ArchivioSuFile memorizza utenze e rubriche in una cartella locale, senza MySQL:
+ * le utenze in un file di testo (FileUtenteManager) e la rubrica di ogni utente in una
+ * coppia di file mappati in memoria (FileRubrica), aperti alla prima operazione.
+ */
+public class ArchivioSuFile implements Archivio {
+
+    // Chiave del file properties con la cartella dell'archivio
+    public static final String PROP_CARTELLA = "storage-cartella";
+    public static final String DEFAULT_CARTELLA = "dati";
+
+    private final Path cartella;
+    private final FileUtenteManager utenti;
+    private final IntObjectMap<FileRubrica> rubriche = new IntObjectMap<>();
+
+    /**
+     * @param cartella La cartella dell'archivio (viene creata se non esiste).
+     * @throws IOException se la cartella non può essere creata o le utenze non possono essere lette.
+     */
+    public ArchivioSuFile(Path cartella) throws IOException {
+        this.cartella = Files.createDirectories(cartella);
+        this.utenti = new FileUtenteManager(this.cartella);
+    }
+
+    @Override
+    public UtenteStore getUtenti() {
+        return utenti;
+    }
+
+    /**
+     * Tutte le sessioni dello stesso utente condividono lo stesso FileRubrica (e quindi lo stesso lock).
+     */
+    @Override
+    public PersonaStore apriRubrica(Utente utente) {
+        FileRubrica rubrica;
+        synchronized (rubriche) {
+            rubrica = rubriche.get(utente.getID_Utente());
+            if (rubrica == null) {
+                rubrica = new FileRubrica(cartella, utente.getID_Utente());
+                rubriche.put(utente.getID_Utente(), rubrica);
+            }
+        }
+        return new MappedPersonManager(utente, rubrica);
+    }
+
+    /**
+     * Le letture non fanno I/O esplicito e le scritture sono serializzate per utente:
+     * basta un thread per processore.
+     */
+    @Override
+    public int getParallelismo() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void chiudi() {
+        synchronized (rubriche) {
+            rubriche.perOgniValore(rubrica -> {
+                try {
+                    rubrica.chiudi();
+                } catch (IOException ex) {
+                    System.err.println("Errore durante la chiusura della rubrica " + rubrica.getIdUtente() + ": " + ex.getMessage());
+                }
+            });
+            rubriche.clear();
+        }
+    }
+}
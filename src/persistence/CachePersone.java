@@ -0,0 +1,354 @@
+package persistence;
+
+import models.Persona;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe CachePersone mantiene in memoria le rubriche degli utenti letti di recente,
+ * in modo che più sessioni nella stessa JVM (modalità server o kiosk) non rileggano
+ * ogni volta le stesse persone da MySQL.
+ *
+ * <ul>
+ *   <li>Le voci sono indicizzate per utente_id e contengono tutte le persone dell'utente,
+ *       ordinate per ID e memorizzate per colonne (vedi ColonnePersone), non come oggetti Persona;</li>
+ *   <li>le scritture fatte tramite PersonManagerConCache aggiornano anche la cache (write-through);</li>
+ *   <li>le modifiche fatte da altri processi vengono recuperate con la sincronizzazione
+ *       incrementale (leggiPersoneDopo) quando una voce è più vecchia di intervalloSincronizzazioneMs;</li>
+ *   <li>le voci vengono scartate quando il totale delle persone supera maxPersone
+ *       (si scartano gli utenti usati meno di recente) o quando non vengono usate da ttlMs.</li>
+ * </ul>
+ *
+ * Tutti i metodi sono thread-safe.
+ */
+public class CachePersone {
+
+    // ----------------------------
+    //  CHIAVI DEL FILE PROPERTIES
+    // ----------------------------
+    public static final String PROP_MAX_PERSONE = "cache-max-persone";
+    public static final String PROP_TTL = "cache-ttl-ms";
+    public static final String PROP_SINCRONIZZAZIONE = "cache-sincronizzazione-ms";
+
+    // Valori di default usati se la chiave non è presente nel file
+    public static final int DEFAULT_MAX_PERSONE = 200_000;
+    public static final long DEFAULT_TTL_MS = 30 * 60_000;
+    public static final long DEFAULT_SINCRONIZZAZIONE_MS = 10_000;
+
+    // Per quanto tempo un utente con la rubrica troppo grande viene mandato direttamente al
+    // database, prima di contare di nuovo le sue persone
+    static final long TTL_TROPPO_GRANDI_MS = 60_000;
+
+    /**
+     * Legge le modifiche successive a una versione (tipicamente PersonaStore.leggiPersoneDopo).
+     */
+    @FunctionalInterface
+    interface LettoreDelta {
+        DeltaPersone leggiDopo(long versione) throws SQLException;
+    }
+
+    /**
+     * Conta le persone di un utente (tipicamente PersonaStore.contaPersone).
+     */
+    @FunctionalInterface
+    interface Contatore {
+        int conta() throws SQLException;
+    }
+
+    private final int maxPersone;
+    private final long ttlMs;
+    private final long intervalloSincronizzazioneMs;
+
+    // Voci per utente, in ordine di accesso (la prima è quella usata meno di recente)
+    private final LinkedHashMap<Integer, Voce> voci = new LinkedHashMap<>(16, 0.75f, true);
+    private int personeInCache = 0;
+
+    // Utenti con la rubrica più grande di maxPersone, con l'istante in cui è stato verificato
+    private final Map<Integer, Long> troppoGrandi = new HashMap<>();
+
+    // Contatori
+    private final AtomicLong hit = new AtomicLong();
+    private final AtomicLong miss = new AtomicLong();
+    private final AtomicLong eliminazioni = new AtomicLong();
+    private final AtomicLong sincronizzazioni = new AtomicLong();
+
+    /**
+     * @param maxPersone                   Numero massimo di persone in cache, sommando tutti gli utenti.
+     * @param ttlMs                        Dopo quanto tempo senza accessi la rubrica di un utente viene scartata.
+     * @param intervalloSincronizzazioneMs Ogni quanto una rubrica in cache viene riallineata al database.
+     */
+    public CachePersone(int maxPersone, long ttlMs, long intervalloSincronizzazioneMs) {
+        if (maxPersone < 0) {
+            throw new IllegalArgumentException("La dimensione massima della cache non può essere negativa.");
+        }
+        this.maxPersone = maxPersone;
+        this.ttlMs = ttlMs;
+        this.intervalloSincronizzazioneMs = intervalloSincronizzazioneMs;
+    }
+
+    /**
+     * Crea la cache leggendo i parametri (facoltativi) dal file properties delle credenziali.
+     *
+     * @param props Le proprietà lette da "credenziali_database.properties".
+     * @return La cache configurata.
+     */
+    public static CachePersone daProperties(Properties props) {
+        return new CachePersone(
+                Integer.parseInt(props.getProperty(PROP_MAX_PERSONE, String.valueOf(DEFAULT_MAX_PERSONE)).trim()),
+                Long.parseLong(props.getProperty(PROP_TTL, String.valueOf(DEFAULT_TTL_MS)).trim()),
+                Long.parseLong(props.getProperty(PROP_SINCRONIZZAZIONE, String.valueOf(DEFAULT_SINCRONIZZAZIONE_MS)).trim())
+        );
+    }
+
+    // ----------------------------
+    //           LETTURA
+    // ----------------------------
+
+    /**
+     * Restituisce la rubrica in cache dell'utente, caricandola dal database se assente
+     * (read-through) o riallineandola se è più vecchia dell'intervallo di sincronizzazione.
+     *
+     * Una rubrica più grande di maxPersone non viene caricata: prima del caricamento si
+     * contano le persone, e per TTL_TROPPO_GRANDI_MS l'utente viene ricordato come troppo
+     * grande, così le sue letture vanno al database senza nemmeno ripetere il conteggio.
+     *
+     * @param idUtente L'utente di cui leggere la rubrica.
+     * @param lettore  La funzione con cui leggere le modifiche dal database.
+     * @param contatore La funzione con cui contare le persone dell'utente nel database.
+     * @return La voce in cache, oppure null se la rubrica è troppo grande per essere messa in cache.
+     * @throws SQLException se la lettura dal database fallisce.
+     */
+    Voce ottieni(int idUtente, LettoreDelta lettore, Contatore contatore) throws SQLException {
+        long adesso = System.currentTimeMillis();
+        Voce voce;
+        synchronized (this) {
+            scartaScadute(adesso);
+            Long verificataIl = troppoGrandi.get(idUtente);
+            if (verificataIl != null) {
+                if (adesso - verificataIl < TTL_TROPPO_GRANDI_MS) {
+                    return null;
+                }
+                troppoGrandi.remove(idUtente);
+            }
+            voce = voci.get(idUtente);
+            if (voce != null) {
+                voce.ultimoAccesso = adesso;
+                if (adesso - voce.sincronizzataIl < intervalloSincronizzazioneMs) {
+                    hit.incrementAndGet();
+                    return voce;
+                }
+            }
+        }
+
+        if (voce != null) {
+            // Voce presente ma da riallineare: si leggono solo le differenze
+            hit.incrementAndGet();
+            DeltaPersone delta = lettore.leggiDopo(voce.versione);
+            synchronized (this) {
+                voce.applica(delta);
+                voce.sincronizzataIl = adesso;
+                sincronizzazioni.incrementAndGet();
+                ricalcolaDimensione();
+                scartaInEccesso(idUtente);
+                return voci.get(idUtente) == voce ? voce : null;
+            }
+        }
+
+        // Voce assente: si carica l'intera rubrica (versione 0), se non è troppo grande
+        miss.incrementAndGet();
+        if (contatore.conta() > maxPersone) {
+            return ricordaTroppoGrande(idUtente, adesso);
+        }
+        DeltaPersone tutte = lettore.leggiDopo(0);
+        if (tutte.getModificate().size() > maxPersone) {
+            return ricordaTroppoGrande(idUtente, adesso);  // Cresciuta dopo il conteggio
+        }
+        Voce nuova = new Voce(idUtente);
+        nuova.applica(tutte);
+        nuova.sincronizzataIl = adesso;
+        nuova.ultimoAccesso = adesso;
+        synchronized (this) {
+            Voce precedente = voci.put(idUtente, nuova);
+            if (precedente != null) {
+                personeInCache -= precedente.persone.size();
+            }
+            personeInCache += nuova.persone.size();
+            scartaInEccesso(idUtente);
+        }
+        return nuova;
+    }
+
+    // ----------------------------
+    //   SCRITTURE (write-through)
+    // ----------------------------
+
+    /**
+     * Registra in cache una persona appena creata nel database.
+     *
+     * @param p La persona, con l'ID assegnato dal database.
+     */
+    public synchronized void registraScrittura(Persona p) {
+        Voce voce = voci.get(p.getID_Utente());
+        if (voce != null) {
+            if (voce.persone.scrivi(p)) {
+                personeInCache++;
+            }
+            scartaInEccesso(p.getID_Utente());
+        }
+    }
+
+    /**
+     * Registra in cache la modifica di una persona già presente.
+     * Se la persona non è in cache (ad esempio non appartiene all'utente) non fa nulla.
+     *
+     * @param p La persona modificata.
+     */
+    public synchronized void registraModifica(Persona p) {
+        Voce voce = voci.get(p.getID_Utente());
+        if (voce != null && voce.persone.posizioneDi(p.getID()) >= 0) {
+            voce.persone.scrivi(p);
+        }
+    }
+
+    /**
+     * Registra in cache l'eliminazione di una persona dal database.
+     *
+     * @param idUtente  L'utente proprietario della persona.
+     * @param idPersona L'ID della persona eliminata.
+     */
+    public synchronized void registraEliminazione(int idUtente, int idPersona) {
+        Voce voce = voci.get(idUtente);
+        if (voce != null && voce.persone.rimuovi(idPersona)) {
+            personeInCache--;
+        }
+    }
+
+    /**
+     * Scarta la rubrica in cache di un utente (ad esempio dopo un errore di scrittura,
+     * quando non si sa con certezza cosa sia stato salvato).
+     *
+     * @param idUtente L'utente da scartare.
+     */
+    public synchronized void invalida(int idUtente) {
+        troppoGrandi.remove(idUtente);
+        Voce voce = voci.remove(idUtente);
+        if (voce != null) {
+            personeInCache -= voce.persone.size();
+        }
+    }
+
+    // ----------------------------
+    //           CONTATORI
+    // ----------------------------
+
+    public long getHit() {
+        return hit.get();
+    }
+
+    public long getMiss() {
+        return miss.get();
+    }
+
+    public long getEliminazioni() {
+        return eliminazioni.get();
+    }
+
+    public long getSincronizzazioni() {
+        return sincronizzazioni.get();
+    }
+
+    public synchronized int getPersoneInCache() {
+        return personeInCache;
+    }
+
+    public synchronized int getUtentiInCache() {
+        return voci.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CachePersone[utenti=" + getUtentiInCache() +
+               ", persone=" + getPersoneInCache() +
+               ", hit=" + getHit() +
+               ", miss=" + getMiss() +
+               ", eliminazioni=" + getEliminazioni() +
+               ", sincronizzazioni=" + getSincronizzazioni() + "]";
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /** Scarta le voci non usate da più di ttlMs. Va chiamato tenendo il lock. */
+    private void scartaScadute(long adesso) {
+        troppoGrandi.values().removeIf(verificataIl -> adesso - verificataIl >= TTL_TROPPO_GRANDI_MS);
+        Iterator<Voce> it = voci.values().iterator();
+        while (it.hasNext()) {
+            Voce voce = it.next();
+            if (adesso - voce.ultimoAccesso > ttlMs) {
+                personeInCache -= voce.persone.size();
+                it.remove();
+                eliminazioni.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Scarta gli utenti usati meno di recente finché il totale non rientra in maxPersone.
+     * L'utente indicato viene scartato per ultimo. Va chiamato tenendo il lock.
+     */
+    private void scartaInEccesso(int idUtenteCorrente) {
+        Iterator<Map.Entry<Integer, Voce>> it = voci.entrySet().iterator();
+        while (personeInCache > maxPersone && it.hasNext()) {
+            Map.Entry<Integer, Voce> e = it.next();
+            if (e.getKey() == idUtenteCorrente && voci.size() > 1) {
+                continue;
+            }
+            personeInCache -= e.getValue().persone.size();
+            it.remove();
+            eliminazioni.incrementAndGet();
+        }
+    }
+
+    /**
+     * Ricorda che la rubrica dell'utente è troppo grande: le letture andranno direttamente al database.
+     */
+    private synchronized Voce ricordaTroppoGrande(int idUtente, long adesso) {
+        troppoGrandi.put(idUtente, adesso);
+        return null;
+    }
+
+    private void ricalcolaDimensione() {
+        int totale = 0;
+        for (Voce voce : voci.values()) {
+            totale += voce.persone.size();
+        }
+        personeInCache = totale;
+    }
+
+    /**
+     * La rubrica in cache di un utente.
+     */
+    static class Voce {
+        final ColonnePersone persone;  // Ordinate per ID
+        long versione;                 // Ultima versione del database applicata
+        volatile long sincronizzataIl; // Istante dell'ultimo riallineamento
+        volatile long ultimoAccesso;   // Istante dell'ultimo utilizzo
+
+        Voce(int idUtente) {
+            persone = new ColonnePersone(idUtente);
+        }
+
+        void applica(DeltaPersone delta) {
+            persone.scriviTutte(delta.getModificate());
+            persone.rimuoviTutte(delta.getEliminate());
+            versione = Math.max(versione, delta.getVersione());
+        }
+    }
+}
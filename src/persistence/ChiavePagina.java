@@ -0,0 +1,98 @@
+package persistence;
+
+import models.Persona;
+
+/**
+ * La classe ChiavePagina rappresenta il punto di partenza di una pagina nella
+ * paginazione "keyset" delle persone: invece di saltare N righe (OFFSET), la pagina
+ * successiva viene letta a partire dall'ultima riga della pagina precedente,
+ * sfruttando l'indice del database indipendentemente dalla profondità della pagina.
+ *
+ * Sono supportati due ordinamenti:
+ * <ul>
+ *   <li>PER_ID — per ID crescente (ordine di inserimento);</li>
+ *   <li>PER_COGNOME_NOME — per (cognome, nome, ID), l'ID rende l'ordine totale.</li>
+ * </ul>
+ *
+ * La stessa chiave può essere usata dalla vista (tabella) e dagli esportatori:
+ * si parte da {@link #inizio(Ordinamento)} e si prosegue con la chiave restituita
+ * da ogni {@link Pagina} finché questa non è null.
+ */
+public class ChiavePagina {
+
+    /**
+     * Ordinamenti supportati dalla paginazione.
+     */
+    public enum Ordinamento {
+        PER_ID,
+        PER_COGNOME_NOME
+    }
+
+    private final Ordinamento ordinamento;
+    private final int id;          // Ultimo ID letto (0 = dall'inizio)
+    private final String cognome;  // Ultimo cognome letto (solo PER_COGNOME_NOME)
+    private final String nome;     // Ultimo nome letto (solo PER_COGNOME_NOME)
+
+    private ChiavePagina(Ordinamento ordinamento, int id, String cognome, String nome) {
+        this.ordinamento = ordinamento;
+        this.id = id;
+        this.cognome = cognome;
+        this.nome = nome;
+    }
+
+    /**
+     * @param ordinamento L'ordinamento desiderato.
+     * @return La chiave che identifica la prima pagina.
+     */
+    public static ChiavePagina inizio(Ordinamento ordinamento) {
+        return new ChiavePagina(ordinamento, 0, null, null);
+    }
+
+    /**
+     * @param ordinamento L'ordinamento desiderato.
+     * @param ultima      L'ultima persona della pagina precedente.
+     * @return La chiave della pagina che segue la persona indicata.
+     */
+    public static ChiavePagina dopo(Ordinamento ordinamento, Persona ultima) {
+        return new ChiavePagina(ordinamento, ultima.getID(), ultima.getCognome(), ultima.getNome());
+    }
+
+    /**
+     * @param ordinamento L'ordinamento desiderato.
+     * @param id          L'ID dell'ultima riga della pagina precedente.
+     * @param cognome     Il cognome dell'ultima riga (usato solo da PER_COGNOME_NOME).
+     * @param nome        Il nome dell'ultima riga (usato solo da PER_COGNOME_NOME).
+     * @return La chiave della pagina che segue la riga indicata.
+     */
+    public static ChiavePagina dopo(Ordinamento ordinamento, int id, String cognome, String nome) {
+        return new ChiavePagina(ordinamento, id, cognome, nome);
+    }
+
+    /**
+     * @return true se la chiave identifica la prima pagina.
+     */
+    public boolean isInizio() {
+        return id == 0 && cognome == null;
+    }
+
+    public Ordinamento getOrdinamento() {
+        return ordinamento;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getCognome() {
+        return cognome;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    @Override
+    public String toString() {
+        return "ChiavePagina[" + ordinamento + ", id=" + id + ", cognome=" + cognome + ", nome=" + nome + "]";
+    }
+}
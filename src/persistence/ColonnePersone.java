@@ -0,0 +1,572 @@
+package persistence;
+
+import models.Persona;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * La classe ColonnePersone memorizza le persone di un utente per colonne invece che come
+ * oggetti Persona, per tenere in memoria rubriche molto grandi (vedi CachePersone):
+ * <ul>
+ *   <li>ID ed età sono array di int; l'ID dell'utente, uguale per tutte le righe, è memorizzato una volta sola;</li>
+ *   <li>cognome e indirizzo, che si ripetono molto (famiglie, stessi indirizzi), sono codificati
+ *       con un dizionario: ogni riga contiene solo il codice del valore;</li>
+ *   <li>nome e telefono sono scritti uno dopo l'altro in un unico array di byte, in Latin-1
+ *       (un byte per carattere) o, se contengono altri caratteri, in UTF-16.</li>
+ * </ul>
+ * Le righe sono ordinate per ID: la ricerca per ID è binaria e la lettura per ID crescente è
+ * sequenziale. Gli oggetti Persona vengono creati solo quando richiesti (persona), e per
+ * scorrere le righe senza crearli c'è Vista, un unico oggetto riposizionabile.
+ *
+ * Le modifiche lasciano nei dizionari e nell'array dei testi valori non più usati: quando
+ * superano i valori vivi, la struttura viene compattata.
+ *
+ * La classe non è thread-safe: chi la usa deve sincronizzare gli accessi.
+ */
+public class ColonnePersone {
+
+    private final int idUtente;
+
+    private int righe;
+    private int[] id;
+    private int[] eta;
+    private int[] cognome;    // Codici del dizionario dei cognomi
+    private int[] indirizzo;  // Codici del dizionario degli indirizzi
+    private int[] nome;       // Posizioni in testi
+    private int[] telefono;   // Posizioni in testi
+
+    private Dizionario cognomi = new Dizionario();
+    private Dizionario indirizzi = new Dizionario();
+    private Testi testi = new Testi(1024);
+    private int byteInutilizzati;  // Testi di righe modificate o rimosse, recuperati dalla compattazione
+
+    /**
+     * @param idUtente L'utente a cui appartengono tutte le persone.
+     */
+    public ColonnePersone(int idUtente) {
+        this.idUtente = idUtente;
+        alloca(16);
+    }
+
+    // ----------------------------
+    //           LETTURA
+    // ----------------------------
+
+    /**
+     * @return Il numero di persone.
+     */
+    public int size() {
+        return righe;
+    }
+
+    /**
+     * @return La posizione della persona con l'ID indicato, oppure -1 se non c'è.
+     */
+    public int posizioneDi(int idPersona) {
+        int posizione = Arrays.binarySearch(id, 0, righe, idPersona);
+        return posizione >= 0 ? posizione : -1;
+    }
+
+    /**
+     * @return La posizione della prima persona con ID maggiore di idPersona (size() se non ce ne sono).
+     */
+    public int primaPosizioneDopo(int idPersona) {
+        int posizione = Arrays.binarySearch(id, 0, righe, idPersona);
+        return posizione >= 0 ? posizione + 1 : -posizione - 1;
+    }
+
+    /**
+     * @return L'ID della persona nella posizione indicata.
+     */
+    public int idAllaPosizione(int posizione) {
+        return id[posizione];
+    }
+
+    /**
+     * @return Un nuovo oggetto Persona con i dati della riga indicata.
+     */
+    public Persona persona(int posizione) {
+        return new Persona(id[posizione], idUtente,
+                testi.leggi(nome[posizione]), cognomi.valore(cognome[posizione]),
+                indirizzi.valore(indirizzo[posizione]), testi.leggi(telefono[posizione]), eta[posizione]);
+    }
+
+    /**
+     * @return Tutte le persone, in ordine di ID.
+     */
+    public List<Persona> persone() {
+        List<Persona> tutte = new ArrayList<>(righe);
+        for (int i = 0; i < righe; i++) {
+            tutte.add(persona(i));
+        }
+        return tutte;
+    }
+
+    /**
+     * @return Una vista riposizionabile sulle righe, per leggerne i campi senza creare oggetti Persona.
+     */
+    public Vista vista() {
+        return new Vista();
+    }
+
+    // ----------------------------
+    //           SCRITTURA
+    // ----------------------------
+
+    /**
+     * Inserisce la persona o, se il suo ID è già presente, ne sostituisce i dati.
+     *
+     * @param p La persona (dell'utente di queste colonne).
+     * @return true se la persona è nuova.
+     */
+    public boolean scrivi(Persona p) {
+        int posizione = Arrays.binarySearch(id, 0, righe, p.getID());
+        if (posizione >= 0) {
+            sostituisci(posizione, p);
+            compattaSeServe();
+            return false;
+        }
+        posizione = -posizione - 1;
+        if (righe == id.length) {
+            alloca(righe * 2);
+        }
+        for (int[] colonna : colonne()) {
+            System.arraycopy(colonna, posizione, colonna, posizione + 1, righe - posizione);
+        }
+        righe++;
+        imposta(posizione, p);
+        return true;
+    }
+
+    /**
+     * Inserisce o sostituisce tutte le persone indicate. Le nuove vengono ordinate per ID e
+     * fuse con quelle esistenti in un solo passaggio, invece di essere inserite una alla volta.
+     *
+     * @return Il numero di persone nuove.
+     */
+    public int scriviTutte(Collection<Persona> persone) {
+        List<Persona> nuove = new ArrayList<>();
+        for (Persona p : persone) {
+            int posizione = posizioneDi(p.getID());
+            if (posizione >= 0) {
+                sostituisci(posizione, p);
+            } else {
+                nuove.add(p);
+            }
+        }
+        if (nuove.isEmpty()) {
+            compattaSeServe();
+            return 0;
+        }
+        nuove.sort((a, b) -> Integer.compare(a.getID(), b.getID()));
+        // Eventuali ID ripetuti fra le nuove: vale l'ultima scritta
+        List<Persona> distinte = new ArrayList<>(nuove.size());
+        for (Persona p : nuove) {
+            if (!distinte.isEmpty() && distinte.get(distinte.size() - 1).getID() == p.getID()) {
+                distinte.set(distinte.size() - 1, p);
+            } else {
+                distinte.add(p);
+            }
+        }
+        if (righe == 0 || distinte.get(0).getID() > id[righe - 1]) {
+            // Caso comune (caricamento iniziale, nuove persone): si aggiunge in fondo
+            if (righe + distinte.size() > id.length) {
+                alloca(Math.max(righe * 2, righe + distinte.size()));
+            }
+            for (Persona p : distinte) {
+                imposta(righe++, p);
+            }
+        } else {
+            fondi(distinte);
+        }
+        compattaSeServe();
+        return distinte.size();
+    }
+
+    /**
+     * @return true se la persona con l'ID indicato c'era ed è stata rimossa.
+     */
+    public boolean rimuovi(int idPersona) {
+        int posizione = posizioneDi(idPersona);
+        if (posizione < 0) {
+            return false;
+        }
+        scarta(posizione);
+        for (int[] colonna : colonne()) {
+            System.arraycopy(colonna, posizione + 1, colonna, posizione, righe - posizione - 1);
+        }
+        righe--;
+        compattaSeServe();
+        return true;
+    }
+
+    /**
+     * Rimuove in un solo passaggio le persone con gli ID indicati.
+     *
+     * @return Il numero di persone rimosse.
+     */
+    public int rimuoviTutte(int[] ids) {
+        if (ids.length == 0) {
+            return 0;
+        }
+        int[] daRimuovere = ids.clone();
+        Arrays.sort(daRimuovere);
+        int scritte = 0;
+        for (int i = 0; i < righe; i++) {
+            if (Arrays.binarySearch(daRimuovere, id[i]) >= 0) {
+                scarta(i);
+            } else {
+                if (scritte != i) {
+                    for (int[] colonna : colonne()) {
+                        colonna[scritte] = colonna[i];
+                    }
+                }
+                scritte++;
+            }
+        }
+        int rimosse = righe - scritte;
+        righe = scritte;
+        compattaSeServe();
+        return rimosse;
+    }
+
+    // ----------------------------
+    //        OCCUPAZIONE
+    // ----------------------------
+
+    /**
+     * @return Una stima dei byte occupati dagli array e dai dizionari (esclusa la capacità
+     *         inutilizzata delle tabelle hash).
+     */
+    public long byteOccupati() {
+        long totale = 6L * 4 * id.length + testi.byteOccupati();
+        return totale + cognomi.byteOccupati() + indirizzi.byteOccupati();
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    private int[][] colonne() {
+        return new int[][]{id, eta, cognome, indirizzo, nome, telefono};
+    }
+
+    private void alloca(int capacita) {
+        id = Arrays.copyOf(id == null ? new int[0] : id, capacita);
+        eta = Arrays.copyOf(eta == null ? new int[0] : eta, capacita);
+        cognome = Arrays.copyOf(cognome == null ? new int[0] : cognome, capacita);
+        indirizzo = Arrays.copyOf(indirizzo == null ? new int[0] : indirizzo, capacita);
+        nome = Arrays.copyOf(nome == null ? new int[0] : nome, capacita);
+        telefono = Arrays.copyOf(telefono == null ? new int[0] : telefono, capacita);
+    }
+
+    private void sostituisci(int posizione, Persona p) {
+        scarta(posizione);
+        imposta(posizione, p);
+    }
+
+    /**
+     * Conta come inutilizzati i testi della riga indicata, che sta per essere sovrascritta o rimossa.
+     */
+    private void scarta(int posizione) {
+        byteInutilizzati += testi.dimensione(nome[posizione]) + testi.dimensione(telefono[posizione]);
+    }
+
+    private void imposta(int posizione, Persona p) {
+        id[posizione] = p.getID();
+        eta[posizione] = p.getEta();
+        cognome[posizione] = cognomi.codice(p.getCognome());
+        indirizzo[posizione] = indirizzi.codice(p.getIndirizzo());
+        nome[posizione] = testi.scrivi(p.getNome());
+        telefono[posizione] = testi.scrivi(p.getTelefono());
+    }
+
+    /**
+     * Fonde le righe esistenti con le nuove (ordinate per ID e non presenti) in nuove colonne.
+     */
+    private void fondi(List<Persona> nuove) {
+        int[][] vecchie = colonne();
+        int totale = righe + nuove.size();
+        id = null;
+        eta = null;
+        cognome = null;
+        indirizzo = null;
+        nome = null;
+        telefono = null;
+        alloca(Math.max(16, totale + totale / 4));
+        int[][] colonne = colonne();
+        int i = 0;
+        int j = 0;
+        int scritte = 0;
+        while (i < righe || j < nuove.size()) {
+            if (j == nuove.size() || (i < righe && vecchie[0][i] < nuove.get(j).getID())) {
+                for (int c = 0; c < colonne.length; c++) {
+                    colonne[c][scritte] = vecchie[c][i];
+                }
+                i++;
+                scritte++;
+            } else {
+                imposta(scritte++, nuove.get(j++));
+            }
+        }
+        righe = totale;
+    }
+
+    /**
+     * Ricostruisce dizionari e testi con i soli valori usati, quando quelli inutilizzati
+     * (lasciati da modifiche ed eliminazioni) sono più di quelli vivi.
+     */
+    private void compattaSeServe() {
+        boolean dizionari = cognomi.size() + indirizzi.size() > 2 * righe + 1024;
+        boolean spazio = byteInutilizzati > testi.size() / 2 + 4096;
+        if (!dizionari && !spazio) {
+            return;
+        }
+        Dizionario nuoviCognomi = new Dizionario();
+        Dizionario nuoviIndirizzi = new Dizionario();
+        Testi nuoviTesti = new Testi(Math.max(1024, testi.size() / 2));
+        for (int i = 0; i < righe; i++) {
+            cognome[i] = nuoviCognomi.codice(cognomi.valore(cognome[i]));
+            indirizzo[i] = nuoviIndirizzi.codice(indirizzi.valore(indirizzo[i]));
+            nome[i] = nuoviTesti.copia(testi, nome[i]);
+            telefono[i] = nuoviTesti.copia(testi, telefono[i]);
+        }
+        cognomi = nuoviCognomi;
+        indirizzi = nuoviIndirizzi;
+        testi = nuoviTesti;
+        byteInutilizzati = 0;
+    }
+
+    /**
+     * Vista riposizionabile su una riga: un solo oggetto per scorrere tutte le righe.
+     * Non è più valida dopo una modifica delle colonne.
+     */
+    public final class Vista {
+        private int posizione;
+
+        private Vista() {
+        }
+
+        /**
+         * @param posizione La riga da leggere (da 0 a size() - 1).
+         * @return La vista stessa.
+         */
+        public Vista posiziona(int posizione) {
+            if (posizione < 0 || posizione >= righe) {
+                throw new IndexOutOfBoundsException("Posizione " + posizione + " fuori dalle " + righe + " righe.");
+            }
+            this.posizione = posizione;
+            return this;
+        }
+
+        public int getID() {
+            return id[posizione];
+        }
+
+        public int getID_Utente() {
+            return idUtente;
+        }
+
+        public String getNome() {
+            return testi.leggi(nome[posizione]);
+        }
+
+        public String getCognome() {
+            return cognomi.valore(cognome[posizione]);
+        }
+
+        public String getIndirizzo() {
+            return indirizzi.valore(indirizzo[posizione]);
+        }
+
+        public String getTelefono() {
+            return testi.leggi(telefono[posizione]);
+        }
+
+        public int getEta() {
+            return eta[posizione];
+        }
+
+        /**
+         * @return Un nuovo oggetto Persona con i dati della riga.
+         */
+        public Persona toPersona() {
+            return persona(posizione);
+        }
+    }
+
+    /**
+     * Dizionario di stringhe: ogni valore distinto viene memorizzato una volta e identificato
+     * da un codice. La ricerca del codice usa una tabella hash a indirizzamento aperto di int.
+     */
+    private static final class Dizionario {
+        private String[] valori = new String[16];
+        private int numeroValori;
+        private int[] tabella = new int[32];  // Codice + 1 (0 = posto libero)
+
+        int size() {
+            return numeroValori;
+        }
+
+        String valore(int codice) {
+            return valori[codice];
+        }
+
+        int codice(String valore) {
+            int maschera = tabella.length - 1;
+            int i = mescola(valore.hashCode()) & maschera;
+            while (tabella[i] != 0) {
+                if (valori[tabella[i] - 1].equals(valore)) {
+                    return tabella[i] - 1;
+                }
+                i = (i + 1) & maschera;
+            }
+            if (numeroValori == valori.length) {
+                valori = Arrays.copyOf(valori, numeroValori * 2);
+            }
+            int codice = numeroValori++;
+            valori[codice] = valore;
+            tabella[i] = codice + 1;
+            if (numeroValori * 2 > tabella.length) {
+                ridimensiona();
+            }
+            return codice;
+        }
+
+        long byteOccupati() {
+            long totale = 4L * tabella.length + 4L * valori.length;
+            for (int i = 0; i < numeroValori; i++) {
+                totale += 24 + 16 + valori[i].length();  // String e il suo array, in Latin-1
+            }
+            return totale;
+        }
+
+        private void ridimensiona() {
+            tabella = new int[tabella.length * 2];
+            int maschera = tabella.length - 1;
+            for (int codice = 0; codice < numeroValori; codice++) {
+                int i = mescola(valori[codice].hashCode()) & maschera;
+                while (tabella[i] != 0) {
+                    i = (i + 1) & maschera;
+                }
+                tabella[i] = codice + 1;
+            }
+        }
+
+        private static int mescola(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Testi scritti uno dopo l'altro in un array di byte. Ogni testo inizia con la sua
+     * lunghezza (varint, con l'ultimo bit che indica UTF-16) seguita dai caratteri in
+     * Latin-1, un byte ciascuno, oppure in UTF-16, due byte ciascuno.
+     */
+    private static final class Testi {
+        private byte[] dati;
+        private int usati;
+
+        Testi(int capacita) {
+            dati = new byte[capacita];
+        }
+
+        int size() {
+            return usati;
+        }
+
+        long byteOccupati() {
+            return 16L + dati.length;
+        }
+
+        /**
+         * @return I byte occupati dal testo nella posizione indicata, intestazione compresa.
+         */
+        int dimensione(int posizione) {
+            int inizio = posizione;
+            int intestazione = leggiVarint(posizione);
+            while ((dati[posizione] & 0x80) != 0) {
+                posizione++;
+            }
+            posizione++;
+            int lunghezza = intestazione >>> 1;
+            return posizione - inizio + ((intestazione & 1) == 0 ? lunghezza : 2 * lunghezza);
+        }
+
+        /**
+         * @return La posizione del testo scritto.
+         */
+        int scrivi(String testo) {
+            boolean latin1 = true;
+            for (int i = 0; i < testo.length() && latin1; i++) {
+                latin1 = testo.charAt(i) <= 0xFF;
+            }
+            int lunghezza = testo.length();
+            spazio(5 + (latin1 ? lunghezza : 2 * lunghezza));
+            int posizione = usati;
+            scriviVarint(lunghezza << 1 | (latin1 ? 0 : 1));
+            if (latin1) {
+                for (int i = 0; i < lunghezza; i++) {
+                    dati[usati++] = (byte) testo.charAt(i);
+                }
+            } else {
+                for (int i = 0; i < lunghezza; i++) {
+                    char c = testo.charAt(i);
+                    dati[usati++] = (byte) (c >>> 8);
+                    dati[usati++] = (byte) c;
+                }
+            }
+            return posizione;
+        }
+
+        String leggi(int posizione) {
+            int intestazione = leggiVarint(posizione);
+            while ((dati[posizione] & 0x80) != 0) {
+                posizione++;
+            }
+            posizione++;
+            int lunghezza = intestazione >>> 1;
+            if ((intestazione & 1) == 0) {
+                return new String(dati, posizione, lunghezza, StandardCharsets.ISO_8859_1);
+            }
+            return new String(dati, posizione, 2 * lunghezza, StandardCharsets.UTF_16BE);
+        }
+
+        /**
+         * Copia un testo da un altro array di testi (compattazione).
+         */
+        int copia(Testi origine, int posizione) {
+            return scrivi(origine.leggi(posizione));
+        }
+
+        private int leggiVarint(int posizione) {
+            int valore = 0;
+            int spostamento = 0;
+            int b;
+            do {
+                b = dati[posizione++];
+                valore |= (b & 0x7F) << spostamento;
+                spostamento += 7;
+            } while ((b & 0x80) != 0);
+            return valore;
+        }
+
+        private void scriviVarint(int valore) {
+            while ((valore & ~0x7F) != 0) {
+                dati[usati++] = (byte) ((valore & 0x7F) | 0x80);
+                valore >>>= 7;
+            }
+            dati[usati++] = (byte) valore;
+        }
+
+        private void spazio(int richiesti) {
+            if (usati + richiesti > dati.length) {
+                dati = Arrays.copyOf(dati, Math.max(dati.length * 2, usati + richiesti));
+            }
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe ConnectionPool mantiene un insieme di connessioni JDBC verso MySQL
+ * che vengono prese in prestito per la durata di una singola operazione e poi
+ * restituite al pool, invece di condividere un'unica Connection fra tutte le finestre.
+ *
+ * Funzionalità offerte:
+ * <ul>
+ *   <li>dimensione minima e massima configurabili;</li>
+ *   <li>chiusura delle connessioni inattive oltre la dimensione minima;</li>
+ *   <li>validazione (Connection.isValid) di ogni connessione al momento del prestito;</li>
+ *   <li>rilevamento delle connessioni non restituite entro una soglia (leak detection);</li>
+ *   <li>metriche sui tempi di attesa per ottenere una connessione.</li>
+ * </ul>
+ *
+ * Le connessioni restituite da getConnection() sono dei proxy: chiamare close()
+ * non chiude il socket ma riconsegna la connessione al pool. Vanno quindi usate
+ * sempre all'interno di un try-with-resources.
+ *
+ * I parametri vengono letti dal file "credenziali_database.properties" tramite
+ * il metodo {@link #daProperties(String, Properties)}.
+ */
+public class ConnectionPool {
+
+    // ----------------------------
+    //  CHIAVI DEL FILE PROPERTIES
+    // ----------------------------
+    public static final String PROP_MIN = "pool-min";
+    public static final String PROP_MAX = "pool-max";
+    public static final String PROP_TIMEOUT_ATTESA = "pool-timeout-attesa-ms";
+    public static final String PROP_TIMEOUT_INATTIVITA = "pool-timeout-inattivita-ms";
+    public static final String PROP_SOGLIA_PERDITA = "pool-soglia-perdita-ms";
+    public static final String PROP_TIMEOUT_VALIDAZIONE = "pool-timeout-validazione-s";
+
+    // Valori di default usati se la chiave non è presente nel file
+    public static final int DEFAULT_MIN = 2;
+    public static final int DEFAULT_MAX = 10;
+    public static final long DEFAULT_TIMEOUT_ATTESA_MS = 30_000;
+    public static final long DEFAULT_TIMEOUT_INATTIVITA_MS = 600_000;
+    public static final long DEFAULT_SOGLIA_PERDITA_MS = 60_000;
+    public static final int DEFAULT_TIMEOUT_VALIDAZIONE_S = 2;
+
+    // Parametri di connessione
+    private final String url;
+    private final String username;
+    private final String password;
+
+    // Parametri del pool
+    private final int dimensioneMinima;
+    private final int dimensioneMassima;
+    private final long timeoutAttesaMs;
+    private final long timeoutInattivitaMs;
+    private final long sogliaPerditaMs;
+    private final int timeoutValidazioneSec;
+
+    // Connessioni libere (in testa quelle usate più di recente) e connessioni in prestito
+    private final LinkedBlockingDeque<ConnessioneFisica> libere = new LinkedBlockingDeque<>();
+    private final Set<ConnessioneFisica> inPrestito = ConcurrentHashMap.newKeySet();
+
+    // Un permesso per ogni connessione che può essere in prestito contemporaneamente
+    private final Semaphore permessi;
+    private final AtomicInteger connessioniAperte = new AtomicInteger();
+    private final ScheduledExecutorService manutenzione;
+    private volatile boolean chiuso = false;
+
+    // Metriche
+    private final AtomicLong prestiti = new AtomicLong();
+    private final AtomicLong attesaTotaleNanos = new AtomicLong();
+    private final AtomicLong attesaMassimaNanos = new AtomicLong();
+    private final AtomicLong timeoutScaduti = new AtomicLong();
+    private final AtomicLong connessioniScartate = new AtomicLong();
+    private final AtomicLong perditeRilevate = new AtomicLong();
+
+    /**
+     * Costruttore del pool. Apre subito le connessioni minime, in modo che un errore
+     * di configurazione (credenziali, server irraggiungibile) venga segnalato all'avvio.
+     *
+     * @param url                   URL JDBC del database.
+     * @param username              Utente MySQL.
+     * @param password              Password MySQL.
+     * @param dimensioneMinima      Numero di connessioni mantenute aperte anche se inattive (>= 0).
+     * @param dimensioneMassima     Numero massimo di connessioni aperte contemporaneamente (>= 1).
+     * @param timeoutAttesaMs       Tempo massimo di attesa per ottenere una connessione.
+     * @param timeoutInattivitaMs   Dopo quanto tempo una connessione libera in eccesso viene chiusa.
+     * @param sogliaPerditaMs       Dopo quanto tempo una connessione non restituita viene segnalata.
+     * @param timeoutValidazioneSec Timeout (secondi) di Connection.isValid durante il prestito.
+     *
+     * @throws IllegalArgumentException se le dimensioni non sono coerenti.
+     * @throws SQLException             se non è possibile aprire le connessioni minime.
+     */
+    public ConnectionPool(String url, String username, String password,
+                          int dimensioneMinima, int dimensioneMassima,
+                          long timeoutAttesaMs, long timeoutInattivitaMs,
+                          long sogliaPerditaMs, int timeoutValidazioneSec) throws SQLException {
+        if (dimensioneMinima < 0 || dimensioneMassima < 1 || dimensioneMinima > dimensioneMassima) {
+            throw new IllegalArgumentException("Dimensioni del pool non valide: min=" + dimensioneMinima
+                    + ", max=" + dimensioneMassima);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.dimensioneMinima = dimensioneMinima;
+        this.dimensioneMassima = dimensioneMassima;
+        this.timeoutAttesaMs = timeoutAttesaMs;
+        this.timeoutInattivitaMs = timeoutInattivitaMs;
+        this.sogliaPerditaMs = sogliaPerditaMs;
+        this.timeoutValidazioneSec = timeoutValidazioneSec;
+        this.permessi = new Semaphore(dimensioneMassima, true);
+
+        // Apertura delle connessioni minime
+        for (int i = 0; i < dimensioneMinima; i++) {
+            libere.offerLast(apriConnessione());
+        }
+
+        // Thread di manutenzione (daemon, per non impedire la chiusura della JVM)
+        this.manutenzione = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-manutenzione");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodo = Math.max(1000, Math.min(timeoutInattivitaMs, sogliaPerditaMs) / 2);
+        this.manutenzione.scheduleWithFixedDelay(this::eseguiManutenzione, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Crea un pool leggendo i parametri dal file properties delle credenziali.
+     * Le chiavi "pool-*" sono facoltative: se mancano si usano i valori di default.
+     *
+     * @param url   URL JDBC del database.
+     * @param props Le proprietà lette da "credenziali_database.properties".
+     * @return Il pool configurato.
+     * @throws SQLException se non è possibile aprire le connessioni minime.
+     */
+    public static ConnectionPool daProperties(String url, Properties props) throws SQLException {
+        return new ConnectionPool(
+                url,
+                props.getProperty("username"),
+                props.getProperty("password"),
+                leggiIntero(props, PROP_MIN, DEFAULT_MIN),
+                leggiIntero(props, PROP_MAX, DEFAULT_MAX),
+                leggiLong(props, PROP_TIMEOUT_ATTESA, DEFAULT_TIMEOUT_ATTESA_MS),
+                leggiLong(props, PROP_TIMEOUT_INATTIVITA, DEFAULT_TIMEOUT_INATTIVITA_MS),
+                leggiLong(props, PROP_SOGLIA_PERDITA, DEFAULT_SOGLIA_PERDITA_MS),
+                leggiIntero(props, PROP_TIMEOUT_VALIDAZIONE, DEFAULT_TIMEOUT_VALIDAZIONE_S)
+        );
+    }
+
+    /**
+     * Prende in prestito una connessione dal pool. Se non ce ne sono di libere e il
+     * massimo non è stato raggiunto ne apre una nuova, altrimenti attende fino a
+     * timeoutAttesaMs. La connessione va chiusa (close) per restituirla al pool.
+     *
+     * @return Una connessione valida.
+     * @throws SQLException se il pool è chiuso, se l'attesa scade o se non è possibile aprire una connessione.
+     */
+    public Connection getConnection() throws SQLException {
+        if (chiuso) {
+            throw new SQLException("Il pool di connessioni è stato chiuso.");
+        }
+
+        long inizio = System.nanoTime();
+        try {
+            if (!permessi.tryAcquire(timeoutAttesaMs, TimeUnit.MILLISECONDS)) {
+                timeoutScaduti.incrementAndGet();
+                throw new SQLException("Nessuna connessione disponibile entro " + timeoutAttesaMs + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attesa di una connessione interrotta.", e);
+        }
+        registraAttesa(System.nanoTime() - inizio);
+
+        try {
+            ConnessioneFisica fisica = prendiConnessioneValida();
+            fisica.inizioPrestito = System.currentTimeMillis();
+            fisica.puntoPrestito = new Exception("Connessione presa in prestito qui");
+            fisica.perditaSegnalata = false;
+            inPrestito.add(fisica);
+            return creaProxy(fisica);
+        } catch (SQLException | RuntimeException e) {
+            permessi.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Apre una connessione fisica con gli stessi parametri del pool, ma fuori dal pool:
+     * non conta nella dimensione massima e va chiusa da chi la riceve. Serve a chi deve
+     * controllare il server senza sottrarre connessioni alle operazioni (SupervisoreConnessione).
+     *
+     * @return Una nuova connessione.
+     * @throws SQLException se non è possibile aprire la connessione.
+     */
+    public Connection apriConnessioneDedicata() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    /**
+     * Chiude tutte le connessioni libere, ad esempio dopo che il server è caduto: altrimenti
+     * ogni prestito dovrebbe prima scoprire, con il timeout di validazione, che la connessione
+     * libera è morta. Le connessioni minime vengono riaperte dal thread di manutenzione.
+     */
+    public void scartaLibere() {
+        ConnessioneFisica fisica;
+        while ((fisica = libere.pollFirst()) != null) {
+            connessioniScartate.incrementAndGet();
+            chiudiSilenziosamente(fisica);
+        }
+    }
+
+    /**
+     * Chiude tutte le connessioni libere e ferma il thread di manutenzione.
+     * Le connessioni ancora in prestito vengono chiuse al momento della restituzione.
+     */
+    public void chiudi() {
+        chiuso = true;
+        manutenzione.shutdownNow();
+        ConnessioneFisica fisica;
+        while ((fisica = libere.pollFirst()) != null) {
+            chiudiSilenziosamente(fisica);
+        }
+    }
+
+    // ----------------------------
+    //           METRICHE
+    // ----------------------------
+
+    public long getPrestiti() {
+        return prestiti.get();
+    }
+
+    public long getTimeoutScaduti() {
+        return timeoutScaduti.get();
+    }
+
+    public long getConnessioniScartate() {
+        return connessioniScartate.get();
+    }
+
+    public long getPerditeRilevate() {
+        return perditeRilevate.get();
+    }
+
+    public int getDimensioneMassima() {
+        return dimensioneMassima;
+    }
+
+    public int getConnessioniAperte() {
+        return connessioniAperte.get();
+    }
+
+    public int getConnessioniInPrestito() {
+        return inPrestito.size();
+    }
+
+    /**
+     * @return Il tempo medio di attesa (in millisecondi) per ottenere una connessione.
+     */
+    public double getAttesaMediaMs() {
+        long n = prestiti.get();
+        return (n == 0) ? 0.0 : attesaTotaleNanos.get() / (double) n / 1_000_000.0;
+    }
+
+    /**
+     * @return Il tempo massimo di attesa (in millisecondi) registrato finora.
+     */
+    public double getAttesaMassimaMs() {
+        return attesaMassimaNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Rappresentazione testuale delle metriche del pool, utile per il debug.
+     */
+    @Override
+    public String toString() {
+        return "ConnectionPool[aperte=" + getConnessioniAperte() +
+               ", inPrestito=" + getConnessioniInPrestito() +
+               ", prestiti=" + getPrestiti() +
+               ", attesaMediaMs=" + String.format("%.3f", getAttesaMediaMs()) +
+               ", attesaMassimaMs=" + String.format("%.3f", getAttesaMassimaMs()) +
+               ", timeout=" + getTimeoutScaduti() +
+               ", scartate=" + getConnessioniScartate() +
+               ", perdite=" + getPerditeRilevate() + "]";
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Estrae dalla coda la connessione libera usata più di recente e la valida;
+     * le connessioni non più valide vengono scartate. Se non ce ne sono di libere
+     * ne apre una nuova (il semaforo garantisce che non si superi il massimo).
+     */
+    private ConnessioneFisica prendiConnessioneValida() throws SQLException {
+        ConnessioneFisica fisica;
+        while ((fisica = libere.pollFirst()) != null) {
+            if (valida(fisica)) {
+                return fisica;
+            }
+            connessioniScartate.incrementAndGet();
+            chiudiSilenziosamente(fisica);
+        }
+        return apriConnessione();
+    }
+
+    private boolean valida(ConnessioneFisica fisica) {
+        try {
+            return fisica.connessione.isValid(timeoutValidazioneSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private ConnessioneFisica apriConnessione() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, username, password);
+        connessioniAperte.incrementAndGet();
+        return new ConnessioneFisica(conn);
+    }
+
+    /**
+     * Riconsegna al pool una connessione presa in prestito. Eventuali transazioni
+     * lasciate aperte vengono annullate, in modo che il prossimo utilizzatore
+     * trovi la connessione in autocommit come appena aperta.
+     */
+    private void restituisci(ConnessioneFisica fisica) {
+        inPrestito.remove(fisica);
+        fisica.puntoPrestito = null;
+        try {
+            if (chiuso || fisica.connessione.isClosed()) {
+                chiudiSilenziosamente(fisica);
+                return;
+            }
+            if (!fisica.connessione.getAutoCommit()) {
+                fisica.connessione.rollback();
+                fisica.connessione.setAutoCommit(true);
+            }
+            fisica.ultimoUso = System.currentTimeMillis();
+            libere.offerFirst(fisica);
+        } catch (SQLException e) {
+            connessioniScartate.incrementAndGet();
+            chiudiSilenziosamente(fisica);
+        } finally {
+            permessi.release();
+        }
+    }
+
+    /**
+     * Eseguito periodicamente: chiude le connessioni inattive oltre la dimensione minima,
+     * riapre quelle mancanti fino alla minima e segnala le connessioni non restituite.
+     */
+    private void eseguiManutenzione() {
+        long adesso = System.currentTimeMillis();
+
+        // Chiusura delle connessioni inattive in eccesso (dalla coda: le meno usate di recente)
+        Iterator<ConnessioneFisica> it = libere.descendingIterator();
+        while (it.hasNext() && connessioniAperte.get() > dimensioneMinima) {
+            ConnessioneFisica fisica = it.next();
+            if (adesso - fisica.ultimoUso > timeoutInattivitaMs && libere.removeLastOccurrence(fisica)) {
+                chiudiSilenziosamente(fisica);
+            }
+        }
+
+        // Ripristino della dimensione minima (ad esempio dopo connessioni scartate).
+        // Ogni apertura prende un permesso, come getConnection: se sono tutti in uso il pool
+        // è già al massimo e aprirne un'altra lo supererebbe.
+        while (!chiuso && connessioniAperte.get() < dimensioneMinima) {
+            if (!permessi.tryAcquire()) {
+                break;
+            }
+            try {
+                libere.offerLast(apriConnessione());
+            } catch (SQLException e) {
+                break; // Si riproverà al prossimo giro di manutenzione
+            } finally {
+                permessi.release();
+            }
+        }
+
+        // Rilevamento delle connessioni non restituite
+        for (ConnessioneFisica fisica : inPrestito) {
+            Exception punto = fisica.puntoPrestito;
+            if (!fisica.perditaSegnalata && punto != null && adesso - fisica.inizioPrestito > sogliaPerditaMs) {
+                fisica.perditaSegnalata = true;
+                perditeRilevate.incrementAndGet();
+                System.err.println("Possibile connessione non restituita al pool da "
+                        + (adesso - fisica.inizioPrestito) + " ms:");
+                punto.printStackTrace();
+            }
+        }
+    }
+
+    private void registraAttesa(long nanos) {
+        prestiti.incrementAndGet();
+        attesaTotaleNanos.addAndGet(nanos);
+        attesaMassimaNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void chiudiSilenziosamente(ConnessioneFisica fisica) {
+        try {
+            fisica.connessione.close();
+        } catch (SQLException e) {
+            // La connessione è comunque da scartare
+        } finally {
+            connessioniAperte.decrementAndGet();
+        }
+    }
+
+    /**
+     * Crea il proxy restituito ai chiamanti: tutte le chiamate vengono inoltrate alla
+     * connessione fisica, tranne close()/isClosed() che gestiscono la restituzione al pool.
+     */
+    private Connection creaProxy(ConnessioneFisica fisica) {
+        AtomicBoolean restituita = new AtomicBoolean(false);
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    if (restituita.compareAndSet(false, true)) {
+                        restituisci(fisica);
+                    }
+                    return null;
+                case "isClosed":
+                    return restituita.get() || fisica.connessione.isClosed();
+                case "toString":
+                    return "PooledConnection[" + fisica.connessione + "]";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    if (restituita.get()) {
+                        throw new SQLException("La connessione è già stata restituita al pool.");
+                    }
+                    return invoca(fisica.connessione, method, args);
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static Object invoca(Connection destinazione, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destinazione, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int leggiIntero(Properties props, String chiave, int valoreDefault) {
+        String valore = props.getProperty(chiave);
+        return (valore == null || valore.trim().isEmpty()) ? valoreDefault : Integer.parseInt(valore.trim());
+    }
+
+    private static long leggiLong(Properties props, String chiave, long valoreDefault) {
+        String valore = props.getProperty(chiave);
+        return (valore == null || valore.trim().isEmpty()) ? valoreDefault : Long.parseLong(valore.trim());
+    }
+
+    /**
+     * Una connessione fisica verso MySQL con le informazioni di servizio del pool.
+     */
+    private static class ConnessioneFisica {
+        final Connection connessione;
+        volatile long ultimoUso = System.currentTimeMillis();
+        volatile long inizioPrestito;
+        volatile Exception puntoPrestito;   // Stack trace del prestito, per la leak detection
+        volatile boolean perditaSegnalata;
+
+        ConnessioneFisica(Connection connessione) {
+            this.connessione = connessione;
+        }
+    }
+}
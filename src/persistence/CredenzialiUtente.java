@@ -0,0 +1,36 @@
+package persistence;
+
+/**
+ * La classe CredenzialiUtente contiene i dati memorizzati per verificare il login
+ * di un utente: l'ID, lo username, l'hash della password e il relativo salt.
+ */
+public class CredenzialiUtente {
+
+    private final int id;
+    private final String username;
+    private final String hashPassword;
+    private final String salt;
+
+    public CredenzialiUtente(int id, String username, String hashPassword, String salt) {
+        this.id = id;
+        this.username = username;
+        this.hashPassword = hashPassword;
+        this.salt = salt;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getHashPassword() {
+        return hashPassword;
+    }
+
+    public String getSalt() {
+        return salt;
+    }
+}
@@ -0,0 +1,80 @@
+package persistence;
+
+import models.Persona;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * La classe CursorePersone permette di scorrere le persone di un utente una alla volta,
+ * leggendole in streaming dal database (cursore forward-only) senza caricarle tutte in memoria.
+ *
+ * Il cursore tiene occupata una connessione del pool finché non viene chiuso, quindi
+ * va sempre usato in un try-with-resources. Gli errori SQL durante lo scorrimento
+ * vengono rilanciati come IllegalStateException, dato che Iterator non ammette
+ * eccezioni controllate.
+ */
+public class CursorePersone implements Iterator<Persona>, AutoCloseable {
+
+    private final Connection conn;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+
+    private Persona prossima;    // Riga già letta ma non ancora restituita
+    private boolean terminato;
+
+    CursorePersone(Connection conn, PreparedStatement ps, ResultSet rs) {
+        this.conn = conn;
+        this.ps = ps;
+        this.rs = rs;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (prossima != null) {
+            return true;
+        }
+        if (terminato) {
+            return false;
+        }
+        try {
+            if (rs.next()) {
+                prossima = MySQLPersonManager.leggiRiga(rs);
+                return true;
+            }
+            terminato = true;
+            return false;
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Errore durante la lettura delle persone dal database.", ex);
+        }
+    }
+
+    @Override
+    public Persona next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Persona p = prossima;
+        prossima = null;
+        return p;
+    }
+
+    /**
+     * Chiude il risultato e restituisce la connessione al pool.
+     */
+    @Override
+    public void close() throws SQLException {
+        terminato = true;
+        prossima = null;
+        try {
+            rs.close();
+            ps.close();
+        } finally {
+            conn.close();
+        }
+    }
+}
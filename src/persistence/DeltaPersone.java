@@ -0,0 +1,54 @@
+package persistence;
+
+import models.Persona;
+
+import java.util.Vector;
+
+/**
+ * La classe DeltaPersone contiene le modifiche alla rubrica di un utente avvenute dopo
+ * una certa versione (MySQLPersonManager.leggiPersoneDopo): le persone create o
+ * modificate, gli ID delle persone eliminate e la versione raggiunta.
+ *
+ * Un client che mantiene una copia locale della rubrica applica prima le modifiche,
+ * poi le eliminazioni, e alla richiesta successiva passa getVersione().
+ */
+public class DeltaPersone {
+
+    private final Vector<Persona> modificate;
+    private final int[] eliminate;
+    private final long versione;
+
+    public DeltaPersone(Vector<Persona> modificate, int[] eliminate, long versione) {
+        this.modificate = modificate;
+        this.eliminate = eliminate;
+        this.versione = versione;
+    }
+
+    /**
+     * @return Le persone create o modificate dopo la versione richiesta, in ordine di versione.
+     */
+    public Vector<Persona> getModificate() {
+        return modificate;
+    }
+
+    /**
+     * @return Gli ID delle persone eliminate dopo la versione richiesta.
+     */
+    public int[] getEliminate() {
+        return eliminate;
+    }
+
+    /**
+     * @return La versione più recente inclusa in questo delta, da usare per la richiesta successiva.
+     */
+    public long getVersione() {
+        return versione;
+    }
+
+    /**
+     * @return true se non ci sono state modifiche.
+     */
+    public boolean isVuoto() {
+        return modificate.isEmpty() && eliminate.length == 0;
+    }
+}
@@ -0,0 +1,607 @@
+package persistence;
+
+import models.Persona;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * La classe FileRubrica è il motore di memorizzazione su file della rubrica di un utente
+ * (usato da MappedPersonManager). Le persone stanno in due file mappati in memoria:
+ *
+ * <pre>
+ * persone-&lt;idUtente&gt;.dat   dati
+ *   [0]  int  MAGIC           [4]  int  FORMATO
+ *   [8]  long fine dei dati   [16] long versione della rubrica
+ *   [24] int  prossimo ID     [28] int  persone vive
+ *   [32] long byte morti (record sostituiti o eliminati)
+ *   [64] record, uno dopo l'altro:
+ *        int lunghezza, byte tipo (VIVA / LAPIDE), int id, long versione,
+ *        solo VIVA: int eta, 4 stringhe (nome, cognome, indirizzo, telefono) come short lunghezza + UTF-8
+ *
+ * persone-&lt;idUtente&gt;.idx   indice ID -&gt; posizione del record vivo (indirizzamento diretto)
+ *   [0]  int  MAGIC           [4]  int  FORMATO
+ *   [8]  long versione dei dati a cui corrisponde l'indice
+ *   [16 + 4 * id] int posizione del record (0 = persona inesistente)
+ * </pre>
+ *
+ * I record non vengono mai modificati: una modifica aggiunge un nuovo record VIVA, una
+ * eliminazione aggiunge una LAPIDE, e il record precedente diventa "morto" perché l'indice
+ * non punta più a lui. Le letture decodificano i campi direttamente dal MappedByteBuffer,
+ * senza chiamate di sistema; all'apertura si leggono solo le intestazioni, quindi la prima
+ * pagina è disponibile senza scorrere l'intero file.
+ *
+ * Ogni scrittura viene confermata (conferma()) in quest'ordine, con force() (fsync) a ogni passo:
+ * record aggiunti, indice con la nuova versione, intestazione dei dati. Se il programma si
+ * interrompe prima dell'intestazione i nuovi record restano oltre la fine e vengono ignorati;
+ * se l'indice non corrisponde alla versione dei dati viene ricostruito scorrendo i record.
+ *
+ * Quando i byte morti superano la metà dei dati, la compattazione riscrive i soli record vivi
+ * (e le lapidi, che servono a leggiPersoneDopo) in un file ".compatto" e poi li ricopia
+ * all'inizio del file dati; se il programma si interrompe durante la copia, questa viene
+ * ripetuta alla riapertura. La compattazione sposta i record senza cambiare la versione, quindi
+ * prima della copia l'indice viene segnato come non valido, e dopo una copia (anche ripetuta)
+ * viene sempre ricostruito.
+ *
+ * Le letture vanno eseguite tenendo lock in lettura, le scritture tenendo lock in scrittura.
+ */
+final class FileRubrica {
+
+    private static final int MAGIC = 0x52554252;  // "RUBR"
+    private static final int FORMATO = 1;
+
+    // Intestazione del file dati
+    private static final int INTESTAZIONE = 64;
+    private static final int POS_FINE = 8;
+    private static final int POS_VERSIONE = 16;
+    private static final int POS_PROSSIMO_ID = 24;
+    private static final int POS_VIVE = 28;
+    private static final int POS_MORTI = 32;
+
+    // Intestazione del file indice
+    private static final int INTESTAZIONE_INDICE = 16;
+    private static final int POS_VERSIONE_INDICE = 8;
+    // Versione scritta nell'indice mentre non descrive i dati (nessuna versione reale è negativa)
+    private static final long VERSIONE_NON_VALIDA = -1;
+
+    // Tipi di record
+    private static final byte VIVA = 0;
+    private static final byte LAPIDE = 2;
+    private static final int LUNGHEZZA_LAPIDE = 17;
+    private static final int POS_STRINGHE = 21;
+
+    private static final int CAPACITA_INIZIALE_DATI = 1 << 16;
+    private static final int CAPACITA_INIZIALE_INDICE = INTESTAZIONE_INDICE + 4 * 1024;
+    private static final long DIMENSIONE_MASSIMA = Integer.MAX_VALUE;
+    // Sotto questa soglia di byte morti non conviene compattare
+    private static final long MORTI_MINIMI_PER_COMPATTARE = 1 << 20;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final int idUtente;
+    private final Path fileDati;
+    private final Path fileIndice;
+    private final Path fileCompatto;
+
+    private volatile boolean aperta;
+    private FileChannel canaleDati;
+    private FileChannel canaleIndice;
+    private MappedByteBuffer dati;
+    private MappedByteBuffer indice;
+
+    // Copia in memoria dell'intestazione dei dati (scritta su file da conferma())
+    private int fine;
+    private long versione;
+    private int prossimoId;
+    private int vive;
+    private long morti;
+
+    private volatile int[] perNome;  // ID ordinati per cognome e nome (null = da ricostruire)
+
+    /**
+     * Non accede al disco: i file vengono aperti alla prima operazione (apriSeNecessario).
+     *
+     * @param cartella La cartella dell'archivio.
+     * @param idUtente L'utente proprietario della rubrica.
+     */
+    FileRubrica(Path cartella, int idUtente) {
+        this.idUtente = idUtente;
+        this.fileDati = cartella.resolve("persone-" + idUtente + ".dat");
+        this.fileIndice = cartella.resolve("persone-" + idUtente + ".idx");
+        this.fileCompatto = cartella.resolve("persone-" + idUtente + ".compatto");
+    }
+
+    // ----------------------------
+    //     APERTURA E CHIUSURA
+    // ----------------------------
+
+    /**
+     * Apre e mappa i file, se non è già stato fatto. Va chiamato prima di prendere il lock.
+     */
+    void apriSeNecessario() throws IOException {
+        if (aperta) {
+            return;
+        }
+        synchronized (this) {
+            if (aperta) {
+                return;
+            }
+            canaleDati = FileChannel.open(fileDati, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean nuovo = canaleDati.size() == 0;
+            dati = canaleDati.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(canaleDati.size(), CAPACITA_INIZIALE_DATI));
+            if (nuovo) {
+                dati.putInt(0, MAGIC);
+                dati.putInt(4, FORMATO);
+                fine = INTESTAZIONE;
+                prossimoId = 1;
+                scriviIntestazione();
+                dati.force();
+            } else if (dati.getInt(0) != MAGIC || dati.getInt(4) != FORMATO) {
+                throw new IOException("Il file " + fileDati + " non è un archivio della rubrica.");
+            }
+            boolean compattata = completaCompattazione();
+            leggiIntestazione();
+
+            canaleIndice = FileChannel.open(fileIndice, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indice = canaleIndice.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(canaleIndice.size(), CAPACITA_INIZIALE_INDICE));
+            if (compattata || indice.getInt(0) != MAGIC || indice.getInt(4) != FORMATO
+                    || indice.getLong(POS_VERSIONE_INDICE) != versione) {
+                ricostruisciIndice();  // Indice nuovo, non allineato dopo un'interruzione o dopo una compattazione
+            }
+            aperta = true;
+        }
+    }
+
+    /**
+     * Scrive su disco le pagine mappate e chiude i file.
+     */
+    synchronized void chiudi() throws IOException {
+        if (!aperta) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            dati.force();
+            indice.force();
+            canaleDati.close();
+            canaleIndice.close();
+            aperta = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ----------------------------
+    //           LETTURE
+    // ----------------------------
+
+    int getIdUtente() {
+        return idUtente;
+    }
+
+    int contaVive() {
+        return vive;
+    }
+
+    long getVersione() {
+        return versione;
+    }
+
+    /**
+     * @return La persona con l'ID indicato, oppure null se non esiste.
+     */
+    Persona leggi(int id) {
+        int posizione = posizioneDi(id);
+        return posizione == 0 ? null : leggiRecord(posizione);
+    }
+
+    /**
+     * @return Il primo ID esistente maggiore di id, oppure 0 se non ce ne sono.
+     */
+    int prossimoIdDopo(int id) {
+        for (int i = Math.max(id + 1, 1); i < prossimoId; i++) {
+            if (posizioneDi(i) != 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param posizione La posizione (da 0) nell'ordine per ID.
+     * @return L'ID della persona in quella posizione, oppure 0 se è oltre la fine.
+     *         Scorre solo l'indice, senza leggere i record.
+     */
+    int idAllaPosizione(int posizione) {
+        int contate = 0;
+        for (int i = 1; i < prossimoId; i++) {
+            if (posizioneDi(i) != 0 && contate++ == posizione) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return Gli ID ordinati per cognome, nome e ID, calcolati solo dopo una modifica.
+     *         L'array restituito non va modificato.
+     */
+    int[] idPerNome() {
+        int[] ordinati = perNome;
+        if (ordinati == null) {
+            Persona[] persone = new Persona[vive];
+            int n = 0;
+            for (int i = 1; i < prossimoId && n < persone.length; i++) {
+                int posizione = posizioneDi(i);
+                if (posizione != 0) {
+                    persone[n++] = leggiRecord(posizione);
+                }
+            }
+            Arrays.sort(persone, 0, n, InMemoryPersonManager.PER_COGNOME_NOME);
+            ordinati = new int[n];
+            for (int i = 0; i < n; i++) {
+                ordinati[i] = persone[i].getID();
+            }
+            perNome = ordinati;
+        }
+        return ordinati;
+    }
+
+    /**
+     * Scorre tutti i record e raccoglie quelli con versione successiva a quella indicata.
+     */
+    DeltaPersone leggiDopo(long daVersione) {
+        Vector<Persona> modificate = new Vector<>();
+        int[] eliminate = new int[16];
+        int numeroEliminate = 0;
+        for (int pos = INTESTAZIONE; pos < fine; pos += dati.getInt(pos)) {
+            int id = dati.getInt(pos + 5);
+            if (dati.getLong(pos + 9) <= daVersione) {
+                continue;
+            }
+            if (dati.get(pos + 4) == VIVA) {
+                if (posizioneDi(id) == pos) {  // Solo l'ultima versione della persona
+                    modificate.add(leggiRecord(pos));
+                }
+            } else if (daVersione > 0) {
+                if (numeroEliminate == eliminate.length) {
+                    eliminate = Arrays.copyOf(eliminate, numeroEliminate * 2);
+                }
+                eliminate[numeroEliminate++] = id;
+            }
+        }
+        return new DeltaPersone(modificate, Arrays.copyOf(eliminate, numeroEliminate), versione);
+    }
+
+    // ----------------------------
+    //          SCRITTURE
+    // ----------------------------
+
+    /**
+     * Aggiunge una persona (senza confermare: va chiamato conferma() al termine).
+     *
+     * @param p La persona da aggiungere; l'ID viene assegnato qui.
+     * @return L'ID assegnato.
+     */
+    int inserisci(Persona p) throws IOException {
+        int id = prossimoId++;
+        p.setID(id);
+        int posizione = aggiungiRecord(VIVA, id, ++versione, p);
+        impostaPosizione(id, posizione);
+        vive++;
+        perNome = null;
+        return id;
+    }
+
+    /**
+     * Sostituisce una persona esistente (senza confermare).
+     *
+     * @return false se la persona non esiste.
+     */
+    boolean modifica(Persona p) throws IOException {
+        int vecchia = posizioneDi(p.getID());
+        if (vecchia == 0) {
+            return false;
+        }
+        int posizione = aggiungiRecord(VIVA, p.getID(), ++versione, p);
+        impostaPosizione(p.getID(), posizione);
+        morti += dati.getInt(vecchia);
+        perNome = null;
+        return true;
+    }
+
+    /**
+     * Elimina una persona lasciando una lapide (senza confermare).
+     *
+     * @return false se la persona non esiste.
+     */
+    boolean elimina(int id) throws IOException {
+        int vecchia = posizioneDi(id);
+        if (vecchia == 0) {
+            return false;
+        }
+        aggiungiRecord(LAPIDE, id, ++versione, null);
+        impostaPosizione(id, 0);
+        morti += dati.getInt(vecchia);
+        vive--;
+        perNome = null;
+        return true;
+    }
+
+    /**
+     * Rende durevoli le scritture fatte finora (fsync), poi compatta il file se conviene.
+     */
+    void conferma() throws IOException {
+        dati.force();                                 // 1. record
+        indice.putLong(POS_VERSIONE_INDICE, versione);
+        indice.force();                               // 2. indice
+        scriviIntestazione();
+        dati.force();                                 // 3. intestazione: da qui le scritture sono visibili
+        if (morti > MORTI_MINIMI_PER_COMPATTARE && morti * 2 > fine - INTESTAZIONE) {
+            compatta();
+        }
+    }
+
+    /**
+     * Annulla le scritture non confermate, rileggendo lo stato dal disco.
+     */
+    void annulla() throws IOException {
+        leggiIntestazione();
+        ricostruisciIndice();
+        perNome = null;
+    }
+
+    /**
+     * Riscrive il file dati con i soli record vivi e le lapidi (vedi la descrizione della classe).
+     */
+    void compatta() throws IOException {
+        try (FileChannel compatto = FileChannel.open(fileCompatto, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Corpo: le persone vive in ordine di ID, poi le lapidi
+            long scritti = INTESTAZIONE;
+            for (int id = 1; id < prossimoId; id++) {
+                int pos = posizioneDi(id);
+                if (pos != 0) {
+                    scritti += scriviCopia(compatto, pos, scritti);
+                }
+            }
+            for (int pos = INTESTAZIONE; pos < fine; pos += dati.getInt(pos)) {
+                if (dati.get(pos + 4) == LAPIDE) {
+                    scritti += scriviCopia(compatto, pos, scritti);
+                }
+            }
+            compatto.force(true);
+
+            // Intestazione per ultima: un file .compatto senza MAGIC è incompleto e viene scartato
+            ByteBuffer intestazione = ByteBuffer.allocate(INTESTAZIONE);
+            intestazione.putInt(0, MAGIC).putInt(4, FORMATO)
+                        .putLong(POS_FINE, scritti).putLong(POS_VERSIONE, versione)
+                        .putInt(POS_PROSSIMO_ID, prossimoId).putInt(POS_VIVE, vive).putLong(POS_MORTI, 0);
+            compatto.write(intestazione, 0);
+            compatto.force(true);
+        }
+        // Da qui le posizioni cambiano: un indice rimasto a metà non deve sembrare allineato
+        invalidaIndice();
+        completaCompattazione();
+        leggiIntestazione();
+        ricostruisciIndice();
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    private int posizioneDi(int id) {
+        long slot = INTESTAZIONE_INDICE + 4L * id;
+        if (id <= 0 || slot + 4 > indice.capacity()) {
+            return 0;
+        }
+        return indice.getInt((int) slot);
+    }
+
+    private void impostaPosizione(int id, int posizione) throws IOException {
+        long slot = INTESTAZIONE_INDICE + 4L * id;
+        if (slot + 4 > indice.capacity()) {
+            indice = ingrandisci(canaleIndice, indice, slot + 4);
+        }
+        indice.putInt((int) slot, posizione);
+    }
+
+    /**
+     * Scrive un record in fondo ai dati.
+     * @return La posizione del record.
+     */
+    private int aggiungiRecord(byte tipo, int id, long versioneRecord, Persona p) throws IOException {
+        byte[][] stringhe = null;
+        int lunghezza = LUNGHEZZA_LAPIDE;
+        if (tipo == VIVA) {
+            stringhe = new byte[][] {
+                codifica(p.getNome()), codifica(p.getCognome()), codifica(p.getIndirizzo()), codifica(p.getTelefono())
+            };
+            lunghezza = POS_STRINGHE;
+            for (byte[] s : stringhe) {
+                lunghezza += 2 + s.length;
+            }
+        }
+        if ((long) fine + lunghezza > dati.capacity()) {
+            dati = ingrandisci(canaleDati, dati, (long) fine + lunghezza);
+        }
+        int pos = fine;
+        dati.putInt(pos, lunghezza);
+        dati.put(pos + 4, tipo);
+        dati.putInt(pos + 5, id);
+        dati.putLong(pos + 9, versioneRecord);
+        if (tipo == VIVA) {
+            dati.putInt(pos + 17, p.getEta());
+            int s = pos + POS_STRINGHE;
+            for (byte[] stringa : stringhe) {
+                dati.putShort(s, (short) stringa.length);
+                dati.put(s + 2, stringa);
+                s += 2 + stringa.length;
+            }
+        }
+        fine += lunghezza;
+        return pos;
+    }
+
+    /**
+     * Decodifica un record VIVA direttamente dal buffer mappato.
+     */
+    private Persona leggiRecord(int pos) {
+        int id = dati.getInt(pos + 5);
+        int eta = dati.getInt(pos + 17);
+        int s = pos + POS_STRINGHE;
+        String[] campi = new String[4];
+        for (int i = 0; i < campi.length; i++) {
+            int lunghezza = Short.toUnsignedInt(dati.getShort(s));
+            byte[] byteStringa = new byte[lunghezza];
+            dati.get(s + 2, byteStringa);
+            campi[i] = new String(byteStringa, StandardCharsets.UTF_8);
+            s += 2 + lunghezza;
+        }
+        return new Persona(id, idUtente, campi[0], campi[1], campi[2], campi[3], eta);
+    }
+
+    private static byte[] codifica(String s) throws IOException {
+        byte[] b = (s == null) ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) {
+            throw new IOException("Campo troppo lungo per l'archivio locale (" + b.length + " byte).");
+        }
+        return b;
+    }
+
+    /**
+     * Mappa di nuovo il file con una capacità almeno doppia (il file viene esteso).
+     */
+    private static MappedByteBuffer ingrandisci(FileChannel canale, MappedByteBuffer attuale, long minimo) throws IOException {
+        long capacita = Math.max((long) attuale.capacity() * 2, minimo);
+        if (minimo > DIMENSIONE_MASSIMA) {
+            throw new IOException("L'archivio locale ha raggiunto la dimensione massima (2 GB).");
+        }
+        capacita = Math.min(capacita, DIMENSIONE_MASSIMA);
+        attuale.force();
+        return canale.map(FileChannel.MapMode.READ_WRITE, 0, capacita);
+    }
+
+    /** Copia nel file compatto il record in posizione pos. @return I byte scritti. */
+    private int scriviCopia(FileChannel compatto, int pos, long destinazione) throws IOException {
+        int lunghezza = dati.getInt(pos);
+        ByteBuffer record = dati.slice(pos, lunghezza);
+        long scritto = 0;
+        while (record.hasRemaining()) {
+            scritto += compatto.write(record, destinazione + scritto);
+        }
+        return lunghezza;
+    }
+
+    /**
+     * Se esiste un file .compatto completo, ne copia il contenuto all'inizio dei dati
+     * (corpo prima, intestazione per ultima) e lo elimina. L'operazione è ripetibile.
+     *
+     * @return true se i dati sono stati riscritti: l'indice va ricostruito.
+     */
+    private boolean completaCompattazione() throws IOException {
+        if (!Files.exists(fileCompatto)) {
+            return false;
+        }
+        boolean copiato = false;
+        try (FileChannel compatto = FileChannel.open(fileCompatto, StandardOpenOption.READ)) {
+            ByteBuffer intestazione = ByteBuffer.allocate(INTESTAZIONE);
+            while (intestazione.hasRemaining() && compatto.read(intestazione, intestazione.position()) > 0) {
+                // lettura completa dell'intestazione
+            }
+            // Senza intestazione la compattazione si era interrotta prima di finire: il file viene solo scartato
+            if (!intestazione.hasRemaining() && intestazione.getInt(0) == MAGIC) {
+                copiaCompatto(compatto, intestazione);
+                copiato = true;
+            }
+        }
+        Files.delete(fileCompatto);
+        perNome = null;
+        return copiato;
+    }
+
+    /**
+     * Copia il corpo del file compatto all'inizio dei dati, poi la sua intestazione.
+     */
+    private void copiaCompatto(FileChannel compatto, ByteBuffer intestazione) throws IOException {
+        int fineCompatto = (int) intestazione.getLong(POS_FINE);
+        ByteBuffer destinazione = dati.duplicate();
+        destinazione.position(INTESTAZIONE).limit(fineCompatto);
+        while (destinazione.hasRemaining()) {
+            if (compatto.read(destinazione, destinazione.position()) < 0) {
+                throw new IOException("Il file " + fileCompatto + " è troncato.");
+            }
+        }
+        dati.force();
+        dati.put(0, intestazione, 0, INTESTAZIONE);
+        dati.force();
+    }
+
+    private void leggiIntestazione() {
+        fine = (int) dati.getLong(POS_FINE);
+        versione = dati.getLong(POS_VERSIONE);
+        prossimoId = dati.getInt(POS_PROSSIMO_ID);
+        vive = dati.getInt(POS_VIVE);
+        morti = dati.getLong(POS_MORTI);
+    }
+
+    private void scriviIntestazione() {
+        dati.putLong(POS_FINE, fine);
+        dati.putLong(POS_VERSIONE, versione);
+        dati.putInt(POS_PROSSIMO_ID, prossimoId);
+        dati.putInt(POS_VIVE, vive);
+        dati.putLong(POS_MORTI, morti);
+    }
+
+    /**
+     * Ricostruisce l'indice scorrendo i record confermati: l'ultimo record di un ID vince.
+     */
+    private void ricostruisciIndice() throws IOException {
+        invalidaIndice();
+        ByteBuffer vuoto = indice.duplicate();
+        vuoto.position(INTESTAZIONE_INDICE);
+        while (vuoto.hasRemaining()) {
+            vuoto.put((byte) 0);
+        }
+        int contate = 0;
+        for (int pos = INTESTAZIONE; pos < fine; pos += dati.getInt(pos)) {
+            int id = dati.getInt(pos + 5);
+            if (dati.get(pos + 4) == VIVA) {
+                if (posizioneDi(id) == 0) {
+                    contate++;
+                }
+                impostaPosizione(id, pos);
+            } else {
+                if (posizioneDi(id) != 0) {
+                    contate--;
+                }
+                impostaPosizione(id, 0);
+            }
+        }
+        vive = contate;
+        indice.putInt(0, MAGIC);
+        indice.putInt(4, FORMATO);
+        indice.putLong(POS_VERSIONE_INDICE, versione);
+        indice.force();
+    }
+
+    /**
+     * Segna su disco l'indice come non allineato ai dati, prima di modificarlo o di spostare i record:
+     * se il programma si interrompe prima della fine, alla riapertura l'indice viene ricostruito.
+     */
+    private void invalidaIndice() {
+        indice.putLong(POS_VERSIONE_INDICE, VERSIONE_NON_VALIDA);
+        indice.force();
+    }
+}
@@ -0,0 +1,143 @@
+package persistence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe FileUtenteManager memorizza le utenze dell'archivio locale (ArchivioSuFile)
+ * nel file di testo "utenti.txt", una riga per utente:
+ *
+ * id TAB hash della password TAB salt TAB username
+ *
+ * Il file viene letto tutto all'avvio (le utenze sono poche) e le registrazioni (e i cambi
+ * di password, che prevalgono sulle righe precedenti dello stesso utente) vengono aggiunte in fondo e rese durevoli con force() prima di confermare la registrazione.
+ */
+public class FileUtenteManager implements UtenteStore {
+
+    private final Path file;
+    private final ConcurrentHashMap<String, CredenzialiUtente> utenti = new ConcurrentHashMap<>();
+    private int ultimoId;
+
+    /**
+     * @param cartella La cartella dell'archivio locale.
+     * @throws IOException se il file esiste ma non può essere letto.
+     */
+    public FileUtenteManager(Path cartella) throws IOException {
+        this.file = cartella.resolve("utenti.txt");
+        if (Files.exists(file)) {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String riga;
+                while ((riga = in.readLine()) != null) {
+                    String[] campi = riga.split("\t", 4);
+                    if (campi.length < 4) {
+                        continue;  // Riga incompleta (scrittura interrotta): si ignora
+                    }
+                    int id = Integer.parseInt(campi[0]);
+                    utenti.put(campi[3], new CredenzialiUtente(id, campi[3], campi[1], campi[2]));
+                    ultimoId = Math.max(ultimoId, id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public CredenzialiUtente cercaCredenziali(String username) {
+        return utenti.get(username);
+    }
+
+    @Override
+    public synchronized boolean registraUtente(String username, String hashPassword, String salt) throws SQLException {
+        controllaUsername(username);
+        if (utenti.containsKey(username)) {
+            return false;  // Utente già esistente
+        }
+        CredenzialiUtente nuovo = new CredenzialiUtente(ultimoId + 1, username, hashPassword, salt);
+        scrivi(Collections.singletonList(nuovo));
+        ultimoId = nuovo.getId();
+        utenti.put(username, nuovo);
+        return true;
+    }
+
+    /**
+     * Tutte le nuove righe vengono aggiunte con una sola scrittura e un solo force().
+     */
+    @Override
+    public synchronized int[] registraUtenti(List<CredenzialiUtente> nuovi) throws SQLException {
+        int[] id = new int[nuovi.size()];
+        List<CredenzialiUtente> daScrivere = new ArrayList<>();
+        Set<String> inLista = new HashSet<>();
+        for (int i = 0; i < id.length; i++) {
+            CredenzialiUtente c = nuovi.get(i);
+            controllaUsername(c.getUsername());
+            if (!utenti.containsKey(c.getUsername()) && inLista.add(c.getUsername())) {
+                id[i] = ultimoId + daScrivere.size() + 1;
+                daScrivere.add(new CredenzialiUtente(id[i], c.getUsername(), c.getHashPassword(), c.getSalt()));
+            }
+        }
+        if (daScrivere.isEmpty()) {
+            return id;
+        }
+        scrivi(daScrivere);
+        for (CredenzialiUtente c : daScrivere) {
+            utenti.put(c.getUsername(), c);
+        }
+        ultimoId += daScrivere.size();
+        return id;
+    }
+
+    /**
+     * La nuova riga viene aggiunta in fondo al file: alla lettura prevale l'ultima riga di ogni username.
+     */
+    @Override
+    public synchronized boolean aggiornaPassword(String username, String hashPassword, String salt) throws SQLException {
+        CredenzialiUtente vecchio = utenti.get(username);
+        if (vecchio == null) {
+            return false;
+        }
+        CredenzialiUtente nuovo = new CredenzialiUtente(vecchio.getId(), username, hashPassword, salt);
+        scrivi(Collections.singletonList(nuovo));
+        utenti.put(username, nuovo);
+        return true;
+    }
+
+    private static void controllaUsername(String username) throws SQLException {
+        if (username.indexOf('\n') >= 0 || username.indexOf('\r') >= 0) {
+            throw new SQLException("Lo username non può contenere caratteri di a capo.");
+        }
+    }
+
+    /**
+     * Aggiunge le righe degli utenti in fondo al file e attende che siano su disco.
+     */
+    private void scrivi(List<CredenzialiUtente> daScrivere) throws SQLException {
+        StringBuilder righe = new StringBuilder("\n");
+        for (CredenzialiUtente c : daScrivere) {
+            righe.append(c.getId()).append('\t').append(c.getHashPassword()).append('\t')
+                    .append(c.getSalt()).append('\t').append(c.getUsername()).append('\n');
+        }
+        String riga = righe.toString();
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(riga.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                canale.write(buffer);
+            }
+            canale.force(true);
+        } catch (IOException ex) {
+            throw new SQLException("Errore di scrittura nell'archivio locale: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * La classe Giornale è un file di sola aggiunta (write-ahead log) in cui vengono registrate
+ * le modifiche prima di essere considerate confermate. Ogni record ha la forma:
+ *
+ * <pre>
+ *   int lunghezza del contenuto, int CRC32 del contenuto, contenuto
+ * </pre>
+ *
+ * Le scritture sono sequenziali e la conferma usa il "group commit": accoda() scrive il
+ * record senza attendere il disco, attendiDurevole() attende che un force() (fsync) lo
+ * abbia reso durevole. Più thread in attesa nello stesso momento vengono serviti da un
+ * unico force(): il primo che lo esegue rende durevoli anche i record degli altri.
+ *
+ * Alla lettura (scorri) ci si ferma al primo record incompleto o con CRC errato, che può
+ * essere solo la coda di una scrittura interrotta, e il file viene troncato in quel punto.
+ * Per questo una scrittura fallita a metà non deve restare nel file: accoda() la tronca, e se
+ * nemmeno il troncamento riesce il giornale rifiuta le scritture successive, che altrimenti
+ * verrebbero accodate dopo il record incompleto e scartate alla riapertura.
+ */
+public class Giornale {
+
+    private final Path file;
+    private final FileChannel canale;
+    private final CRC32 crc = new CRC32();
+
+    private long ultimoAccodato;       // Numero di record accodati dall'apertura
+    private volatile long ultimoDurevole;
+    private IOException guasto;        // Se non è null il giornale non accetta più scritture
+    private final Object lockForce = new Object();
+
+    /**
+     * @param file Il file del giornale (viene creato se non esiste).
+     * @throws IOException se il file non può essere aperto.
+     */
+    public Giornale(Path file) throws IOException {
+        this.file = file;
+        this.canale = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Passa al consumer il contenuto di tutti i record validi, in ordine, poi posiziona
+     * il giornale in fondo all'ultimo record valido per le scritture successive.
+     *
+     * @param consumer Il codice da eseguire per ogni record.
+     * @return Il numero di record letti.
+     * @throws IOException se la lettura fallisce.
+     */
+    public synchronized long scorri(Consumer<ByteBuffer> consumer) throws IOException {
+        long posizione = 0;
+        long letti = 0;
+        long dimensione = canale.size();
+        ByteBuffer intestazione = ByteBuffer.allocate(8);
+        while (posizione + 8 <= dimensione) {
+            intestazione.clear();
+            leggiTutto(intestazione, posizione);
+            int lunghezza = intestazione.getInt(0);
+            int crcAtteso = intestazione.getInt(4);
+            if (lunghezza < 0 || posizione + 8 + lunghezza > dimensione) {
+                break;  // Record incompleto
+            }
+            ByteBuffer contenuto = ByteBuffer.allocate(lunghezza);
+            leggiTutto(contenuto, posizione + 8);
+            crc.reset();
+            crc.update(contenuto.array(), 0, lunghezza);
+            if ((int) crc.getValue() != crcAtteso) {
+                break;  // Record danneggiato
+            }
+            consumer.accept(contenuto.rewind());
+            posizione += 8 + lunghezza;
+            letti++;
+        }
+        if (posizione < dimensione) {
+            System.err.println("Giornale " + file + ": scartati " + (dimensione - posizione)
+                    + " byte finali non validi (scrittura interrotta).");
+            canale.truncate(posizione);
+            canale.force(true);
+        }
+        canale.position(posizione);
+        return letti;
+    }
+
+    /**
+     * Aggiunge un record in fondo al giornale, senza attendere che sia durevole.
+     *
+     * @param contenuto Il contenuto del record.
+     * @return Il numero d'ordine del record, da passare ad attendiDurevole.
+     * @throws IOException se la scrittura fallisce (il record non viene accodato) o se il
+     *                     giornale non accetta più scritture dopo un errore precedente.
+     */
+    public synchronized long accoda(byte[] contenuto) throws IOException {
+        if (guasto != null) {
+            throw new IOException("Il giornale " + file + " non accetta scritture dopo un errore: "
+                    + guasto.getMessage(), guasto);
+        }
+        crc.reset();
+        crc.update(contenuto, 0, contenuto.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + contenuto.length);
+        record.putInt(contenuto.length).putInt((int) crc.getValue()).put(contenuto).flip();
+        long inizio = canale.position();
+        try {
+            while (record.hasRemaining()) {
+                canale.write(record);
+            }
+        } catch (IOException ex) {
+            scartaDa(inizio, ex);
+            throw ex;
+        }
+        return ++ultimoAccodato;
+    }
+
+    /**
+     * Attende che il record indicato (e tutti i precedenti) sia stato scritto su disco.
+     *
+     * @param numero Il numero restituito da accoda.
+     * @throws IOException se il force() fallisce.
+     */
+    public void attendiDurevole(long numero) throws IOException {
+        if (ultimoDurevole >= numero) {
+            return;
+        }
+        synchronized (lockForce) {
+            if (ultimoDurevole >= numero) {
+                return;  // Reso durevole dal force() di un altro thread
+            }
+            long fino;
+            synchronized (this) {
+                fino = ultimoAccodato;
+            }
+            canale.force(false);
+            ultimoDurevole = fino;
+        }
+    }
+
+    /**
+     * Svuota il giornale (dopo che un'istantanea ne ha assorbito il contenuto).
+     *
+     * @throws IOException se il troncamento fallisce.
+     */
+    public void svuota() throws IOException {
+        synchronized (lockForce) {
+            synchronized (this) {
+                canale.truncate(0);
+                canale.position(0);
+                canale.force(true);
+                ultimoDurevole = ultimoAccodato;
+                guasto = null;  // Un file vuoto non contiene più record incompleti
+            }
+        }
+    }
+
+    /**
+     * @return La dimensione attuale del giornale in byte.
+     */
+    public synchronized long dimensione() throws IOException {
+        return canale.size();
+    }
+
+    public void chiudi() throws IOException {
+        synchronized (lockForce) {
+            synchronized (this) {
+                canale.force(true);
+                canale.close();
+            }
+        }
+    }
+
+    /**
+     * Toglie dal file la parte già scritta di un record non riuscito. Se non è possibile,
+     * il giornale viene messo in errore.
+     */
+    private void scartaDa(long inizio, IOException causa) {
+        try {
+            canale.truncate(inizio);
+            canale.position(inizio);
+        } catch (IOException ex) {
+            causa.addSuppressed(ex);
+            guasto = causa;
+        }
+    }
+
+    private void leggiTutto(ByteBuffer buffer, long posizione) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (canale.read(buffer, posizione + buffer.position()) < 0) {
+                throw new IOException("Fine inattesa del giornale " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package persistence;
+
+import models.Persona;
+import models.Testo;
+import models.Utente;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * La classe InMemoryPersonManager gestisce la rubrica di un utente tenendola solo in memoria,
+ * senza alcun servizio esterno. Serve come riferimento a latenza zero per le prove di
+ * prestazioni e per i test di carico senza un server MySQL.
+ *
+ * Le persone di ogni utente stanno in una {@link Partizione} separata, con un proprio
+ * lock di lettura/scrittura: utenti diversi non si contendono mai lo stesso lock e le
+ * letture dello stesso utente procedono in parallelo. Dentro la partizione le persone
+ * sono indicizzate per ID in una IntObjectMap (chiavi int primitive) e gli ID sono
+ * tenuti anche in un array ordinato, usato dalla paginazione keyset.
+ *
+ * Il comportamento replica quello di MySQLPersonManager: ID crescenti assegnati dallo
+ * store, modifica ed eliminazione ignorate se la persona non appartiene all'utente,
+ * versioni e lapidi per leggiPersoneDopo, ordinamento per cognome e nome senza
+ * distinzione fra maiuscole e minuscole (come la collation del database).
+ */
+public class InMemoryPersonManager implements PersonaStore {
+
+    // Stesso ordine di "ORDER BY Cognome, Nome, ID" con collation case-insensitive
+    private static final Comparator<String> TESTO =
+            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+    static final Comparator<Persona> PER_COGNOME_NOME =
+            Comparator.comparing(Persona::getCognome, TESTO)
+                      .thenComparing(Persona::getNome, TESTO)
+                      .thenComparingInt(Persona::getID);
+
+    private final Utente user;
+    private final Partizione partizione;
+
+    /**
+     * @param user       L'Utente "proprietario" di queste persone (chi è loggato).
+     * @param partizione La partizione con le persone dell'utente (vedi ArchivioInMemoria).
+     */
+    public InMemoryPersonManager(Utente user, Partizione partizione) {
+        this.user = user;
+        this.partizione = partizione;
+    }
+
+    @Override
+    public Utente getUtente() {
+        return user;
+    }
+
+    // ----------------------------
+    //          SCRITTURE
+    // ----------------------------
+
+    @Override
+    public int salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException {
+        Persona nuova = valida(0, nome, cognome, indirizzo, numero, eta);
+        partizione.lock.writeLock().lock();
+        try {
+            return partizione.inserisci(nuova);
+        } finally {
+            partizione.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public RisultatoBatch salvaPersone(Collection<Persona> persone) {
+        RisultatoBatch risultato = new RisultatoBatch(persone.size());
+        partizione.lock.writeLock().lock();
+        try {
+            int i = 0;
+            for (Persona p : persone) {
+                try {
+                    Persona nuova = valida(0, p.getNome(), p.getCognome(), p.getIndirizzo(), p.getTelefono(), p.getEta());
+                    risultato.impostaId(i, partizione.inserisci(nuova));
+                } catch (SQLException ex) {
+                    risultato.aggiungiErrore(i, p, ex.getMessage());
+                }
+                i++;
+            }
+        } finally {
+            partizione.lock.writeLock().unlock();
+        }
+        return risultato;
+    }
+
+    @Override
+    public void modificaPersona(int idPersona, String nome, String cognome, int eta,
+                                String indirizzo, String numero) throws SQLException {
+        Persona modificata = valida(idPersona, nome, cognome, indirizzo, numero, eta);
+        partizione.lock.writeLock().lock();
+        try {
+            partizione.modifica(modificata);
+        } finally {
+            partizione.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void eliminaPersona(int idPersona) {
+        partizione.lock.writeLock().lock();
+        try {
+            partizione.elimina(idPersona);
+        } finally {
+            partizione.lock.writeLock().unlock();
+        }
+    }
+
+    // ----------------------------
+    //           LETTURE
+    // ----------------------------
+
+    @Override
+    public Vector<Persona> leggiPersone() {
+        partizione.lock.readLock().lock();
+        try {
+            Vector<Persona> result = new Vector<>(partizione.numeroIds);
+            for (int i = 0; i < partizione.numeroIds; i++) {
+                result.add(partizione.righe.get(partizione.ids[i]).persona);
+            }
+            return result;
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int contaPersone() {
+        partizione.lock.readLock().lock();
+        try {
+            return partizione.numeroIds;
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Pagina leggiPagina(ChiavePagina dopo, int limite) {
+        if (limite < 1) {
+            throw new IllegalArgumentException("Il limite della pagina deve essere almeno 1.");
+        }
+        partizione.lock.readLock().lock();
+        try {
+            Vector<Persona> righe = new Vector<>(limite);
+            int totale = partizione.numeroIds;
+            int i;
+            Persona[] perNome = null;
+            if (dopo.getOrdinamento() == ChiavePagina.Ordinamento.PER_COGNOME_NOME) {
+                perNome = partizione.perNome();
+                i = dopo.isInizio() ? 0 : primoDopo(perNome, dopo);
+            } else {
+                i = dopo.isInizio() ? 0 : primoIdDopo(partizione.ids, totale, dopo.getId());
+            }
+            for (; i < totale && righe.size() < limite; i++) {
+                righe.add(perNome != null ? perNome[i] : partizione.righe.get(partizione.ids[i]).persona);
+            }
+            ChiavePagina prossima = (i < totale) ? ChiavePagina.dopo(dopo.getOrdinamento(), righe.lastElement()) : null;
+            return new Pagina(righe, prossima);
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Le persone sono già in memoria con tutti i dati: l'elenco coincide con leggiPagina.
+     */
+    @Override
+    public Pagina leggiElenco(ChiavePagina dopo, int limite) {
+        return leggiPagina(dopo, limite);
+    }
+
+    @Override
+    public Persona leggiPersona(int idPersona) {
+        partizione.lock.readLock().lock();
+        try {
+            Riga riga = partizione.righe.get(idPersona);
+            return riga != null ? riga.persona : null;
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ChiavePagina chiaveAllaPosizione(ChiavePagina.Ordinamento ordinamento, int posizione) {
+        if (posizione <= 0) {
+            return ChiavePagina.inizio(ordinamento);
+        }
+        partizione.lock.readLock().lock();
+        try {
+            if (posizione > partizione.numeroIds) {
+                return null;
+            }
+            Persona p = (ordinamento == ChiavePagina.Ordinamento.PER_COGNOME_NOME)
+                    ? partizione.perNome()[posizione - 1]
+                    : partizione.righe.get(partizione.ids[posizione - 1]).persona;
+            return ChiavePagina.dopo(ordinamento, p);
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public DeltaPersone leggiPersoneDopo(long versione) {
+        partizione.lock.readLock().lock();
+        try {
+            Vector<Riga> cambiate = new Vector<>();
+            partizione.righe.perOgniValore(riga -> {
+                if (riga.versione > versione) {
+                    cambiate.add(riga);
+                }
+            });
+            cambiate.sort(Comparator.comparingLong(riga -> riga.versione));
+            Vector<Persona> modificate = new Vector<>(cambiate.size());
+            for (Riga riga : cambiate) {
+                modificate.add(riga.persona);
+            }
+
+            int[] eliminate = new int[0];
+            if (versione > 0) {
+                // Le lapidi sono in ordine di versione: basta trovare la prima successiva
+                int da = primaLapideDopo(versione);
+                eliminate = Arrays.copyOfRange(partizione.lapidiId, da, partizione.numeroLapidi);
+            }
+            return new DeltaPersone(modificate, eliminate, Math.max(versione, partizione.versione));
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Le persone vengono copiate (solo i riferimenti) sotto lock e passate al consumer
+     * dopo averlo rilasciato, così un consumer lento non blocca le scritture.
+     */
+    @Override
+    public void scorriPersone(ChiavePagina.Ordinamento ordinamento, Consumer<Persona> consumer) {
+        Persona[] istantanea;
+        partizione.lock.readLock().lock();
+        try {
+            if (ordinamento == ChiavePagina.Ordinamento.PER_COGNOME_NOME) {
+                istantanea = partizione.perNome();
+            } else {
+                istantanea = new Persona[partizione.numeroIds];
+                for (int i = 0; i < istantanea.length; i++) {
+                    istantanea[i] = partizione.righe.get(partizione.ids[i]).persona;
+                }
+            }
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+        for (Persona p : istantanea) {
+            consumer.accept(p);
+        }
+    }
+
+    /**
+     * Le persone vengono scorse in ordine di cognome e nome fino a trovarne limite.
+     */
+    @Override
+    public Vector<Persona> cercaPersone(String testo, int limite) {
+        Vector<Persona> result = new Vector<>();
+        String[] parole = Testo.paroleDaCercare(testo);
+        if (parole.length == 0) {
+            return result;
+        }
+        Persona[] ordinate;
+        partizione.lock.readLock().lock();
+        try {
+            ordinate = partizione.perNome();
+        } finally {
+            partizione.lock.readLock().unlock();
+        }
+        for (int i = 0; i < ordinate.length && result.size() < limite; i++) {
+            if (Testo.corrisponde(ordinate[i], parole)) {
+                result.add(ordinate[i]);
+            }
+        }
+        return result;
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Crea la persona dell'utente corrente usando i controlli di validità della classe Persona,
+     * che qui fanno le veci dei vincoli della tabella (NOT NULL ecc.).
+     *
+     * @throws SQLException se i dati non sono validi, come farebbe il database.
+     */
+    private Persona valida(int id, String nome, String cognome, String indirizzo, String numero, int eta)
+            throws SQLException {
+        try {
+            return new Persona(id, user.getID_Utente(), nome, cognome, indirizzo, numero, eta);
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
+    /** @return L'indice del primo ID maggiore di id nei primi n elementi (ordinati) di ids. */
+    private static int primoIdDopo(int[] ids, int n, int id) {
+        int pos = Arrays.binarySearch(ids, 0, n, id);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /** @return L'indice della prima persona che segue la chiave nell'ordine per cognome e nome. */
+    private static int primoDopo(Persona[] perNome, ChiavePagina chiave) {
+        int basso = 0;
+        int alto = perNome.length;
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            if (confronta(perNome[medio], chiave) <= 0) {
+                basso = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return basso;
+    }
+
+    /** Confronta una persona con una chiave keyset nello stesso ordine di PER_COGNOME_NOME. */
+    static int confronta(Persona p, ChiavePagina chiave) {
+        int c = TESTO.compare(p.getCognome(), chiave.getCognome());
+        if (c == 0) {
+            c = TESTO.compare(p.getNome(), chiave.getNome());
+        }
+        return (c != 0) ? c : Integer.compare(p.getID(), chiave.getId());
+    }
+
+    private int primaLapideDopo(long versione) {
+        int basso = 0;
+        int alto = partizione.numeroLapidi;
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            if (partizione.lapidiVersione[medio] <= versione) {
+                basso = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return basso;
+    }
+
+    /**
+     * Una persona con la versione della rubrica in cui è stata scritta l'ultima volta.
+     */
+    static final class Riga {
+        final Persona persona;
+        final long versione;
+
+        Riga(Persona persona, long versione) {
+            this.persona = persona;
+            this.versione = versione;
+        }
+    }
+
+    /**
+     * Le persone di un singolo utente. Tutti i campi vanno letti tenendo il lock in
+     * lettura e modificati tenendo il lock in scrittura.
+     */
+    public static final class Partizione {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final AtomicInteger generatoreId;        // Condiviso fra tutte le partizioni
+
+        final IntObjectMap<Riga> righe = new IntObjectMap<>();
+        int[] ids = new int[16];                          // ID in ordine crescente
+        int numeroIds;
+        private volatile Persona[] perNome;               // Ordinate per cognome e nome (null = da ricostruire)
+
+        long versione;                                    // Ultima versione assegnata
+        int[] lapidiId = new int[16];                     // Persone eliminate, in ordine di versione
+        long[] lapidiVersione = new long[16];
+        int numeroLapidi;
+
+        /**
+         * @param generatoreId Il contatore da cui prendere gli ID, comune a tutti gli utenti.
+         */
+        Partizione(AtomicInteger generatoreId) {
+            this.generatoreId = generatoreId;
+        }
+
+        /**
+         * @param nuova La persona da inserire, senza ID: le viene assegnato qui.
+         * @return L'ID assegnato.
+         */
+        int inserisci(Persona nuova) {
+            // L'ID viene preso tenendo il lock in scrittura, quindi gli ID di una
+            // partizione sono crescenti e vengono aggiunti in fondo all'array
+            nuova.setID(nuovoId());
+            applicaScrittura(nuova, versione + 1);
+            return nuova.getID();
+        }
+
+        void modifica(Persona p) {
+            if (righe.containsKey(p.getID())) {
+                applicaScrittura(p, versione + 1);
+            }
+        }
+
+        void elimina(int id) {
+            if (righe.containsKey(id)) {
+                applicaEliminazione(id, versione + 1);
+            }
+        }
+
+        /**
+         * @return Un nuovo ID, preso dal contatore comune a tutte le partizioni.
+         */
+        int nuovoId() {
+            return generatoreId.incrementAndGet();
+        }
+
+        /**
+         * Inserisce o sostituisce una persona con una versione già decisa dal chiamante
+         * (usato anche per ricostruire la partizione da un giornale o da un'istantanea).
+         */
+        void applicaScrittura(Persona p, long versioneRiga) {
+            int id = p.getID();
+            if (righe.put(id, new Riga(p, versioneRiga)) == null) {
+                if (numeroIds == ids.length) {
+                    ids = Arrays.copyOf(ids, numeroIds * 2);
+                }
+                int pos = numeroIds;
+                if (pos > 0 && ids[pos - 1] > id) {
+                    // Succede solo ricostruendo la partizione: si mantiene l'ordine
+                    pos = -Arrays.binarySearch(ids, 0, numeroIds, id) - 1;
+                    System.arraycopy(ids, pos, ids, pos + 1, numeroIds - pos);
+                }
+                ids[pos] = id;
+                numeroIds++;
+            }
+            versione = Math.max(versione, versioneRiga);
+            perNome = null;
+        }
+
+        /**
+         * Elimina una persona lasciando una lapide con la versione indicata.
+         */
+        void applicaEliminazione(int id, long versioneLapide) {
+            if (righe.remove(id) != null) {
+                int pos = Arrays.binarySearch(ids, 0, numeroIds, id);
+                System.arraycopy(ids, pos + 1, ids, pos, numeroIds - pos - 1);
+                numeroIds--;
+            }
+            if (numeroLapidi == lapidiId.length) {
+                lapidiId = Arrays.copyOf(lapidiId, numeroLapidi * 2);
+                lapidiVersione = Arrays.copyOf(lapidiVersione, numeroLapidi * 2);
+            }
+            lapidiId[numeroLapidi] = id;
+            lapidiVersione[numeroLapidi] = versioneLapide;
+            numeroLapidi++;
+            versione = Math.max(versione, versioneLapide);
+            perNome = null;
+        }
+
+        /**
+         * @return Le persone ordinate per cognome, nome e ID, ordinate di nuovo solo dopo una modifica.
+         *         Va chiamato tenendo almeno il lock in lettura; l'array restituito non va modificato.
+         */
+        Persona[] perNome() {
+            Persona[] ordinate = perNome;
+            if (ordinate == null) {
+                ordinate = new Persona[numeroIds];
+                for (int i = 0; i < numeroIds; i++) {
+                    ordinate[i] = righe.get(ids[i]).persona;
+                }
+                Arrays.sort(ordinate, PER_COGNOME_NOME);
+                perNome = ordinate;  // Più lettori possono ricostruirlo insieme: il risultato è identico
+            }
+            return ordinate;
+        }
+    }
+}
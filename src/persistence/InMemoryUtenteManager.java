@@ -0,0 +1,49 @@
+package persistence;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe InMemoryUtenteManager tiene le utenze solo in memoria (vedi ArchivioInMemoria).
+ * La registrazione è atomica: due registrazioni concorrenti dello stesso username
+ * non possono riuscire entrambe, come con il vincolo UNIQUE del database.
+ */
+public class InMemoryUtenteManager implements UtenteStore {
+
+    private final ConcurrentHashMap<String, CredenzialiUtente> utenti = new ConcurrentHashMap<>();
+    private final AtomicInteger generatoreId = new AtomicInteger();
+
+    @Override
+    public CredenzialiUtente cercaCredenziali(String username) {
+        return utenti.get(username);
+    }
+
+    @Override
+    public boolean registraUtente(String username, String hashPassword, String salt) {
+        boolean[] creato = new boolean[1];
+        utenti.computeIfAbsent(username, u -> {
+            creato[0] = true;
+            return new CredenzialiUtente(generatoreId.incrementAndGet(), u, hashPassword, salt);
+        });
+        return creato[0];
+    }
+
+    @Override
+    public int[] registraUtenti(List<CredenzialiUtente> nuovi) {
+        int[] id = new int[nuovi.size()];
+        for (int i = 0; i < id.length; i++) {
+            CredenzialiUtente c = nuovi.get(i);
+            if (registraUtente(c.getUsername(), c.getHashPassword(), c.getSalt())) {
+                id[i] = utenti.get(c.getUsername()).getId();
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public boolean aggiornaPassword(String username, String hashPassword, String salt) {
+        return utenti.computeIfPresent(username,
+                (u, c) -> new CredenzialiUtente(c.getId(), u, hashPassword, salt)) != null;
+    }
+}
@@ -0,0 +1,231 @@
+package persistence;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * La classe IntObjectMap è una mappa da chiavi int a oggetti, a indirizzamento aperto
+ * (sondaggio lineare) su due array paralleli: a differenza di HashMap&lt;Integer, V&gt;
+ * non crea un oggetto Integer né un nodo per ogni elemento, quindi occupa meno memoria
+ * e non genera lavoro per il garbage collector a ogni inserimento.
+ *
+ * La chiave 0 indica uno slot libero; se viene usata come chiave vera è memorizzata a parte.
+ * Le rimozioni spostano all'indietro gli elementi successivi (backward shift), quindi
+ * non lasciano lapidi e le ricerche non rallentano col tempo.
+ *
+ * La classe non è thread-safe: la sincronizzazione è compito del chiamante.
+ *
+ * @param <V> Il tipo dei valori.
+ */
+class IntObjectMap<V> {
+
+    private static final float FATTORE_CARICO = 0.5f;
+
+    private int[] chiavi;
+    private Object[] valori;
+    private int maschera;      // capacità - 1 (la capacità è sempre una potenza di 2)
+    private int numero;        // elementi con chiave diversa da 0
+    private int soglia;        // numero oltre il quale si raddoppia la capacità
+
+    private boolean haZero;    // true se la chiave 0 è presente
+    private V valoreZero;
+
+    IntObjectMap() {
+        this(16);
+    }
+
+    /**
+     * @param capacitaAttesa Numero di elementi previsto (per evitare ridimensionamenti).
+     */
+    IntObjectMap(int capacitaAttesa) {
+        int capacita = Integer.highestOneBit(Math.max(4, (int) (capacitaAttesa / FATTORE_CARICO)) - 1) << 1;
+        alloca(capacita);
+    }
+
+    int size() {
+        return numero + (haZero ? 1 : 0);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int chiave) {
+        if (chiave == 0) {
+            return valoreZero;
+        }
+        int i = indice(chiave);
+        while (chiavi[i] != 0) {
+            if (chiavi[i] == chiave) {
+                return (V) valori[i];
+            }
+            i = (i + 1) & maschera;
+        }
+        return null;
+    }
+
+    boolean containsKey(int chiave) {
+        if (chiave == 0) {
+            return haZero;
+        }
+        int i = indice(chiave);
+        while (chiavi[i] != 0) {
+            if (chiavi[i] == chiave) {
+                return true;
+            }
+            i = (i + 1) & maschera;
+        }
+        return false;
+    }
+
+    /**
+     * @return Il valore precedente associato alla chiave, oppure null.
+     */
+    @SuppressWarnings("unchecked")
+    V put(int chiave, V valore) {
+        if (chiave == 0) {
+            V precedente = valoreZero;
+            haZero = true;
+            valoreZero = valore;
+            return precedente;
+        }
+        int i = indice(chiave);
+        while (chiavi[i] != 0) {
+            if (chiavi[i] == chiave) {
+                V precedente = (V) valori[i];
+                valori[i] = valore;
+                return precedente;
+            }
+            i = (i + 1) & maschera;
+        }
+        chiavi[i] = chiave;
+        valori[i] = valore;
+        if (++numero > soglia) {
+            ridimensiona(chiavi.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return Il valore rimosso, oppure null se la chiave non era presente.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int chiave) {
+        if (chiave == 0) {
+            V precedente = valoreZero;
+            haZero = false;
+            valoreZero = null;
+            return precedente;
+        }
+        int i = indice(chiave);
+        while (chiavi[i] != 0) {
+            if (chiavi[i] == chiave) {
+                V precedente = (V) valori[i];
+                spostaIndietro(i);
+                numero--;
+                return precedente;
+            }
+            i = (i + 1) & maschera;
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(chiavi, 0);
+        Arrays.fill(valori, null);
+        numero = 0;
+        haZero = false;
+        valoreZero = null;
+    }
+
+    /**
+     * Passa al consumer tutti i valori, in ordine non specificato.
+     */
+    @SuppressWarnings("unchecked")
+    void perOgniValore(Consumer<? super V> consumer) {
+        if (haZero) {
+            consumer.accept(valoreZero);
+        }
+        for (int i = 0; i < chiavi.length; i++) {
+            if (chiavi[i] != 0) {
+                consumer.accept((V) valori[i]);
+            }
+        }
+    }
+
+    /**
+     * Passa al consumer tutte le coppie (valore, chiave), in ordine non specificato.
+     */
+    @SuppressWarnings("unchecked")
+    void perOgniCoppia(ObjIntConsumer<? super V> consumer) {
+        if (haZero) {
+            consumer.accept(valoreZero, 0);
+        }
+        for (int i = 0; i < chiavi.length; i++) {
+            if (chiavi[i] != 0) {
+                consumer.accept((V) valori[i], chiavi[i]);
+            }
+        }
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    private int indice(int chiave) {
+        // Mescola i bit: gli ID sono spesso consecutivi
+        int h = chiave * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & maschera;
+    }
+
+    /**
+     * Libera lo slot i spostando indietro gli elementi della stessa sequenza di sondaggio
+     * che altrimenti non sarebbero più raggiungibili.
+     */
+    private void spostaIndietro(int i) {
+        int libero = i;
+        int j = (i + 1) & maschera;
+        while (chiavi[j] != 0) {
+            int ideale = indice(chiavi[j]);
+            // L'elemento in j può occupare 'libero' solo se la sua posizione ideale
+            // non cade (circolarmente) fra libero (escluso) e j (incluso)
+            boolean daSpostare = (libero <= j)
+                    ? (ideale <= libero || ideale > j)
+                    : (ideale <= libero && ideale > j);
+            if (daSpostare) {
+                chiavi[libero] = chiavi[j];
+                valori[libero] = valori[j];
+                libero = j;
+            }
+            j = (j + 1) & maschera;
+        }
+        chiavi[libero] = 0;
+        valori[libero] = null;
+    }
+
+    private void alloca(int capacita) {
+        chiavi = new int[capacita];
+        valori = new Object[capacita];
+        maschera = capacita - 1;
+        soglia = (int) (capacita * FATTORE_CARICO);
+    }
+
+    private void ridimensiona(int capacita) {
+        int[] vecchieChiavi = chiavi;
+        Object[] vecchiValori = valori;
+        alloca(capacita);
+        for (int k = 0; k < vecchieChiavi.length; k++) {
+            int chiave = vecchieChiavi[k];
+            if (chiave != 0) {
+                int i = indice(chiave);
+                while (chiavi[i] != 0) {
+                    i = (i + 1) & maschera;
+                }
+                chiavi[i] = chiave;
+                valori[i] = vecchiValori[k];
+            }
+        }
+    }
+}
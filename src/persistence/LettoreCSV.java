@@ -0,0 +1,202 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * La classe LettoreCSV legge un file CSV un record alla volta, senza caricarlo in memoria.
+ * Segue le regole di RFC 4180: i campi possono essere racchiusi fra virgolette, e in quel
+ * caso possono contenere il separatore, a capo e virgolette raddoppiate ("").
+ *
+ * Il separatore può essere indicato oppure riconosciuto dalla prima riga (virgola o punto e
+ * virgola, quello usato da Excel con le impostazioni italiane). Un eventuale BOM iniziale
+ * viene ignorato.
+ */
+public class LettoreCSV implements Closeable {
+
+    private static final int FINE = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int posizione;
+    private int letti;
+
+    private char separatore;
+    private boolean separatoreDaRiconoscere;
+    private boolean primaLettura = true;
+    private final StringBuilder campo = new StringBuilder();
+    private long numeroRiga = 1;          // Riga fisica del file a cui si è arrivati
+    private long rigaRecord;              // Riga fisica in cui inizia l'ultimo record letto
+
+    /**
+     * Crea un lettore che riconosce il separatore dalla prima riga.
+     *
+     * @param reader Il testo CSV (conviene che non sia già bufferizzato: il lettore ha un suo buffer).
+     */
+    public LettoreCSV(Reader reader) {
+        this.reader = reader;
+        this.separatoreDaRiconoscere = true;
+    }
+
+    /**
+     * @param reader     Il testo CSV.
+     * @param separatore Il separatore dei campi.
+     */
+    public LettoreCSV(Reader reader, char separatore) {
+        this.reader = reader;
+        this.separatore = separatore;
+    }
+
+    /**
+     * Legge il prossimo record. Le righe vuote vengono saltate.
+     *
+     * @return I campi del record, oppure null alla fine del file.
+     * @throws IOException se la lettura fallisce o il file termina dentro un campo fra virgolette.
+     */
+    public List<String> leggiRecord() throws IOException {
+        if (primaLettura) {
+            primaLettura = false;
+            iniziaFile();
+        }
+        int c = leggi();
+        while (c == '\r' || c == '\n') {
+            finisciRiga(c);
+            c = leggi();
+        }
+        if (c == FINE) {
+            return null;
+        }
+        rigaRecord = numeroRiga;
+        List<String> campi = new ArrayList<>(8);
+        while (true) {
+            campo.setLength(0);
+            if (c == '"') {
+                c = leggiTraVirgolette();
+            }
+            while (c != FINE && c != separatore && c != '\r' && c != '\n') {
+                campo.append((char) c);
+                c = leggi();
+            }
+            campi.add(campo.toString());
+            if (c == separatore) {
+                c = leggi();
+                continue;
+            }
+            if (c != FINE) {
+                finisciRiga(c);
+            }
+            return campi;
+        }
+    }
+
+    /**
+     * @return La riga del file (da 1) in cui inizia l'ultimo record letto.
+     */
+    public long getRigaRecord() {
+        return rigaRecord;
+    }
+
+    /**
+     * @return Il separatore usato (dopo la prima lettura, se veniva riconosciuto).
+     */
+    public char getSeparatore() {
+        return separatore;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Legge un campo fra virgolette (la prima è già stata letta) fino alla virgoletta di chiusura.
+     *
+     * @return Il carattere che segue la virgoletta di chiusura.
+     */
+    private int leggiTraVirgolette() throws IOException {
+        long inizio = numeroRiga;
+        while (true) {
+            int c = leggi();
+            if (c == FINE) {
+                throw new IOException("Virgolette non chiuse nel campo iniziato alla riga " + inizio);
+            }
+            if (c == '"') {
+                int dopo = leggi();
+                if (dopo != '"') {
+                    return dopo;
+                }
+            } else if (c == '\n') {
+                numeroRiga++;
+            }
+            campo.append((char) c);
+        }
+    }
+
+    /**
+     * Consuma un fine riga (\n, \r o \r\n) di cui è stato letto il primo carattere.
+     */
+    private void finisciRiga(int c) throws IOException {
+        numeroRiga++;
+        if (c == '\r' && (posizione < letti || riempi()) && buffer[posizione] == '\n') {
+            posizione++;
+        }
+    }
+
+    /**
+     * Legge il primo blocco del file, salta il BOM e, se serve, sceglie il separatore più
+     * frequente fuori dalle virgolette nella prima riga, fra virgola e punto e virgola.
+     */
+    private void iniziaFile() throws IOException {
+        if (!riempi()) {
+            return;
+        }
+        if (buffer[0] == '\uFEFF') {
+            posizione = 1;
+        }
+        if (!separatoreDaRiconoscere) {
+            return;
+        }
+        int virgole = 0;
+        int puntiEVirgola = 0;
+        boolean virgolette = false;
+        for (int i = posizione; i < letti && (virgolette || (buffer[i] != '\n' && buffer[i] != '\r')); i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                virgolette = !virgolette;
+            } else if (!virgolette && c == ',') {
+                virgole++;
+            } else if (!virgolette && c == ';') {
+                puntiEVirgola++;
+            }
+        }
+        separatore = puntiEVirgola > virgole ? ';' : ',';
+    }
+
+    private int leggi() throws IOException {
+        if (posizione == letti && !riempi()) {
+            return FINE;
+        }
+        return buffer[posizione++];
+    }
+
+    private boolean riempi() throws IOException {
+        posizione = 0;
+        letti = 0;
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        letti = n;
+        return true;
+    }
+}
@@ -0,0 +1,330 @@
+package persistence;
+
+import models.Persona;
+import models.Testo;
+import models.Utente;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/**
+ * La classe MappedPersonManager gestisce la rubrica di un utente in un archivio locale
+ * su file mappati in memoria (vedi FileRubrica), senza bisogno di MySQL: è pensata per
+ * i portatili offline e le installazioni periferiche.
+ *
+ * Ogni scrittura viene resa durevole (fsync) prima di restituire il controllo; un inserimento
+ * massivo viene confermato una sola volta alla fine. Gli errori di I/O vengono segnalati come
+ * SQLException, come per gli altri PersonaStore.
+ */
+public class MappedPersonManager implements PersonaStore {
+
+    private final Utente user;
+    private final FileRubrica rubrica;
+
+    /**
+     * @param user    L'Utente "proprietario" di queste persone (chi è loggato).
+     * @param rubrica Il file con le persone dell'utente (vedi ArchivioSuFile).
+     */
+    MappedPersonManager(Utente user, FileRubrica rubrica) {
+        this.user = user;
+        this.rubrica = rubrica;
+    }
+
+    @Override
+    public Utente getUtente() {
+        return user;
+    }
+
+    // ----------------------------
+    //          SCRITTURE
+    // ----------------------------
+
+    @Override
+    public int salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException {
+        Persona nuova = valida(0, nome, cognome, indirizzo, numero, eta);
+        apri();
+        rubrica.lock.writeLock().lock();
+        try {
+            int id = rubrica.inserisci(nuova);
+            rubrica.conferma();
+            return id;
+        } catch (IOException ex) {
+            throw annulla(ex);
+        } finally {
+            rubrica.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public RisultatoBatch salvaPersone(Collection<Persona> persone) throws SQLException {
+        RisultatoBatch risultato = new RisultatoBatch(persone.size());
+        apri();
+        rubrica.lock.writeLock().lock();
+        try {
+            int i = 0;
+            for (Persona p : persone) {
+                try {
+                    Persona nuova = valida(0, p.getNome(), p.getCognome(), p.getIndirizzo(), p.getTelefono(), p.getEta());
+                    risultato.impostaId(i, rubrica.inserisci(nuova));
+                } catch (SQLException ex) {
+                    risultato.aggiungiErrore(i, p, ex.getMessage());
+                }
+                i++;
+            }
+            rubrica.conferma();  // Un solo fsync per tutto il blocco
+        } catch (IOException ex) {
+            throw annulla(ex);
+        } finally {
+            rubrica.lock.writeLock().unlock();
+        }
+        return risultato;
+    }
+
+    @Override
+    public void modificaPersona(int idPersona, String nome, String cognome, int eta,
+                                String indirizzo, String numero) throws SQLException {
+        Persona modificata = valida(idPersona, nome, cognome, indirizzo, numero, eta);
+        apri();
+        rubrica.lock.writeLock().lock();
+        try {
+            if (rubrica.modifica(modificata)) {
+                rubrica.conferma();
+            }
+        } catch (IOException ex) {
+            throw annulla(ex);
+        } finally {
+            rubrica.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void eliminaPersona(int idPersona) throws SQLException {
+        apri();
+        rubrica.lock.writeLock().lock();
+        try {
+            if (rubrica.elimina(idPersona)) {
+                rubrica.conferma();
+            }
+        } catch (IOException ex) {
+            throw annulla(ex);
+        } finally {
+            rubrica.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forza la compattazione dell'archivio (normalmente avviene da sola quando conviene).
+     *
+     * @throws SQLException se la riscrittura del file fallisce.
+     */
+    public void compatta() throws SQLException {
+        apri();
+        rubrica.lock.writeLock().lock();
+        try {
+            rubrica.compatta();
+        } catch (IOException ex) {
+            throw annulla(ex);
+        } finally {
+            rubrica.lock.writeLock().unlock();
+        }
+    }
+
+    // ----------------------------
+    //           LETTURE
+    // ----------------------------
+
+    @Override
+    public Vector<Persona> leggiPersone() throws SQLException {
+        Vector<Persona> result = new Vector<>();
+        scorriPersone(ChiavePagina.Ordinamento.PER_ID, result::add);
+        return result;
+    }
+
+    @Override
+    public int contaPersone() throws SQLException {
+        apri();
+        rubrica.lock.readLock().lock();
+        try {
+            return rubrica.contaVive();
+        } finally {
+            rubrica.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Nell'ordine per ID la pagina viene letta seguendo l'indice a partire dalla chiave,
+     * decodificando solo i record restituiti.
+     */
+    @Override
+    public Pagina leggiPagina(ChiavePagina dopo, int limite) throws SQLException {
+        if (limite < 1) {
+            throw new IllegalArgumentException("Il limite della pagina deve essere almeno 1.");
+        }
+        apri();
+        rubrica.lock.readLock().lock();
+        try {
+            Vector<Persona> righe = new Vector<>(limite);
+            boolean altreRighe;
+            if (dopo.getOrdinamento() == ChiavePagina.Ordinamento.PER_COGNOME_NOME) {
+                int[] ordinati = rubrica.idPerNome();
+                int i = dopo.isInizio() ? 0 : primoDopo(ordinati, dopo);
+                for (; i < ordinati.length && righe.size() < limite; i++) {
+                    righe.add(rubrica.leggi(ordinati[i]));
+                }
+                altreRighe = i < ordinati.length;
+            } else {
+                int id = rubrica.prossimoIdDopo(dopo.isInizio() ? 0 : dopo.getId());
+                while (id != 0 && righe.size() < limite) {
+                    righe.add(rubrica.leggi(id));
+                    id = rubrica.prossimoIdDopo(id);
+                }
+                altreRighe = id != 0;
+            }
+            ChiavePagina prossima = altreRighe ? ChiavePagina.dopo(dopo.getOrdinamento(), righe.lastElement()) : null;
+            return new Pagina(righe, prossima);
+        } finally {
+            rubrica.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * I record vengono decodificati per intero comunque: l'elenco coincide con leggiPagina.
+     */
+    @Override
+    public Pagina leggiElenco(ChiavePagina dopo, int limite) throws SQLException {
+        return leggiPagina(dopo, limite);
+    }
+
+    @Override
+    public Persona leggiPersona(int idPersona) throws SQLException {
+        apri();
+        rubrica.lock.readLock().lock();
+        try {
+            return rubrica.leggi(idPersona);
+        } finally {
+            rubrica.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ChiavePagina chiaveAllaPosizione(ChiavePagina.Ordinamento ordinamento, int posizione) throws SQLException {
+        if (posizione <= 0) {
+            return ChiavePagina.inizio(ordinamento);
+        }
+        apri();
+        rubrica.lock.readLock().lock();
+        try {
+            int id;
+            if (ordinamento == ChiavePagina.Ordinamento.PER_COGNOME_NOME) {
+                int[] ordinati = rubrica.idPerNome();
+                id = (posizione <= ordinati.length) ? ordinati[posizione - 1] : 0;
+            } else {
+                id = rubrica.idAllaPosizione(posizione - 1);
+            }
+            return id == 0 ? null : ChiavePagina.dopo(ordinamento, rubrica.leggi(id));
+        } finally {
+            rubrica.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public DeltaPersone leggiPersoneDopo(long versione) throws SQLException {
+        apri();
+        rubrica.lock.readLock().lock();
+        try {
+            return rubrica.leggiDopo(versione);
+        } finally {
+            rubrica.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Le persone vengono lette una pagina alla volta, rilasciando il lock fra una pagina
+     * e l'altra, così un consumer lento non blocca le scritture.
+     */
+    @Override
+    public void scorriPersone(ChiavePagina.Ordinamento ordinamento, Consumer<Persona> consumer) throws SQLException {
+        ChiavePagina chiave = ChiavePagina.inizio(ordinamento);
+        while (chiave != null) {
+            Pagina pagina = leggiPagina(chiave, 1000);
+            pagina.getRighe().forEach(consumer);
+            chiave = pagina.getProssima();
+        }
+    }
+
+    /**
+     * Le persone vengono lette a pagine, in ordine di cognome e nome, fino a trovarne limite.
+     */
+    @Override
+    public Vector<Persona> cercaPersone(String testo, int limite) throws SQLException {
+        Vector<Persona> result = new Vector<>();
+        String[] parole = Testo.paroleDaCercare(testo);
+        ChiavePagina chiave = parole.length == 0 ? null : ChiavePagina.inizio(ChiavePagina.Ordinamento.PER_COGNOME_NOME);
+        while (chiave != null && result.size() < limite) {
+            Pagina pagina = leggiPagina(chiave, 1000);
+            for (Persona p : pagina.getRighe()) {
+                if (result.size() < limite && Testo.corrisponde(p, parole)) {
+                    result.add(p);
+                }
+            }
+            chiave = pagina.getProssima();
+        }
+        return result;
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    private void apri() throws SQLException {
+        try {
+            rubrica.apriSeNecessario();
+        } catch (IOException ex) {
+            throw new SQLException("Impossibile aprire l'archivio locale: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Scarta le scritture non confermate e converte l'errore di I/O. Va chiamato tenendo il lock in scrittura.
+     */
+    private SQLException annulla(IOException ex) {
+        try {
+            rubrica.annulla();
+        } catch (IOException ignorata) {
+            ex.addSuppressed(ignorata);
+        }
+        return new SQLException("Errore di scrittura nell'archivio locale: " + ex.getMessage(), ex);
+    }
+
+    /**
+     * Crea la persona dell'utente corrente usando i controlli di validità della classe Persona.
+     *
+     * @throws SQLException se i dati non sono validi, come farebbe il database.
+     */
+    private Persona valida(int id, String nome, String cognome, String indirizzo, String numero, int eta)
+            throws SQLException {
+        try {
+            return new Persona(id, user.getID_Utente(), nome, cognome, indirizzo, numero, eta);
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
+    /** @return L'indice del primo ID che segue la chiave nell'ordine per cognome e nome. */
+    private int primoDopo(int[] ordinati, ChiavePagina chiave) {
+        int basso = 0;
+        int alto = ordinati.length;
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            if (InMemoryPersonManager.confronta(rubrica.leggi(ordinati[medio]), chiave) <= 0) {
+                basso = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return basso;
+    }
+}
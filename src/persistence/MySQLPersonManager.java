@@ -1,10 +1,19 @@
 package persistence;
 
 import models.Persona;
+import models.Telefono;
+import models.Testo;
 import models.Utente;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 /**
  * La classe MySQLPersonManager si occupa di interagire con il database MySQL
@@ -20,31 +29,59 @@ import java.util.Vector;
  *     Cognome    VARCHAR(256),
  *     Indirizzo  VARCHAR(256),
  *     Telefono   VARCHAR(256) NOT NULL,
- *     Eta        INT DEFAULT 0
+ *     Eta        INT DEFAULT 0,
+ *     Versione   BIGINT NOT NULL,  -- impostata dai trigger a ogni modifica
+ *     telefono_norm VARCHAR(17),   -- Telefono normalizzato, scritto da questa classe
+ *     telefono_inv  VARCHAR(17)    -- telefono_norm al contrario (colonna generata)
  * );
  * 
+ * Le eliminazioni lasciano una lapide nella tabella PersonaEliminata, così che
+ * leggiPersoneDopo possa restituire solo le differenze rispetto a una versione nota.
+ * 
  * Si assume inoltre che l'ID_Utente corrisponda all'ID di un utente 
  * (rappresentato da un oggetto Utente nel nostro software).
  * 
  * NOTA: L'ID e l'ID_Utente sono di tipo INT in MySQL. L'ID è auto-increment, 
  *       mentre l'ID_Utente deve essere impostato dal codice.
+ *
+ * Oltre alle operazioni di PersonaStore offre apriCursore, specifico di JDBC.
  */
-public class MySQLPersonManager {
+public class MySQLPersonManager implements PersonaStore {
+
+    private ConnectionPool pool;  // Pool da cui prendere una connessione per ogni operazione
+    private Utente user;          // Utente proprietario delle persone che andiamo a gestire
+    private int dimensioneBatch = DIMENSIONE_BATCH_DEFAULT;  // Righe per blocco in salvaPersone
+
+    // Numero di righe inviate per ogni blocco di salvaPersone, se non diversamente impostato
+    public static final int DIMENSIONE_BATCH_DEFAULT = 1000;
+
+    // Colonne lette per ricostruire un oggetto Persona
+    private static final String COLONNE = "ID, utente_id, Nome, Cognome, Indirizzo, Telefono, Eta";
 
-    private Connection conn;  // Connessione verso MySQL
-    private Utente user;      // Utente proprietario delle persone che andiamo a gestire
+    // Colonne mostrate nell'elenco della rubrica (vedi leggiElenco)
+    private static final String COLONNE_ELENCO = "ID, utente_id, Nome, Cognome, Telefono";
+
+    // Parole più corte non sono nell'indice FULLTEXT (innodb_ft_min_token_size = 3) e si cercano con LIKE
+    private static final int LUNGHEZZA_MINIMA_FULLTEXT = 3;
 
     /**
      * Costruttore di MySQLPersonManager.
      * 
      * @param user L'Utente "proprietario" di queste persone (chi è loggato).
-     * @param conn La connessione JDBC verso il database MySQL.
+     * @param pool Il pool di connessioni JDBC verso il database MySQL.
      */
-    public MySQLPersonManager(Utente user, Connection conn) {
-        this.conn = conn;
+    public MySQLPersonManager(Utente user, ConnectionPool pool) {
+        this.pool = pool;
         this.user = user;
     }
 
+    /**
+     * @return L'utente proprietario delle persone gestite da questo manager.
+     */
+    public Utente getUtente() {
+        return user;
+    }
+
     /**
      * Crea una nuova Persona nel database, associandola all'utente corrente (user).
      * Poiché la tabella Persona ha la colonna ID auto-increment, non è necessario 
@@ -55,21 +92,137 @@ public class MySQLPersonManager {
      * @param eta       Età della persona (>= 0).
      * @param indirizzo Indirizzo della persona (può essere vuoto).
      * @param numero    Telefono della persona (non nullo).
+     * @return L'ID generato dal database per la nuova persona.
      * 
      * @throws SQLException se ci sono problemi nella comunicazione col DB.
      */
-    public void salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException {
-        String sql = "INSERT INTO Persona (utente_id, Nome, Cognome, Indirizzo, Telefono, Eta) " +
-                     "VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    public int salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException {
+        String sql = "INSERT INTO Persona (utente_id, Nome, Cognome, Indirizzo, Telefono, Eta, telefono_norm) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, user.getID_Utente());    // ID dell'utente proprietario
             ps.setString(2, nome);
             ps.setString(3, cognome);
             ps.setString(4, indirizzo);
             ps.setString(5, numero);
             ps.setInt(6, eta);
+            ps.setString(7, Telefono.normalizza(numero));
             ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Il database non ha restituito l'ID della nuova persona.");
+                }
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Imposta quante righe vengono inviate al database in ogni blocco di salvaPersone.
+     *
+     * @param dimensioneBatch Numero di righe per blocco (>= 1).
+     * @throws IllegalArgumentException se dimensioneBatch < 1
+     */
+    public void setDimensioneBatch(int dimensioneBatch) throws IllegalArgumentException {
+        if (dimensioneBatch < 1) {
+            throw new IllegalArgumentException("La dimensione del batch deve essere almeno 1.");
+        }
+        this.dimensioneBatch = dimensioneBatch;
+    }
+
+    public int getDimensioneBatch() {
+        return dimensioneBatch;
+    }
+
+    /**
+     * Crea nel database tutte le persone della collezione, associandole all'utente corrente.
+     * Le righe vengono inviate a blocchi di getDimensioneBatch() tramite il batching JDBC
+     * (che il driver riscrive in INSERT multi-riga grazie a rewriteBatchedStatements),
+     * con una sola transazione per blocco.
+     *
+     * Se un blocco fallisce, viene annullato e reinserito riga per riga nella stessa
+     * transazione: le righe valide vengono comunque salvate e quelle non valide
+     * vengono riportate negli errori del risultato, senza interrompere i blocchi successivi.
+     *
+     * @param persone Le persone da inserire (ID e ID_Utente vengono ignorati).
+     * @return Gli ID generati (nello stesso ordine della collezione) e gli eventuali errori per riga.
+     * @throws SQLException se non è possibile comunicare col DB (ad esempio connessione persa).
+     */
+    public RisultatoBatch salvaPersone(Collection<Persona> persone) throws SQLException {
+        Persona[] righe = persone.toArray(new Persona[0]);
+        RisultatoBatch risultato = new RisultatoBatch(righe.length);
+        String sql = "INSERT INTO Persona (utente_id, Nome, Cognome, Indirizzo, Telefono, Eta, telefono_norm) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
+            try {
+                for (int inizio = 0; inizio < righe.length; inizio += dimensioneBatch) {
+                    int fine = Math.min(inizio + dimensioneBatch, righe.length);
+                    try {
+                        // Invio dell'intero blocco in un solo round trip
+                        for (int i = inizio; i < fine; i++) {
+                            impostaParametriInserimento(ps, righe[i]);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                        try (ResultSet keys = ps.getGeneratedKeys()) {
+                            for (int i = inizio; i < fine && keys.next(); i++) {
+                                risultato.impostaId(i, keys.getInt(1));
+                            }
+                        }
+                        conn.commit();
+                    } catch (BatchUpdateException ex) {
+                        // Il blocco contiene almeno una riga non valida: si reinserisce riga per riga
+                        ps.clearBatch();
+                        conn.rollback();
+                        inserisciRigaPerRiga(conn, ps, righe, inizio, fine, risultato);
+                        conn.commit();
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
         }
+        return risultato;
+    }
+
+    /**
+     * Inserisce singolarmente le righe [inizio, fine) registrando gli errori per riga.
+     * In MySQL il fallimento di una singola INSERT non annulla la transazione in corso,
+     * quindi le righe valide del blocco vengono confermate dal commit del chiamante.
+     */
+    private void inserisciRigaPerRiga(Connection conn, PreparedStatement ps, Persona[] righe,
+                                      int inizio, int fine, RisultatoBatch risultato) throws SQLException {
+        for (int i = inizio; i < fine; i++) {
+            try {
+                impostaParametriInserimento(ps, righe[i]);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        risultato.impostaId(i, keys.getInt(1));
+                    }
+                }
+            } catch (SQLException ex) {
+                // Errori di connessione: inutile proseguire con le righe successive
+                if (conn.isClosed() || !conn.isValid(1)) {
+                    throw ex;
+                }
+                risultato.aggiungiErrore(i, righe[i], ex.getMessage());
+            }
+        }
+    }
+
+    private void impostaParametriInserimento(PreparedStatement ps, Persona p) throws SQLException {
+        ps.setInt(1, user.getID_Utente());    // ID dell'utente proprietario
+        ps.setString(2, p.getNome());
+        ps.setString(3, p.getCognome());
+        ps.setString(4, p.getIndirizzo());
+        ps.setString(5, p.getTelefono());
+        ps.setInt(6, p.getEta());
+        ps.setString(7, p.getTelefonoNormalizzato());
     }
 
     /**
@@ -81,29 +234,493 @@ public class MySQLPersonManager {
      */
     public Vector<Persona> leggiPersone() throws SQLException {
         Vector<Persona> result = new Vector<>();
-        String sql = "SELECT ID, utente_id, Nome, Cognome, Indirizzo, Telefono, Eta " +
-                     "FROM Persona WHERE utente_id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        String sql = "SELECT " + COLONNE + " FROM Persona WHERE utente_id = ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, user.getID_Utente());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(leggiRiga(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Legge una pagina di persone dell'utente corrente con la paginazione keyset:
+     * la query parte dalla chiave indicata e sfrutta l'indice corrispondente
+     * all'ordinamento, senza OFFSET, quindi il costo non cresce con il numero della pagina.
+     *
+     * @param dopo   La chiave da cui partire (ChiavePagina.inizio(...) per la prima pagina).
+     * @param limite Il numero massimo di persone da restituire (>= 1).
+     * @return La pagina letta, con la chiave per la pagina successiva (null se era l'ultima).
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public Pagina leggiPagina(ChiavePagina dopo, int limite) throws SQLException {
+        return leggiPagina(dopo, limite, false);
+    }
+
+    /**
+     * Come leggiPagina, ma legge solo le colonne COLONNE_ELENCO: indirizzo ed età (e i
+     * relativi byte in rete e in memoria) vengono letti solo quando servono, con leggiPersona.
+     */
+    @Override
+    public Pagina leggiElenco(ChiavePagina dopo, int limite) throws SQLException {
+        return leggiPagina(dopo, limite, true);
+    }
+
+    /**
+     * Legge una persona dell'utente corrente con tutti i suoi dati.
+     *
+     * @param idPersona L'ID della persona.
+     * @return La persona, oppure null se non esiste o appartiene a un altro utente.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    @Override
+    public Persona leggiPersona(int idPersona) throws SQLException {
+        String sql = "SELECT " + COLONNE + " FROM Persona WHERE ID = ? AND utente_id = ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, idPersona);
+            ps.setInt(2, user.getID_Utente());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? leggiRiga(rs) : null;
+            }
+        }
+    }
+
+    private Pagina leggiPagina(ChiavePagina dopo, int limite, boolean soloElenco) throws SQLException {
+        if (limite < 1) {
+            throw new IllegalArgumentException("Il limite della pagina deve essere almeno 1.");
+        }
+        Vector<Persona> righe = new Vector<>(limite);
+        boolean altreRighe = false;
+        String sql = "SELECT " + (soloElenco ? COLONNE_ELENCO : COLONNE) + " FROM Persona WHERE utente_id = ?" +
+                     condizioneKeyset(dopo) + ordinamentoSql(dopo.getOrdinamento()) + " LIMIT ?";
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int indice = impostaParametriKeyset(ps, dopo);
+            // Si legge una riga in più per sapere se esiste una pagina successiva
+            ps.setInt(indice, limite + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (righe.size() == limite) {
+                        altreRighe = true;
+                        break;
+                    }
+                    righe.add(soloElenco ? leggiRigaElenco(rs) : leggiRiga(rs));
+                }
+            }
+        }
+
+        ChiavePagina prossima = altreRighe
+                ? ChiavePagina.dopo(dopo.getOrdinamento(), righe.lastElement())
+                : null;
+        return new Pagina(righe, prossima);
+    }
+
+    /**
+     * Conta le persone dell'utente corrente (usa solo l'indice su utente_id).
+     *
+     * @return Il numero di persone dell'utente.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public int contaPersone() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM Persona WHERE utente_id = ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, user.getID_Utente());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Restituisce la chiave keyset con cui leggere le persone a partire dalla posizione
+     * indicata, ad esempio quando l'utente salta con la barra di scorrimento a metà rubrica.
+     * La query legge solo le colonne dell'indice (ID, Cognome, Nome), senza accedere alle righe.
+     *
+     * @param ordinamento L'ordinamento della paginazione.
+     * @param posizione   La posizione (da 0) della prima riga desiderata.
+     * @return La chiave da passare a leggiPagina, oppure null se la posizione è oltre la fine.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public ChiavePagina chiaveAllaPosizione(ChiavePagina.Ordinamento ordinamento, int posizione) throws SQLException {
+        if (posizione <= 0) {
+            return ChiavePagina.inizio(ordinamento);
+        }
+        String sql = "SELECT ID, Cognome, Nome FROM Persona WHERE utente_id = ?" +
+                     ordinamentoSql(ordinamento) + " LIMIT 1 OFFSET ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, user.getID_Utente());
+            ps.setInt(2, posizione - 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return ChiavePagina.dopo(ordinamento, rs.getInt("ID"), rs.getString("Cognome"), rs.getString("Nome"));
+            }
+        }
+    }
+
+    /**
+     * Restituisce le persone dell'utente corrente create, modificate o eliminate dopo la
+     * versione indicata. Le due letture (persone e lapidi) avvengono nella stessa
+     * transazione, quindi vedono uno stato coerente del database.
+     *
+     * Con versione 0 restituisce l'intera rubrica (senza lapidi) e la versione corrente,
+     * da usare come punto di partenza per le sincronizzazioni successive.
+     *
+     * @param versione L'ultima versione già nota al chiamante (0 = nessuna).
+     * @return Le modifiche successive a quella versione.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public DeltaPersone leggiPersoneDopo(long versione) throws SQLException {
+        Vector<Persona> modificate = new Vector<>();
+        int[] eliminate = new int[16];
+        int numeroEliminate = 0;
+        long ultimaVersione = versione;
+
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try {
+                String sql = "SELECT " + COLONNE + ", versione FROM Persona " +
+                             "WHERE utente_id = ? AND versione > ? ORDER BY versione";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setInt(1, user.getID_Utente());
+                    // Con versione 0 servono tutte le righe, anche quelle rimaste a versione 0
+                    // perché precedenti all'aggiunta della colonna
+                    ps.setLong(2, versione > 0 ? versione : -1);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            modificate.add(leggiRiga(rs));
+                            ultimaVersione = Math.max(ultimaVersione, rs.getLong("versione"));
+                        }
+                    }
+                }
+
+                if (versione > 0) {
+                    sql = "SELECT id, versione FROM PersonaEliminata WHERE utente_id = ? AND versione > ?";
+                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        ps.setInt(1, user.getID_Utente());
+                        ps.setLong(2, versione);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                if (numeroEliminate == eliminate.length) {
+                                    eliminate = Arrays.copyOf(eliminate, numeroEliminate * 2);
+                                }
+                                eliminate[numeroEliminate++] = rs.getInt("id");
+                                ultimaVersione = Math.max(ultimaVersione, rs.getLong("versione"));
+                            }
+                        }
+                    }
+                }
+
+                // La versione corrente copre anche le modifiche che non riguardano più righe esistenti
+                sql = "SELECT valore FROM SequenzaVersione WHERE utente_id = ?";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setInt(1, user.getID_Utente());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            ultimaVersione = Math.max(ultimaVersione, rs.getLong("valore"));
+                        }
+                    }
+                }
+                conn.commit();
+            } finally {
+                conn.setReadOnly(false);
+            }
+        }
+        return new DeltaPersone(modificate, Arrays.copyOf(eliminate, numeroEliminate), ultimaVersione);
+    }
+
+    /**
+     * Scorre in streaming tutte le persone dell'utente corrente, passandole una alla volta
+     * al consumer. Le righe vengono lette dal database con un cursore forward-only
+     * (fetch size Integer.MIN_VALUE per il driver MySQL), quindi la memoria usata
+     * non dipende dal numero di persone.
+     *
+     * @param ordinamento L'ordine in cui scorrere le persone.
+     * @param consumer    Il codice da eseguire per ogni persona.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public void scorriPersone(ChiavePagina.Ordinamento ordinamento, Consumer<Persona> consumer) throws SQLException {
+        try (CursorePersone cursore = apriCursore(ordinamento)) {
+            while (cursore.hasNext()) {
+                consumer.accept(cursore.next());
+            }
+        } catch (IllegalStateException ex) {
+            if (ex.getCause() instanceof SQLException) {
+                throw (SQLException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Apre un cursore in streaming sulle persone dell'utente corrente.
+     * Il cursore occupa una connessione del pool finché non viene chiuso.
+     *
+     * @param ordinamento L'ordine in cui scorrere le persone.
+     * @return Il cursore, da chiudere con try-with-resources.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public CursorePersone apriCursore(ChiavePagina.Ordinamento ordinamento) throws SQLException {
+        String sql = "SELECT " + COLONNE + " FROM Persona WHERE utente_id = ?" + ordinamentoSql(ordinamento);
+        Connection conn = pool.getConnection();
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);  // Streaming riga per riga nel driver MySQL
+            ps.setInt(1, user.getID_Utente());
+            return new CursorePersone(conn, ps, ps.executeQuery());
+        } catch (SQLException | RuntimeException ex) {
+            if (ps != null) {
+                ps.close();
+            }
+            conn.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Ricostruisce l'oggetto Persona dai campi della riga corrente (colonne COLONNE).
+     */
+    static Persona leggiRiga(ResultSet rs) throws SQLException {
+        int ID = rs.getInt("ID");
+        int ID_Utente = rs.getInt("utente_id");
+        String Nome = rs.getString("Nome");
+        String Cognome = rs.getString("Cognome");
+        String Indirizzo = rs.getString("Indirizzo");
+        String Telefono = rs.getString("Telefono");
+        int Eta = rs.getInt("Eta");
+        return new Persona(ID, ID_Utente, Nome, Cognome, Indirizzo, Telefono, Eta);
+    }
+
+    /**
+     * Ricostruisce la Persona, senza indirizzo ed età, dai campi della riga corrente (colonne COLONNE_ELENCO).
+     */
+    private static Persona leggiRigaElenco(ResultSet rs) throws SQLException {
+        return Persona.perElenco(rs.getInt("ID"), rs.getInt("utente_id"),
+                rs.getString("Nome"), rs.getString("Cognome"), rs.getString("Telefono"));
+    }
+
+    private static String condizioneKeyset(ChiavePagina chiave) {
+        if (chiave.isInizio()) {
+            return "";
+        }
+        switch (chiave.getOrdinamento()) {
+            case PER_COGNOME_NOME:
+                return " AND (Cognome, Nome, ID) > (?, ?, ?)";
+            case PER_ID:
+            default:
+                return " AND ID > ?";
+        }
+    }
+
+    private static String ordinamentoSql(ChiavePagina.Ordinamento ordinamento) {
+        switch (ordinamento) {
+            case PER_COGNOME_NOME:
+                return " ORDER BY Cognome, Nome, ID";
+            case PER_ID:
+            default:
+                return " ORDER BY ID";
+        }
+    }
+
+    /**
+     * Imposta utente_id e gli eventuali parametri della chiave keyset.
+     * @return L'indice del prossimo parametro libero.
+     */
+    private int impostaParametriKeyset(PreparedStatement ps, ChiavePagina chiave) throws SQLException {
+        int indice = 1;
+        ps.setInt(indice++, user.getID_Utente());
+        if (!chiave.isInizio()) {
+            if (chiave.getOrdinamento() == ChiavePagina.Ordinamento.PER_COGNOME_NOME) {
+                ps.setString(indice++, chiave.getCognome());
+                ps.setString(indice++, chiave.getNome());
+            }
+            ps.setInt(indice++, chiave.getId());
+        }
+        return indice;
+    }
+
+    /**
+     * Cerca le persone dell'utente corrente il cui telefono, normalizzato, termina con le
+     * cifre indicate (anch'esse normalizzate): con un numero completo è la ricerca del
+     * chiamante, con le sole ultime cifre trova anche i numeri scritti con prefissi diversi.
+     * La query usa l'indice su (utente_id, telefono_inv), quindi non scorre la rubrica.
+     *
+     * @param numero Il numero (o le sue ultime cifre) da cercare.
+     * @param limite Il numero massimo di persone da restituire.
+     * @return Le persone trovate (nessuna, se il numero non contiene cifre).
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    public Vector<Persona> cercaPerTelefono(String numero, int limite) throws SQLException {
+        Vector<Persona> result = new Vector<>();
+        String normalizzato = Telefono.normalizza(numero);
+        if (normalizzato.isEmpty()) {
+            return result;
+        }
+        String sql = "SELECT " + COLONNE + " FROM Persona WHERE utente_id = ? AND telefono_inv LIKE ? LIMIT ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, user.getID_Utente());
+            ps.setString(2, new StringBuilder(normalizzato).reverse() + "%");
+            ps.setInt(3, limite);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(leggiRiga(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cerca le persone dell'utente corrente con le stesse regole di models.Testo, senza
+     * leggere la rubrica:
+     * <ul>
+     *   <li>un numero di telefono viene cercato sia per ultime cifre (telefono_inv, come
+     *       cercaPerTelefono) sia per prime cifre (telefono_norm);</li>
+     *   <li>le parole di almeno LUNGHEZZA_MINIMA_FULLTEXT caratteri diventano una ricerca
+     *       FULLTEXT per prefisso su nome e cognome, e le persone vengono ordinate per rilevanza;</li>
+     *   <li>le parole più corte e i gruppi di cifre diventano condizioni LIKE 'parola%'.</li>
+     * </ul>
+     * Il confronto senza maiuscole e accenti lo fa la collation delle colonne.
+     *
+     * @param testo  Il testo cercato.
+     * @param limite Il numero massimo di persone da restituire.
+     * @return Le persone trovate, le più pertinenti per prime.
+     * @throws SQLException se si verifica un problema di comunicazione col DB.
+     */
+    @Override
+    public Vector<Persona> cercaPersone(String testo, int limite) throws SQLException {
+        String[] parole = Testo.paroleDaCercare(testo);
+        if (parole.length == 0) {
+            return new Vector<>();
+        }
+        if (Telefono.sembraUnNumero(testo.trim())) {
+            return cercaPerNumero(parole[0], limite);
+        }
+
+        StringBuilder booleana = new StringBuilder();
+        StringBuilder condizioni = new StringBuilder();
+        List<String> parametri = new ArrayList<>();
+        for (String parola : parole) {
+            String pulita = soloLettereECifre(parola);
+            if (pulita.length() >= LUNGHEZZA_MINIMA_FULLTEXT && pulita.chars().anyMatch(Character::isLetter)) {
+                // "+parola*": la parola deve esserci, come prefisso (gli operatori sono stati tolti)
+                booleana.append('+').append(pulita).append("* ");
+            } else if (parola.chars().noneMatch(Character::isLetter)) {
+                condizioni.append(" AND telefono_norm LIKE ?");
+                parametri.add(escapeLike(parola) + "%");
+            } else {
+                // Inizio del nome o del cognome, oppure di una loro parola successiva
+                condizioni.append(" AND (Nome LIKE ? OR Nome LIKE ? OR Cognome LIKE ? OR Cognome LIKE ?)");
+                String prefisso = escapeLike(parola) + "%";
+                parametri.add(prefisso);
+                parametri.add("% " + prefisso);
+                parametri.add(prefisso);
+                parametri.add("% " + prefisso);
+            }
+        }
+        boolean fulltext = booleana.length() > 0;
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLONNE);
+        if (fulltext) {
+            sql.append(", MATCH(Nome, Cognome) AGAINST (? IN BOOLEAN MODE) AS rilevanza");
+        }
+        sql.append(" FROM Persona WHERE utente_id = ?");
+        if (fulltext) {
+            sql.append(" AND MATCH(Nome, Cognome) AGAINST (? IN BOOLEAN MODE)");
+        }
+        sql.append(condizioni);
+        sql.append(fulltext ? " ORDER BY rilevanza DESC, Cognome, Nome, ID" : ordinamentoSql(ChiavePagina.Ordinamento.PER_COGNOME_NOME));
+        sql.append(" LIMIT ?");
+
+        Vector<Persona> result = new Vector<>();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int indice = 1;
+            String espressione = booleana.toString().trim();
+            if (fulltext) {
+                ps.setString(indice++, espressione);
+            }
+            ps.setInt(indice++, user.getID_Utente());
+            if (fulltext) {
+                ps.setString(indice++, espressione);
+            }
+            for (String parametro : parametri) {
+                ps.setString(indice++, parametro);
+            }
+            ps.setInt(indice, limite);
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    // Ricostruisce l'oggetto Persona dai campi del database
-                    int ID = rs.getInt("ID");
-                    int ID_Utente = rs.getInt("utente_id");
-                    String Nome = rs.getString("Nome");
-                    String Cognome = rs.getString("Cognome");
-                    String Indirizzo = rs.getString("Indirizzo");
-                    String Telefono = rs.getString("Telefono");
-                    int Eta = rs.getInt("Eta");
-
-                    Persona p = new Persona(ID, ID_Utente, Nome, Cognome, Indirizzo, Telefono, Eta);
-                    result.add(p);
+                    result.add(leggiRiga(rs));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cerca un numero (già normalizzato) prima per ultime cifre, poi per prime cifre,
+     * senza ripetere le persone trovate da entrambe le query.
+     */
+    private Vector<Persona> cercaPerNumero(String numero, int limite) throws SQLException {
+        Vector<Persona> result = cercaPerTelefono(numero, limite);
+        if (result.size() >= limite) {
+            return result;
+        }
+        Set<Integer> trovate = new HashSet<>();
+        for (Persona p : result) {
+            trovate.add(p.getID());
+        }
+        String sql = "SELECT " + COLONNE + " FROM Persona WHERE utente_id = ? AND telefono_norm LIKE ?" +
+                     " ORDER BY telefono_norm, ID LIMIT ?";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, user.getID_Utente());
+            ps.setString(2, escapeLike(numero) + "%");
+            ps.setInt(3, limite);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next() && result.size() < limite) {
+                    Persona p = leggiRiga(rs);
+                    if (trovate.add(p.getID())) {
+                        result.add(p);
+                    }
                 }
             }
         }
         return result;
     }
 
+    /**
+     * @return Il testo con i caratteri speciali di LIKE ('%', '_' e la barra rovesciata) protetti.
+     */
+    private static String escapeLike(String testo) {
+        return testo.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * @return Il testo senza gli operatori della ricerca FULLTEXT in modalità booleana.
+     */
+    private static String soloLettereECifre(String parola) {
+        StringBuilder pulita = new StringBuilder(parola.length());
+        for (int i = 0; i < parola.length(); i++) {
+            if (Character.isLetterOrDigit(parola.charAt(i))) {
+                pulita.append(parola.charAt(i));
+            }
+        }
+        return pulita.toString();
+    }
+
     /**
      * Elimina una persona (identificata da 'idPersona') dal database, 
      * assicurandosi che appartenga all'utente corrente.
@@ -114,7 +731,8 @@ public class MySQLPersonManager {
      */
     public void eliminaPersona(int idPersona) throws SQLException {
         String sql = "DELETE FROM Persona WHERE ID = ? AND utente_id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, idPersona);
             ps.setInt(2, user.getID_Utente());
             ps.executeUpdate();
@@ -138,16 +756,18 @@ public class MySQLPersonManager {
     public void modificaPersona(int idPersona, String nome, String cognome, int eta,
                                 String indirizzo, String numero) throws SQLException {
         String sql = "UPDATE Persona " +
-                     "SET Nome = ?, Cognome = ?, Indirizzo = ?, Telefono = ?, Eta = ? " +
+                     "SET Nome = ?, Cognome = ?, Indirizzo = ?, Telefono = ?, Eta = ?, telefono_norm = ? " +
                      "WHERE ID = ? AND utente_id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, nome);
             ps.setString(2, cognome);
             ps.setString(3, indirizzo);
             ps.setString(4, numero);
             ps.setInt(5, eta);
-            ps.setInt(6, idPersona);
-            ps.setInt(7, user.getID_Utente());
+            ps.setString(6, Telefono.normalizza(numero));
+            ps.setInt(7, idPersona);
+            ps.setInt(8, user.getID_Utente());
             ps.executeUpdate();
         }
     }
@@ -0,0 +1,167 @@
+package persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe MySQLUtenteManager memorizza le utenze nella tabella "Utente" del database MySQL:
+ *
+ * CREATE TABLE Utente (
+ *     id       INT AUTO_INCREMENT PRIMARY KEY,
+ *     username VARCHAR(256) UNIQUE NOT NULL,
+ *     password VARCHAR(128) NOT NULL,  -- hash PBKDF2 (o SHA-256 per le utenze precedenti), vedi ServizioAutenticazione
+ *     salt     VARCHAR(32) NOT NULL
+ * );
+ */
+public class MySQLUtenteManager implements UtenteStore {
+
+    // Utenze inserite con una sola INSERT multi-riga in registraUtenti
+    public static final int DIMENSIONE_BLOCCO = 1000;
+
+    // Codice di errore MySQL per una chiave duplicata (ER_DUP_ENTRY)
+    private static final int ERRORE_CHIAVE_DUPLICATA = 1062;
+
+    private final ConnectionPool pool;  // Pool da cui prendere una connessione per ogni operazione
+
+    /**
+     * @param pool Il pool di connessioni JDBC verso il database MySQL.
+     */
+    public MySQLUtenteManager(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public CredenzialiUtente cercaCredenziali(String username) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT password, salt, id FROM Utente WHERE username = ?")) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;  // Utente non trovato
+                }
+                return new CredenzialiUtente(rs.getInt("id"), username, rs.getString("password"), rs.getString("salt"));
+            }
+        }
+    }
+
+    /**
+     * Una sola INSERT: se lo username esiste già è il vincolo UNIQUE a rifiutarla (errore 1062),
+     * quindi due registrazioni contemporanee dello stesso username non possono riuscire entrambe.
+     */
+    @Override
+    public boolean registraUtente(String username, String hashPassword, String salt) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("INSERT INTO Utente (username, password, salt) VALUES (?, ?, ?)")) {
+            stmt.setString(1, username);
+            stmt.setString(2, hashPassword);
+            stmt.setString(3, salt);
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("L'inserimento dell'utente non ha modificato alcuna riga.");
+            }
+            return true;
+        } catch (SQLException ex) {
+            if (isChiaveDuplicata(ex)) {
+                return false;  // Utente già esistente
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Le utenze vengono inserite a blocchi di DIMENSIONE_BLOCCO con il batching JDBC
+     * (una INSERT multi-riga grazie a rewriteBatchedStatements), con "ON DUPLICATE KEY UPDATE"
+     * che lascia intatte le righe già esistenti invece di far fallire il blocco. Con il batch
+     * riscritto il driver non riporta l'esito di ogni riga: una SELECT sugli username del blocco
+     * individua le righe create ora, che sono quelle con l'hash e il salt appena inviati.
+     * Tutti i blocchi fanno parte di un'unica transazione, confermata alla fine: se un blocco
+     * fallisce non resta registrata nessuna delle utenze della lista.
+     */
+    @Override
+    public int[] registraUtenti(List<CredenzialiUtente> nuovi) throws SQLException {
+        int[] id = new int[nuovi.size()];
+        String sql = "INSERT INTO Utente (username, password, salt) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE id = id";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            try {
+                for (int inizio = 0; inizio < nuovi.size(); inizio += DIMENSIONE_BLOCCO) {
+                    int fine = Math.min(inizio + DIMENSIONE_BLOCCO, nuovi.size());
+                    for (int i = inizio; i < fine; i++) {
+                        CredenzialiUtente c = nuovi.get(i);
+                        ps.setString(1, c.getUsername());
+                        ps.setString(2, c.getHashPassword());
+                        ps.setString(3, c.getSalt());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    leggiCreati(conn, nuovi, inizio, fine, id);
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public boolean aggiornaPassword(String username, String hashPassword, String salt) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE Utente SET password = ?, salt = ? WHERE username = ?")) {
+            stmt.setString(1, hashPassword);
+            stmt.setString(2, salt);
+            stmt.setString(3, username);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Imposta in id[i] l'ID delle utenze [inizio, fine) create dall'ultima INSERT, cioè quelle
+     * il cui hash e salt memorizzati sono quelli inviati (il salt è casuale per ogni utenza).
+     */
+    private static void leggiCreati(Connection conn, List<CredenzialiUtente> nuovi, int inizio, int fine, int[] id)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id, username, password, salt FROM Utente WHERE username IN (");
+        for (int i = inizio; i < fine; i++) {
+            sql.append(i == inizio ? "?" : ", ?");
+        }
+        sql.append(')');
+        Map<String, Integer> posizioni = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = inizio; i < fine; i++) {
+                ps.setString(i - inizio + 1, nuovi.get(i).getUsername());
+                posizioni.putIfAbsent(nuovi.get(i).getUsername(), i);  // Un duplicato nella lista resta a 0
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Integer i = posizioni.get(rs.getString("username"));
+                    if (i == null) {
+                        continue;  // Username uguale per la collazione ma scritto diversamente: già esistente
+                    }
+                    CredenzialiUtente c = nuovi.get(i);
+                    if (c.getHashPassword().equals(rs.getString("password")) && c.getSalt().equals(rs.getString("salt"))) {
+                        id[i] = rs.getInt("id");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true se l'eccezione è la violazione di una chiave UNIQUE (errore MySQL 1062, che
+     *         Connector/J lancia come SQLIntegrityConstraintViolationException). Le altre
+     *         violazioni di vincolo, ad esempio una colonna NOT NULL, restano errori.
+     */
+    static boolean isChiaveDuplicata(SQLException ex) {
+        return ex instanceof SQLIntegrityConstraintViolationException && ex.getErrorCode() == ERRORE_CHIAVE_DUPLICATA;
+    }
+}
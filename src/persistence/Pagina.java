@@ -0,0 +1,41 @@
+package persistence;
+
+import models.Persona;
+
+import java.util.Vector;
+
+/**
+ * La classe Pagina contiene una porzione delle persone di un utente, letta con la
+ * paginazione keyset, e la chiave per leggere la pagina successiva.
+ */
+public class Pagina {
+
+    private final Vector<Persona> righe;
+    private final ChiavePagina prossima;  // null se questa è l'ultima pagina
+
+    public Pagina(Vector<Persona> righe, ChiavePagina prossima) {
+        this.righe = righe;
+        this.prossima = prossima;
+    }
+
+    /**
+     * @return Le persone contenute nella pagina (al più il limite richiesto).
+     */
+    public Vector<Persona> getRighe() {
+        return righe;
+    }
+
+    /**
+     * @return La chiave della pagina successiva, oppure null se non ci sono altre righe.
+     */
+    public ChiavePagina getProssima() {
+        return prossima;
+    }
+
+    /**
+     * @return true se non ci sono altre pagine dopo questa.
+     */
+    public boolean isUltima() {
+        return prossima == null;
+    }
+}
@@ -0,0 +1,214 @@
+package persistence;
+
+import models.Persona;
+import models.Utente;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/**
+ * La classe PersonManagerConCache decora un altro PersonaStore (tipicamente un
+ * MySQLPersonManager) leggendo le persone dalla CachePersone condivisa invece che
+ * direttamente dallo store sottostante.
+ *
+ * <ul>
+ *   <li>Le letture per ID (leggiPersone, contaPersone, leggiPersona, leggiPagina, leggiElenco
+ *       e chiaveAllaPosizione con ordinamento PER_ID) vengono servite dalla cache, caricandola
+ *       se necessario;</li>
+ *   <li>le scritture vengono eseguite sullo store sottostante e poi riportate nella cache (write-through);</li>
+ *   <li>le altre letture (ordinamento per cognome, streaming, delta) vanno allo store sottostante.</li>
+ * </ul>
+ *
+ * Se la rubrica dell'utente è troppo grande per la cache, tutte le letture vanno allo store sottostante.
+ */
+public class PersonManagerConCache implements PersonaStore {
+
+    private final PersonaStore store;
+    private final CachePersone cache;
+
+    /**
+     * @param store Lo store da cui leggere le persone non in cache e su cui scrivere.
+     * @param cache La cache condivisa fra le sessioni della JVM.
+     */
+    public PersonManagerConCache(PersonaStore store, CachePersone cache) {
+        this.store = store;
+        this.cache = cache;
+    }
+
+    @Override
+    public Utente getUtente() {
+        return store.getUtente();
+    }
+
+    // ----------------------------
+    //           LETTURE
+    // ----------------------------
+
+    @Override
+    public Vector<Persona> leggiPersone() throws SQLException {
+        CachePersone.Voce voce = voce();
+        if (voce == null) {
+            return store.leggiPersone();
+        }
+        synchronized (cache) {
+            return new Vector<>(voce.persone.persone());
+        }
+    }
+
+    @Override
+    public int contaPersone() throws SQLException {
+        CachePersone.Voce voce = voce();
+        if (voce == null) {
+            return store.contaPersone();
+        }
+        synchronized (cache) {
+            return voce.persone.size();
+        }
+    }
+
+    @Override
+    public Pagina leggiPagina(ChiavePagina dopo, int limite) throws SQLException {
+        CachePersone.Voce voce = (dopo.getOrdinamento() == ChiavePagina.Ordinamento.PER_ID) ? voce() : null;
+        if (voce == null) {
+            return store.leggiPagina(dopo, limite);
+        }
+        return leggiPagina(voce, dopo, limite);
+    }
+
+    /**
+     * Dalla cache le persone escono complete; senza cache l'elenco viene letto dallo store
+     * con le sole colonne mostrate.
+     */
+    @Override
+    public Pagina leggiElenco(ChiavePagina dopo, int limite) throws SQLException {
+        CachePersone.Voce voce = (dopo.getOrdinamento() == ChiavePagina.Ordinamento.PER_ID) ? voce() : null;
+        if (voce == null) {
+            return store.leggiElenco(dopo, limite);
+        }
+        return leggiPagina(voce, dopo, limite);
+    }
+
+    @Override
+    public Persona leggiPersona(int idPersona) throws SQLException {
+        CachePersone.Voce voce = voce();
+        if (voce == null) {
+            return store.leggiPersona(idPersona);
+        }
+        synchronized (cache) {
+            int posizione = voce.persone.posizioneDi(idPersona);
+            return posizione >= 0 ? voce.persone.persona(posizione) : null;
+        }
+    }
+
+    @Override
+    public ChiavePagina chiaveAllaPosizione(ChiavePagina.Ordinamento ordinamento, int posizione) throws SQLException {
+        CachePersone.Voce voce = (ordinamento == ChiavePagina.Ordinamento.PER_ID) ? voce() : null;
+        if (voce == null) {
+            return store.chiaveAllaPosizione(ordinamento, posizione);
+        }
+        if (posizione <= 0) {
+            return ChiavePagina.inizio(ordinamento);
+        }
+        synchronized (cache) {
+            if (posizione > voce.persone.size()) {
+                return null;
+            }
+            return ChiavePagina.dopo(ordinamento, voce.persone.idAllaPosizione(posizione - 1), null, null);
+        }
+    }
+
+    @Override
+    public DeltaPersone leggiPersoneDopo(long versione) throws SQLException {
+        return store.leggiPersoneDopo(versione);
+    }
+
+    @Override
+    public void scorriPersone(ChiavePagina.Ordinamento ordinamento, Consumer<Persona> consumer) throws SQLException {
+        store.scorriPersone(ordinamento, consumer);
+    }
+
+    /**
+     * La ricerca viene sempre eseguita dallo store, che (con MySQL) usa i propri indici
+     * invece di scorrere la rubrica in cache.
+     */
+    @Override
+    public Vector<Persona> cercaPersone(String testo, int limite) throws SQLException {
+        return store.cercaPersone(testo, limite);
+    }
+
+    // ----------------------------
+    //     SCRITTURE (write-through)
+    // ----------------------------
+
+    @Override
+    public int salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException {
+        int id = store.salvaPersona(nome, cognome, eta, indirizzo, numero);
+        cache.registraScrittura(new Persona(id, getUtente().getID_Utente(), nome, cognome, indirizzo, numero, eta));
+        return id;
+    }
+
+    @Override
+    public RisultatoBatch salvaPersone(Collection<Persona> persone) throws SQLException {
+        RisultatoBatch risultato;
+        try {
+            risultato = store.salvaPersone(persone);
+        } catch (SQLException ex) {
+            // Alcuni blocchi potrebbero essere stati confermati: la cache non è più affidabile
+            cache.invalida(getUtente().getID_Utente());
+            throw ex;
+        }
+        int[] ids = risultato.getIdGenerati();
+        int i = 0;
+        for (Persona p : persone) {
+            if (ids[i] > 0) {
+                cache.registraScrittura(new Persona(ids[i], getUtente().getID_Utente(), p.getNome(), p.getCognome(),
+                        p.getIndirizzo(), p.getTelefono(), p.getEta()));
+            }
+            i++;
+        }
+        return risultato;
+    }
+
+    @Override
+    public void modificaPersona(int idPersona, String nome, String cognome, int eta,
+                                String indirizzo, String numero) throws SQLException {
+        store.modificaPersona(idPersona, nome, cognome, eta, indirizzo, numero);
+        cache.registraModifica(new Persona(idPersona, getUtente().getID_Utente(), nome, cognome, indirizzo, numero, eta));
+    }
+
+    @Override
+    public void eliminaPersona(int idPersona) throws SQLException {
+        store.eliminaPersona(idPersona);
+        cache.registraEliminazione(getUtente().getID_Utente(), idPersona);
+    }
+
+    /**
+     * Legge una pagina nell'ordine per ID dalle persone in cache.
+     */
+    private Pagina leggiPagina(CachePersone.Voce voce, ChiavePagina dopo, int limite) {
+        if (limite < 1) {
+            throw new IllegalArgumentException("Il limite della pagina deve essere almeno 1.");
+        }
+        synchronized (cache) {
+            ColonnePersone persone = voce.persone;
+            int inizio = persone.primaPosizioneDopo(dopo.getId());
+            int fine = (int) Math.min(persone.size(), (long) inizio + limite);
+            Vector<Persona> righe = new Vector<>(fine - inizio);
+            for (int i = inizio; i < fine; i++) {
+                righe.add(persone.persona(i));
+            }
+            boolean altreRighe = fine < persone.size();
+            ChiavePagina prossima = altreRighe ? ChiavePagina.dopo(dopo.getOrdinamento(), righe.lastElement()) : null;
+            return new Pagina(righe, prossima);
+        }
+    }
+
+    /**
+     * @return La rubrica in cache dell'utente corrente, oppure null se non può essere messa in cache.
+     */
+    private CachePersone.Voce voce() throws SQLException {
+        return cache.ottieni(getUtente().getID_Utente(), store::leggiPersoneDopo, store::contaPersone);
+    }
+}
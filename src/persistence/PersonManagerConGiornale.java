@@ -0,0 +1,168 @@
+package persistence;
+
+import models.Persona;
+import models.Utente;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/**
+ * La classe PersonManagerConGiornale gestisce la rubrica di un utente di un ArchivioConGiornale.
+ * Le letture sono servite dalla partizione in memoria (tramite InMemoryPersonManager),
+ * le scritture vengono prima registrate nel giornale locale e confermate appena questo è
+ * su disco. Gli errori di I/O vengono segnalati come SQLException, come per gli altri PersonaStore.
+ */
+public class PersonManagerConGiornale implements PersonaStore {
+
+    private final Utente user;
+    private final ArchivioConGiornale archivio;
+    private final ArchivioConGiornale.StatoUtente stato;
+    private final InMemoryPersonManager letture;
+
+    PersonManagerConGiornale(Utente user, ArchivioConGiornale archivio, ArchivioConGiornale.StatoUtente stato) {
+        this.user = user;
+        this.archivio = archivio;
+        this.stato = stato;
+        this.letture = new InMemoryPersonManager(user, stato.partizione);
+    }
+
+    @Override
+    public Utente getUtente() {
+        return user;
+    }
+
+    // ----------------------------
+    //          SCRITTURE
+    // ----------------------------
+
+    @Override
+    public int salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException {
+        Persona nuova = valida(0, nome, cognome, indirizzo, numero, eta);
+        try {
+            return archivio.inserisci(stato, nuova);
+        } catch (IOException ex) {
+            throw errore(ex);
+        }
+    }
+
+    /**
+     * Le persone valide vengono registrate in blocco e confermate con un solo force() del giornale.
+     */
+    @Override
+    public RisultatoBatch salvaPersone(Collection<Persona> persone) throws SQLException {
+        RisultatoBatch risultato = new RisultatoBatch(persone.size());
+        List<Persona> valide = new ArrayList<>(persone.size());
+        List<Integer> indici = new ArrayList<>(persone.size());
+        int i = 0;
+        for (Persona p : persone) {
+            try {
+                valide.add(valida(0, p.getNome(), p.getCognome(), p.getIndirizzo(), p.getTelefono(), p.getEta()));
+                indici.add(i);
+            } catch (SQLException ex) {
+                risultato.aggiungiErrore(i, p, ex.getMessage());
+            }
+            i++;
+        }
+        try {
+            return archivio.inserisciTutte(stato, valide, indici, risultato);
+        } catch (IOException ex) {
+            throw errore(ex);
+        }
+    }
+
+    @Override
+    public void modificaPersona(int idPersona, String nome, String cognome, int eta,
+                                String indirizzo, String numero) throws SQLException {
+        Persona modificata = valida(idPersona, nome, cognome, indirizzo, numero, eta);
+        try {
+            archivio.modifica(stato, modificata);
+        } catch (IOException ex) {
+            throw errore(ex);
+        }
+    }
+
+    @Override
+    public void eliminaPersona(int idPersona) throws SQLException {
+        try {
+            archivio.elimina(stato, idPersona);
+        } catch (IOException ex) {
+            throw errore(ex);
+        }
+    }
+
+    // ----------------------------
+    //           LETTURE
+    // ----------------------------
+
+    @Override
+    public Vector<Persona> leggiPersone() {
+        return letture.leggiPersone();
+    }
+
+    @Override
+    public int contaPersone() {
+        return letture.contaPersone();
+    }
+
+    @Override
+    public Pagina leggiPagina(ChiavePagina dopo, int limite) {
+        return letture.leggiPagina(dopo, limite);
+    }
+
+    @Override
+    public Pagina leggiElenco(ChiavePagina dopo, int limite) {
+        return letture.leggiElenco(dopo, limite);
+    }
+
+    @Override
+    public Persona leggiPersona(int idPersona) {
+        return letture.leggiPersona(idPersona);
+    }
+
+    @Override
+    public ChiavePagina chiaveAllaPosizione(ChiavePagina.Ordinamento ordinamento, int posizione) {
+        return letture.chiaveAllaPosizione(ordinamento, posizione);
+    }
+
+    @Override
+    public DeltaPersone leggiPersoneDopo(long versione) {
+        return letture.leggiPersoneDopo(versione);
+    }
+
+    @Override
+    public void scorriPersone(ChiavePagina.Ordinamento ordinamento, Consumer<Persona> consumer) {
+        letture.scorriPersone(ordinamento, consumer);
+    }
+
+    @Override
+    public Vector<Persona> cercaPersone(String testo, int limite) {
+        return letture.cercaPersone(testo, limite);
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    private static SQLException errore(IOException ex) {
+        return new SQLException("Errore di scrittura nel giornale locale: " + ex.getMessage(), ex);
+    }
+
+    /**
+     * Crea la persona dell'utente corrente usando i controlli di validità della classe Persona.
+     *
+     * @throws SQLException se i dati non sono validi, come farebbe il database.
+     */
+    private Persona valida(int id, String nome, String cognome, String indirizzo, String numero, int eta)
+            throws SQLException {
+        try {
+            return new Persona(id, user.getID_Utente(), nome, cognome, indirizzo, numero, eta);
+        } catch (IllegalArgumentException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+}
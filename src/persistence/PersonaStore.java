@@ -0,0 +1,128 @@
+package persistence;
+
+import models.Persona;
+import models.Utente;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Vector;
+import java.util.function.Consumer;
+
+/**
+ * L'interfaccia PersonaStore descrive le operazioni sulla rubrica di un utente
+ * (creare, leggere, aggiornare, eliminare oggetti Persona), indipendentemente
+ * da dove le persone vengono memorizzate.
+ *
+ * Ogni istanza è legata a un solo utente, il "proprietario" delle persone gestite.
+ * Le implementazioni segnalano gli errori di memorizzazione con SQLException,
+ * anche quando non usano un database, così che i controller li gestiscano tutti allo stesso modo.
+ *
+ * Implementazioni disponibili:
+ * <ul>
+ *   <li>MySQLPersonManager — le persone sono nel database MySQL;</li>
+ *   <li>InMemoryPersonManager — le persone sono solo in memoria (test di carico, benchmark);</li>
+ *   <li>MappedPersonManager — le persone sono in file locali mappati in memoria;</li>
+ *   <li>PersonManagerConGiornale — le persone sono in memoria, rese durevoli da un giornale locale;</li>
+ *   <li>PersonManagerConCache — decora un altro store con la CachePersone condivisa.</li>
+ * </ul>
+ */
+public interface PersonaStore {
+
+    /**
+     * @return L'utente proprietario delle persone gestite da questo store.
+     */
+    Utente getUtente();
+
+    /**
+     * Crea una nuova Persona associata all'utente corrente.
+     *
+     * @return L'ID assegnato alla nuova persona.
+     */
+    int salvaPersona(String nome, String cognome, int eta, String indirizzo, String numero) throws SQLException;
+
+    /**
+     * Crea tutte le persone della collezione. Il fallimento di una riga non interrompe le altre.
+     *
+     * @param persone Le persone da inserire (ID e ID_Utente vengono ignorati).
+     * @return Gli ID generati (nello stesso ordine della collezione) e gli eventuali errori per riga.
+     */
+    RisultatoBatch salvaPersone(Collection<Persona> persone) throws SQLException;
+
+    /**
+     * @return Tutte le persone dell'utente corrente.
+     */
+    Vector<Persona> leggiPersone() throws SQLException;
+
+    /**
+     * Legge una pagina di persone a partire dalla chiave indicata (paginazione keyset).
+     *
+     * @param dopo   La chiave da cui partire (ChiavePagina.inizio(...) per la prima pagina).
+     * @param limite Il numero massimo di persone da restituire (>= 1).
+     * @return La pagina letta, con la chiave per la pagina successiva (null se era l'ultima).
+     */
+    Pagina leggiPagina(ChiavePagina dopo, int limite) throws SQLException;
+
+    /**
+     * Come leggiPagina, ma può restituire persone con i soli dati mostrati nell'elenco della
+     * rubrica (ID, nome, cognome e telefono, vedi Persona.perElenco): gli store che leggono
+     * da un database risparmiano così indirizzo ed età di ogni riga. I dati completi di una
+     * persona si leggono con leggiPersona.
+     *
+     * @param dopo   La chiave da cui partire (ChiavePagina.inizio(...) per la prima pagina).
+     * @param limite Il numero massimo di persone da restituire (>= 1).
+     * @return La pagina letta, con la chiave per la pagina successiva (null se era l'ultima).
+     */
+    Pagina leggiElenco(ChiavePagina dopo, int limite) throws SQLException;
+
+    /**
+     * @param idPersona L'ID della persona.
+     * @return La persona con tutti i suoi dati, oppure null se non esiste (o non è dell'utente corrente).
+     */
+    Persona leggiPersona(int idPersona) throws SQLException;
+
+    /**
+     * @return Il numero di persone dell'utente corrente.
+     */
+    int contaPersone() throws SQLException;
+
+    /**
+     * @param ordinamento L'ordinamento della paginazione.
+     * @param posizione   La posizione (da 0) della prima riga desiderata.
+     * @return La chiave da passare a leggiPagina, oppure null se la posizione è oltre la fine.
+     */
+    ChiavePagina chiaveAllaPosizione(ChiavePagina.Ordinamento ordinamento, int posizione) throws SQLException;
+
+    /**
+     * @param versione L'ultima versione già nota al chiamante (0 = nessuna, restituisce tutta la rubrica).
+     * @return Le persone create, modificate o eliminate dopo quella versione.
+     */
+    DeltaPersone leggiPersoneDopo(long versione) throws SQLException;
+
+    /**
+     * Passa al consumer tutte le persone dell'utente corrente, una alla volta,
+     * senza caricarle tutte in memoria insieme.
+     */
+    void scorriPersone(ChiavePagina.Ordinamento ordinamento, Consumer<Persona> consumer) throws SQLException;
+
+    /**
+     * Cerca le persone dell'utente corrente in cui ogni parola del testo è l'inizio di una
+     * parola del nome o del cognome, oppure del telefono (vedi models.Testo). Serve quando
+     * la rubrica è troppo grande per l'indice in memoria della casella di ricerca.
+     *
+     * @param testo  Il testo cercato.
+     * @param limite Il numero massimo di persone da restituire (>= 1).
+     * @return Le persone trovate, le più pertinenti per prime (nessuna, se il testo è vuoto).
+     */
+    Vector<Persona> cercaPersone(String testo, int limite) throws SQLException;
+
+    /**
+     * Elimina una persona, se appartiene all'utente corrente.
+     */
+    void eliminaPersona(int idPersona) throws SQLException;
+
+    /**
+     * Aggiorna i campi di una persona, se appartiene all'utente corrente.
+     */
+    void modificaPersona(int idPersona, String nome, String cognome, int eta,
+                         String indirizzo, String numero) throws SQLException;
+}
@@ -0,0 +1,86 @@
+package persistence;
+
+import models.Persona;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * La classe RisultatoBatch raccoglie l'esito di un inserimento massivo di persone
+ * (MySQLPersonManager.salvaPersone).
+ *
+ * Per ogni persona passata in ingresso, nello stesso ordine, contiene l'ID generato
+ * dal database (oppure 0 se l'inserimento di quella riga è fallito). Le righe fallite
+ * sono descritte in dettaglio dalla lista degli errori, senza che il fallimento di una
+ * riga abbia interrotto l'inserimento delle altre.
+ */
+public class RisultatoBatch {
+
+    private final int[] idGenerati;
+    private final List<ErroreRiga> errori = new Vector<>();
+
+    /**
+     * @param numeroRighe Il numero di persone passate in ingresso al batch.
+     */
+    public RisultatoBatch(int numeroRighe) {
+        this.idGenerati = new int[numeroRighe];
+    }
+
+    /**
+     * @return Gli ID generati, nello stesso ordine delle persone in ingresso (0 = riga fallita).
+     */
+    public int[] getIdGenerati() {
+        return idGenerati;
+    }
+
+    /**
+     * @return Le righe che non è stato possibile inserire.
+     */
+    public List<ErroreRiga> getErrori() {
+        return Collections.unmodifiableList(errori);
+    }
+
+    /**
+     * @return Il numero di righe inserite con successo.
+     */
+    public int getInserite() {
+        return idGenerati.length - errori.size();
+    }
+
+    /**
+     * @return true se tutte le righe sono state inserite.
+     */
+    public boolean isCompleto() {
+        return errori.isEmpty();
+    }
+
+    void impostaId(int indice, int id) {
+        idGenerati[indice] = id;
+    }
+
+    void aggiungiErrore(int indice, Persona persona, String messaggio) {
+        idGenerati[indice] = 0;
+        errori.add(new ErroreRiga(indice, persona, messaggio));
+    }
+
+    /**
+     * Descrive una singola riga del batch che non è stato possibile inserire.
+     */
+    public static class ErroreRiga {
+        public final int indice;         // Posizione della persona nella collezione in ingresso
+        public final Persona persona;    // La persona non inserita
+        public final String messaggio;   // Il motivo del fallimento
+
+        public ErroreRiga(int indice, Persona persona, String messaggio) {
+            this.indice = indice;
+            this.persona = persona;
+            this.messaggio = messaggio;
+        }
+
+        @Override
+        public String toString() {
+            return "Riga " + indice + " (" + persona.getNome() + " " + persona.getCognome() + "): " + messaggio;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * La classe ScrittoreCSV scrive record CSV secondo RFC 4180, nello stesso formato letto da
+ * LettoreCSV: i campi che contengono il separatore, virgolette o a capo vengono racchiusi
+ * fra virgolette, e le virgolette interne vengono raddoppiate.
+ */
+public class ScrittoreCSV implements Closeable, Flushable {
+
+    private final Writer writer;
+    private final char separatore;
+
+    /**
+     * @param writer     Dove scrivere (conviene che sia bufferizzato).
+     * @param separatore Il separatore dei campi.
+     */
+    public ScrittoreCSV(Writer writer, char separatore) {
+        this.writer = writer;
+        this.separatore = separatore;
+    }
+
+    /**
+     * Scrive un record, terminato da "\r\n" come prevede RFC 4180.
+     */
+    public void scriviRecord(List<String> campi) throws IOException {
+        for (int i = 0; i < campi.size(); i++) {
+            if (i > 0) {
+                writer.write(separatore);
+            }
+            scriviCampo(campi.get(i));
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void scriviCampo(String campo) throws IOException {
+        if (campo == null || campo.isEmpty()) {
+            return;
+        }
+        boolean virgolette = false;
+        for (int i = 0; i < campo.length() && !virgolette; i++) {
+            char c = campo.charAt(i);
+            virgolette = c == separatore || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!virgolette) {
+            writer.write(campo);
+            return;
+        }
+        writer.write('"');
+        writer.write(campo.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,144 @@
+package persistence;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * La classe ScrittoreSuCanale è un Writer che scrive un file attraverso un FileChannel.
+ * I caratteri vengono accumulati in un CharBuffer e codificati, un buffer alla volta, da un
+ * unico CharsetEncoder in un ByteBuffer diretto, scritto sul canale quando è pieno: non si
+ * crea un array di byte per ogni stringa (come String.getBytes) e non c'è la copia
+ * intermedia di un BufferedWriter sopra un FileOutputStream.
+ *
+ * Come gli altri Writer non è thread-safe.
+ */
+public class ScrittoreSuCanale extends Writer {
+
+    // Dimensione del buffer dei caratteri; quello dei byte è grande abbastanza per codificarlo tutto
+    public static final int DIMENSIONE_BUFFER = 64 * 1024;
+
+    private final FileChannel canale;
+    private final CharsetEncoder encoder;
+    private final CharBuffer caratteri = CharBuffer.allocate(DIMENSIONE_BUFFER);
+    private final ByteBuffer byteDaScrivere;
+    private boolean chiuso;
+
+    /**
+     * Crea (o sostituisce) il file indicato.
+     *
+     * @param file    Il file da scrivere.
+     * @param charset La codifica dei caratteri.
+     */
+    public ScrittoreSuCanale(Path file, Charset charset) throws IOException {
+        this.canale = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        // Un carattere non codificabile (ad esempio un surrogato isolato) diventa "?" invece di interrompere la scrittura
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.byteDaScrivere = ByteBuffer.allocateDirect((int) Math.ceil(DIMENSIONE_BUFFER * encoder.maxBytesPerChar()));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!caratteri.hasRemaining()) {
+            svuota(false);
+        }
+        caratteri.put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!caratteri.hasRemaining()) {
+                svuota(false);
+            }
+            int n = Math.min(len, caratteri.remaining());
+            caratteri.put(cbuf, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!caratteri.hasRemaining()) {
+                svuota(false);
+            }
+            int n = Math.min(len, caratteri.remaining());
+            caratteri.put(str, off, off + n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        String s = String.valueOf(csq);
+        write(s, 0, s.length());
+        return this;
+    }
+
+    /**
+     * Codifica e scrive sul canale i caratteri accumulati (non forza la scrittura su disco).
+     */
+    @Override
+    public void flush() throws IOException {
+        svuota(false);
+    }
+
+    /**
+     * Scrive i caratteri rimasti e chiude il file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (chiuso) {
+            return;
+        }
+        chiuso = true;
+        try {
+            svuota(true);
+        } finally {
+            canale.close();
+        }
+    }
+
+    /**
+     * Codifica i caratteri del buffer e scrive i byte ottenuti. Un surrogato alto rimasto
+     * in fondo al buffer resta in attesa della sua seconda metà, salvo che sia la fine.
+     */
+    private void svuota(boolean fine) throws IOException {
+        caratteri.flip();
+        CoderResult risultato = encoder.encode(caratteri, byteDaScrivere, fine);
+        if (risultato.isError()) {
+            risultato.throwException();
+        }
+        if (fine) {
+            risultato = encoder.flush(byteDaScrivere);
+            if (risultato.isError()) {
+                risultato.throwException();
+            }
+            encoder.reset();
+        }
+        caratteri.compact();
+        if (fine && caratteri.position() > 0) {
+            throw new CharacterCodingException();
+        }
+        byteDaScrivere.flip();
+        while (byteDaScrivere.hasRemaining()) {
+            canale.write(byteDaScrivere);
+        }
+        byteDaScrivere.clear();
+    }
+}
@@ -0,0 +1,307 @@
+package persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * La classe SupervisoreConnessione controlla periodicamente che il server MySQL sia
+ * raggiungibile e, quando non lo è, riprova a collegarsi finché la connessione torna,
+ * invece di chiudere l'applicazione.
+ *
+ * <ul>
+ *   <li>il controllo usa una connessione dedicata, fuori dal pool, con Connection.isValid
+ *       e un timeout: non sottrae connessioni alle operazioni della GUI e non resta bloccato
+ *       su un socket morto;</li>
+ *   <li>dopo un guasto i tentativi di riconnessione si diradano in modo esponenziale
+ *       (da attesaMinimaMs ad attesaMassimaMs), con una parte casuale (jitter) perché
+ *       più client non si ripresentino al server tutti nello stesso istante;</li>
+ *   <li>gli ascoltatori registrati vengono avvisati di ogni cambio di stato;</li>
+ *   <li>chi riceve un errore di connessione durante un'operazione può chiamare
+ *       {@link #segnalaGuasto()} per anticipare il controllo.</li>
+ * </ul>
+ *
+ * I parametri vengono letti dal file "credenziali_database.properties" tramite
+ * il metodo {@link #daProperties(ConnectionPool, Properties)}.
+ */
+public class SupervisoreConnessione {
+
+    // ----------------------------
+    //  CHIAVI DEL FILE PROPERTIES
+    // ----------------------------
+    public static final String PROP_INTERVALLO = "connessione-verifica-ms";
+    public static final String PROP_TIMEOUT = "connessione-timeout-s";
+    public static final String PROP_ATTESA_MINIMA = "connessione-riprova-min-ms";
+    public static final String PROP_ATTESA_MASSIMA = "connessione-riprova-max-ms";
+
+    // Valori di default usati se la chiave non è presente nel file
+    public static final long DEFAULT_INTERVALLO_MS = 5000;
+    public static final int DEFAULT_TIMEOUT_S = 2;
+    public static final long DEFAULT_ATTESA_MINIMA_MS = 250;
+    public static final long DEFAULT_ATTESA_MASSIMA_MS = 30_000;
+
+    /**
+     * Lo stato della connessione al server.
+     */
+    public enum Stato {
+        CONNESSO,
+        DISCONNESSO
+    }
+
+    private final ConnectionPool pool;
+    private final long intervalloMs;
+    private final int timeoutSec;
+    private final long attesaMinimaMs;
+    private final long attesaMassimaMs;
+
+    private final List<Consumer<Stato>> ascoltatori = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService esecutore;
+    private final AtomicBoolean verificaRichiesta = new AtomicBoolean(false);
+    private volatile Stato stato = Stato.CONNESSO;
+    private volatile boolean chiuso = false;
+
+    // Usati solo dal thread del supervisore
+    private Connection connessione;
+    private ScheduledFuture<?> prossimaVerifica;
+    private int tentativiFalliti = 0;
+
+    // Metriche
+    private final AtomicLong disconnessioni = new AtomicLong();
+    private final AtomicLong tentativiTotali = new AtomicLong();
+
+    /**
+     * Costruttore del supervisore: il primo controllo avviene dopo intervalloMs.
+     *
+     * @param pool            Il pool di connessioni da cui aprire la connessione di controllo.
+     * @param intervalloMs    Ogni quanto controllare la connessione quando il server è raggiungibile.
+     * @param timeoutSec      Timeout (secondi) di Connection.isValid.
+     * @param attesaMinimaMs  Attesa prima del primo tentativo di riconnessione.
+     * @param attesaMassimaMs Attesa massima fra due tentativi di riconnessione.
+     *
+     * @throws IllegalArgumentException se i tempi non sono coerenti.
+     */
+    public SupervisoreConnessione(ConnectionPool pool, long intervalloMs, int timeoutSec,
+                                  long attesaMinimaMs, long attesaMassimaMs) {
+        if (intervalloMs <= 0 || timeoutSec < 0 || attesaMinimaMs <= 0 || attesaMassimaMs < attesaMinimaMs) {
+            throw new IllegalArgumentException("Parametri del supervisore non validi: intervallo=" + intervalloMs
+                    + ", timeout=" + timeoutSec + ", attesa=" + attesaMinimaMs + ".." + attesaMassimaMs);
+        }
+        this.pool = pool;
+        this.intervalloMs = intervalloMs;
+        this.timeoutSec = timeoutSec;
+        this.attesaMinimaMs = attesaMinimaMs;
+        this.attesaMassimaMs = attesaMassimaMs;
+
+        // Thread daemon, per non impedire la chiusura della JVM
+        this.esecutore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "supervisore-connessione");
+            t.setDaemon(true);
+            return t;
+        });
+        this.prossimaVerifica = esecutore.schedule(this::verifica, intervalloMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Crea un supervisore leggendo i parametri dal file properties delle credenziali.
+     * Le chiavi "connessione-*" sono facoltative: se mancano si usano i valori di default.
+     *
+     * @param pool  Il pool di connessioni verso il database.
+     * @param props Le proprietà lette da "credenziali_database.properties".
+     * @return Il supervisore avviato.
+     * @throws IllegalArgumentException se un valore non è valido.
+     */
+    public static SupervisoreConnessione daProperties(ConnectionPool pool, Properties props) {
+        return new SupervisoreConnessione(
+                pool,
+                Long.parseLong(props.getProperty(PROP_INTERVALLO, String.valueOf(DEFAULT_INTERVALLO_MS)).trim()),
+                Integer.parseInt(props.getProperty(PROP_TIMEOUT, String.valueOf(DEFAULT_TIMEOUT_S)).trim()),
+                Long.parseLong(props.getProperty(PROP_ATTESA_MINIMA, String.valueOf(DEFAULT_ATTESA_MINIMA_MS)).trim()),
+                Long.parseLong(props.getProperty(PROP_ATTESA_MASSIMA, String.valueOf(DEFAULT_ATTESA_MASSIMA_MS)).trim())
+        );
+    }
+
+    /**
+     * Registra un ascoltatore che riceve il nuovo stato a ogni cambio. Viene chiamato dal
+     * thread del supervisore: chi aggiorna la GUI deve passare all'EDT.
+     *
+     * @param ascoltatore Il codice da eseguire a ogni cambio di stato.
+     */
+    public void aggiungiAscoltatore(Consumer<Stato> ascoltatore) {
+        ascoltatori.add(ascoltatore);
+    }
+
+    public void rimuoviAscoltatore(Consumer<Stato> ascoltatore) {
+        ascoltatori.remove(ascoltatore);
+    }
+
+    public Stato getStato() {
+        return stato;
+    }
+
+    public boolean isConnesso() {
+        return stato == Stato.CONNESSO;
+    }
+
+    /**
+     * Anticipa il controllo della connessione, ad esempio dopo che un'operazione è fallita
+     * con un errore di connessione (vedi {@link #isErroreDiConnessione(Throwable)}).
+     * Più segnalazioni ravvicinate producono un solo controllo.
+     */
+    public void segnalaGuasto() {
+        if (chiuso || !verificaRichiesta.compareAndSet(false, true)) {
+            return;
+        }
+        esecutore.execute(() -> {
+            verificaRichiesta.set(false);
+            if (prossimaVerifica != null && prossimaVerifica.cancel(false)) {
+                verifica();
+            }
+        });
+    }
+
+    /**
+     * Ferma il supervisore e chiude la connessione di controllo.
+     */
+    public void chiudi() {
+        chiuso = true;
+        esecutore.execute(this::chiudiConnessione);
+        esecutore.shutdown();
+    }
+
+    /**
+     * @param ex Un'eccezione ricevuta da un'operazione sul database.
+     * @return true se l'eccezione (o una sua causa) indica che il server non è raggiungibile
+     *         o che la connessione è caduta (SQLState della classe "08").
+     */
+    public static boolean isErroreDiConnessione(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException
+                    || t instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String sqlState = ((SQLException) t).getSQLState();
+                if (sqlState != null && sqlState.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // ----------------------------
+    //           METRICHE
+    // ----------------------------
+
+    public long getDisconnessioni() {
+        return disconnessioni.get();
+    }
+
+    public long getTentativiTotali() {
+        return tentativiTotali.get();
+    }
+
+    /**
+     * Rappresentazione testuale dello stato, utile per il debug.
+     */
+    @Override
+    public String toString() {
+        return "SupervisoreConnessione[stato=" + stato +
+               ", disconnessioni=" + getDisconnessioni() +
+               ", tentativi=" + getTentativiTotali() + "]";
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Eseguito dal thread del supervisore: controlla la connessione dedicata (aprendola se
+     * serve), aggiorna lo stato e pianifica il controllo successivo.
+     */
+    private void verifica() {
+        if (chiuso) {
+            return;
+        }
+        tentativiTotali.incrementAndGet();
+        boolean valida;
+        try {
+            if (connessione == null) {
+                connessione = pool.apriConnessioneDedicata();
+            }
+            valida = connessione.isValid(timeoutSec);
+        } catch (SQLException e) {
+            valida = false;
+        }
+
+        long attesa;
+        if (valida) {
+            tentativiFalliti = 0;
+            attesa = intervalloMs;
+            cambiaStato(Stato.CONNESSO);
+        } else {
+            chiudiConnessione();
+            if (stato == Stato.CONNESSO) {
+                disconnessioni.incrementAndGet();
+                // Le connessioni libere del pool puntano allo stesso server: sono da riaprire
+                pool.scartaLibere();
+            }
+            attesa = attesaRiconnessione(tentativiFalliti++);
+            cambiaStato(Stato.DISCONNESSO);
+        }
+        if (!chiuso) {
+            prossimaVerifica = esecutore.schedule(this::verifica, attesa, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Attesa prima del tentativo successivo: raddoppia a ogni fallimento fino ad attesaMassimaMs,
+     * e viene scelta a caso fra metà e tutto il valore calcolato.
+     */
+    private long attesaRiconnessione(int fallimenti) {
+        long attesa = attesaMinimaMs << Math.min(fallimenti, 30);
+        if (attesa <= 0 || attesa > attesaMassimaMs) {
+            attesa = attesaMassimaMs;
+        }
+        return attesa / 2 + ThreadLocalRandom.current().nextLong(attesa / 2 + 1);
+    }
+
+    private void cambiaStato(Stato nuovo) {
+        if (stato == nuovo) {
+            return;
+        }
+        stato = nuovo;
+        for (Consumer<Stato> a : ascoltatori) {
+            try {
+                a.accept(nuovo);
+            } catch (RuntimeException e) {
+                e.printStackTrace();    // Un ascoltatore difettoso non deve fermare il supervisore
+            }
+        }
+    }
+
+    private void chiudiConnessione() {
+        if (connessione == null) {
+            return;
+        }
+        try {
+            connessione.close();
+        } catch (SQLException e) {
+            // La connessione è comunque da scartare
+        }
+        connessione = null;
+    }
+}
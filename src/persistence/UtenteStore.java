@@ -0,0 +1,53 @@
+package persistence;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * L'interfaccia UtenteStore descrive dove vengono memorizzate le utenze
+ * (username, hash della password e salt) usate dal login e dalla registrazione.
+ * Il calcolo dell'hash spetta al ServizioAutenticazione: lo store conserva solo i valori.
+ */
+public interface UtenteStore {
+
+    /**
+     * @param username Lo username cercato.
+     * @return Le credenziali memorizzate, oppure null se l'utente non esiste.
+     * @throws SQLException se la lettura fallisce.
+     */
+    CredenzialiUtente cercaCredenziali(String username) throws SQLException;
+
+    /**
+     * Registra un nuovo utente.
+     *
+     * @param username     Lo username da registrare.
+     * @param hashPassword L'hash della password.
+     * @param salt         Il salt usato per l'hash.
+     * @return true se l'utente è stato creato, false se lo username esiste già.
+     * @throws SQLException se la scrittura fallisce.
+     */
+    boolean registraUtente(String username, String hashPassword, String salt) throws SQLException;
+
+    /**
+     * Registra molti utenti insieme, ad esempio per creare le utenze di una nuova organizzazione.
+     * Gli username già esistenti (anche ripetuti nella lista) vengono saltati senza errori.
+     * L'operazione è tutto o niente: se lancia SQLException nessuna utenza della lista è stata creata.
+     *
+     * @param nuovi Le utenze da creare (l'ID indicato viene ignorato).
+     * @return L'ID di ogni utenza creata, nello stesso ordine della lista (0 = username già esistente).
+     * @throws SQLException se la scrittura fallisce.
+     */
+    int[] registraUtenti(List<CredenzialiUtente> nuovi) throws SQLException;
+
+    /**
+     * Sostituisce l'hash e il salt di un utente esistente, ad esempio quando un login
+     * riuscito ricalcola l'hash con un algoritmo o un costo diverso.
+     *
+     * @param username     Lo username dell'utente.
+     * @param hashPassword Il nuovo hash della password.
+     * @param salt         Il nuovo salt.
+     * @return true se l'utente è stato aggiornato, false se non esiste.
+     * @throws SQLException se la scrittura fallisce.
+     */
+    boolean aggiornaPassword(String username, String hashPassword, String salt) throws SQLException;
+}
@@ -0,0 +1,128 @@
+package view;
+
+import models.Persona;
+import models.SuggerimentoUnione;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DuplicatiDialog è la finestra di dialogo modale che mostra i probabili duplicati trovati
+ * nella rubrica. Per ogni coppia mostra le due persone, la somiglianza e gli elementi in
+ * comune; l'utente seleziona le coppie da unire e preme "Unisci selezionati".
+ */
+public class DuplicatiDialog extends JDialog {
+
+    private static final String[] COLONNE = {"Persona", "Possibile duplicato", "Somiglianza", "In comune"};
+
+    private final List<SuggerimentoUnione> suggerimenti;
+    private final JTable tabella;
+
+    // Flag che indica se l'utente ha premuto "Unisci selezionati"
+    private boolean confirmed = false;
+
+    /**
+     * Costruttore del dialog.
+     *
+     * @param owner        Finestra proprietaria.
+     * @param suggerimenti Le coppie da mostrare, dalla più probabile.
+     */
+    public DuplicatiDialog(Frame owner, List<SuggerimentoUnione> suggerimenti) {
+        super(owner, "Possibili duplicati", true);
+        this.suggerimenti = suggerimenti;
+        setSize(800, 400);
+        setLayout(new BorderLayout());
+
+        tabella = new JTable(new AbstractTableModel() {
+            @Override
+            public int getRowCount() {
+                return suggerimenti.size();
+            }
+
+            @Override
+            public int getColumnCount() {
+                return COLONNE.length;
+            }
+
+            @Override
+            public String getColumnName(int column) {
+                return COLONNE[column];
+            }
+
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex) {
+                SuggerimentoUnione s = suggerimenti.get(rowIndex);
+                switch (columnIndex) {
+                    case 0:
+                        return descrivi(s.getDaTenere());
+                    case 1:
+                        return descrivi(s.getDaUnire());
+                    case 2:
+                        return Math.round(s.getPunteggio() * 100) + "%";
+                    case 3:
+                        return s.getMotivo();
+                    default:
+                        return null;
+                }
+            }
+        });
+        tabella.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        tabella.getColumnModel().getColumn(2).setMaxWidth(100);
+
+        JLabel intestazione = new JLabel("Trovate " + suggerimenti.size() + " coppie. "
+                + "Unendo una coppia, la prima persona viene completata con i dati della seconda, che viene eliminata.");
+        intestazione.setBorder(BorderFactory.createEmptyBorder(10, 10, 5, 10));
+        add(intestazione, BorderLayout.NORTH);
+        add(new JScrollPane(tabella), BorderLayout.CENTER);
+
+        // Pannello per i pulsanti
+        JPanel buttonsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton btnUnisci = new JButton("Unisci selezionati");
+        JButton btnChiudi = new JButton("Chiudi");
+        btnUnisci.setEnabled(false);
+        buttonsPanel.add(btnUnisci);
+        buttonsPanel.add(btnChiudi);
+        add(buttonsPanel, BorderLayout.SOUTH);
+
+        tabella.getSelectionModel().addListSelectionListener(e -> btnUnisci.setEnabled(tabella.getSelectedRowCount() > 0));
+
+        btnChiudi.addActionListener(e -> {
+            confirmed = false;
+            dispose();
+        });
+
+        btnUnisci.addActionListener(e -> {
+            confirmed = true;
+            dispose();
+        });
+
+        // Centra la finestra sopra il padre
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * Restituisce true se l'utente ha premuto "Unisci selezionati".
+     * @return true se confermato, false se chiuso.
+     */
+    public boolean isConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * @return Le coppie selezionate dall'utente, nell'ordine della tabella.
+     */
+    public List<SuggerimentoUnione> getSelezionati() {
+        List<SuggerimentoUnione> selezionati = new ArrayList<>();
+        for (int riga : tabella.getSelectedRows()) {
+            selezionati.add(suggerimenti.get(tabella.convertRowIndexToModel(riga)));
+        }
+        return selezionati;
+    }
+
+    private static String descrivi(Persona p) {
+        return p.getNome() + " " + p.getCognome() + " - " + p.getTelefono();
+    }
+}
@@ -144,6 +144,18 @@ public class LoginFrame extends JFrame {
 
     // Metodi per la visualizzazione di messaggi e notifiche
     
+    /**
+     * Mostra (o nasconde) lo stato di attesa mentre una richiesta al server è in corso:
+     * i pulsanti vengono disabilitati e il cursore diventa quello di attesa.
+     *
+     * @param inAttesa true se c'è almeno una richiesta in corso.
+     */
+    public void setInAttesa(boolean inAttesa) {
+        loginButton.setEnabled(!inAttesa);
+        registerButton.setEnabled(!inAttesa);
+        setCursor(inAttesa ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+    }
+    
     /**
      * Mostra un messaggio di errore in un JOptionPane.
      *
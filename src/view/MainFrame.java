@@ -3,29 +3,47 @@ package view;
 import models.Persona;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.JTableHeader;
+import javax.swing.table.TableColumn;
 import java.awt.*;
-import java.util.Vector;
 
 /**
  * MainFrame rappresenta la finestra principale della rubrica.
  * Visualizza una JTable con le persone (solo Nome, Cognome, Telefono)
  * e una JToolBar contenente tre pulsanti: uno per l'aggiunta di nuove persone,
- * uno per la modifica e uno per l'eliminazione.
+ * uno per la modifica e uno per l'eliminazione, affiancata dalla casella di ricerca.
  */
 public class MainFrame extends JFrame {
 
-    // Tabella e relativo modello dati
+    // Tabella e relativo modello dati (caricato a pagine, vedi PersonaTableModel)
     private JTable personTable;
-    private DefaultTableModel tableModel;
+    private PersonaTableModel tableModel;
 
     // Pulsanti (ora inseriti nella JToolBar)
     private JButton btnNuovo;    // Pulsante per aggiungere una nuova persona
     private JButton btnModifica; // Pulsante per modificare la persona selezionata
     private JButton btnElimina;  // Pulsante per eliminare la persona selezionata
 
-    // Lista interna di Persona per poter ricostruire l’oggetto selezionato
-    private Vector<Persona> personList = new Vector<>();
+    // Casella di ricerca (filtra la tabella mentre si scrive)
+    private JTextField campoRicerca;
+    private JLabel lblRisultati;
+
+    // Barra di stato con l'indicatore delle operazioni sul database in corso
+    private JProgressBar barraAttivita;
+    private JLabel lblStato;
+    private JButton btnAnnulla;  // Pulsante per annullare le operazioni in corso
+
+    // Voci del menu "Strumenti"
+    private JMenuItem voceImportaCSV;
+    private JMenuItem voceImportaVCard;
+    private JMenuItem voceEsporta;
+    private JMenuItem voceTrovaDuplicati;
+
+    // Avanzamento delle operazioni lunghe (importazioni), nella barra di stato
+    private JLabel lblAvanzamento;
+
+    // Avviso di connessione al server persa, nella barra di stato
+    private JLabel lblConnessione;
 
     /**
      * Costruttore di default: imposta titolo, dimensioni e layout,
@@ -41,17 +59,32 @@ public class MainFrame extends JFrame {
         setLocationRelativeTo(null);
         setLayout(new BorderLayout());
 
+        // Menu "Strumenti" con le operazioni sull'intera rubrica
+        JMenuBar menuBar = new JMenuBar();
+        JMenu menuStrumenti = new JMenu("Strumenti");
+        voceImportaCSV = new JMenuItem("Importa CSV...");
+        voceImportaCSV.setToolTipText("Aggiunge alla rubrica le persone di un file CSV");
+        menuStrumenti.add(voceImportaCSV);
+        voceImportaVCard = new JMenuItem("Importa vCard...");
+        voceImportaVCard.setToolTipText("Aggiunge alla rubrica le schede di un file .vcf, ad esempio esportato da un telefono");
+        menuStrumenti.add(voceImportaVCard);
+        voceEsporta = new JMenuItem("Esporta...");
+        voceEsporta.setToolTipText("Salva tutta la rubrica in un file CSV o vCard");
+        menuStrumenti.add(voceEsporta);
+        menuStrumenti.addSeparator();
+        voceTrovaDuplicati = new JMenuItem("Trova duplicati...");
+        voceTrovaDuplicati.setToolTipText("Cerca le persone inserite più volte e propone di unirle");
+        menuStrumenti.add(voceTrovaDuplicati);
+        menuBar.add(menuStrumenti);
+        setJMenuBar(menuBar);
+
         /*
          * Inizializza il modello della tabella con tre colonne:
          * Nome, Cognome, Telefono.
-         * Le celle non sono modificabili dall’utente.
+         * Le celle non sono modificabili dall’utente e le righe vengono
+         * caricate a pagine solo quando diventano visibili.
          */
-        tableModel = new DefaultTableModel(new String[]{"Nome", "Cognome", "Telefono"}, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Rende non modificabili le celle
-            }
-        };
+        tableModel = new PersonaTableModel();
 
         // Crea la JTable associandola al tableModel
         personTable = new JTable(tableModel);
@@ -63,6 +96,17 @@ public class MainFrame extends JFrame {
         JScrollPane scrollPane = new JScrollPane(personTable);
         add(scrollPane, BorderLayout.CENTER);
 
+        // Quando il viewport si sposta, si richiedono in anticipo le pagine visibili e adiacenti
+        scrollPane.getViewport().addChangeListener(e -> {
+            Rectangle visibile = scrollPane.getViewport().getViewRect();
+            int primaRiga = personTable.rowAtPoint(new Point(0, visibile.y));
+            int ultimaRiga = personTable.rowAtPoint(new Point(0, visibile.y + visibile.height - 1));
+            if (ultimaRiga < 0) {
+                ultimaRiga = tableModel.getRowCount() - 1;
+            }
+            tableModel.precarica(primaRiga, ultimaRiga);
+        });
+
         /*
          * Creazione di una JToolBar che conterrà i pulsanti
          * per le operazioni di inserimento, modifica ed eliminazione.
@@ -93,41 +137,159 @@ public class MainFrame extends JFrame {
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         topPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         topPanel.add(toolBar);
+
+        // Casella di ricerca: disattivata finché l'indice di ricerca non è pronto
+        campoRicerca = new JTextField(18);
+        campoRicerca.setEnabled(false);
+        campoRicerca.setToolTipText("Indicizzazione della rubrica in corso...");
+        topPanel.add(new JLabel("Cerca:"));
+        topPanel.add(campoRicerca);
+        lblRisultati = new JLabel();
+        topPanel.add(lblRisultati);
         add(topPanel, BorderLayout.NORTH);
+
+        /*
+         * Barra di stato in basso: mostra se ci sono operazioni sul database
+         * in corso e permette di annullarle.
+         */
+        JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        barraAttivita = new JProgressBar();
+        barraAttivita.setIndeterminate(true);
+        barraAttivita.setVisible(false);
+        lblStato = new JLabel(" ");
+        btnAnnulla = new JButton("Annulla");
+        btnAnnulla.setToolTipText("Annulla le operazioni in corso sul database");
+        btnAnnulla.setVisible(false);
+        statusPanel.add(barraAttivita);
+        statusPanel.add(lblStato);
+        statusPanel.add(btnAnnulla);
+        lblAvanzamento = new JLabel();
+        statusPanel.add(lblAvanzamento);
+        lblConnessione = new JLabel();
+        lblConnessione.setForeground(Color.RED);
+        statusPanel.add(lblConnessione);
+        add(statusPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Aggiorna la barra di stato con il numero di operazioni sul database in corso.
+     *
+     * @param inCorso Il numero di operazioni in coda o in esecuzione.
+     */
+    public void mostraOperazioniInCorso(int inCorso) {
+        boolean attivo = inCorso > 0;
+        barraAttivita.setVisible(attivo);
+        btnAnnulla.setVisible(attivo);
+        lblStato.setText(attivo ? "Operazioni in corso: " + inCorso : " ");
+    }
+
+    /**
+     * Mostra nella barra di stato l'avanzamento di un'operazione lunga.
+     *
+     * @param testo Il testo da mostrare, oppure null al termine dell'operazione.
+     */
+    public void mostraAvanzamento(String testo) {
+        lblAvanzamento.setText(testo == null ? "" : testo);
     }
 
     /**
-     * Aggiorna la tabella con i dati presenti nel Vector di Persona.
-     * Vengono mostrate solo le colonne: Nome, Cognome, Telefono.
+     * Mostra nella barra di stato l'avviso che la connessione al server è caduta.
      *
-     * @param persons Il Vector contenente le persone da visualizzare.
-     */
-    public void updateTableData(Vector<Persona> persons) {
-        // Salva localmente la lista di persone
-        this.personList = persons;
-        // Svuota il modello prima di reinserire i dati
-        tableModel.setRowCount(0);
-
-        // Inserisce i dati riga per riga all’interno del modello
-        for (Persona p : persons) {
-            Object[] rowData = { p.getNome(), p.getCognome(), p.getTelefono() };
-            tableModel.addRow(rowData);
+     * @param testo Il testo da mostrare, oppure null quando la connessione torna.
+     */
+    public void mostraConnessione(String testo) {
+        lblConnessione.setText(testo == null ? "" : testo);
+    }
+
+    /**
+     * Attiva la casella di ricerca, quando l'indice di ricerca è pronto.
+     */
+    public void attivaRicerca() {
+        campoRicerca.setEnabled(true);
+        campoRicerca.setToolTipText("Cerca per nome, cognome o telefono (anche solo l'inizio)");
+    }
+
+    /**
+     * Mostra accanto alla casella di ricerca quante persone sono state trovate.
+     *
+     * @param trovate Il numero di persone mostrate, oppure -1 se non c'è una ricerca attiva.
+     * @param altre   true se ci sono altre persone oltre a quelle mostrate.
+     */
+    public void mostraRisultatiRicerca(int trovate, boolean altre) {
+        if (trovate < 0) {
+            lblRisultati.setText("");
+        } else if (altre) {
+            lblRisultati.setText("primi " + trovate + " risultati");
+        } else {
+            lblRisultati.setText(trovate == 1 ? "1 risultato" : trovate + " risultati");
+        }
+    }
+
+    /**
+     * Mostra nell'intestazione della tabella la colonna per cui le righe sono ordinate.
+     *
+     * @param colonna   La colonna del modello, oppure -1 se la tabella non è ordinata.
+     * @param crescente true per l'ordine crescente.
+     */
+    public void mostraOrdinamento(int colonna, boolean crescente) {
+        for (int i = 0; i < personTable.getColumnCount(); i++) {
+            TableColumn tc = personTable.getColumnModel().getColumn(i);
+            String nome = tableModel.getColumnName(tc.getModelIndex());
+            tc.setHeaderValue(tc.getModelIndex() == colonna ? nome + (crescente ? " \u25B2" : " \u25BC") : nome);
         }
+        personTable.getTableHeader().repaint();
+    }
+
+    /**
+     * @return L'intestazione della tabella, su cui il controller registra il clic per ordinare.
+     */
+    public JTableHeader getIntestazioneTabella() {
+        return personTable.getTableHeader();
+    }
+
+    /**
+     * @return La casella di ricerca.
+     */
+    public JTextField getCampoRicerca() {
+        return campoRicerca;
+    }
+
+    /**
+     * @return Il modello della tabella, a cui il controller fornisce la sorgente delle pagine.
+     */
+    public PersonaTableModel getTableModel() {
+        return tableModel;
     }
 
     /**
      * Restituisce la Persona selezionata nella JTable (in base all’indice di riga).
-     * Se non è selezionata alcuna riga, o l’indice è fuori range, restituisce null.
+     * Se non è selezionata alcuna riga, o la riga non è ancora stata caricata, restituisce null.
      *
      * @return L'oggetto Persona corrispondente alla riga selezionata, altrimenti null.
      */
     public Persona getSelectedPersona() {
         int rowIndex = personTable.getSelectedRow();
-        if (rowIndex < 0 || rowIndex >= personList.size()) {
-            return null; // Nessuna persona valida selezionata
+        if (rowIndex < 0) {
+            return null; // Nessuna persona selezionata
         }
-        // Ritorna la Persona corrispondente a quell’indice nel Vector
-        return personList.get(rowIndex);
+        // Ritorna la Persona corrispondente a quella riga nel modello
+        return tableModel.getPersonaAt(personTable.convertRowIndexToModel(rowIndex));
+    }
+
+    /**
+     * Seleziona la riga della persona con l'ID indicato e la rende visibile.
+     * Se la persona non è mostrata (o la sua pagina non è in memoria) la selezione non cambia.
+     *
+     * @param idPersona L'ID della persona da selezionare.
+     */
+    public void selezionaPersona(int idPersona) {
+        int riga = tableModel.getRigaDi(idPersona);
+        if (riga < 0) {
+            return;
+        }
+        int vista = personTable.convertRowIndexToView(riga);
+        personTable.setRowSelectionInterval(vista, vista);
+        personTable.scrollRectToVisible(personTable.getCellRect(vista, 0, true));
     }
 
     /**
@@ -150,4 +312,39 @@ public class MainFrame extends JFrame {
     public JButton getBtnElimina() {
         return btnElimina;
     }
+
+    /**
+     * @return Il pulsante "Annulla" della barra di stato.
+     */
+    public JButton getBtnAnnulla() {
+        return btnAnnulla;
+    }
+
+    /**
+     * @return La voce "Importa CSV..." del menu "Strumenti".
+     */
+    public JMenuItem getVoceImportaCSV() {
+        return voceImportaCSV;
+    }
+
+    /**
+     * @return La voce "Importa vCard..." del menu "Strumenti".
+     */
+    public JMenuItem getVoceImportaVCard() {
+        return voceImportaVCard;
+    }
+
+    /**
+     * @return La voce "Esporta..." del menu "Strumenti".
+     */
+    public JMenuItem getVoceEsporta() {
+        return voceEsporta;
+    }
+
+    /**
+     * @return La voce "Trova duplicati..." del menu "Strumenti".
+     */
+    public JMenuItem getVoceTrovaDuplicati() {
+        return voceTrovaDuplicati;
+    }
 }
@@ -0,0 +1,155 @@
+package view;
+
+import java.util.Arrays;
+
+/**
+ * Mappa da int a int a indirizzamento aperto (sondaggio lineare), senza oggetti Integer:
+ * PersonaTableModel la usa per trovare la riga di una persona dal suo ID.
+ * Le chiavi devono essere diverse da 0 (gli ID delle persone partono da 1); i valori
+ * non possono essere negativi, così get può restituire -1 per le chiavi assenti.
+ *
+ * Le eliminazioni spostano indietro le chiavi successive dello stesso gruppo, quindi
+ * non restano marcatori di cancellazione e la tabella non si degrada con l'uso.
+ */
+final class MappaIntInt {
+
+    private static final int LIBERA = 0;
+    private static final int CAPACITA_MINIMA = 16;
+
+    private int[] chiavi;
+    private int[] valori;
+    private int maschera;
+    private int dimensione;
+
+    MappaIntInt() {
+        alloca(CAPACITA_MINIMA);
+    }
+
+    /**
+     * @return Il valore associato alla chiave, oppure -1 se la chiave non c'è.
+     */
+    int get(int chiave) {
+        int i = posizione(chiave);
+        return chiavi[i] == chiave ? valori[i] : -1;
+    }
+
+    /**
+     * Associa il valore alla chiave, sostituendo quello eventualmente presente.
+     */
+    void put(int chiave, int valore) {
+        if (chiave == LIBERA) {
+            throw new IllegalArgumentException("La chiave 0 non è ammessa");
+        }
+        int i = posizione(chiave);
+        if (chiavi[i] == chiave) {
+            valori[i] = valore;
+            return;
+        }
+        chiavi[i] = chiave;
+        valori[i] = valore;
+        if (++dimensione > (chiavi.length >> 1) + (chiavi.length >> 2)) {
+            ridimensiona(chiavi.length << 1);
+        }
+    }
+
+    /**
+     * Rimuove la chiave.
+     *
+     * @return Il valore che le era associato, oppure -1 se la chiave non c'era.
+     */
+    int remove(int chiave) {
+        int i = posizione(chiave);
+        if (chiavi[i] != chiave) {
+            return -1;
+        }
+        int valore = valori[i];
+        dimensione--;
+        // Le chiavi successive del gruppo vengono spostate nel buco, se la loro
+        // posizione ideale non sta fra il buco e la posizione attuale
+        int j = i;
+        while (true) {
+            j = (j + 1) & maschera;
+            if (chiavi[j] == LIBERA) {
+                break;
+            }
+            int ideale = mescola(chiavi[j]) & maschera;
+            if (((j - ideale) & maschera) >= ((j - i) & maschera)) {
+                chiavi[i] = chiavi[j];
+                valori[i] = valori[j];
+                i = j;
+            }
+        }
+        chiavi[i] = LIBERA;
+        return valore;
+    }
+
+    /**
+     * Aggiunge delta a tutti i valori maggiori o uguali a da: serve quando una riga viene
+     * inserita o rimossa e quelle successive cambiano posizione. Non alloca memoria.
+     */
+    void spostaValori(int da, int delta) {
+        for (int i = 0; i < chiavi.length; i++) {
+            if (chiavi[i] != LIBERA && valori[i] >= da) {
+                valori[i] += delta;
+            }
+        }
+    }
+
+    int size() {
+        return dimensione;
+    }
+
+    /**
+     * Svuota la mappa; se era cresciuta molto torna alla capacità minima.
+     */
+    void clear() {
+        if (chiavi.length > CAPACITA_MINIMA * 64) {
+            alloca(CAPACITA_MINIMA);
+        } else {
+            Arrays.fill(chiavi, LIBERA);
+        }
+        dimensione = 0;
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * @return La posizione della chiave, oppure la prima posizione libera del suo gruppo.
+     */
+    private int posizione(int chiave) {
+        int i = mescola(chiave) & maschera;
+        while (chiavi[i] != LIBERA && chiavi[i] != chiave) {
+            i = (i + 1) & maschera;
+        }
+        return i;
+    }
+
+    /**
+     * Gli ID sono consecutivi: vengono mescolati perché non occupino gruppi contigui.
+     */
+    private static int mescola(int chiave) {
+        int h = chiave * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void alloca(int capacita) {
+        chiavi = new int[capacita];
+        valori = new int[capacita];
+        maschera = capacita - 1;
+    }
+
+    private void ridimensiona(int capacita) {
+        int[] vecchieChiavi = chiavi;
+        int[] vecchiValori = valori;
+        alloca(capacita);
+        for (int i = 0; i < vecchieChiavi.length; i++) {
+            if (vecchieChiavi[i] != LIBERA) {
+                int j = posizione(vecchieChiavi[i]);
+                chiavi[j] = vecchieChiavi[i];
+                valori[j] = vecchiValori[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,631 @@
+package view;
+
+import models.Collazione;
+import models.Persona;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * PersonaTableModel è il modello della JTable della MainFrame. A differenza di un
+ * DefaultTableModel non contiene tutte le persone: conosce solo il numero totale di
+ * righe e carica le pagine (di DIMENSIONE_PAGINA righe) quando vengono mostrate.
+ *
+ * <ul>
+ *   <li>Le pagine vengono caricate in background, mai sul thread della GUI;</li>
+ *   <li>finché una pagina non è arrivata, le sue righe mostrano un segnaposto;</li>
+ *   <li>solo le ultime MAX_PAGINE_IN_MEMORIA pagine usate restano in memoria (LRU),
+ *       quindi l'occupazione di memoria non dipende dalla dimensione della rubrica.</li>
+ * </ul>
+ *
+ * Con setFiltro la tabella mostra invece i risultati di una ricerca (già in memoria), senza
+ * cambiare modello né scartare le pagine: rimuoviFiltro torna subito alla rubrica completa.
+ *
+ * Con setOrdinamento le righe vengono ordinate per una colonna (vedi Collazione): la rubrica
+ * completa, già ordinata in background, viene mostrata al posto delle pagine e mantenuta in
+ * ordine dagli aggiornamenti incrementali; anche i risultati delle ricerche vengono ordinati.
+ *
+ * Per ogni vista (pagine in memoria, rubrica ordinata, risultati della ricerca) il modello
+ * tiene una MappaIntInt dall'ID della persona alla sua riga, aggiornata insieme alle righe:
+ * trovare, aggiornare o rimuovere una persona per ID non richiede di scorrere la tabella.
+ *
+ * Tutti i metodi pubblici vanno chiamati dal thread della GUI (EDT).
+ */
+public class PersonaTableModel extends AbstractTableModel {
+
+    // Numero di righe lette per ogni pagina
+    public static final int DIMENSIONE_PAGINA = 200;
+
+    // Numero massimo di pagine mantenute in memoria
+    public static final int MAX_PAGINE_IN_MEMORIA = 50;
+
+    // Testo mostrato nelle celle delle righe ancora in caricamento
+    public static final String SEGNAPOSTO = "...";
+
+    private static final String[] COLONNE = {"Nome", "Cognome", "Telefono"};
+
+    // Criterio di ordinamento di ciascuna colonna
+    private static final Collazione.Criterio[] CRITERI = {
+        Collazione.Criterio.NOME, Collazione.Criterio.COGNOME, Collazione.Criterio.TELEFONO
+    };
+
+    /**
+     * La sorgente da cui il modello legge il numero di righe e le pagine.
+     * I metodi vengono chiamati da un thread in background.
+     */
+    public interface SorgentePagine {
+        /**
+         * @return Il numero totale di righe. Viene chiamato a ogni ricarica della tabella,
+         *         quindi la sorgente può usarlo per invalidare le proprie informazioni.
+         */
+        int contaRighe() throws SQLException;
+
+        /**
+         * @param primaRiga  La posizione (da 0) della prima riga della pagina.
+         * @param dimensione Il numero di righe da leggere.
+         * @return Le righe lette (possono essere meno di dimensione alla fine della rubrica).
+         */
+        List<Persona> caricaPagina(int primaRiga, int dimensione) throws SQLException;
+
+        /**
+         * Avvisa la sorgente che la riga indicata è stata rimossa, quindi tutte le righe
+         * successive sono scalate di una posizione. Viene chiamato sull'EDT.
+         *
+         * @param riga La posizione della riga rimossa.
+         */
+        void rigaRimossa(int riga);
+    }
+
+    private SorgentePagine sorgente;
+    private Consumer<Exception> gestoreErrori = Exception::printStackTrace;
+
+    private int numeroRighe = 0;
+    private int generazione = 0;  // Incrementata a ogni ricarica, per scartare i risultati obsoleti
+    private boolean conteggioInCorso = false;
+
+    // Risultati della ricerca mostrati al posto delle pagine (null = nessun filtro)
+    private Persona[] filtro;
+    private final MappaIntInt righeFiltro = new MappaIntInt();
+
+    // Ordinamento scelto (colonna -1 = ordine della sorgente) e, se è stata fornita,
+    // tutta la rubrica in quell'ordine, mostrata al posto delle pagine
+    private int colonnaOrdinata = -1;
+    private boolean crescente;
+    private Comparator<Persona> ordinamento;
+    private List<Persona> ordinate;
+    private final MappaIntInt righeOrdinate = new MappaIntInt();
+
+    // Riga di ciascuna persona delle pagine in memoria
+    private final MappaIntInt righePagine = new MappaIntInt();
+
+    // Pagine in memoria (in ordine di accesso, la meno usata di recente viene scartata)
+    private final Map<Integer, List<Persona>> pagine = new LinkedHashMap<Integer, List<Persona>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Persona>> eldest) {
+            if (size() <= MAX_PAGINE_IN_MEMORIA) {
+                return false;
+            }
+            dimenticaPagina(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+    };
+
+    // Pagine richieste e non ancora arrivate
+    private final Set<Integer> pagineInVolo = new HashSet<>();
+
+    // Un solo thread di caricamento: le pagine arrivano nell'ordine in cui sono richieste
+    private final ExecutorService caricatore = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "caricamento-tabella");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Imposta la sorgente dei dati e ricarica la tabella.
+     *
+     * @param sorgente La sorgente delle pagine.
+     */
+    public void setSorgente(SorgentePagine sorgente) {
+        this.sorgente = sorgente;
+        ricarica();
+    }
+
+    /**
+     * Imposta il codice da eseguire (sull'EDT) quando un caricamento fallisce.
+     *
+     * @param gestoreErrori Il gestore degli errori di caricamento.
+     */
+    public void setGestoreErrori(Consumer<Exception> gestoreErrori) {
+        this.gestoreErrori = gestoreErrori;
+    }
+
+    /**
+     * Rilegge il numero di righe e scarta tutte le pagine in memoria.
+     * Le pagine visibili verranno ricaricate non appena la JTable le ridisegna.
+     */
+    public void ricarica() {
+        if (sorgente == null) {
+            return;
+        }
+        final int gen = ++generazione;
+        final SorgentePagine s = sorgente;
+        conteggioInCorso = true;
+        caricatore.execute(() -> {
+            try {
+                int totale = s.contaRighe();
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generazione) {
+                        return;
+                    }
+                    conteggioInCorso = false;
+                    pagine.clear();
+                    righePagine.clear();
+                    pagineInVolo.clear();
+                    numeroRighe = totale;
+                    fireTableDataChanged();
+                });
+            } catch (SQLException | RuntimeException ex) {
+                SwingUtilities.invokeLater(() -> gestoreErrori.accept(ex));
+            }
+        });
+    }
+
+    /**
+     * Mostra nella tabella solo le persone indicate (i risultati di una ricerca), nell'ordine dato
+     * o, se è impostato un ordinamento, in quello. Le pagine in memoria restano valide e
+     * continuano a ricevere gli aggiornamenti incrementali.
+     *
+     * @param risultati Le persone da mostrare (l'array può venire riordinato).
+     */
+    public void setFiltro(Persona[] risultati) {
+        if (ordinamento != null) {
+            Collazione.ordina(risultati, CRITERI[colonnaOrdinata], crescente);
+        }
+        filtro = risultati;
+        indicizza(righeFiltro, Arrays.asList(risultati));
+        fireTableDataChanged();
+    }
+
+    /**
+     * Torna a mostrare tutta la rubrica.
+     */
+    public void rimuoviFiltro() {
+        if (filtro != null) {
+            filtro = null;
+            righeFiltro.clear();
+            fireTableDataChanged();
+        }
+    }
+
+    /**
+     * @return true se la tabella mostra i risultati di una ricerca.
+     */
+    public boolean isFiltrato() {
+        return filtro != null;
+    }
+
+    /**
+     * Ordina la tabella per una colonna.
+     *
+     * @param colonna       La colonna (0 = Nome, 1 = Cognome, 2 = Telefono).
+     * @param crescente     false per l'ordine inverso.
+     * @param tutteOrdinate Tutta la rubrica, già ordinata con Collazione.ordina per la stessa
+     *                      colonna; null per ordinare solo i risultati delle ricerche e lasciare
+     *                      la rubrica completa nell'ordine della sorgente.
+     */
+    public void setOrdinamento(int colonna, boolean crescente, Persona[] tutteOrdinate) {
+        this.colonnaOrdinata = colonna;
+        this.crescente = crescente;
+        this.ordinamento = CRITERI[colonna].comparatore(crescente);
+        this.ordinate = tutteOrdinate != null ? new ArrayList<>(Arrays.asList(tutteOrdinate)) : null;
+        indicizza(righeOrdinate, ordinate != null ? ordinate : Collections.emptyList());
+        if (filtro != null) {
+            Collazione.ordina(filtro, CRITERI[colonna], crescente);
+            indicizza(righeFiltro, Arrays.asList(filtro));
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Torna all'ordine della sorgente.
+     */
+    public void rimuoviOrdinamento() {
+        colonnaOrdinata = -1;
+        ordinamento = null;
+        ordinate = null;
+        righeOrdinate.clear();
+        fireTableDataChanged();
+    }
+
+    /**
+     * @return La colonna per cui è ordinata la tabella, oppure -1.
+     */
+    public int getColonnaOrdinata() {
+        return colonnaOrdinata;
+    }
+
+    /**
+     * @return true se l'ordinamento impostato è crescente.
+     */
+    public boolean isCrescente() {
+        return crescente;
+    }
+
+    /**
+     * @return Una copia della rubrica completa nell'ordine impostato, oppure null se la
+     *         tabella mostra le pagine della sorgente.
+     */
+    public Persona[] getRigheOrdinate() {
+        return ordinate != null ? ordinate.toArray(new Persona[0]) : null;
+    }
+
+    /**
+     * Richiede in anticipo le pagine che contengono le righe [primaRiga, ultimaRiga]
+     * e quelle immediatamente adiacenti, in modo che lo scorrimento trovi già i dati.
+     * Viene chiamato dalla MainFrame quando il viewport dello JScrollPane si sposta.
+     *
+     * @param primaRiga  La prima riga visibile.
+     * @param ultimaRiga L'ultima riga visibile.
+     */
+    public void precarica(int primaRiga, int ultimaRiga) {
+        if (!mostraPagine() || numeroRighe == 0 || primaRiga < 0) {
+            return;
+        }
+        int primaPagina = Math.max(0, primaRiga / DIMENSIONE_PAGINA - 1);
+        int ultimaPagina = Math.min((numeroRighe - 1) / DIMENSIONE_PAGINA, Math.max(ultimaRiga, primaRiga) / DIMENSIONE_PAGINA + 1);
+        for (int p = primaPagina; p <= ultimaPagina; p++) {
+            if (!pagine.containsKey(p)) {
+                richiediPagina(p);
+            }
+        }
+    }
+
+    /**
+     * Restituisce la Persona mostrata nella riga indicata.
+     *
+     * @param riga L'indice di riga nel modello.
+     * @return La Persona, oppure null se la riga non esiste o non è ancora stata caricata.
+     */
+    public Persona getPersonaAt(int riga) {
+        if (filtro != null) {
+            return (riga >= 0 && riga < filtro.length) ? filtro[riga] : null;
+        }
+        if (ordinate != null) {
+            return (riga >= 0 && riga < ordinate.size()) ? ordinate.get(riga) : null;
+        }
+        if (riga < 0 || riga >= numeroRighe) {
+            return null;
+        }
+        List<Persona> pagina = pagine.get(riga / DIMENSIONE_PAGINA);
+        int indice = riga % DIMENSIONE_PAGINA;
+        if (pagina == null || indice >= pagina.size()) {
+            return null;
+        }
+        return pagina.get(indice);
+    }
+
+    /**
+     * Restituisce la riga in cui è mostrata la persona con l'ID indicato.
+     *
+     * @param idPersona L'ID della persona.
+     * @return La riga nel modello, oppure -1 se la persona non è mostrata o la sua pagina
+     *         non è in memoria.
+     */
+    public int getRigaDi(int idPersona) {
+        if (filtro != null) {
+            return righeFiltro.get(idPersona);
+        }
+        return ordinate != null ? righeOrdinate.get(idPersona) : righePagine.get(idPersona);
+    }
+
+    // ----------------------------
+    //   AGGIORNAMENTI INCREMENTALI
+    // ----------------------------
+
+    /**
+     * Aggiunge in fondo alla tabella una persona appena creata. Dato che le righe sono
+     * ordinate per ID e il database assegna ID crescenti, la nuova riga è sempre l'ultima.
+     *
+     * @param p La persona creata, con l'ID generato dal database.
+     */
+    public void inserisciRiga(Persona p) {
+        inserisciInOrdine(p);
+        if (!preparaAggiornamento()) {
+            return;
+        }
+        int riga = numeroRighe;
+        List<Persona> pagina = pagine.get(riga / DIMENSIONE_PAGINA);
+        if (pagina != null && pagina.size() == riga % DIMENSIONE_PAGINA) {
+            pagina.add(p);
+            righePagine.put(p.getID(), riga);
+        }
+        numeroRighe++;
+        if (mostraPagine()) {
+            fireTableRowsInserted(riga, riga);
+        }
+    }
+
+    /**
+     * Sostituisce i dati di una persona già presente in tabella.
+     *
+     * @param p La persona modificata (con lo stesso ID di quella da sostituire).
+     */
+    public void aggiornaRiga(Persona p) {
+        if (rimuoviDallOrdine(p.getID())) {
+            inserisciInOrdine(p);
+        }
+        if (!preparaAggiornamento()) {
+            return;
+        }
+        int riga = righePagine.get(p.getID());
+        if (riga < 0) {
+            return; // Non in memoria: verrà letta aggiornata quando diventerà visibile
+        }
+        pagine.get(riga / DIMENSIONE_PAGINA).set(riga % DIMENSIONE_PAGINA, p);
+        if (mostraPagine()) {
+            fireTableRowsUpdated(riga, riga);
+        }
+    }
+
+    /**
+     * Rimuove dalla tabella la persona con l'ID indicato. Le righe delle pagine successive
+     * in memoria vengono fatte scorrere di una posizione; la prima pagina che non può
+     * essere completata con i dati già in memoria viene scartata e riletta quando serve.
+     *
+     * @param idPersona L'ID della persona eliminata.
+     */
+    public void rimuoviRiga(int idPersona) {
+        rimuoviDallOrdine(idPersona);
+        if (!preparaAggiornamento()) {
+            return;
+        }
+        int riga = righePagine.remove(idPersona);
+        if (riga < 0) {
+            ricarica(); // Posizione sconosciuta: non si può aggiornare in modo incrementale
+            return;
+        }
+        righePagine.spostaValori(riga + 1, -1);
+        int indicePagina = riga / DIMENSIONE_PAGINA;
+        pagine.get(indicePagina).remove(riga % DIMENSIONE_PAGINA);
+        numeroRighe--;
+        int ultimaPagina = (numeroRighe == 0) ? 0 : (numeroRighe - 1) / DIMENSIONE_PAGINA;
+
+        // Scorrimento delle righe delle pagine successive: la prima riga di ognuna passa in
+        // fondo alla precedente. Se la precedente non è in memoria la riga viene scartata,
+        // e le pagine rimaste incomplete (o oltre la fine) vengono rilette quando servono
+        TreeMap<Integer, List<Persona>> successive = new TreeMap<>();
+        for (Map.Entry<Integer, List<Persona>> e : pagine.entrySet()) {
+            if (e.getKey() >= indicePagina) {
+                successive.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<Integer, List<Persona>> e : successive.entrySet()) {
+            if (e.getKey() > indicePagina && !e.getValue().isEmpty()) {
+                Persona prima = e.getValue().remove(0);
+                List<Persona> precedente = successive.get(e.getKey() - 1);
+                if (precedente != null) {
+                    precedente.add(prima);
+                } else {
+                    righePagine.remove(prima.getID());
+                }
+            }
+        }
+        for (Map.Entry<Integer, List<Persona>> e : successive.entrySet()) {
+            int indice = e.getKey();
+            if (indice > ultimaPagina || (indice < ultimaPagina && e.getValue().size() < DIMENSIONE_PAGINA)) {
+                dimenticaPagina(indice, pagine.remove(indice));
+            }
+        }
+
+        sorgente.rigaRimossa(riga);
+        if (mostraPagine()) {
+            fireTableRowsDeleted(riga, riga);
+        }
+    }
+
+    /*
+     * Con un filtro attivo, o con la rubrica ordinata in memoria, le righe delle pagine non
+     * sono quelle mostrate: gli aggiornamenti incrementali modificano le pagine senza
+     * notificare la JTable, e spetta a chi ha impostato il filtro ripetere la ricerca.
+     */
+
+    /**
+     * Inserisce la persona nella rubrica ordinata in memoria (se c'è), con una ricerca binaria.
+     */
+    private void inserisciInOrdine(Persona p) {
+        if (ordinate == null) {
+            return;
+        }
+        int posizione = Collections.binarySearch(ordinate, p, ordinamento);
+        posizione = posizione < 0 ? -posizione - 1 : posizione;
+        ordinate.add(posizione, p);
+        righeOrdinate.spostaValori(posizione, 1);
+        righeOrdinate.put(p.getID(), posizione);
+        if (filtro == null) {
+            fireTableRowsInserted(posizione, posizione);
+        }
+    }
+
+    /**
+     * Rimuove la persona con l'ID indicato dalla rubrica ordinata in memoria (se c'è).
+     *
+     * @return true se la rubrica ordinata è in memoria, anche se la persona non c'era.
+     */
+    private boolean rimuoviDallOrdine(int idPersona) {
+        if (ordinate == null) {
+            return false;
+        }
+        int posizione = righeOrdinate.remove(idPersona);
+        if (posizione >= 0) {
+            ordinate.remove(posizione);
+            righeOrdinate.spostaValori(posizione + 1, -1);
+            if (filtro == null) {
+                fireTableRowsDeleted(posizione, posizione);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true se la tabella mostra le pagine della sorgente.
+     */
+    private boolean mostraPagine() {
+        return filtro == null && ordinate == null;
+    }
+
+    /**
+     * Prepara il modello a un aggiornamento incrementale: i caricamenti in corso
+     * potrebbero restituire dati letti prima della modifica, quindi vengono scartati.
+     *
+     * @return false se è in corso una ricarica completa (che includerà già la modifica).
+     */
+    private boolean preparaAggiornamento() {
+        if (sorgente == null) {
+            return false;
+        }
+        if (conteggioInCorso) {
+            ricarica();
+            return false;
+        }
+        generazione++;
+        pagineInVolo.clear();
+        return true;
+    }
+
+    /**
+     * Toglie dalla mappa delle righe le persone di una pagina scartata. Una persona viene
+     * tolta solo se la mappa la colloca ancora in quella pagina (potrebbe essere stata
+     * letta di nuovo in un'altra).
+     */
+    private void dimenticaPagina(int indicePagina, List<Persona> righe) {
+        if (righe == null) {
+            return;
+        }
+        int primaRiga = indicePagina * DIMENSIONE_PAGINA;
+        for (int i = 0; i < righe.size(); i++) {
+            int id = righe.get(i).getID();
+            int riga = righePagine.get(id);
+            if (riga >= primaRiga && riga < primaRiga + DIMENSIONE_PAGINA) {
+                righePagine.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Ricostruisce la mappa dall'ID alla posizione nella lista.
+     */
+    private static void indicizza(MappaIntInt mappa, List<Persona> righe) {
+        mappa.clear();
+        for (int i = 0; i < righe.size(); i++) {
+            mappa.put(righe.get(i).getID(), i);
+        }
+    }
+
+    // ----------------------------
+    //   METODI DI AbstractTableModel
+    // ----------------------------
+
+    @Override
+    public int getRowCount() {
+        if (filtro != null) {
+            return filtro.length;
+        }
+        return ordinate != null ? ordinate.size() : numeroRighe;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLONNE.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLONNE[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false; // Rende non modificabili le celle
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Persona p = getPersonaAt(rowIndex);
+        if (p == null) {
+            // Riga non ancora in memoria: si richiede la pagina e si mostra il segnaposto
+            richiediPagina(rowIndex / DIMENSIONE_PAGINA);
+            return SEGNAPOSTO;
+        }
+        switch (columnIndex) {
+            case 0:
+                return p.getNome();
+            case 1:
+                return p.getCognome();
+            case 2:
+                return p.getTelefono();
+            default:
+                return null;
+        }
+    }
+
+    // ----------------------------
+    //       METODI INTERNI
+    // ----------------------------
+
+    /**
+     * Avvia in background il caricamento di una pagina, se non è già in corso.
+     * All'arrivo la pagina viene inserita nella LRU e le sue righe vengono ridisegnate.
+     */
+    private void richiediPagina(int indicePagina) {
+        if (sorgente == null || pagineInVolo.contains(indicePagina)) {
+            return;
+        }
+        pagineInVolo.add(indicePagina);
+        final int gen = generazione;
+        final SorgentePagine s = sorgente;
+        final int primaRiga = indicePagina * DIMENSIONE_PAGINA;
+        caricatore.execute(() -> {
+            try {
+                List<Persona> righe = s.caricaPagina(primaRiga, DIMENSIONE_PAGINA);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generazione) {
+                        return; // Risultato di una ricarica precedente: scartato
+                    }
+                    pagineInVolo.remove(indicePagina);
+                    dimenticaPagina(indicePagina, pagine.remove(indicePagina));
+                    for (int i = 0; i < righe.size(); i++) {
+                        righePagine.put(righe.get(i).getID(), primaRiga + i);
+                    }
+                    pagine.put(indicePagina, new ArrayList<>(righe));
+                    int ultimaRiga = Math.min(numeroRighe, primaRiga + DIMENSIONE_PAGINA) - 1;
+                    if (mostraPagine() && ultimaRiga >= primaRiga) {
+                        fireTableRowsUpdated(primaRiga, ultimaRiga);
+                    }
+                });
+            } catch (SQLException | RuntimeException ex) {
+                // La pagina resta "in volo" fino alla prossima ricarica, per non ritentare
+                // il caricamento (e mostrare l'errore) a ogni ridisegno della tabella
+                SwingUtilities.invokeLater(() -> gestoreErrori.accept(ex));
+            }
+        });
+    }
+}